@@ -251,6 +251,8 @@ public class AndroidBinary
   private SourcePath aaptGeneratedProguardConfigFile;
   @AddToRuleKey
   private Optional<String> dxMaxHeapSize;
+  @AddToRuleKey
+  private final boolean useDxWorkers;
 
   @AddToRuleKey
   @Nullable
@@ -290,7 +292,8 @@ public class AndroidBinary
       boolean compressAssetLibraries,
       ManifestEntries manifestEntries,
       JavaRuntimeLauncher javaRuntimeLauncher,
-      Optional<String> dxMaxHeapSize) {
+      Optional<String> dxMaxHeapSize,
+      boolean useDxWorkers) {
     super(params);
     this.ruleFinder = ruleFinder;
     this.proguardJarOverride = proguardJarOverride;
@@ -337,6 +340,7 @@ public class AndroidBinary
     this.aaptGeneratedProguardConfigFile =
         enhancementResult.getSourcePathToAaptGeneratedProguardConfigFile();
     this.dxMaxHeapSize = dxMaxHeapSize;
+    this.useDxWorkers = useDxWorkers;
 
     if (exopackageModes.isEmpty()) {
       this.abiPath = null;
@@ -578,11 +582,12 @@ public class AndroidBinary
         pathToKeystore,
         keystoreProperties,
         /* debugMode */ false,
-        javaRuntimeLauncher);
+        javaRuntimeLauncher,
+        dxExecutorService);
     steps.add(apkBuilderCommand);
 
-    // The `ApkBuilderStep` delegates to android tools to build a ZIP with timestamps in it, making
-    // the output non-deterministic.  So use an additional scrubbing step to zero these out.
+    // The `ApkBuilderStep` writes ZIP timestamps which depend on the timezone, making the output
+    // non-deterministic.  So use an additional scrubbing step to zero these out.
     steps.add(new ZipScrubberStep(getProjectFilesystem(), signedApkPath));
 
     Path apkToRedexAndAlign;
@@ -1166,7 +1171,9 @@ public class AndroidBinary
           dexSplitMode.getSecondaryDexTailClassesFile().map(resolver::getAbsolutePath),
           additionalDexStoreToJarPathMap,
           enhancementResult.getAPKModuleGraph(),
-          zipSplitReportDir);
+          zipSplitReportDir,
+          // Not cleaned, so that the stats of unchanged jars are reused.
+          getBinPath("__%s_dalvik_stats__"));
       steps.add(splitZipCommand);
 
       // Add the secondary dex directory that has yet to be created, but will be by the
@@ -1247,6 +1254,10 @@ public class AndroidBinary
     EnumSet<DxStep.Option> dxOptions = PackageType.RELEASE.equals(packageType)
         ? EnumSet.of(DxStep.Option.NO_LOCALS)
         : EnumSet.of(DxStep.Option.NO_OPTIMIZE);
+    if (useDxWorkers) {
+      dxOptions.add(DxStep.Option.USE_CUSTOM_DX_IF_AVAILABLE);
+      dxOptions.add(DxStep.Option.RUN_IN_WORKER);
+    }
     Path selectedPrimaryDexPath = primaryDexPath;
     if (reorderClassesIntraDex) {
       String primaryDexFileName = primaryDexPath.getFileName().toString();
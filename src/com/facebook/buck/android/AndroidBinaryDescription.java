@@ -340,7 +340,8 @@ public class AndroidBinaryDescription implements
           args.compressAssetLibraries,
           args.manifestEntries,
           javaOptions.getJavaRuntimeLauncher(),
-          dxConfig.getDxMaxHeapSize());
+          dxConfig.getDxMaxHeapSize(),
+          dxConfig.shouldUseWorkers());
     }
   }
 
@@ -362,7 +363,8 @@ public class AndroidBinaryDescription implements
         args.primaryDexScenarioFile,
         args.primaryDexScenarioOverflowAllowed,
         args.secondaryDexHeadClassesFile,
-        args.secondaryDexTailClassesFile);
+        args.secondaryDexTailClassesFile,
+        args.stableSecondaryDexGroups);
   }
 
   private PackageType getPackageType(Arg args) {
@@ -499,6 +501,7 @@ public class AndroidBinaryDescription implements
     public boolean primaryDexScenarioOverflowAllowed = false;
     public Optional<SourcePath> secondaryDexHeadClassesFile;
     public Optional<SourcePath> secondaryDexTailClassesFile;
+    public boolean stableSecondaryDexGroups = false;
     public Set<BuildTarget> applicationModuleTargets = ImmutableSet.of();
     public Optional<Long> linearAllocHardLimit;
     public List<String> resourceFilter = ImmutableList.of();
@@ -90,7 +90,8 @@ public class AndroidInstrumentationApk extends AndroidBinary {
         false,
         apkUnderTest.getManifestEntries(),
         apkUnderTest.getJavaRuntimeLauncher(),
-        Optional.empty());
+        Optional.empty(),
+        false);
     this.apkUnderTest = apkUnderTest;
   }
 
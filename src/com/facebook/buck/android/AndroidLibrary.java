@@ -103,6 +103,7 @@ public class AndroidLibrary extends DefaultJavaLibrary implements AndroidPackage
         exportedDeps,
         providedDeps,
         abiInputs,
+        /* compileTimeClasspathAbiJars */ Optional.empty(),
         trackClassUsage,
         additionalClasspathEntries,
         compileStepFactory,
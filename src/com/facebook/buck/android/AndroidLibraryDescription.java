@@ -132,7 +132,8 @@ public class AndroidLibraryDescription
         /* forceFinalResourceIds */ false,
         args.resourceUnionPackage,
         args.finalRName,
-        false);
+        /* useOldStyleableFormat */ false,
+        args.generateRDotClassesDirectly);
 
     boolean hasDummyRDotJavaFlavor =
         params.getBuildTarget().getFlavors().contains(DUMMY_R_DOT_JAVA_FLAVOR);
@@ -232,6 +233,7 @@ public class AndroidLibraryDescription
     public Optional<SourcePath> manifest;
     public Optional<String> resourceUnionPackage;
     public Optional<String> finalRName;
+    public boolean generateRDotClassesDirectly = false;
     public Optional<JvmLanguage> language;
     public Optional<Query> depsQuery;
   }
@@ -48,6 +48,7 @@ public class AndroidLibraryGraphEnhancer {
   private final Optional<String> resourceUnionPackage;
   private final Optional<String> finalRName;
   private final boolean useOldStyleableFormat;
+  private final boolean generateRDotClassesDirectly;
 
   public AndroidLibraryGraphEnhancer(
       BuildTarget buildTarget,
@@ -57,7 +58,8 @@ public class AndroidLibraryGraphEnhancer {
       boolean forceFinalResourceIds,
       Optional<String> resourceUnionPackage,
       Optional<String> finalRName,
-      boolean useOldStyleableFormat) {
+      boolean useOldStyleableFormat,
+      boolean generateRDotClassesDirectly) {
     this.dummyRDotJavaBuildTarget = getDummyRDotJavaTarget(buildTarget);
     this.originalBuildRuleParams = buildRuleParams;
     // Override javacoptions because DummyRDotJava doesn't require annotation processing.
@@ -69,6 +71,7 @@ public class AndroidLibraryGraphEnhancer {
     this.resourceUnionPackage = resourceUnionPackage;
     this.finalRName = finalRName;
     this.useOldStyleableFormat = useOldStyleableFormat;
+    this.generateRDotClassesDirectly = generateRDotClassesDirectly;
   }
 
   public static BuildTarget getDummyRDotJavaTarget(BuildTarget buildTarget) {
@@ -128,7 +131,8 @@ public class AndroidLibraryGraphEnhancer {
         forceFinalResourceIds,
         resourceUnionPackage,
         finalRName,
-        useOldStyleableFormat);
+        useOldStyleableFormat,
+        generateRDotClassesDirectly);
     ruleResolver.addToIndex(dummyRDotJava);
 
     return Optional.of(dummyRDotJava);
@@ -16,10 +16,6 @@
 
 package com.facebook.buck.android;
 
-import com.android.sdklib.build.ApkBuilder;
-import com.android.sdklib.build.ApkCreationException;
-import com.android.sdklib.build.DuplicateFileException;
-import com.android.sdklib.build.SealedApkException;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.jvm.java.JavaRuntimeLauncher;
 import com.facebook.buck.step.ExecutionContext;
@@ -33,11 +29,12 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ListeningExecutorService;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PrintStream;
 import java.nio.file.Path;
+import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
@@ -53,6 +50,9 @@ import java.util.Map;
 /**
  * Merges resources into a final APK.  This code is based off of the now deprecated apkbuilder tool:
  * https://android.googlesource.com/platform/sdk/+/fd30096196e3747986bdf8a95cc7713dd6e0b239%5E/sdkmanager/libs/sdklib/src/main/java/com/android/sdklib/build/ApkBuilderMain.java
+ * <p>
+ * The APK is written by {@link ApkWriter}, which copies the entries of the resources APK and the
+ * other zip files without compressing them again, and compresses files on {@code executorService}.
  */
 public class ApkBuilderStep implements Step {
 
@@ -74,6 +74,7 @@ public class ApkBuilderStep implements Step {
   private final Supplier<KeystoreProperties> keystorePropertiesSupplier;
   private final boolean debugMode;
   private final JavaRuntimeLauncher javaRuntimeLauncher;
+  private final ListeningExecutorService executorService;
 
   /**
    *
@@ -84,6 +85,7 @@ public class ApkBuilderStep implements Step {
    * @param nativeLibraryDirectories List of paths to native directories.
    * @param zipFiles List of paths to zipfiles to be included into the apk.
    * @param debugMode Whether or not to run ApkBuilder with debug mode turned on.
+   * @param executorService The thread pool on which to compress and digest the entries.
    */
   public ApkBuilderStep(
       ProjectFilesystem filesystem,
@@ -97,7 +99,8 @@ public class ApkBuilderStep implements Step {
       Path pathToKeystore,
       Supplier<KeystoreProperties> keystorePropertiesSupplier,
       boolean debugMode,
-      JavaRuntimeLauncher javaRuntimeLauncher) {
+      JavaRuntimeLauncher javaRuntimeLauncher,
+      ListeningExecutorService executorService) {
     this.filesystem = filesystem;
     this.resourceApk = resourceApk;
     this.pathToOutputApkFile = pathToOutputApkFile;
@@ -110,58 +113,46 @@ public class ApkBuilderStep implements Step {
     this.keystorePropertiesSupplier = keystorePropertiesSupplier;
     this.debugMode = debugMode;
     this.javaRuntimeLauncher = javaRuntimeLauncher;
+    this.executorService = executorService;
   }
 
   @Override
-  public StepExecutionResult execute(ExecutionContext context) throws IOException {
-    PrintStream output = null;
-    if (context.getVerbosity().shouldUseVerbosityFlagIfAvailable()) {
-      output = context.getStdOut();
-    }
-
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
     try {
       PrivateKeyAndCertificate privateKeyAndCertificate = createKeystoreProperties();
-      ApkBuilder builder = new ApkBuilder(
-          filesystem.getPathForRelativePath(pathToOutputApkFile).toFile(),
-          filesystem.getPathForRelativePath(resourceApk).toFile(),
-          filesystem.getPathForRelativePath(dexFile).toFile(),
+      try (ApkWriter writer = new ApkWriter(
+          executorService,
           privateKeyAndCertificate.privateKey,
           privateKeyAndCertificate.certificate,
-          output);
-      builder.setDebugMode(debugMode);
-      for (Path nativeLibraryDirectory : nativeLibraryDirectories) {
-        builder.addNativeLibraries(
-            filesystem.getPathForRelativePath(nativeLibraryDirectory).toFile());
-      }
-      for (Path assetDirectory : assetDirectories) {
-        builder.addSourceFolder(filesystem.getPathForRelativePath(assetDirectory).toFile());
-      }
-      for (Path zipFile : zipFiles) {
-        // TODO(natthu): Skipping silently is bad. These should really be assertions.
-        if (filesystem.exists(zipFile) && filesystem.isFile(zipFile)) {
-          builder.addZipFile(filesystem.getPathForRelativePath(zipFile).toFile());
+          debugMode)) {
+        writer.addZipFile(filesystem.getPathForRelativePath(resourceApk));
+        writer.addFile(filesystem.getPathForRelativePath(dexFile), "classes.dex");
+        for (Path nativeLibraryDirectory : nativeLibraryDirectories) {
+          writer.addNativeLibraries(filesystem.getPathForRelativePath(nativeLibraryDirectory));
+        }
+        for (Path assetDirectory : assetDirectories) {
+          writer.addSourceFolder(filesystem.getPathForRelativePath(assetDirectory));
+        }
+        for (Path zipFile : zipFiles) {
+          // TODO(natthu): Skipping silently is bad. These should really be assertions.
+          if (filesystem.exists(zipFile) && filesystem.isFile(zipFile)) {
+            writer.addZipFile(filesystem.getPathForRelativePath(zipFile));
+          }
+        }
+        for (Path jarFileThatMayContainResources : jarFilesThatMayContainResources) {
+          Path jarFile  = filesystem.getPathForRelativePath(jarFileThatMayContainResources);
+          writer.addResourcesFromJar(jarFile);
         }
-      }
-      for (Path jarFileThatMayContainResources : jarFilesThatMayContainResources) {
-        Path jarFile  = filesystem.getPathForRelativePath(jarFileThatMayContainResources);
-        builder.addResourcesFromJar(jarFile.toFile());
-      }
 
-      // Build the APK
-      builder.sealApk();
-    } catch (ApkCreationException |
-            IOException |
-            KeyStoreException |
-            NoSuchAlgorithmException |
-            SealedApkException |
-            UnrecoverableKeyException e) {
+        // Build the APK
+        writer.write(filesystem.getPathForRelativePath(pathToOutputApkFile));
+      }
+    } catch (IOException |
+            GeneralSecurityException e) {
       context.logError(e, "Error when creating APK at: %s.", pathToOutputApkFile);
       Throwables.throwIfInstanceOf(e, IOException.class);
       return StepExecutionResult.ERROR;
-    } catch (DuplicateFileException e) {
-      throw new HumanReadableException(
-          String.format("Found duplicate file for APK: %1$s\nOrigin 1: %2$s\nOrigin 2: %3$s",
-              e.getArchivePath(), e.getFile1(), e.getFile2()));
     }
     return StepExecutionResult.SUCCESS;
   }
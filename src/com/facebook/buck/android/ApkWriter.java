@@ -0,0 +1,558 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.android.sdklib.build.ApkBuilder;
+import com.facebook.buck.util.HumanReadableException;
+import com.facebook.buck.zip.CustomZipEntry;
+import com.facebook.buck.zip.CustomZipOutputStream;
+import com.facebook.buck.zip.RawZipFile;
+import com.facebook.buck.zip.ZipOutputStreams;
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import javax.annotation.Nullable;
+
+/**
+ * Writes a signed APK with the same entries, in the same order, as the SDK's {@link ApkBuilder}
+ * writes, and with the same v1 (jar) signature.
+ * <p>
+ * Unlike {@link ApkBuilder}, entries of the zip files added, such as the resources APK, are copied
+ * as they are stored: deflated entries are not inflated and deflated again, and are only inflated
+ * to compute their digests. Files are deflated, and entries are digested, on the executor, several
+ * at a time. The entries are written in order as they are ready, with a bounded number of them in
+ * memory at once.
+ */
+class ApkWriter implements Closeable {
+
+  private static final Pattern NATIVE_LIBRARY_PATTERN =
+      Pattern.compile("^.+\\.(so|bc)$", Pattern.CASE_INSENSITIVE);
+  private static final String GDBSERVER = "gdbserver";
+  private static final String NATIVE_LIBRARIES_FOLDER = "lib";
+  private static final String META_INF = "META-INF/";
+  private static final String MANIFEST_NAME = META_INF + "MANIFEST.MF";
+  private static final String CREATED_BY = "1.0 (Android)";
+  private static final String DIGEST_ALGORITHM = "SHA1";
+  private static final String DIGEST_ATTRIBUTE = "SHA1-Digest";
+  private static final int MAX_LINE_LENGTH = 72;
+  private static final BaseEncoding BASE64 = BaseEncoding.base64();
+
+  // DER encodings of the object identifiers in the PKCS #7 signature block.
+  private static final byte[] SIGNED_DATA_OID =
+      oid(0x2a, 0x86, 0x48, 0x86, 0xf7, 0x0d, 0x01, 0x07, 0x02);
+  private static final byte[] DATA_OID =
+      oid(0x2a, 0x86, 0x48, 0x86, 0xf7, 0x0d, 0x01, 0x07, 0x01);
+  private static final byte[] SHA1_OID = oid(0x2b, 0x0e, 0x03, 0x02, 0x1a);
+  private static final byte[] RSA_OID =
+      oid(0x2a, 0x86, 0x48, 0x86, 0xf7, 0x0d, 0x01, 0x01, 0x01);
+  private static final byte[] DSA_OID = oid(0x2a, 0x86, 0x48, 0xce, 0x38, 0x04, 0x01);
+  private static final byte[] EC_OID = oid(0x2a, 0x86, 0x48, 0xce, 0x3d, 0x02, 0x01);
+  private static final byte[] DER_NULL = {0x05, 0x00};
+
+  private final ListeningExecutorService executor;
+  private final PrivateKey privateKey;
+  private final X509Certificate certificate;
+  private final boolean debugMode;
+  private final int maxPendingEntries;
+  private final List<Callable<PreparedEntry>> entries = new ArrayList<>();
+  /** The origin of each entry added so far, to report duplicates. */
+  private final Map<String, Path> origins = new HashMap<>();
+  private final List<RawZipFile> zipFiles = new ArrayList<>();
+
+  ApkWriter(
+      ListeningExecutorService executor,
+      PrivateKey privateKey,
+      X509Certificate certificate,
+      boolean debugMode) {
+    this.executor = executor;
+    this.privateKey = privateKey;
+    this.certificate = certificate;
+    this.debugMode = debugMode;
+    this.maxPendingEntries = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Adds the files of {@code zipFile}, except for directories and anything in {@code META-INF},
+   * as {@link ApkBuilder#addZipFile} does.
+   */
+  void addZipFile(Path zipFile) throws IOException {
+    addZipEntries(zipFile, /* onlyResources */ false);
+  }
+
+  /**
+   * Adds the Java resources in {@code jarFile}, leaving out classes, sources and the like, as
+   * {@link ApkBuilder#addResourcesFromJar} does.
+   */
+  void addResourcesFromJar(Path jarFile) throws IOException {
+    addZipEntries(jarFile, /* onlyResources */ true);
+  }
+
+  void addFile(Path file, String archivePath) {
+    checkForDuplicate(archivePath, file);
+    entries.add(() -> deflateFile(file, archivePath));
+  }
+
+  /**
+   * Adds the libraries in each ABI folder of {@code nativeFolder} under {@code lib/<abi>/}, as
+   * {@link ApkBuilder#addNativeLibraries(java.io.File)} does.
+   */
+  void addNativeLibraries(Path nativeFolder) throws IOException {
+    if (!Files.isDirectory(nativeFolder)) {
+      throw new HumanReadableException("%s is not a folder", nativeFolder);
+    }
+    for (Path abi : listSorted(nativeFolder)) {
+      if (!Files.isDirectory(abi)) {
+        continue;
+      }
+      for (Path library : listSorted(abi)) {
+        String name = library.getFileName().toString();
+        if (Files.isRegularFile(library) &&
+            (NATIVE_LIBRARY_PATTERN.matcher(name).matches() ||
+                (debugMode && GDBSERVER.equals(name)))) {
+          addFile(library, NATIVE_LIBRARIES_FOLDER + "/" + abi.getFileName() + "/" + name);
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds the files under {@code sourceFolder}, leaving out those which
+   * {@link ApkBuilder#addSourceFolder(java.io.File)} leaves out.
+   */
+  void addSourceFolder(Path sourceFolder) throws IOException {
+    if (!Files.isDirectory(sourceFolder)) {
+      throw new HumanReadableException("%s is not a folder", sourceFolder);
+    }
+    for (Path file : listSorted(sourceFolder)) {
+      addSourceFile(file, null);
+    }
+  }
+
+  private void addSourceFile(Path file, @Nullable String parentPath) throws IOException {
+    String name = file.getFileName().toString();
+    String path = parentPath == null ? name : parentPath + "/" + name;
+    if (Files.isDirectory(file)) {
+      if (ApkBuilder.checkFolderForPackaging(name)) {
+        for (Path child : listSorted(file)) {
+          addSourceFile(child, path);
+        }
+      }
+    } else if (ApkBuilder.checkFileForPackaging(name)) {
+      addFile(file, path);
+    }
+  }
+
+  private void addZipEntries(Path zipFile, boolean onlyResources) throws IOException {
+    RawZipFile zip = new RawZipFile(zipFile);
+    zipFiles.add(zip);
+    for (RawZipFile.Entry entry : zip.getEntries()) {
+      String name = entry.getName();
+      if (entry.isDirectory() || name.startsWith(META_INF)) {
+        continue;
+      }
+      if (onlyResources && !isResource(name)) {
+        continue;
+      }
+      checkForDuplicate(name, zipFile);
+      entries.add(() -> copyZipEntry(zip, entry));
+    }
+  }
+
+  private static boolean isResource(String archivePath) {
+    String[] segments = archivePath.split("/");
+    if (segments.length == 0) {
+      return false;
+    }
+    for (int i = 0; i < segments.length - 1; i++) {
+      if (!ApkBuilder.checkFolderForPackaging(segments[i])) {
+        return false;
+      }
+    }
+    return ApkBuilder.checkFileForPackaging(segments[segments.length - 1]);
+  }
+
+  private void checkForDuplicate(String archivePath, Path origin) {
+    Path previousOrigin = origins.putIfAbsent(archivePath, origin);
+    if (previousOrigin != null) {
+      throw new HumanReadableException(
+          "Found duplicate file for APK: %1$s\nOrigin 1: %2$s\nOrigin 2: %3$s",
+          archivePath,
+          previousOrigin,
+          origin);
+    }
+  }
+
+  /**
+   * Writes the APK, with the entries added so far followed by the signature.
+   */
+  void write(Path apk) throws IOException, GeneralSecurityException, InterruptedException {
+    ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+    writeAttribute(manifest, "Manifest-Version", "1.0");
+    writeAttribute(manifest, "Created-By", CREATED_BY);
+    writeLine(manifest, "");
+    // The digest of each entry's section of the manifest, for the signature file.
+    ByteArrayOutputStream signatureFileEntries = new ByteArrayOutputStream();
+    MessageDigest sectionDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+
+    Deque<ListenableFuture<PreparedEntry>> pending = new ArrayDeque<>();
+    try (CustomZipOutputStream out = ZipOutputStreams.newOutputStream(apk)) {
+      try {
+        for (Callable<PreparedEntry> entry : entries) {
+          if (pending.size() >= maxPendingEntries) {
+            writeEntry(out, getUnchecked(pending.removeFirst()), manifest, signatureFileEntries,
+                sectionDigest);
+          }
+          pending.add(executor.submit(entry));
+        }
+        while (!pending.isEmpty()) {
+          writeEntry(out, getUnchecked(pending.removeFirst()), manifest, signatureFileEntries,
+              sectionDigest);
+        }
+      } finally {
+        for (ListenableFuture<PreparedEntry> entry : pending) {
+          entry.cancel(true);
+        }
+      }
+
+      writeSignature(out, manifest.toByteArray(), signatureFileEntries.toByteArray());
+    }
+  }
+
+  private void writeEntry(
+      CustomZipOutputStream out,
+      PreparedEntry entry,
+      ByteArrayOutputStream manifest,
+      ByteArrayOutputStream signatureFileEntries,
+      MessageDigest sectionDigest) throws IOException {
+    out.putNextRawEntry(entry.zipEntry);
+    out.write(entry.data);
+    out.closeEntry();
+
+    ByteArrayOutputStream section = new ByteArrayOutputStream();
+    writeAttribute(section, "Name", entry.zipEntry.getName());
+    writeAttribute(section, DIGEST_ATTRIBUTE, BASE64.encode(entry.digest));
+    writeLine(section, "");
+    section.writeTo(manifest);
+
+    writeAttribute(signatureFileEntries, "Name", entry.zipEntry.getName());
+    writeAttribute(
+        signatureFileEntries,
+        DIGEST_ATTRIBUTE,
+        BASE64.encode(sectionDigest.digest(section.toByteArray())));
+    writeLine(signatureFileEntries, "");
+  }
+
+  /**
+   * Writes {@code META-INF/MANIFEST.MF}, {@code META-INF/CERT.SF} and the signature block, as the
+   * SDK's {@code SignedJarBuilder} does.
+   */
+  private void writeSignature(
+      CustomZipOutputStream out,
+      byte[] manifest,
+      byte[] signatureFileEntries) throws IOException, GeneralSecurityException {
+    writeDeflatedEntry(out, MANIFEST_NAME, manifest);
+
+    ByteArrayOutputStream signatureFile = new ByteArrayOutputStream();
+    // In the order in which SignedJarBuilder's java.util.jar.Manifest writes them.
+    writeAttribute(signatureFile, "Signature-Version", "1.0");
+    writeAttribute(
+        signatureFile,
+        "SHA1-Digest-Manifest",
+        BASE64.encode(MessageDigest.getInstance(DIGEST_ALGORITHM).digest(manifest)));
+    writeAttribute(signatureFile, "Created-By", CREATED_BY);
+    writeLine(signatureFile, "");
+    signatureFile.write(signatureFileEntries);
+    // Android's java.util.jar up to version 1.6 throws if the signature file is a multiple of 1024
+    // bytes long, so SignedJarBuilder adds a line break then.
+    if (signatureFile.size() % 1024 == 0) {
+      writeLine(signatureFile, "");
+    }
+    byte[] signatureFileBytes = signatureFile.toByteArray();
+    writeDeflatedEntry(out, META_INF + "CERT.SF", signatureFileBytes);
+
+    String keyAlgorithm = privateKey.getAlgorithm();
+    Signature signature = Signature.getInstance(
+        "SHA1with" + ("EC".equals(keyAlgorithm) ? "ECDSA" : keyAlgorithm));
+    signature.initSign(privateKey);
+    signature.update(signatureFileBytes);
+    writeDeflatedEntry(
+        out,
+        META_INF + "CERT." + keyAlgorithm,
+        createSignatureBlock(keyAlgorithm, signature.sign()));
+  }
+
+  /**
+   * @return the PKCS #7 signed data, with no content, holding the certificate and the signature,
+   *     as {@code sun.security.pkcs.PKCS7} encodes it for {@code SignedJarBuilder}
+   */
+  private byte[] createSignatureBlock(String keyAlgorithm, byte[] signature)
+      throws IOException, GeneralSecurityException {
+    byte[] digestAlgorithm = der(0x30, SHA1_OID, DER_NULL);
+    byte[] encryptionAlgorithm;
+    switch (keyAlgorithm) {
+      case "RSA":
+        encryptionAlgorithm = der(0x30, RSA_OID, DER_NULL);
+        break;
+      case "DSA":
+        encryptionAlgorithm = der(0x30, DSA_OID);
+        break;
+      case "EC":
+        encryptionAlgorithm = der(0x30, EC_OID);
+        break;
+      default:
+        throw new NoSuchAlgorithmException("Unsupported key algorithm: " + keyAlgorithm);
+    }
+
+    byte[] signerInfo = der(
+        0x30,
+        der(0x02, new byte[] {1}),
+        der(
+            0x30,
+            certificate.getIssuerX500Principal().getEncoded(),
+            der(0x02, certificate.getSerialNumber().toByteArray())),
+        digestAlgorithm,
+        encryptionAlgorithm,
+        der(0x04, signature));
+    byte[] signedData = der(
+        0x30,
+        der(0x02, new byte[] {1}),
+        der(0x31, digestAlgorithm),
+        der(0x30, DATA_OID),
+        der(0xa0, certificate.getEncoded()),
+        der(0x31, signerInfo));
+    return der(0x30, SIGNED_DATA_OID, der(0xa0, signedData));
+  }
+
+  private static void writeDeflatedEntry(CustomZipOutputStream out, String name, byte[] data)
+      throws IOException {
+    CustomZipEntry entry = new CustomZipEntry(name);
+    entry.setCompressionLevel(Deflater.BEST_COMPRESSION);
+    out.putNextEntry(entry);
+    out.write(data);
+    out.closeEntry();
+  }
+
+  private static PreparedEntry deflateFile(Path file, String archivePath) throws IOException {
+    byte[] data = Files.readAllBytes(file);
+    CRC32 crc = new CRC32();
+    crc.update(data);
+
+    // The level JarOutputStream uses in SignedJarBuilder.
+    Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, /* nowrap */ true);
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2 + 64);
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+      byte[] buffer = new byte[64 * 1024];
+      while (!deflater.finished()) {
+        compressed.write(buffer, 0, deflater.deflate(buffer));
+      }
+    } finally {
+      deflater.end();
+    }
+
+    CustomZipEntry entry = new CustomZipEntry(archivePath);
+    entry.setMethod(ZipEntry.DEFLATED);
+    entry.setCrc(crc.getValue());
+    entry.setSize(data.length);
+    entry.setCompressedSize(compressed.size());
+    return new PreparedEntry(entry, compressed.toByteArray(), sha1(data));
+  }
+
+  private static PreparedEntry copyZipEntry(RawZipFile zip, RawZipFile.Entry source)
+      throws IOException, NoSuchAlgorithmException {
+    byte[] data = zip.getRawData(source);
+    MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+    CRC32 crc = new CRC32();
+    if (source.getMethod() == ZipEntry.STORED) {
+      digest.update(data);
+      crc.update(data);
+    } else if (source.getMethod() == ZipEntry.DEFLATED) {
+      Inflater inflater = new Inflater(/* nowrap */ true);
+      try {
+        inflater.setInput(data);
+        byte[] buffer = new byte[64 * 1024];
+        while (!inflater.finished()) {
+          int length = inflater.inflate(buffer);
+          if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+            throw new ZipException("Truncated entry: " + source.getName());
+          }
+          digest.update(buffer, 0, length);
+          crc.update(buffer, 0, length);
+        }
+      } catch (DataFormatException e) {
+        throw new ZipException("Invalid entry " + source.getName() + ": " + e.getMessage());
+      } finally {
+        inflater.end();
+      }
+    } else {
+      throw new ZipException(
+          "Unsupported compression method " + source.getMethod() + ": " + source.getName());
+    }
+    if (crc.getValue() != source.getCrc()) {
+      throw new ZipException("Bad CRC: " + source.getName());
+    }
+
+    CustomZipEntry entry = new CustomZipEntry(source.getName());
+    entry.setMethod(source.getMethod());
+    entry.setCrc(source.getCrc());
+    entry.setSize(source.getSize());
+    entry.setCompressedSize(source.getCompressedSize());
+    return new PreparedEntry(entry, data, digest.digest());
+  }
+
+  private static byte[] sha1(byte[] data) throws IOException {
+    try {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM).digest(data);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static PreparedEntry getUnchecked(ListenableFuture<PreparedEntry> future)
+      throws IOException, GeneralSecurityException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfInstanceOf(e.getCause(), GeneralSecurityException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  /**
+   * Writes {@code name: value}, split into continuation lines of at most 72 bytes as
+   * {@link java.util.jar.Manifest} splits them.
+   */
+  private static void writeAttribute(OutputStream out, String name, String value)
+      throws IOException {
+    byte[] line = (name + ": " + value).getBytes(Charsets.UTF_8);
+    int start = 0;
+    int end = Math.min(line.length, MAX_LINE_LENGTH);
+    out.write(line, start, end);
+    while (end < line.length) {
+      out.write(new byte[] {'\r', '\n', ' '});
+      start = end;
+      end = Math.min(line.length, start + MAX_LINE_LENGTH - 1);
+      out.write(line, start, end - start);
+    }
+    out.write(new byte[] {'\r', '\n'});
+  }
+
+  private static void writeLine(OutputStream out, String line) throws IOException {
+    out.write((line + "\r\n").getBytes(Charsets.UTF_8));
+  }
+
+  private static byte[] oid(int... bytes) {
+    byte[] encoded = new byte[bytes.length + 2];
+    encoded[0] = 0x06;
+    encoded[1] = (byte) bytes.length;
+    for (int i = 0; i < bytes.length; i++) {
+      encoded[i + 2] = (byte) bytes[i];
+    }
+    return encoded;
+  }
+
+  /**
+   * @return the DER encoding of a value with the given tag and the concatenated contents
+   */
+  private static byte[] der(int tag, byte[]... contents) {
+    int length = 0;
+    for (byte[] content : contents) {
+      length += content.length;
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream(length + 6);
+    out.write(tag);
+    if (length < 0x80) {
+      out.write(length);
+    } else {
+      int lengthBytes = (32 - Integer.numberOfLeadingZeros(length) + 7) / 8;
+      out.write(0x80 | lengthBytes);
+      for (int i = lengthBytes - 1; i >= 0; i--) {
+        out.write(length >>> (8 * i));
+      }
+    }
+    for (byte[] content : contents) {
+      out.write(content, 0, content.length);
+    }
+    return out.toByteArray();
+  }
+
+  private static ImmutableList<Path> listSorted(Path folder) throws IOException {
+    try (Stream<Path> children = Files.list(folder)) {
+      return ImmutableList.copyOf(children.sorted().collect(Collectors.toList()));
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (RawZipFile zipFile : zipFiles) {
+      zipFile.close();
+    }
+  }
+
+  /**
+   * An entry ready to be written: its data, compressed if it is deflated, and the digest of its
+   * uncompressed data.
+   */
+  private static class PreparedEntry {
+    private final ZipEntry zipEntry;
+    private final byte[] data;
+    private final byte[] digest;
+
+    PreparedEntry(ZipEntry zipEntry, byte[] data, byte[] digest) {
+      this.zipEntry = zipEntry;
+      this.data = data;
+      this.digest = digest;
+    }
+  }
+}
@@ -40,7 +40,8 @@ class DexSplitMode implements RuleKeyAppendable {
       /* primaryDexScenarioFile */ Optional.empty(),
       /* isPrimaryDexScenarioOverflowAllowed */ false,
       /* secondaryDexHeadClassesFile */ Optional.empty(),
-      /* secondaryDexTailClassesFile */ Optional.empty());
+      /* secondaryDexTailClassesFile */ Optional.empty(),
+      /* isSecondaryDexGroupingStable */ false);
 
   private final boolean shouldSplitDex;
   private final DexStore dexStore;
@@ -108,6 +109,13 @@ class DexSplitMode implements RuleKeyAppendable {
    */
   private final Optional<SourcePath> secondaryDexTailClassesFile;
 
+  /**
+   * Whether pre-dexed libraries should be grouped into secondary dexes so that a change to one
+   * library leaves the other secondary dexes as they were, at the cost of filling each secondary
+   * dex a little less.
+   */
+  private final boolean isSecondaryDexGroupingStable;
+
 
 
   /**
@@ -139,7 +147,8 @@ class DexSplitMode implements RuleKeyAppendable {
       Optional<SourcePath> primaryDexScenarioFile,
       boolean isPrimaryDexScenarioOverflowAllowed,
       Optional<SourcePath> secondaryDexHeadClassesFile,
-      Optional<SourcePath> secondaryDexTailClassesFile) {
+      Optional<SourcePath> secondaryDexTailClassesFile,
+      boolean isSecondaryDexGroupingStable) {
     this.shouldSplitDex = shouldSplitDex;
     this.dexSplitStrategy = dexSplitStrategy;
     this.dexStore = dexStore;
@@ -150,6 +159,7 @@ class DexSplitMode implements RuleKeyAppendable {
     this.isPrimaryDexScenarioOverflowAllowed = isPrimaryDexScenarioOverflowAllowed;
     this.secondaryDexHeadClassesFile = secondaryDexHeadClassesFile;
     this.secondaryDexTailClassesFile = secondaryDexTailClassesFile;
+    this.isSecondaryDexGroupingStable = isSecondaryDexGroupingStable;
 
   }
 
@@ -192,6 +202,10 @@ class DexSplitMode implements RuleKeyAppendable {
     return secondaryDexTailClassesFile;
   }
 
+  public boolean isSecondaryDexGroupingStable() {
+    return isSecondaryDexGroupingStable;
+  }
+
   @Override
   public void appendToRuleKey(RuleKeyObjectSink sink) {
     sink.setReflectively("dexStore", dexStore);
@@ -204,6 +218,7 @@ class DexSplitMode implements RuleKeyAppendable {
     sink.setReflectively("primaryDexScenarioFile", primaryDexScenarioFile);
     sink.setReflectively("secondaryDexHeadClassesFile", secondaryDexHeadClassesFile);
     sink.setReflectively("secondaryDexTailClassesFile", secondaryDexTailClassesFile);
+    sink.setReflectively("isSecondaryDexGroupingStable", isSecondaryDexGroupingStable);
     sink.setReflectively("shouldSplitDex", shouldSplitDex);
   }
 }
@@ -17,6 +17,7 @@
 package com.facebook.buck.android;
 
 import java.nio.file.Path;
+import java.util.Optional;
 
 /**
  * Specifies how secondary .dex files should be stored in the .apk.
@@ -59,6 +60,16 @@ enum DexStore {
       return String.format("%s-%s.dex.jar", prefix, index + 1);
     }
 
+    @Override
+    public Optional<String> fileNameForKeyedSecondary(String key) {
+      return fileNameForKeyedSecondary("secondary", key);
+    }
+
+    @Override
+    public Optional<String> fileNameForKeyedSecondary(String prefix, String key) {
+      return Optional.of(String.format("%s-%s.dex.jar", prefix, key));
+    }
+
     @Override
     public boolean matchesPath(Path path) {
       return path.getFileName().toString().endsWith(".dex.jar");
@@ -80,6 +91,16 @@ enum DexStore {
       return String.format("%s-%s.dex.jar.xz", prefix, index + 1);
     }
 
+    @Override
+    public Optional<String> fileNameForKeyedSecondary(String key) {
+      return fileNameForKeyedSecondary("secondary", key);
+    }
+
+    @Override
+    public Optional<String> fileNameForKeyedSecondary(String prefix, String key) {
+      return Optional.of(String.format("%s-%s.dex.jar.xz", prefix, key));
+    }
+
     @Override
     public boolean matchesPath(Path path) {
       return path.getFileName().toString().endsWith(".dex.jar.xz");
@@ -129,6 +150,30 @@ enum DexStore {
    */
   public abstract String fileNameForSecondary(String prefix, int index);
 
+  /**
+   * Raw secondary dexes are found by their index, and solid ones are concatenated in order, so
+   * only secondary dexes which are each stored in their own file and found through metadata.txt
+   * can be named by a key.
+   *
+   * @param key A key, made of letters and digits, which identifies the contents of a dex file.
+   * @return The appropriate name for the secondary dex file identified by {@code key}, or nothing
+   *     if secondary dex files of this store must be named by their index.
+   */
+  public Optional<String> fileNameForKeyedSecondary(String key) {
+    return Optional.empty();
+  }
+
+  /**
+   * @param prefix The prefix to use to name the file according to what store it is in
+   * @param key A key, made of letters and digits, which identifies the contents of a dex file.
+   * @return The appropriate name for the dex file identified by {@code key}, or nothing if dex
+   *     files of this store must be named by their index.
+   * @see #fileNameForKeyedSecondary(String)
+   */
+  public Optional<String> fileNameForKeyedSecondary(String prefix, String key) {
+    return Optional.empty();
+  }
+
   /**
    * @param path The path where a secondary dex file will be written.
    * @return Whether that file is of this DexStore type.
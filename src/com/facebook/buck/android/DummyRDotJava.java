@@ -42,6 +42,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.io.ByteSource;
 
 import java.nio.file.Path;
 import java.util.Comparator;
@@ -53,6 +54,9 @@ import java.util.Set;
  * first creates an {@code R.java} file using {@link MergeAndroidResourcesStep} and compiles it to
  * generate a corresponding {@code R.class} file. These are called "dummy" {@code R.java} files
  * since these are later merged together into a single {@code R.java} file by {@link AaptStep}.
+ * <p>
+ * With {@code generateRDotClassesDirectly}, the {@code R.class} files are written by
+ * {@link MergeAndroidResourcesStep} itself, and javac is not run at all.
  */
 public class DummyRDotJava extends AbstractBuildRule
     implements SupportsInputBasedRuleKey, HasJavaAbi {
@@ -71,6 +75,8 @@ public class DummyRDotJava extends AbstractBuildRule
   @AddToRuleKey
   private final boolean useOldStyleableFormat;
   @AddToRuleKey
+  private final boolean generateRDotClassesDirectly;
+  @AddToRuleKey
   @SuppressWarnings("PMD.UnusedPrivateField")
   private final ImmutableList<SourcePath> abiInputs;
 
@@ -82,7 +88,8 @@ public class DummyRDotJava extends AbstractBuildRule
       boolean forceFinalResourceIds,
       Optional<String> unionPackage,
       Optional<String> finalRName,
-      boolean useOldStyleableFormat) {
+      boolean useOldStyleableFormat,
+      boolean generateRDotClassesDirectly) {
     this(
         params,
         ruleFinder,
@@ -92,6 +99,7 @@ public class DummyRDotJava extends AbstractBuildRule
         unionPackage,
         finalRName,
         useOldStyleableFormat,
+        generateRDotClassesDirectly,
         abiPaths(androidResourceDeps));
   }
 
@@ -104,6 +112,7 @@ public class DummyRDotJava extends AbstractBuildRule
       Optional<String> unionPackage,
       Optional<String> finalRName,
       boolean useOldStyleableFormat,
+      boolean generateRDotClassesDirectly,
       ImmutableList<SourcePath> abiInputs) {
     super(params.copyAppendingExtraDeps(() -> ruleFinder.filterBuildRuleInputs(abiInputs)));
     this.ruleFinder = ruleFinder;
@@ -112,6 +121,7 @@ public class DummyRDotJava extends AbstractBuildRule
         .sorted(Comparator.comparing(HasAndroidResourceDeps::getBuildTarget))
         .collect(MoreCollectors.toImmutableList());
     this.useOldStyleableFormat = useOldStyleableFormat;
+    this.generateRDotClassesDirectly = generateRDotClassesDirectly;
     this.outputJar = getOutputJarPath(getBuildTarget(), getProjectFilesystem());
     this.javacOptions = javacOptions.withAnnotationProcessingParams(
         javacOptions.getAnnotationProcessingParams().withoutProcessOnly());
@@ -134,64 +144,61 @@ public class DummyRDotJava extends AbstractBuildRule
       BuildContext context,
       final BuildableContext buildableContext) {
     ImmutableList.Builder<Step> steps = ImmutableList.builder();
-    final Path rDotJavaSrcFolder = getRDotJavaSrcFolder(getBuildTarget(), getProjectFilesystem());
-    steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), rDotJavaSrcFolder));
-
-    // Generate the .java files and record where they will be written in javaSourceFilePaths.
-    ImmutableSortedSet<Path> javaSourceFilePaths;
-    if (androidResourceDeps.isEmpty()) {
-      // In this case, the user is likely running a Robolectric test that does not happen to
-      // depend on any resources. However, if Robolectric doesn't find an R.java file, it flips
-      // out, so we have to create one, anyway.
-
-      // TODO(bolinfest): Stop hardcoding com.facebook. This should match the package in the
-      // associated TestAndroidManifest.xml file.
-      Path emptyRDotJava = rDotJavaSrcFolder.resolve("com/facebook/R.java");
-      steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), emptyRDotJava.getParent()));
-      steps.add(
-          new WriteFileStep(
-              getProjectFilesystem(),
-              "package com.facebook;\n public class R {}\n",
-              emptyRDotJava,
-              /* executable */ false));
-      javaSourceFilePaths = ImmutableSortedSet.of(emptyRDotJava);
-    } else {
-      MergeAndroidResourcesStep mergeStep = MergeAndroidResourcesStep.createStepForDummyRDotJava(
-          getProjectFilesystem(),
-          context.getSourcePathResolver(),
-          androidResourceDeps,
-          rDotJavaSrcFolder,
-          forceFinalResourceIds,
-          unionPackage,
-          /* rName */ Optional.empty(),
-          useOldStyleableFormat);
-      steps.add(mergeStep);
-
-      if (!finalRName.isPresent()) {
-        javaSourceFilePaths = mergeStep.getRDotJavaFiles();
+    final Path rDotJavaClassesFolder = getRDotJavaBinFolder();
+
+    // The .java files to compile, unless the .class files are written directly.
+    Optional<ImmutableSortedSet<Path>> javaSourceFilePaths = Optional.empty();
+    if (generateRDotClassesDirectly) {
+      steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), rDotJavaClassesFolder));
+      if (androidResourceDeps.isEmpty()) {
+        // As with the empty R.java below, Robolectric needs an R class even with no resources.
+        Path emptyRDotClass = rDotJavaClassesFolder.resolve("com/facebook/R.class");
+        steps.add(new MkdirStep(getProjectFilesystem(), emptyRDotClass.getParent()));
+        steps.add(
+            new WriteFileStep(
+                getProjectFilesystem(),
+                ByteSource.wrap(
+                    new RDotClassGenerator(
+                        "com.facebook",
+                        "R",
+                        /* finalIds */ false,
+                        getRDotClassVersion().get())
+                        .generate(ImmutableList.of())
+                        .get("com/facebook/R")),
+                emptyRDotClass,
+                /* executable */ false));
       } else {
-        MergeAndroidResourcesStep mergeFinalRStep =
-            MergeAndroidResourcesStep.createStepForDummyRDotJava(
+        addMergeSteps(context, steps, rDotJavaClassesFolder);
+      }
+    } else {
+      final Path rDotJavaSrcFolder =
+          getRDotJavaSrcFolder(getBuildTarget(), getProjectFilesystem());
+      steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), rDotJavaSrcFolder));
+
+      // Generate the .java files and record where they will be written in javaSourceFilePaths.
+      if (androidResourceDeps.isEmpty()) {
+        // In this case, the user is likely running a Robolectric test that does not happen to
+        // depend on any resources. However, if Robolectric doesn't find an R.java file, it flips
+        // out, so we have to create one, anyway.
+
+        // TODO(bolinfest): Stop hardcoding com.facebook. This should match the package in the
+        // associated TestAndroidManifest.xml file.
+        Path emptyRDotJava = rDotJavaSrcFolder.resolve("com/facebook/R.java");
+        steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), emptyRDotJava.getParent()));
+        steps.add(
+            new WriteFileStep(
                 getProjectFilesystem(),
-                context.getSourcePathResolver(),
-                androidResourceDeps,
-                rDotJavaSrcFolder,
-                /* forceFinalResourceIds */ true,
-                unionPackage,
-                finalRName,
-                useOldStyleableFormat);
-        steps.add(mergeFinalRStep);
-
-        javaSourceFilePaths = ImmutableSortedSet.<Path>naturalOrder()
-            .addAll(mergeStep.getRDotJavaFiles())
-            .addAll(mergeFinalRStep.getRDotJavaFiles())
-            .build();
+                "package com.facebook;\n public class R {}\n",
+                emptyRDotJava,
+                /* executable */ false));
+        javaSourceFilePaths = Optional.of(ImmutableSortedSet.of(emptyRDotJava));
+      } else {
+        javaSourceFilePaths = Optional.of(addMergeSteps(context, steps, rDotJavaSrcFolder));
       }
-    }
 
-    // Clear out the directory where the .class files will be generated.
-    final Path rDotJavaClassesFolder = getRDotJavaBinFolder();
-    steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), rDotJavaClassesFolder));
+      // Clear out the directory where the .class files will be generated.
+      steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), rDotJavaClassesFolder));
+    }
 
     Path pathToAbiOutputDir = getPathToAbiOutputDir(getBuildTarget(), getProjectFilesystem());
     steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), pathToAbiOutputDir));
@@ -200,22 +207,24 @@ public class DummyRDotJava extends AbstractBuildRule
     Path pathToJarOutputDir = outputJar.getParent();
     steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), pathToJarOutputDir));
 
-    Path pathToSrcsList =
-        BuildTargets.getGenPath(getProjectFilesystem(), getBuildTarget(), "__%s__srcs");
-    steps.add(new MkdirStep(getProjectFilesystem(), pathToSrcsList.getParent()));
+    if (javaSourceFilePaths.isPresent()) {
+      Path pathToSrcsList =
+          BuildTargets.getGenPath(getProjectFilesystem(), getBuildTarget(), "__%s__srcs");
+      steps.add(new MkdirStep(getProjectFilesystem(), pathToSrcsList.getParent()));
 
-    // Compile the .java files.
-    final JavacStep javacStep =
-        RDotJava.createJavacStepForDummyRDotJavaFiles(
-            javaSourceFilePaths,
-            pathToSrcsList,
-            rDotJavaClassesFolder,
-            javacOptions,
-            getBuildTarget(),
-            context.getSourcePathResolver(),
-            ruleFinder,
-            getProjectFilesystem());
-    steps.add(javacStep);
+      // Compile the .java files.
+      final JavacStep javacStep =
+          RDotJava.createJavacStepForDummyRDotJavaFiles(
+              javaSourceFilePaths.get(),
+              pathToSrcsList,
+              rDotJavaClassesFolder,
+              javacOptions,
+              getBuildTarget(),
+              context.getSourcePathResolver(),
+              ruleFinder,
+              getProjectFilesystem());
+      steps.add(javacStep);
+    }
     buildableContext.recordArtifact(rDotJavaClassesFolder);
 
     steps.add(
@@ -237,6 +246,61 @@ public class DummyRDotJava extends AbstractBuildRule
     return steps.build();
   }
 
+  /**
+   * @return the version of the {@code R} class files to write directly, which is the one javac
+   *     would write for the target level, or absent if {@code R.java} files are to be compiled
+   */
+  private Optional<Integer> getRDotClassVersion() {
+    if (!generateRDotClassesDirectly) {
+      return Optional.empty();
+    }
+    return Optional.of(RDotClassGenerator.getClassVersion(javacOptions.getTargetLevel()));
+  }
+
+  /**
+   * Adds the steps merging the resources into {@code R} classes under {@code outputDir}.
+   *
+   * @return the {@code R.java} files that the steps write, if they write source files
+   */
+  private ImmutableSortedSet<Path> addMergeSteps(
+      BuildContext context,
+      ImmutableList.Builder<Step> steps,
+      Path outputDir) {
+    MergeAndroidResourcesStep mergeStep = MergeAndroidResourcesStep.createStepForDummyRDotJava(
+        getProjectFilesystem(),
+        context.getSourcePathResolver(),
+        androidResourceDeps,
+        outputDir,
+        forceFinalResourceIds,
+        unionPackage,
+        /* rName */ Optional.empty(),
+        useOldStyleableFormat,
+        getRDotClassVersion());
+    steps.add(mergeStep);
+
+    if (!finalRName.isPresent()) {
+      return mergeStep.getRDotJavaFiles();
+    }
+
+    MergeAndroidResourcesStep mergeFinalRStep =
+        MergeAndroidResourcesStep.createStepForDummyRDotJava(
+            getProjectFilesystem(),
+            context.getSourcePathResolver(),
+            androidResourceDeps,
+            outputDir,
+            /* forceFinalResourceIds */ true,
+            unionPackage,
+            finalRName,
+            useOldStyleableFormat,
+            getRDotClassVersion());
+    steps.add(mergeFinalRStep);
+
+    return ImmutableSortedSet.<Path>naturalOrder()
+        .addAll(mergeStep.getRDotJavaFiles())
+        .addAll(mergeFinalRStep.getRDotJavaFiles())
+        .build();
+  }
+
   public static Path getRDotJavaSrcFolder(BuildTarget buildTarget, ProjectFilesystem filesystem) {
     return BuildTargets.getScratchPath(filesystem, buildTarget, "__%s_rdotjava_src__");
   }
@@ -41,4 +41,12 @@ public class DxConfig {
   public Optional<Integer> getDxMaxThreadCount() {
     return delegate.getInteger("dx", "max_threads");
   }
+
+  /**
+   * @return Whether dexing that would otherwise fork a dx process per invocation should run in a
+   *     pool of long-lived dx workers instead.
+   */
+  public boolean shouldUseWorkers() {
+    return delegate.getBooleanValue("dx", "use_workers", false);
+  }
 }
@@ -19,10 +19,12 @@ package com.facebook.buck.android;
 import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.shell.ShellStep;
+import com.facebook.buck.shell.WorkerJobResult;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.util.Verbosity;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -66,6 +68,13 @@ public class DxStep extends ShellStep {
      * Run DX with the --no-locals flag.
      */
     NO_LOCALS,
+
+    /**
+     * Execute DX in one of the long-lived JVMs of {@link DxWorkerPool}, which keep the dexer warm
+     * from one invocation to the next. Like {@link #RUN_IN_PROCESS}, this only works with custom
+     * dx.
+     */
+    RUN_IN_WORKER,
     ;
   }
 
@@ -125,6 +134,13 @@ public class DxStep extends ShellStep {
         !options.contains(Option.RUN_IN_PROCESS) ||
             options.contains(Option.USE_CUSTOM_DX_IF_AVAILABLE),
         "In-process dexing is only supported with custom DX");
+    Preconditions.checkArgument(
+        !options.contains(Option.RUN_IN_WORKER) ||
+            options.contains(Option.USE_CUSTOM_DX_IF_AVAILABLE),
+        "Dexing in workers is only supported with custom DX");
+    Preconditions.checkArgument(
+        !options.contains(Option.RUN_IN_PROCESS) || !options.contains(Option.RUN_IN_WORKER),
+        "DX can run either in-process or in a worker, not both");
   }
 
   @Override
@@ -142,8 +158,11 @@ public class DxStep extends ShellStep {
     builder.add(dx);
 
     // Add the Xmx override, but not for in-process dexing, since the dexer won't understand it.
-    // Also, if DX works in-process, it probably wouldn't need an enlarged Xmx.
-    if (maxHeapSize.isPresent() && !options.contains(Option.RUN_IN_PROCESS)) {
+    // Also, if DX works in-process, it probably wouldn't need an enlarged Xmx. Workers get their
+    // heap size when they are started.
+    if (maxHeapSize.isPresent() &&
+        !options.contains(Option.RUN_IN_PROCESS) &&
+        !options.contains(Option.RUN_IN_WORKER)) {
       builder.add(String.format("-JXmx%s", maxHeapSize.get()));
     }
 
@@ -185,12 +204,17 @@ public class DxStep extends ShellStep {
       throws IOException, InterruptedException {
     if (options.contains(Option.RUN_IN_PROCESS)) {
       return StepExecutionResult.of(executeInProcess(context));
+    } else if (options.contains(Option.RUN_IN_WORKER)) {
+      return StepExecutionResult.of(executeInWorker(context));
     } else {
       return super.execute(context);
     }
   }
 
-  private int executeInProcess(ExecutionContext context) {
+  /**
+   * @return the arguments for the dexer itself, without the leading ".../dx --dex"
+   */
+  private ImmutableList<String> getDexerArguments(ExecutionContext context) {
     ImmutableList<String> argv = getShellCommandInternal(context);
 
     // The first arguments should be ".../dx --dex" ("...\dx.bat --dex on Windows).  Strip them off
@@ -198,7 +222,11 @@ public class DxStep extends ShellStep {
     Preconditions.checkState(
         argv.get(0).endsWith(File.separator + "dx") || argv.get(0).endsWith("\\dx.bat"));
     Preconditions.checkState(argv.get(1).equals("--dex"));
-    ImmutableList<String> args = argv.subList(2, argv.size());
+    return argv.subList(2, argv.size());
+  }
+
+  private int executeInProcess(ExecutionContext context) {
+    ImmutableList<String> args = getDexerArguments(context);
 
     ByteArrayOutputStream stderr = new ByteArrayOutputStream();
     PrintStream stderrStream = new PrintStream(stderr);
@@ -224,6 +252,29 @@ public class DxStep extends ShellStep {
     }
   }
 
+  private int executeInWorker(ExecutionContext context) throws InterruptedException {
+    ImmutableList<String> args = getDexerArguments(context);
+    DxWorkerPool pool = DxWorkerPool.get(context, filesystem, maxHeapSize);
+    WorkerJobResult result;
+    try {
+      result = pool.runDexer(args);
+    } catch (IOException e) {
+      e.printStackTrace(context.getStdErr());
+      return 1;
+    }
+
+    String stdErrOutput = result.getStderr().orElse("");
+    if (!stdErrOutput.isEmpty()) {
+      context.postEvent(ConsoleEvent.warning("%s", stdErrOutput));
+    }
+    if (result.getExitCode() == 0) {
+      resourcesReferencedInCode = Splitter.on('\n')
+          .omitEmptyStrings()
+          .splitToList(result.getStdout().orElse(""));
+    }
+    return result.getExitCode();
+  }
+
   @Override
   protected boolean shouldPrintStderr(Verbosity verbosity) {
     return verbosity.shouldPrintSelectCommandOutput();
@@ -242,7 +293,7 @@ public class DxStep extends ShellStep {
   /**
    * Return the names of resources referenced in the code that was dexed.
    * This is only valid after the step executes successfully and
-   * only when in-process dexing is used.
+   * only when in-process or worker dexing is used.
    * It only returns resources referenced in java classes being dexed,
    * not merged dex files.
    */
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.android.dx.command.dexer.DxContext;
+import com.android.dx.command.dexer.Main;
+import com.facebook.buck.shell.BuiltInWorkerMain;
+import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Entry point of the dexer JVMs started by {@link DxWorkerPool}. Each job's args file holds the
+ * dexer's arguments, one per line. Everything the dexer prints goes to the job's stderr file, and
+ * on success the names of the resources referenced by the dexed code are written to its stdout
+ * file, one per line.
+ */
+public class DxWorkerMain {
+
+  private DxWorkerMain() {
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    BuiltInWorkerMain.run(DxWorkerMain::runJob);
+  }
+
+  private static int runJob(
+      Path argsPath,
+      Path stdoutPath,
+      Path stderrPath) throws IOException {
+    try (OutputStream stderrFile = Files.newOutputStream(stderrPath);
+         PrintStream stderr = new PrintStream(stderrFile, true, StandardCharsets.UTF_8.name())) {
+      try {
+        List<String> dexerArgs = Files.readAllLines(argsPath, StandardCharsets.UTF_8);
+        // A dexer is cheap to create; it is the loaded and compiled code that is worth keeping.
+        DxContext dxContext = new DxContext(stderr, stderr);
+        Main.Arguments arguments = new Main.Arguments();
+        arguments.parseCommandLine(dexerArgs.toArray(new String[dexerArgs.size()]), dxContext);
+        Main dexer = new Main(dxContext);
+        int exitCode = dexer.run(arguments);
+        if (exitCode == 0) {
+          Collection<String> resources = dexer.getReferencedResourceNames();
+          Files.write(
+              stdoutPath,
+              Joiner.on('\n').join(resources).getBytes(StandardCharsets.UTF_8));
+        }
+        return exitCode;
+      } catch (Exception e) {
+        stderr.print(Throwables.getStackTraceAsString(e));
+        return 1;
+      }
+    }
+  }
+}
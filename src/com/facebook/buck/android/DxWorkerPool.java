@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.shell.BuiltInWorkerProcessPool;
+import com.facebook.buck.shell.WorkerJobResult;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.util.ProcessExecutor;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A pool of long-lived JVMs running the dexer bundled with Buck, used by {@link DxStep} with
+ * {@link DxStep.Option#RUN_IN_WORKER}.
+ * <p>
+ * The pool is sized so that the workers' heaps fit in the memory
+ * {@link com.facebook.buck.util.concurrent.ResourceAmounts} says is available, and so that the
+ * workers never outnumber the build threads.
+ */
+public class DxWorkerPool extends BuiltInWorkerProcessPool {
+
+  /** The heap size the {@code dx} script gives the dexer, used when none is configured. */
+  @VisibleForTesting
+  static final String DEFAULT_HEAP_SIZE = "1024m";
+
+  private DxWorkerPool(
+      int maxWorkers,
+      HashCode poolHash,
+      ProcessExecutor processExecutor,
+      ImmutableList<String> command,
+      ProjectFilesystem filesystem) {
+    super(maxWorkers, poolHash, processExecutor, command, filesystem, "dx-workers");
+  }
+
+  /**
+   * Returns the pool for this build, creating it if there is none or if the existing one was
+   * created with different settings.
+   *
+   * @param maxHeapSize the heap size of each worker, in the form accepted by {@code -Xmx}
+   */
+  public static DxWorkerPool get(
+      ExecutionContext context,
+      ProjectFilesystem filesystem,
+      Optional<String> maxHeapSize) {
+    String heapSize = maxHeapSize.orElse(DEFAULT_HEAP_SIZE);
+    // The workers run the dexer bundled with Buck, from Buck's own classpath, which is the same
+    // dexer that DxStep.Option#RUN_IN_PROCESS uses.
+    ImmutableList<String> command =
+        getJavaWorkerCommand(Optional.of(heapSize), DxWorkerMain.class.getName());
+    int maxWorkers = getMaxWorkers(context.getConcurrencyLimit(), parseHeapSize(heapSize));
+    return get(
+        context,
+        DxWorkerPool.class,
+        command,
+        maxWorkers,
+        poolHash -> new DxWorkerPool(
+            maxWorkers,
+            poolHash,
+            context.getProcessExecutor(),
+            command,
+            filesystem));
+  }
+
+  /**
+   * Runs the dexer in the next available worker.
+   *
+   * @param args the arguments to the dexer, without the leading {@code dx --dex}
+   * @return the dexer's exit code and error output. On success, stdout lists the resources
+   *     referenced by the dexed code, one per line.
+   */
+  public WorkerJobResult runDexer(List<String> args) throws IOException, InterruptedException {
+    return runJob(Joiner.on('\n').join(args));
+  }
+}
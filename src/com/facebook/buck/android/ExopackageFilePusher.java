@@ -0,0 +1,282 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import static com.facebook.buck.util.concurrent.MostExecutors.newMultiThreadExecutor;
+import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
+
+import com.android.ddmlib.AdbCommandRejectedException;
+import com.android.ddmlib.CollectingOutputReceiver;
+import com.android.ddmlib.IDevice;
+import com.facebook.buck.android.agent.util.AgentUtil;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.ConsoleEvent;
+import com.facebook.buck.event.PerfEventId;
+import com.facebook.buck.event.SimplePerfEvent;
+import com.facebook.buck.log.CommandThreadFactory;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.InterruptionFailedException;
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Closer;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+/**
+ * Sends files to a device with the agent's "receive-file" command.  Each transfer needs its own
+ * adb forward, so this forwards a range of ports and sends up to one file per port at a time,
+ * which hides the latency of the shell commands that every file costs.
+ */
+class ExopackageFilePusher {
+
+  private static final Logger LOG = Logger.get(ExopackageFilePusher.class);
+
+  private final IDevice device;
+  private final BuckEventBus eventBus;
+  private final String agentCommand;
+  private final int firstPort;
+  private final int maxStreams;
+
+  /**
+   * @param agentCommand  Command line to invoke the agent on the device, followed by a space.
+   * @param firstPort  The first of {@code maxStreams} consecutive ports to forward to the device.
+   */
+  ExopackageFilePusher(
+      IDevice device,
+      BuckEventBus eventBus,
+      String agentCommand,
+      int firstPort,
+      int maxStreams) {
+    Preconditions.checkArgument(maxStreams > 0);
+    this.device = device;
+    this.eventBus = eventBus;
+    this.agentCommand = agentCommand;
+    this.firstPort = firstPort;
+    this.maxStreams = maxStreams;
+  }
+
+  /**
+   * Sends all the files, and returns once they are all on the device.  The number of files and
+   * bytes sent are added to the finished event of "multi_install_{@code filesType}", from which
+   * the throughput can be worked out.
+   *
+   * @param filesByDestination  Map from the absolute path on the device to the local file.
+   */
+  void pushFiles(String filesType, ImmutableMap<String, Path> filesByDestination)
+      throws Exception {
+    if (filesByDestination.isEmpty()) {
+      return;
+    }
+
+    int streams = Math.min(maxStreams, filesByDestination.size());
+    try (SimplePerfEvent.Scope scope = SimplePerfEvent.scope(
+        eventBus,
+        PerfEventId.of("multi_install_" + filesType),
+        "streams", streams)) {
+      BlockingQueue<Integer> ports = new ArrayBlockingQueue<>(streams);
+      List<Integer> forwardedPorts = new ArrayList<>();
+      ListeningExecutorService executorService =
+          listeningDecorator(
+              newMultiThreadExecutor(
+                  new CommandThreadFactory(getClass().getSimpleName()),
+                  streams));
+      try {
+        for (int port = firstPort; port < firstPort + streams; port++) {
+          device.createForward(port, port);
+          forwardedPorts.add(port);
+          ports.add(port);
+        }
+
+        List<ListenableFuture<Long>> futures = new ArrayList<>();
+        for (final Map.Entry<String, Path> entry : filesByDestination.entrySet()) {
+          futures.add(executorService.submit(() -> {
+            int port = ports.take();
+            try (SimplePerfEvent.Scope ignored =
+                     SimplePerfEvent.scope(eventBus, "install_" + filesType)) {
+              return pushFile(port, entry.getKey(), entry.getValue());
+            } finally {
+              ports.add(port);
+            }
+          }));
+        }
+
+        long bytes = 0;
+        try {
+          for (long size : Futures.allAsList(futures).get()) {
+            bytes += size;
+          }
+        } catch (ExecutionException e) {
+          Futures.allAsList(futures).cancel(true);
+          Throwables.propagateIfPossible(e.getCause(), Exception.class);
+          throw new RuntimeException(e.getCause());
+        }
+        scope.appendFinishedInfo("files", filesByDestination.size());
+        scope.appendFinishedInfo("bytes", bytes);
+      } finally {
+        // Let transfers that are still running after a failure finish before removing their
+        // forwards.
+        MostExecutors.shutdownOrThrow(
+            executorService,
+            10,
+            TimeUnit.MINUTES,
+            new InterruptionFailedException("Failed to shutdown ExecutorService."));
+        for (int port : forwardedPorts) {
+          removeForward(port);
+        }
+      }
+    }
+  }
+
+  /**
+   * Sends one file over a single stream, under the perf event "install_{@code eventName}" alone.
+   */
+  void pushSingleFile(String eventName, String targetFileName, Path source) throws Exception {
+    try (SimplePerfEvent.Scope ignored =
+             SimplePerfEvent.scope(eventBus, "install_" + eventName)) {
+      device.createForward(firstPort, firstPort);
+      try {
+        pushFile(firstPort, targetFileName, source);
+      } finally {
+        removeForward(firstPort);
+      }
+    }
+  }
+
+  private void removeForward(int port) throws Exception {
+    try {
+      device.removeForward(port, port);
+    } catch (AdbCommandRejectedException e) {
+      LOG.warn(e, "Failed to remove adb forward on port %d for device %s", port, device);
+      eventBus.post(
+          ConsoleEvent.warning(
+              "Failed to remove adb forward %d. This is not necessarily a problem\n" +
+                  "because it will be recreated during the next exopackage installation.\n" +
+                  "See the log for the full exception.",
+              port));
+    }
+  }
+
+  /**
+   * @return the size of the file sent
+   */
+  private long pushFile(final int port, String targetFileName, final Path source)
+      throws Exception {
+    Closer closer = Closer.create();
+    CollectingOutputReceiver receiver = new CollectingOutputReceiver() {
+
+      private boolean startedPayload = false;
+      private boolean wrotePayload = false;
+      @Nullable
+      private OutputStream outToDevice;
+
+      @Override
+      public void addOutput(byte[] data, int offset, int length) {
+        super.addOutput(data, offset, length);
+        try {
+          if (!startedPayload && getOutput().length() >= AgentUtil.TEXT_SECRET_KEY_SIZE) {
+            LOG.verbose("Got key: %s", getOutput().split("[\\r\\n]", 1)[0]);
+            startedPayload = true;
+            Socket clientSocket = new Socket("localhost", port);
+            closer.register(clientSocket);
+            LOG.verbose("Connected");
+            outToDevice = clientSocket.getOutputStream();
+            closer.register(outToDevice);
+            // Need to wait for client to acknowledge that we've connected.
+          }
+          if (!wrotePayload && getOutput().contains("z1")) {
+            if (outToDevice == null) {
+              throw new NullPointerException(
+                  "outToDevice was null when protocol says it cannot be");
+            }
+            LOG.verbose("Got z1");
+            wrotePayload = true;
+            outToDevice.write(
+                getOutput().substring(
+                    0,
+                    AgentUtil.TEXT_SECRET_KEY_SIZE).getBytes());
+            LOG.verbose("Wrote key");
+            com.google.common.io.Files.asByteSource(source.toFile()).copyTo(outToDevice);
+            outToDevice.flush();
+            LOG.verbose("Wrote file");
+          }
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+
+    long size = Files.size(source);
+    String command =
+        "umask 022 && " +
+            agentCommand +
+            "receive-file " + port + " " + size + " " +
+            targetFileName +
+            AdbHelper.ECHO_COMMAND_SUFFIX;
+    LOG.debug("Executing %s", command);
+
+    // If we fail to execute the command, stash the exception.  My experience during development
+    // has been that the exception from checkReceiverOutput is more actionable.
+    Exception shellException = null;
+    try {
+      device.executeShellCommand(command, receiver);
+    } catch (Exception e) {
+      shellException = e;
+    }
+
+    // Close the client socket, if we opened it.
+    closer.close();
+
+    try {
+      AdbHelper.checkReceiverOutput(command, receiver);
+    } catch (Exception e) {
+      if (shellException != null) {
+        e.addSuppressed(shellException);
+      }
+      throw e;
+    }
+
+    if (shellException != null) {
+      throw shellException;
+    }
+
+    // The standard Java libraries on Android always create new files un-readable by other users.
+    // We use the shell user or root to create these files, so we need to explicitly set the mode
+    // to allow the app to read them.  Ideally, the agent would do this automatically, but
+    // there's no easy way to do this in Java.  We can drop this if we drop support for the
+    // Java agent.
+    AdbHelper.executeCommandWithErrorChecking(device, "chmod 644 " + targetFileName);
+    return size;
+  }
+}
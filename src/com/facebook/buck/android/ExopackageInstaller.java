@@ -16,8 +16,6 @@
 
 package com.facebook.buck.android;
 
-import com.android.ddmlib.AdbCommandRejectedException;
-import com.android.ddmlib.CollectingOutputReceiver;
 import com.android.ddmlib.IDevice;
 import com.android.ddmlib.InstallException;
 import com.facebook.buck.android.agent.util.AgentUtil;
@@ -45,13 +43,9 @@ import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import com.google.common.io.Closer;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.net.Socket;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
@@ -113,9 +107,14 @@ public class ExopackageInstaller {
   private final ExopackageInfo exopackageInfo;
 
   /**
-   * The next port number to use for communicating with the agent on a device.
-   * This resets for every instance of ExopackageInstaller,
-   * but is incremented for every device we are installing on when using "-x".
+   * Number of files sent to a device at once, each through its own port.
+   */
+  private static final int AGENT_PORTS_PER_DEVICE = 4;
+
+  /**
+   * The first of the next {@link #AGENT_PORTS_PER_DEVICE} port numbers to use for communicating
+   * with the agent on a device.  This resets for every instance of ExopackageInstaller,
+   * but is advanced for every device we are installing on when using "-x".
    */
   private final AtomicInteger nextAgentPort = new AtomicInteger(2828);
 
@@ -167,7 +166,7 @@ public class ExopackageInstaller {
             try {
               return new SingleDeviceInstaller(
                   device,
-                  nextAgentPort.getAndIncrement()).doInstall();
+                  nextAgentPort.getAndAdd(AGENT_PORTS_PER_DEVICE)).doInstall();
             } catch (Exception e) {
               throw new RuntimeException("Failed to install exopackage on " + device, e);
             }
@@ -201,7 +200,7 @@ public class ExopackageInstaller {
     private final IDevice device;
 
     /**
-     * Port to use for sending files to the agent.
+     * First of the ports to use for sending files to the agent.
      */
     private final int agentPort;
 
@@ -282,7 +281,7 @@ public class ExopackageInstaller {
           projectFilesystem.resolve(exopackageInfo.getDexInfo().get().getMetadata()).toFile(),
           Charsets.UTF_8)
           .replaceAll(
-              "secondary-(\\d+)\\.dex\\.jar (\\p{XDigit}{40}) ",
+              "secondary-(\\p{Alnum}+)\\.dex\\.jar (\\p{XDigit}{40}) ",
               "secondary-$2.dex.jar $2 ");
 
       installFiles(
@@ -555,140 +554,37 @@ public class ExopackageInstaller {
         String metadataFileContents,
         String filenameFormat,
         Path destinationDirRelativeToDataRoot) throws Exception {
-      try (SimplePerfEvent.Scope ignored1 =
-               SimplePerfEvent.scope(eventBus, "multi_install_" + filesType)) {
-        device.createForward(agentPort, agentPort);
-        try {
-          for (Map.Entry<String, Path> entry : filesToInstallByHash.entrySet()) {
-            Path destination = destinationDirRelativeToDataRoot.resolve(
-                String.format(filenameFormat, entry.getKey()));
-            Path source = entry.getValue();
-
-            try (SimplePerfEvent.Scope ignored2 =
-                     SimplePerfEvent.scope(eventBus, "install_" + filesType)) {
-              installFile(device, agentPort, destination, source);
-            }
-          }
-          try (SimplePerfEvent.Scope ignored3 =
-                   SimplePerfEvent.scope(eventBus, "install_" + filesType + "_metadata")) {
-            try (NamedTemporaryFile temp = new NamedTemporaryFile("metadata", "tmp")) {
-              com.google.common.io.Files.write(
-                  metadataFileContents.getBytes(Charsets.UTF_8),
-                  temp.get().toFile());
-              installFile(
-                  device,
-                  agentPort,
-                  destinationDirRelativeToDataRoot.resolve("metadata.txt"),
-                  temp.get());
-            }
-          }
-        } finally {
-          try {
-            device.removeForward(agentPort, agentPort);
-          } catch (AdbCommandRejectedException e) {
-            LOG.warn(e, "Failed to remove adb forward on port %d for device %s", agentPort, device);
-            eventBus.post(
-                ConsoleEvent.warning(
-                    "Failed to remove adb forward %d. This is not necessarily a problem\n" +
-                        "because it will be recreated during the next exopackage installation.\n" +
-                        "See the log for the full exception.",
-                    agentPort));
-          }
-        }
-      }
-    }
-
-    private void installFile(
-        IDevice device,
-        final int port,
-        Path pathRelativeToDataRoot,
-        final Path relativeSource) throws Exception {
-      final Path source = projectFilesystem.resolve(relativeSource);
-      Closer closer = Closer.create();
-      CollectingOutputReceiver receiver = new CollectingOutputReceiver() {
-
-        private boolean startedPayload = false;
-        private boolean wrotePayload = false;
-        @Nullable
-        private OutputStream outToDevice;
-
-        @Override
-        public void addOutput(byte[] data, int offset, int length) {
-          super.addOutput(data, offset, length);
-          try {
-            if (!startedPayload && getOutput().length() >= AgentUtil.TEXT_SECRET_KEY_SIZE) {
-              LOG.verbose("Got key: %s", getOutput().split("[\\r\\n]", 1)[0]);
-              startedPayload = true;
-              Socket clientSocket = new Socket("localhost", port);
-              closer.register(clientSocket);
-              LOG.verbose("Connected");
-              outToDevice = clientSocket.getOutputStream();
-              closer.register(outToDevice);
-              // Need to wait for client to acknowledge that we've connected.
-            }
-            if (!wrotePayload && getOutput().contains("z1")) {
-              if (outToDevice == null) {
-                throw new NullPointerException(
-                    "outToDevice was null when protocol says it cannot be");
-              }
-              LOG.verbose("Got z1");
-              wrotePayload = true;
-              outToDevice.write(
-                  getOutput().substring(
-                      0,
-                      AgentUtil.TEXT_SECRET_KEY_SIZE).getBytes());
-              LOG.verbose("Wrote key");
-              com.google.common.io.Files.asByteSource(source.toFile()).copyTo(outToDevice);
-              outToDevice.flush();
-              LOG.verbose("Wrote file");
-            }
-          } catch (IOException e) {
-            throw new RuntimeException(e);
-          }
-        }
-      };
-
-      String targetFileName = projectFilesystem.resolve(
-          dataRoot.resolve(pathRelativeToDataRoot)).toString();
-      String command =
-          "umask 022 && " +
-              getAgentCommand() +
-              "receive-file " + port + " " + Files.size(source) + " " +
-              targetFileName +
-              " ; echo -n :$?";
-      LOG.debug("Executing %s", command);
-
-      // If we fail to execute the command, stash the exception.  My experience during development
-      // has been that the exception from checkReceiverOutput is more actionable.
-      Exception shellException = null;
-      try {
-        device.executeShellCommand(command, receiver);
-      } catch (Exception e) {
-        shellException = e;
-      }
-
-      // Close the client socket, if we opened it.
-      closer.close();
-
-      try {
-        AdbHelper.checkReceiverOutput(command, receiver);
-      } catch (Exception e) {
-        if (shellException != null) {
-          e.addSuppressed(shellException);
-        }
-        throw e;
-      }
-
-      if (shellException != null) {
-        throw shellException;
-      }
-
-      // The standard Java libraries on Android always create new files un-readable by other users.
-      // We use the shell user or root to create these files, so we need to explicitly set the mode
-      // to allow the app to read them.  Ideally, the agent would do this automatically, but
-      // there's no easy way to do this in Java.  We can drop this if we drop support for the
-      // Java agent.
-      AdbHelper.executeCommandWithErrorChecking(device, "chmod 644 " + targetFileName);
+      ExopackageFilePusher pusher = new ExopackageFilePusher(
+          device,
+          eventBus,
+          getAgentCommand(),
+          agentPort,
+          AGENT_PORTS_PER_DEVICE);
+
+      ImmutableMap.Builder<String, Path> filesByDestination = ImmutableMap.builder();
+      for (Map.Entry<String, Path> entry : filesToInstallByHash.entrySet()) {
+        Path destination = destinationDirRelativeToDataRoot.resolve(
+            String.format(filenameFormat, entry.getKey()));
+        filesByDestination.put(
+            getTargetFileName(destination),
+            projectFilesystem.resolve(entry.getValue()));
+      }
+      pusher.pushFiles(filesType, filesByDestination.build());
+
+      // The metadata goes last, so that it never lists a file that is not on the device yet.
+      try (NamedTemporaryFile temp = new NamedTemporaryFile("metadata", "tmp")) {
+        com.google.common.io.Files.write(
+            metadataFileContents.getBytes(Charsets.UTF_8),
+            temp.get().toFile());
+        pusher.pushSingleFile(
+            filesType + "_metadata",
+            getTargetFileName(destinationDirRelativeToDataRoot.resolve("metadata.txt")),
+            temp.get());
+      }
+    }
+
+    private String getTargetFileName(Path pathRelativeToDataRoot) {
+      return projectFilesystem.resolve(dataRoot.resolve(pathRelativeToDataRoot)).toString();
     }
 
     private String getProperty(String property) throws Exception {
@@ -31,18 +31,28 @@ import com.facebook.buck.step.StepExecutionResult;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Sets;
 import com.google.common.collect.SortedSetMultimap;
 import com.google.common.collect.TreeMultimap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -60,6 +70,20 @@ import java.util.stream.Collectors;
 public class MergeAndroidResourcesStep implements Step {
   private static final Logger LOG = Logger.get(MergeAndroidResourcesStep.class);
 
+  /**
+   * The entries of each symbols file read, keyed by the hash of the file's contents. Since every
+   * library's R.txt repeats the resources of the libraries it depends on, apps with hundreds of
+   * resource libraries parse the same lines hundreds of times without this.
+   */
+  private static final Cache<HashCode, ImmutableList<RDotTxtEntry>> PARSED_SYMBOLS_FILES =
+      CacheBuilder.newBuilder().softValues().build();
+
+  /**
+   * The names of the resources in {@link #PARSED_SYMBOLS_FILES}, so that the entries for one
+   * resource in many files share a single copy of its name.
+   */
+  private static final Interner<String> RESOURCE_NAMES = Interners.newWeakInterner();
+
   private final ProjectFilesystem filesystem;
   private final SourcePathResolver pathResolver;
   private final ImmutableList<HasAndroidResourceDeps> androidResourceDeps;
@@ -70,12 +94,15 @@ public class MergeAndroidResourcesStep implements Step {
   private final Optional<String> unionPackage;
   private final String rName;
   private final boolean useOldStyleableFormat;
+  private final Optional<Integer> rDotClassVersion;
 
   /**
    * Merges text symbols files from {@code aapt} for each of the input {@code android_resource}
    * into a set of resources per R.java package and writes an {@code R.java} file per package under
    * the output directory. Also, if {@code uberRDotTxt} is present, the IDs in the output
-   * {@code R.java} file will be taken from the {@code R.txt} file.
+   * {@code R.java} file will be taken from the {@code R.txt} file. If
+   * {@code rDotClassVersion} is present, the {@code .class} files of that version that compiling
+   * the {@code R.java} files would produce are written instead, so that javac need not be run.
    */
   @VisibleForTesting
   MergeAndroidResourcesStep(
@@ -88,7 +115,8 @@ public class MergeAndroidResourcesStep implements Step {
       EnumSet<RType> bannedDuplicateResourceTypes,
       Optional<String> unionPackage,
       Optional<String> rName,
-      boolean useOldStyleableFormat) {
+      boolean useOldStyleableFormat,
+      Optional<Integer> rDotClassVersion) {
     this.filesystem = filesystem;
     this.pathResolver = pathResolver;
     this.androidResourceDeps = ImmutableList.copyOf(androidResourceDeps);
@@ -99,6 +127,7 @@ public class MergeAndroidResourcesStep implements Step {
     this.unionPackage = unionPackage;
     this.rName = rName.orElse("R");
     this.useOldStyleableFormat = useOldStyleableFormat;
+    this.rDotClassVersion = rDotClassVersion;
   }
 
   public static MergeAndroidResourcesStep createStepForDummyRDotJava(
@@ -109,7 +138,8 @@ public class MergeAndroidResourcesStep implements Step {
       boolean forceFinalResourceIds,
       Optional<String> unionPackage,
       Optional<String> rName,
-      boolean useOldStyleableFormat) {
+      boolean useOldStyleableFormat,
+      Optional<Integer> rDotClassVersion) {
     return new MergeAndroidResourcesStep(
         filesystem,
         pathResolver,
@@ -120,7 +150,8 @@ public class MergeAndroidResourcesStep implements Step {
         /* bannedDuplicateResourceTypes */ EnumSet.noneOf(RType.class),
         unionPackage,
         rName,
-        useOldStyleableFormat);
+        useOldStyleableFormat,
+        rDotClassVersion);
   }
 
   public static MergeAndroidResourcesStep createStepForUberRDotJava(
@@ -141,7 +172,8 @@ public class MergeAndroidResourcesStep implements Step {
         bannedDuplicateResourceTypes,
         unionPackage,
         /* rName */ Optional.empty(),
-        false);
+        /* useOldStyleableFormat */ false,
+        /* rDotClassVersion */ Optional.empty());
   }
 
   public ImmutableSortedSet<Path> getRDotJavaFiles() {
@@ -229,16 +261,43 @@ public class MergeAndroidResourcesStep implements Step {
       }
     }
 
-    writePerPackageRDotJava(rDotJavaPackageToResources, filesystem);
     Set<String> emptyPackages = Sets.difference(
         ImmutableSet.copyOf(symbolsFileToRDotJavaPackage.values()),
         rDotJavaPackageToResources.keySet());
 
+    if (rDotClassVersion.isPresent()) {
+      for (String rDotJavaPackage : rDotJavaPackageToResources.keySet()) {
+        writeRDotClasses(rDotJavaPackage, rDotJavaPackageToResources.get(rDotJavaPackage));
+      }
+      for (String rDotJavaPackage : emptyPackages) {
+        writeRDotClasses(rDotJavaPackage, ImmutableList.of());
+      }
+      return;
+    }
+
+    writePerPackageRDotJava(rDotJavaPackageToResources, filesystem);
     if (!emptyPackages.isEmpty()) {
       writeEmptyRDotJavaForPackages(emptyPackages, filesystem);
     }
   }
 
+  private void writeRDotClasses(
+      String rDotJavaPackage,
+      Iterable<RDotTxtEntry> resources) throws IOException {
+    ImmutableMap<String, byte[]> classes =
+        new RDotClassGenerator(
+            rDotJavaPackage,
+            rName,
+            forceFinalResourceIds,
+            rDotClassVersion.get())
+            .generate(resources);
+    for (Map.Entry<String, byte[]> generatedClass : classes.entrySet()) {
+      Path outputFile = outputDir.resolve(generatedClass.getKey() + ".class");
+      filesystem.mkdirs(outputFile.getParent());
+      filesystem.writeBytesToPath(generatedClass.getValue(), outputFile);
+    }
+  }
+
   private void writeEmptyRDotJavaForPackages(
       Set<String> rDotJavaPackages,
       ProjectFilesystem filesystem) throws IOException {
@@ -274,18 +333,20 @@ public class MergeAndroidResourcesStep implements Step {
             }
 
             // Now start the block for the new type.
-            writer.format("  public static class %s {\n", type);
+            writer.append("  public static class ").append(type.toString()).append(" {\n");
             lastType = type;
           }
 
-          // Write out the resource.
-          // Write as an int.
-          writer.format(
-              "    public static%s%s %s=%s;\n",
-              forceFinalResourceIds ? " final " : " ",
-              res.idType,
-              res.name,
-              res.idValue);
+          // Write out the resource, appending rather than formatting, since there may be hundreds
+          // of thousands of them.
+          writer
+              .append(forceFinalResourceIds ? "    public static final " : "    public static ")
+              .append(res.idType.toString())
+              .append(' ')
+              .append(res.name)
+              .append('=')
+              .append(res.idValue)
+              .append(";\n");
 
           if (type == RType.DRAWABLE &&
               res.customType == RDotTxtEntry.CustomDrawableType.CUSTOM) {
@@ -351,22 +412,17 @@ public class MergeAndroidResourcesStep implements Step {
 
     for (Map.Entry<Path, String> entry : symbolsFileToRDotJavaPackage.entrySet()) {
       Path symbolsFile = entry.getKey();
-      // Read the symbols file and parse each line as a Resource.
-      List<String> linesInSymbolsFile;
+      ImmutableList<RDotTxtEntry> resourcesInSymbolsFile;
       try {
-        linesInSymbolsFile =
-            filesystem.readLines(symbolsFile)
-                .stream()
-                .filter(input -> !Strings.isNullOrEmpty(input))
-                .collect(Collectors.toList());
+        resourcesInSymbolsFile = readSymbolsFile(filesystem, symbolsFile);
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
 
       String packageName = entry.getValue();
 
-      for (int index = 0; index < linesInSymbolsFile.size(); index++) {
-        RDotTxtEntry resource = getResourceAtIndex(linesInSymbolsFile, index);
+      for (int index = 0; index < resourcesInSymbolsFile.size(); index++) {
+        RDotTxtEntry resource = resourcesInSymbolsFile.get(index);
 
         if (uberRDotTxtIds.isPresent()) {
           Preconditions.checkNotNull(finalIds);
@@ -388,7 +444,7 @@ public class MergeAndroidResourcesStep implements Step {
 
         } else if (resource.idType == IdType.INT_ARRAY && resource.type == RType.STYLEABLE) {
           Map<RDotTxtEntry, String> styleableResourcesMap = getStyleableResources(
-              resourceToIdValuesMap, linesInSymbolsFile, resource, index + 1
+              resourceToIdValuesMap, resourcesInSymbolsFile, resource, index + 1
           );
 
           for (RDotTxtEntry styleableResource : styleableResourcesMap.keySet()) {
@@ -447,7 +503,7 @@ public class MergeAndroidResourcesStep implements Step {
 
   private static Map<RDotTxtEntry, String> getStyleableResources(
       Map<RDotTxtEntry, String> resourceToIdValuesMap,
-      List<String> linesInSymbolsFile,
+      List<RDotTxtEntry> resourcesInSymbolsFile,
       RDotTxtEntry resource,
       int index) {
 
@@ -455,11 +511,9 @@ public class MergeAndroidResourcesStep implements Step {
     List<String> givenResourceIds = null;
 
     for (int styleableIndex = 0;
-         styleableIndex + index < linesInSymbolsFile.size(); styleableIndex++) {
+         styleableIndex + index < resourcesInSymbolsFile.size(); styleableIndex++) {
 
-      RDotTxtEntry styleableResource = getResourceAtIndex(
-          linesInSymbolsFile, styleableIndex + index
-      );
+      RDotTxtEntry styleableResource = resourcesInSymbolsFile.get(styleableIndex + index);
 
       String styleablePrefix = resource.name + "_";
 
@@ -515,13 +569,43 @@ public class MergeAndroidResourcesStep implements Step {
     return styleableResourceMap;
   }
 
-  private static RDotTxtEntry getResourceAtIndex(List<String> linesInSymbolsFile, int index) {
-    String line = linesInSymbolsFile.get(index);
-
-    Optional<RDotTxtEntry> parsedEntry = RDotTxtEntry.parse(line);
-    Preconditions.checkState(parsedEntry.isPresent(), "Should be able to match '%s'.", line);
-
-    return parsedEntry.get();
+  /**
+   * Reads the entries of a symbols file, in order. The entries of a file with the same contents as
+   * one read before, in this build or an earlier one, are shared rather than parsed again.
+   */
+  private static ImmutableList<RDotTxtEntry> readSymbolsFile(
+      ProjectFilesystem filesystem,
+      Path symbolsFile) throws IOException {
+    byte[] contents;
+    try (InputStream in = filesystem.newFileInputStream(symbolsFile)) {
+      contents = ByteStreams.toByteArray(in);
+    }
+    HashCode contentsHash = Hashing.murmur3_128().hashBytes(contents);
+    ImmutableList<RDotTxtEntry> resources = PARSED_SYMBOLS_FILES.getIfPresent(contentsHash);
+    if (resources == null) {
+      ImmutableList.Builder<RDotTxtEntry> builder = ImmutableList.builder();
+      // CharSource.readLines() splits on a regex, which costs more than parsing the lines does.
+      BufferedReader reader =
+          new BufferedReader(new StringReader(new String(contents, StandardCharsets.UTF_8)));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+        Optional<RDotTxtEntry> parsedEntry = RDotTxtEntry.parse(line);
+        Preconditions.checkState(parsedEntry.isPresent(), "Should be able to match '%s'.", line);
+        RDotTxtEntry resource = parsedEntry.get();
+        builder.add(new RDotTxtEntry(
+            resource.idType,
+            resource.type,
+            RESOURCE_NAMES.intern(resource.name),
+            resource.idValue,
+            resource.customType));
+      }
+      resources = builder.build();
+      PARSED_SYMBOLS_FILES.put(contentsHash, resources);
+    }
+    return resources;
   }
 
   @Override
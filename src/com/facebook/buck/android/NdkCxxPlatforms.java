@@ -632,10 +632,7 @@ public class NdkCxxPlatforms {
         .setObjectFileExtension("o")
         .setSharedLibraryInterfaceFactory(
             config.shouldUseSharedLibraryInterfaces() ?
-                Optional.of(
-                    ElfSharedLibraryInterfaceFactory.of(
-                        new ConstantToolProvider(
-                            getGccTool(toolchainPaths, "objcopy", version, executableFinder)))) :
+                Optional.of(ElfSharedLibraryInterfaceFactory.of()) :
                 Optional.empty());
 
     // Add the NDK root path to the white-list so that headers from the NDK won't trigger the
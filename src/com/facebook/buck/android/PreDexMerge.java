@@ -235,6 +235,7 @@ public class PreDexMerge extends AbstractBuildRule
         // We kind of overload the "getLinearAllocHardLimit" parameter
         // to set the dex weight limit during pre-dex merging.
         dexSplitMode.getLinearAllocHardLimit(),
+        dexSplitMode.isSecondaryDexGroupingStable(),
         dexSplitMode.getDexStore(),
         paths.jarfilesSubdir,
         paths.additionalJarfilesSubdir);
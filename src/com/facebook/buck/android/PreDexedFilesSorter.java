@@ -56,11 +56,27 @@ import java.util.Set;
  */
 public class PreDexedFilesSorter {
 
+  /**
+   * With stable grouping, how full a secondary dex must be before a library may start a new one.
+   */
+  private static final double STABLE_GROUP_MIN_FILL_RATIO = 0.75;
+
+  /**
+   * With stable grouping, how much further a secondary dex is filled past the minimum, on average.
+   * The chance that a dex reaches the weight limit before a library starts a new one is about
+   * {@code exp(-(1 - min) / extra)}, around 2%.
+   */
+  private static final double STABLE_GROUP_MEAN_EXTRA_FILL_RATIO = 0.0625;
+
+  /** With stable grouping, the number of hex digits in the key each secondary dex is named by. */
+  private static final int STABLE_GROUP_KEY_LENGTH = 16;
+
   private final Optional<DexWithClasses> rDotJavaDex;
   private final ImmutableMultimap<APKModule, DexWithClasses> dexFilesToMerge;
   private final ClassNameFilter primaryDexFilter;
   private final APKModuleGraph apkModuleGraph;
   private final long dexWeightLimit;
+  private final boolean isGroupingStable;
   private final DexStore dexStore;
   private final Path secondaryDexJarFilesDir;
   private final Path additionalDexJarFilesDir;
@@ -78,6 +94,7 @@ public class PreDexedFilesSorter {
       APKModuleGraph apkModuleGraph,
       Path scratchDirectory,
       long dexWeightLimit,
+      boolean isGroupingStable,
       DexStore dexStore,
       Path secondaryDexJarFilesDir,
       Path additionalDexJarFilesDir) {
@@ -88,6 +105,7 @@ public class PreDexedFilesSorter {
     this.scratchDirectory = scratchDirectory;
     Preconditions.checkState(dexWeightLimit > 0);
     this.dexWeightLimit = dexWeightLimit;
+    this.isGroupingStable = isGroupingStable;
     this.dexStore = dexStore;
     this.secondaryDexJarFilesDir = secondaryDexJarFilesDir;
     this.additionalDexJarFilesDir = additionalDexJarFilesDir;
@@ -155,6 +173,7 @@ public class PreDexedFilesSorter {
 
   public class DexStoreContents {
     private List<List<DexWithClasses>> dexesContents;
+    private List<Optional<String>> dexesKeys;
     private int primaryDexSize;
     private List<DexWithClasses> primaryDexContents;
     private int currentDexSize;
@@ -173,6 +192,7 @@ public class PreDexedFilesSorter {
       this.steps = steps;
       this.apkModule = apkModule;
       dexesContents = Lists.newArrayList();
+      dexesKeys = Lists.newArrayList();
       currentDexSize = 0;
       currentDexContents = Lists.newArrayList();
       primaryDexSize = 0;
@@ -187,7 +207,8 @@ public class PreDexedFilesSorter {
 
     public void addDex(DexWithClasses dexWithClasses) {
       // If we're over the size threshold, start writing to a new dex
-      if (dexWithClasses.getWeightEstimate() + currentDexSize > dexWeightLimit) {
+      if (dexWithClasses.getWeightEstimate() + currentDexSize > dexWeightLimit ||
+          isStableGroupBoundary(dexWithClasses)) {
         currentDexSize = 0;
         currentDexContents = Lists.newArrayList();
       }
@@ -195,15 +216,28 @@ public class PreDexedFilesSorter {
       // If this is the first class in the dex, initialize it with a canary and add it to the set of
       // dexes.
       if (currentDexContents.size() == 0) {
-        DexWithClasses canary = createCanary(
-            filesystem,
-            apkModule.getCanaryClassName(),
-            dexesContents.size() + 1,
-            steps);
+        Optional<String> key = getStableGroupKey(dexWithClasses);
+        String storeName = apkModule.getCanaryClassName();
+        DexWithClasses canary;
+        if (key.isPresent()) {
+          canary = createCanary(
+              filesystem,
+              CanaryFactory.create(storeName, key.get()),
+              "canary_" + storeName + "_" + key.get(),
+              steps);
+        } else {
+          int index = dexesContents.size() + 1;
+          canary = createCanary(
+              filesystem,
+              CanaryFactory.create(storeName, index),
+              "canary_" + storeName + "_" + String.valueOf(index),
+              steps);
+        }
         currentDexSize += canary.getWeightEstimate();
         currentDexContents.add(canary);
 
         dexesContents.add(currentDexContents);
+        dexesKeys.add(key);
         dexInputsHashes.put(canary.getPathToDexFile(), canary.getClassesHash());
       }
 
@@ -213,6 +247,50 @@ public class PreDexedFilesSorter {
       currentDexSize += dexWithClasses.getWeightEstimate();
     }
 
+    /**
+     * Packing each dex as full as it will go means that when one library grows or shrinks, every
+     * library after it may move to a different dex, and every one of those dexes must be merged
+     * again. With stable grouping, a dex instead ends before a library chosen by the hash of its
+     * path, once the dex is {@link #STABLE_GROUP_MIN_FILL_RATIO} full. The end of each dex depends
+     * on the libraries around it, not on the sizes of all the libraries before it, so a change to
+     * one library usually affects only its own dex, and when it moves a boundary, the dexes after
+     * it soon fall back onto their old boundaries.
+     * <p>
+     * The chance that a library ends the current dex is proportional to its weight, so that a dex
+     * goes on past the minimum fill by {@link #STABLE_GROUP_MEAN_EXTRA_FILL_RATIO} of the limit on
+     * average, however large the libraries are.
+     */
+    private boolean isStableGroupBoundary(DexWithClasses dexWithClasses) {
+      if (!isGroupingStable ||
+          currentDexContents.isEmpty() ||
+          currentDexSize < dexWeightLimit * STABLE_GROUP_MIN_FILL_RATIO) {
+        return false;
+      }
+      int pathHash = Hashing.murmur3_32()
+          .hashString(dexWithClasses.getPathToDexFile().toString(), Charsets.UTF_8)
+          .asInt();
+      // A number in [0, 1) that depends only on the library.
+      double position = (pathHash & 0xffffffffL) / (double) (1L << 32);
+      return position * dexWeightLimit * STABLE_GROUP_MEAN_EXTRA_FILL_RATIO <
+          dexWithClasses.getWeightEstimate();
+    }
+
+    /**
+     * With stable grouping, each secondary dex, and its canary class, is named after the library
+     * it starts with, rather than its index. When a dex before it is added or removed, it then
+     * keeps its name as well as its contents, and need not be merged again.
+     */
+    private Optional<String> getStableGroupKey(DexWithClasses firstDex) {
+      if (!isGroupingStable) {
+        return Optional.empty();
+      }
+      return Optional.of(
+          Hashing.sha1()
+              .hashString(firstDex.getPathToDexFile().toString(), Charsets.UTF_8)
+              .toString()
+              .substring(0, STABLE_GROUP_KEY_LENGTH));
+    }
+
     Result getResult() {
       if (primaryDexSize > dexWeightLimit) {
         throwErrorForPrimaryDexExceedsWeightLimit();
@@ -223,15 +301,24 @@ public class PreDexedFilesSorter {
       boolean isRootModule = apkModule.equals(apkModuleGraph.getRootAPKModule());
 
       for (int index = 0; index < dexesContents.size(); index++) {
+        Optional<String> key = dexesKeys.get(index);
         Path pathToSecondaryDex;
         if (isRootModule) {
+          Optional<String> keyedName = key.flatMap(dexStore::fileNameForKeyedSecondary);
           pathToSecondaryDex = secondaryDexJarFilesDir
-              .resolve(dexStore.fileNameForSecondary(index));
+              .resolve(keyedName.orElse(dexStore.fileNameForSecondary(index)));
         } else {
+          Optional<String> keyedName = key.flatMap(
+              k -> dexStore.fileNameForKeyedSecondary(apkModule.getName(), k));
           pathToSecondaryDex = additionalDexJarFilesDir
               .resolve(apkModule.getName())
-              .resolve(dexStore.fileNameForSecondary(apkModule.getName(), index));
+              .resolve(keyedName.orElse(
+                  dexStore.fileNameForSecondary(apkModule.getName(), index)));
         }
+        Preconditions.checkState(
+            !metadataTxtEntries.containsKey(pathToSecondaryDex),
+            "Two secondary dexes would be written to %s.",
+            pathToSecondaryDex);
         metadataTxtEntries.put(
             pathToSecondaryDex,
             dexesContents.get(index).get(0));
@@ -272,15 +359,14 @@ public class PreDexedFilesSorter {
     }
 
     /**
+     * @param canaryDirName the name, unique to the canary, of the directory to write it to
      * @see com.facebook.buck.dalvik.CanaryFactory#create(String, int)
      */
     private DexWithClasses createCanary(
         final ProjectFilesystem filesystem,
-        String storeName,
-        final int index,
+        final FileLike fileLike,
+        final String canaryDirName,
         ImmutableList.Builder<Step> steps) {
-      final FileLike fileLike = CanaryFactory.create(storeName, index);
-      final String canaryDirName = "canary_" + storeName + "_" + String.valueOf(index);
       final Path scratchDirectoryForCanaryClass = scratchDirectory.resolve(canaryDirName);
 
       // Strip the .class suffix to get the class name for the DexWithClasses object.
@@ -325,7 +411,7 @@ public class PreDexedFilesSorter {
 
         @Override
         public Sha1HashCode getClassesHash() {
-          // The only thing unique to canary classes is the index,
+          // The only thing unique to canary classes is the index or key,
           // which is captured by canaryDirName.
           Hasher hasher = Hashing.sha1().newHasher();
           hasher.putString(canaryDirName, Charsets.UTF_8);
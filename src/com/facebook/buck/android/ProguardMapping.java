@@ -16,8 +16,13 @@
 
 package com.facebook.buck.android;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableMap;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -35,19 +40,43 @@ public class ProguardMapping {
     ImmutableMap.Builder<String, String> classMappingBuilder = ImmutableMap.builder();
 
     for (String line : lines) {
-      if (line.charAt(0) == ' ') {
-        // This is a member mapping, which we don't handle yet.
-        continue;
-      }
+      addClassMapping(line, classMappingBuilder);
+    }
+
+    return classMappingBuilder.build();
+  }
 
-      Matcher matcher = CLASS_LINE_PATTERN.matcher(line);
-      if (!matcher.matches()) {
-        throw new IllegalArgumentException("Invalid line in proguard mapping: " + line);
-      }
+  /**
+   * Reads the class mapping a line at a time.  Most of the lines of a mapping file are member
+   * mappings, so this avoids holding all of them in memory as {@link #readClassMapping(Iterable)}
+   * would.  Does not close {@code mapping}.
+   */
+  public static ImmutableMap<String, String> readClassMapping(InputStream mapping)
+      throws IOException {
+    ImmutableMap.Builder<String, String> classMappingBuilder = ImmutableMap.builder();
 
-      classMappingBuilder.put(matcher.group(1), matcher.group(2));
+    BufferedReader reader = new BufferedReader(new InputStreamReader(mapping, Charsets.UTF_8));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      addClassMapping(line, classMappingBuilder);
     }
 
     return classMappingBuilder.build();
   }
+
+  private static void addClassMapping(
+      String line,
+      ImmutableMap.Builder<String, String> classMappingBuilder) {
+    if (line.charAt(0) == ' ') {
+      // This is a member mapping, which we don't handle yet.
+      return;
+    }
+
+    Matcher matcher = CLASS_LINE_PATTERN.matcher(line);
+    if (!matcher.matches()) {
+      throw new IllegalArgumentException("Invalid line in proguard mapping: " + line);
+    }
+
+    classMappingBuilder.put(matcher.group(1), matcher.group(2));
+  }
 }
@@ -24,8 +24,8 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -35,11 +35,34 @@ import java.util.Optional;
  */
 class ProguardTranslatorFactory {
 
-  private final Optional<ImmutableMap<String, String>> rawMap;
+  /**
+   * Maps from the original internal names to the obfuscated ones, and back.  Classes that kept
+   * their names are left out, as the functions return names they do not find unchanged.
+   * Absent if there is no mapping.
+   */
+  private final Optional<ImmutableMap<String, String>> obfuscationMap;
+  private final Optional<ImmutableMap<String, String>> deobfuscationMap;
 
   private ProguardTranslatorFactory(
       Optional<ImmutableMap<String, String>> rawMap) {
-    this.rawMap = rawMap;
+    if (rawMap.isPresent()) {
+      ImmutableMap.Builder<String, String> obfuscation = ImmutableMap.builder();
+      ImmutableMap.Builder<String, String> deobfuscation = ImmutableMap.builder();
+      for (Map.Entry<String, String> entry : rawMap.get().entrySet()) {
+        if (entry.getKey().equals(entry.getValue())) {
+          continue;
+        }
+        String original = entry.getKey().replace('.', '/');
+        String obfuscated = entry.getValue().replace('.', '/');
+        obfuscation.put(original, obfuscated);
+        deobfuscation.put(obfuscated, original);
+      }
+      this.obfuscationMap = Optional.of(obfuscation.build());
+      this.deobfuscationMap = Optional.of(deobfuscation.build());
+    } else {
+      this.obfuscationMap = Optional.empty();
+      this.deobfuscationMap = Optional.empty();
+    }
   }
 
   static ProguardTranslatorFactory create(
@@ -78,34 +101,26 @@ class ProguardTranslatorFactory {
       return Optional.empty();
     }
 
-    Path mappingFile = proguardMappingFile.get();
-    List<String> lines = filesystem.readLines(mappingFile);
-    return Optional.of(ProguardMapping.readClassMapping(lines));
+    try (InputStream mapping = filesystem.newFileInputStream(proguardMappingFile.get())) {
+      return Optional.of(ProguardMapping.readClassMapping(mapping));
+    }
   }
 
   public Function<String, String> createDeobfuscationFunction() {
-    return createFunction(false);
+    return createFunction(deobfuscationMap);
   }
 
   public Function<String, String> createObfuscationFunction() {
-    return createFunction(true);
+    return createFunction(obfuscationMap);
   }
 
-  private Function<String, String> createFunction(boolean isForObfuscation) {
-    if (!rawMap.isPresent()) {
+  private static Function<String, String> createFunction(
+      Optional<ImmutableMap<String, String>> optionalMap) {
+    if (!optionalMap.isPresent()) {
       return Functions.identity();
     }
 
-    ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
-    for (Map.Entry<String, String> entry : rawMap.get().entrySet()) {
-      String original = entry.getKey().replace('.', '/');
-      String obfuscated = entry.getValue().replace('.', '/');
-      builder.put(
-          isForObfuscation ? original : obfuscated,
-          isForObfuscation ? obfuscated : original);
-    }
-    final Map<String, String> map = builder.build();
-
+    final Map<String, String> map = optionalMap.get();
     return input -> {
       String mapped = map.get(input);
       if (mapped != null) {
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.facebook.buck.android.aapt.RDotTxtEntry;
+import com.facebook.buck.android.aapt.RDotTxtEntry.CustomDrawableType;
+import com.facebook.buck.android.aapt.RDotTxtEntry.IdType;
+import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
+import com.facebook.buck.util.HumanReadableException;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multimaps;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Writes the bytecode of an {@code R} class and its nested {@code R.type} classes, the same
+ * classes that compiling the {@code R.java} written by {@link MergeAndroidResourcesStep} produces,
+ * without running javac.
+ * <p>
+ * The output depends only on the arguments, so the same resources always give the same bytes.
+ */
+class RDotClassGenerator {
+
+  private static final String OBJECT = "java/lang/Object";
+  private static final String INT_ARRAY = "[I";
+  private static final Splitter INT_ARRAY_SPLITTER =
+      Splitter.on(RDotTxtEntry.INT_ARRAY_SEPARATOR).trimResults().omitEmptyStrings();
+
+  private final String className;
+  private final String sourceFileName;
+  private final boolean finalIds;
+  private final int classVersion;
+
+  /**
+   * @param rDotJavaPackage the package of the {@code R} class
+   * @param rName the simple name of the {@code R} class
+   * @param finalIds whether the {@code int} fields are final constants which dependents will
+   *     inline, as with {@code forceFinalResourceIds}
+   * @param classVersion the class file version to write, as from {@link #getClassVersion}
+   */
+  RDotClassGenerator(String rDotJavaPackage, String rName, boolean finalIds, int classVersion) {
+    this.className = rDotJavaPackage.replace('.', '/') + "/" + rName;
+    this.sourceFileName = rName + ".java";
+    this.finalIds = finalIds;
+    this.classVersion = classVersion;
+  }
+
+  /**
+   * @param targetLevel a javac {@code -target} level, such as "1.7" or "8"
+   * @return the class file version javac writes for that target level
+   */
+  static int getClassVersion(String targetLevel) {
+    String release = targetLevel.replaceFirst("^1\\.", "").replaceFirst("\\.0$", "");
+    try {
+      int javaVersion = Integer.parseInt(release);
+      if (javaVersion >= 2) {
+        // From 1.2 on, each release bumps the major version by one.
+        return Opcodes.V1_2 + javaVersion - 2;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below.
+    }
+    throw new HumanReadableException("Unsupported target level for R classes: %s", targetLevel);
+  }
+
+  /**
+   * @param resources the resources of the package, ordered as in the {@code R.java} file
+   * @return the bytecode of each class, keyed by its internal name
+   */
+  ImmutableMap<String, byte[]> generate(Iterable<RDotTxtEntry> resources) {
+    ImmutableListMultimap<RType, RDotTxtEntry> resourcesByType =
+        Multimaps.index(resources, resource -> resource.type);
+    ImmutableMap.Builder<String, byte[]> classes = ImmutableMap.builder();
+
+    ClassWriter rClass = startClass(className);
+    ImmutableList.Builder<String> customDrawables = ImmutableList.builder();
+    ImmutableList.Builder<String> grayscaleImages = ImmutableList.builder();
+    for (RType type : resourcesByType.keySet()) {
+      String typeClassName = getTypeClassName(type);
+      rClass.visitInnerClass(
+          typeClassName,
+          className,
+          type.toString(),
+          Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC);
+      classes.put(typeClassName, generateTypeClass(type, resourcesByType.get(type)));
+
+      for (RDotTxtEntry resource : resourcesByType.get(type)) {
+        if (type == RType.DRAWABLE && resource.customType == CustomDrawableType.CUSTOM) {
+          customDrawables.add(resource.idValue);
+        } else if (type == RType.DRAWABLE &&
+            resource.customType == CustomDrawableType.GRAYSCALE_IMAGE) {
+          grayscaleImages.add(resource.idValue);
+        }
+      }
+    }
+
+    ImmutableMap.Builder<String, List<Integer>> arrays = ImmutableMap.builder();
+    ImmutableList<Integer> customDrawableIds = parseIds(customDrawables.build());
+    if (!customDrawableIds.isEmpty()) {
+      arrays.put("custom_drawables", customDrawableIds);
+    }
+    ImmutableList<Integer> grayscaleImageIds = parseIds(grayscaleImages.build());
+    if (!grayscaleImageIds.isEmpty()) {
+      arrays.put("grayscale_images", grayscaleImageIds);
+    }
+    MethodVisitor staticInitializer = null;
+    for (Map.Entry<String, List<Integer>> array : arrays.build().entrySet()) {
+      rClass.visitField(
+          Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL,
+          array.getKey(),
+          INT_ARRAY,
+          null,
+          null).visitEnd();
+      if (staticInitializer == null) {
+        staticInitializer = startStaticInitializer(rClass);
+      }
+      initializeArray(staticInitializer, className, array.getKey(), array.getValue());
+    }
+    finishClass(rClass, staticInitializer);
+    classes.put(className, toByteArray(className, rClass));
+
+    return classes.build();
+  }
+
+  private byte[] generateTypeClass(RType type, List<RDotTxtEntry> resources) {
+    String typeClassName = getTypeClassName(type);
+    ClassWriter typeClass = startClass(typeClassName);
+    typeClass.visitInnerClass(
+        typeClassName,
+        className,
+        type.toString(),
+        Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC);
+
+    MethodVisitor staticInitializer = null;
+    for (RDotTxtEntry resource : resources) {
+      if (resource.idType == IdType.INT) {
+        int id = parseId(resource.idValue);
+        if (finalIds) {
+          // A constant, which javac gives a ConstantValue attribute rather than initializing.
+          typeClass.visitField(
+              Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL,
+              resource.name,
+              "I",
+              null,
+              id).visitEnd();
+        } else {
+          typeClass.visitField(
+              Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC,
+              resource.name,
+              "I",
+              null,
+              null).visitEnd();
+          if (staticInitializer == null) {
+            staticInitializer = startStaticInitializer(typeClass);
+          }
+          pushInt(staticInitializer, id);
+          staticInitializer.visitFieldInsn(Opcodes.PUTSTATIC, typeClassName, resource.name, "I");
+        }
+      } else {
+        typeClass.visitField(
+            Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | (finalIds ? Opcodes.ACC_FINAL : 0),
+            resource.name,
+            INT_ARRAY,
+            null,
+            null).visitEnd();
+        if (staticInitializer == null) {
+          staticInitializer = startStaticInitializer(typeClass);
+        }
+        initializeArray(
+            staticInitializer,
+            typeClassName,
+            resource.name,
+            parseIds(INT_ARRAY_SPLITTER.split(stripBraces(resource.idValue))));
+      }
+    }
+    finishClass(typeClass, staticInitializer);
+    return toByteArray(typeClassName, typeClass);
+  }
+
+  private String getTypeClassName(RType type) {
+    return className + "$" + type;
+  }
+
+  private ClassWriter startClass(String name) {
+    // There are no branches, so there are no stack map frames to compute.
+    ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    classWriter.visit(
+        classVersion,
+        Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER,
+        name,
+        null,
+        OBJECT,
+        null);
+    classWriter.visitSource(sourceFileName, null);
+
+    // The default constructor javac adds, which it puts before the static initializer.
+    MethodVisitor constructor =
+        classWriter.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+    constructor.visitCode();
+    constructor.visitVarInsn(Opcodes.ALOAD, 0);
+    constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, OBJECT, "<init>", "()V", false);
+    constructor.visitInsn(Opcodes.RETURN);
+    constructor.visitMaxs(0, 0);
+    constructor.visitEnd();
+    return classWriter;
+  }
+
+  private static void finishClass(
+      ClassWriter classWriter,
+      @Nullable MethodVisitor staticInitializer) {
+    if (staticInitializer != null) {
+      staticInitializer.visitInsn(Opcodes.RETURN);
+      staticInitializer.visitMaxs(0, 0);
+      staticInitializer.visitEnd();
+    }
+    classWriter.visitEnd();
+  }
+
+  private static MethodVisitor startStaticInitializer(ClassWriter classWriter) {
+    MethodVisitor staticInitializer =
+        classWriter.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+    staticInitializer.visitCode();
+    return staticInitializer;
+  }
+
+  private static void initializeArray(
+      MethodVisitor staticInitializer,
+      String owner,
+      String name,
+      List<Integer> values) {
+    pushInt(staticInitializer, values.size());
+    staticInitializer.visitIntInsn(Opcodes.NEWARRAY, Opcodes.T_INT);
+    for (int i = 0; i < values.size(); i++) {
+      staticInitializer.visitInsn(Opcodes.DUP);
+      pushInt(staticInitializer, i);
+      pushInt(staticInitializer, values.get(i));
+      staticInitializer.visitInsn(Opcodes.IASTORE);
+    }
+    staticInitializer.visitFieldInsn(Opcodes.PUTSTATIC, owner, name, INT_ARRAY);
+  }
+
+  /**
+   * Pushes {@code value} with the shortest instruction, as javac does.
+   */
+  private static void pushInt(MethodVisitor method, int value) {
+    if (value >= -1 && value <= 5) {
+      method.visitInsn(Opcodes.ICONST_0 + value);
+    } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+      method.visitIntInsn(Opcodes.BIPUSH, value);
+    } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+      method.visitIntInsn(Opcodes.SIPUSH, value);
+    } else {
+      method.visitLdcInsn(value);
+    }
+  }
+
+  private static byte[] toByteArray(String name, ClassWriter classWriter) {
+    try {
+      return classWriter.toByteArray();
+    } catch (RuntimeException e) {
+      // ASM fails, as javac would, when a static initializer is over the 64KB limit on the size
+      // of a method.
+      throw new HumanReadableException(
+          e,
+          "Could not generate %s: %s",
+          name.replace('/', '.'),
+          e.getMessage());
+    }
+  }
+
+  private static String stripBraces(String idValue) {
+    String trimmed = idValue.trim();
+    if (trimmed.startsWith("{") && trimmed.endsWith("}")) {
+      return trimmed.substring(1, trimmed.length() - 1);
+    }
+    return trimmed;
+  }
+
+  private static ImmutableList<Integer> parseIds(Iterable<String> idValues) {
+    ImmutableList.Builder<Integer> ids = ImmutableList.builder();
+    for (String idValue : idValues) {
+      ids.add(parseId(idValue));
+    }
+    return ids.build();
+  }
+
+  /**
+   * Parses an id as javac would parse it as an {@code int} literal: hexadecimal ids such as
+   * {@code 0x7f010000} may use all 32 bits.
+   */
+  @VisibleForTesting
+  static int parseId(String idValue) {
+    String trimmed = idValue.trim();
+    try {
+      if (trimmed.startsWith("0x") || trimmed.startsWith("0X")) {
+        return Integer.parseUnsignedInt(trimmed.substring(2), 16);
+      }
+      return Integer.parseInt(trimmed);
+    } catch (NumberFormatException e) {
+      throw new HumanReadableException(e, "Invalid resource id: %s", idValue);
+    }
+  }
+}
@@ -26,6 +26,7 @@ import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.step.Step;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
 
 import java.nio.file.Path;
@@ -60,7 +61,7 @@ public class RDotJava {
         Optional.empty(),
         javaSourceFilePaths,
         pathToSrcsList,
-        /* declared classpath */ ImmutableSortedSet.of(),
+        /* declared classpath */ ImmutableList.of(),
         javacOptions.getJavac(),
         JavacOptions.builder(javacOptions)
             .setAnnotationProcessingParams(AnnotationProcessingParams.EMPTY)
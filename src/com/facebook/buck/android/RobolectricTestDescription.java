@@ -104,7 +104,8 @@ public class RobolectricTestDescription implements Description<RobolectricTestDe
         /* forceFinalResourceIds */ true,
         /* resourceUnionPackage */ Optional.empty(),
         /* rName */ Optional.empty(),
-        args.useOldStyleableFormat);
+        args.useOldStyleableFormat,
+        args.generateRDotClassesDirectly);
 
     if (CalculateAbi.isAbiTarget(params.getBuildTarget())) {
       if (params.getBuildTarget().getFlavors().contains(
@@ -209,5 +210,6 @@ public class RobolectricTestDescription implements Description<RobolectricTestDe
     public Optional<String> robolectricRuntimeDependency;
     public Optional<SourcePath> robolectricManifest;
     public boolean useOldStyleableFormat = false;
+    public boolean generateRDotClassesDirectly = false;
   }
 }
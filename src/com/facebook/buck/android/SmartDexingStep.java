@@ -23,7 +23,7 @@ import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.StepFailedException;
-import com.facebook.buck.step.StepRunner;
+import com.facebook.buck.step.fs.ParallelXzCompressor;
 import com.facebook.buck.step.fs.RmStep;
 import com.facebook.buck.step.fs.WriteFileStep;
 import com.facebook.buck.step.fs.XzStep;
@@ -46,11 +46,16 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 
+import org.tukaani.xz.XZ;
+
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
@@ -163,33 +168,7 @@ public class SmartDexingStep implements Step {
         ImmutableMultimap<Path, Path> secondaryDexJarsMultimap =
             secondaryDexJarsMultimapBuilder.build();
         if (!secondaryDexJarsMultimap.isEmpty()) {
-          for (Map.Entry<Path, Collection<Path>> entry :
-              secondaryDexJarsMultimap.asMap().entrySet()) {
-            Path store = entry.getKey();
-            Collection<Path> secondaryDexJars = entry.getValue();
-            // Construct the output path for our solid blob and its compressed form.
-            Path secondaryBlobOutput = store.getParent().resolve("uncompressed.dex.blob");
-            Path secondaryCompressedBlobOutput = store;
-            // Concatenate the jars into a blob and compress it.
-            StepRunner stepRunner = new DefaultStepRunner();
-            Step concatStep = new ConcatStep(
-                filesystem,
-                ImmutableList.copyOf(secondaryDexJars),
-                secondaryBlobOutput);
-            Step xzStep;
-
-            if (xzCompressionLevel.isPresent()) {
-              xzStep = new XzStep(
-                  filesystem,
-                  secondaryBlobOutput,
-                  secondaryCompressedBlobOutput,
-                  xzCompressionLevel.get().intValue());
-            } else {
-              xzStep = new XzStep(filesystem, secondaryBlobOutput, secondaryCompressedBlobOutput);
-            }
-            stepRunner.runStepForBuildTarget(context, concatStep, Optional.empty());
-            stepRunner.runStepForBuildTarget(context, xzStep, Optional.empty());
-          }
+          compressSolidStores(context, secondaryDexJarsMultimap);
         }
       }
     } catch (StepFailedException | IOException e) {
@@ -200,6 +179,59 @@ public class SmartDexingStep implements Step {
     return StepExecutionResult.SUCCESS;
   }
 
+  /**
+   * Concatenates the secondary dex jars of each solid store into a blob and compresses it. The
+   * stores are concatenated and compressed concurrently, and each is compressed in blocks on
+   * several threads, all on {@link #executorService}.
+   */
+  private void compressSolidStores(
+      ExecutionContext context,
+      ImmutableMultimap<Path, Path> storeToSecondaryDexJars)
+      throws StepFailedException, IOException, InterruptedException {
+    int compressionLevel = xzCompressionLevel.orElse(XzStep.DEFAULT_COMPRESSION_LEVEL);
+    DefaultStepRunner stepRunner = new DefaultStepRunner();
+    List<ListenableFuture<Void>> stores = new ArrayList<>();
+    for (Map.Entry<Path, Collection<Path>> entry : storeToSecondaryDexJars.asMap().entrySet()) {
+      Path store = entry.getKey();
+      // Construct the output path for our solid blob, which is compressed into the store.
+      Path secondaryBlobOutput = store.resolveSibling(store.getFileName() + ".blob");
+      Step concatStep = new ConcatStep(
+          filesystem,
+          ImmutableList.copyOf(entry.getValue()),
+          secondaryBlobOutput);
+      ListenableFuture<Void> concatenated = executorService.submit(() -> {
+        stepRunner.runStepForBuildTarget(context, concatStep, Optional.empty());
+        return null;
+      });
+      ListenableFuture<Void> compressed = Futures.transformAsync(
+          concatenated,
+          input -> new ParallelXzCompressor(
+              filesystem,
+              secondaryBlobOutput,
+              store,
+              compressionLevel,
+              XZ.CHECK_CRC32).compress(executorService),
+          executorService);
+      stores.add(Futures.transformAsync(
+          compressed,
+          input -> {
+            filesystem.deleteFileAtPath(secondaryBlobOutput);
+            return Futures.immediateFuture(null);
+          },
+          executorService));
+    }
+
+    try {
+      Futures.allAsList(stores).get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      Throwables.throwIfInstanceOf(cause, StepFailedException.class);
+      Throwables.throwIfInstanceOf(cause, IOException.class);
+      Throwables.throwIfUnchecked(cause);
+      throw new RuntimeException(cause);
+    }
+  }
+
   private void runDxCommands(ExecutionContext context, Multimap<Path, Path> outputToInputs)
       throws StepFailedException, InterruptedException {
     DefaultStepRunner stepRunner = new DefaultStepRunner();
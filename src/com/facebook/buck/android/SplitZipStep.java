@@ -85,6 +85,7 @@ public class SplitZipStep implements Step {
   private final boolean skipProguard;
   private final DexSplitMode dexSplitMode;
   private final Path pathToReportDir;
+  private final Path pathToDalvikStatsDir;
 
   private final Optional<Path> primaryDexScenarioFile;
   private final Optional<Path> primaryDexClassesFile;
@@ -109,6 +110,8 @@ public class SplitZipStep implements Step {
    * @param proguardFullConfigFile Path to the full generated ProGuard configuration, generated
    *     by the -printconfiguration flag.  This is part of the *output* of ProGuard.
    * @param proguardMappingFile Path to the mapping file generated by ProGuard's obfuscation.
+   * @param pathToDalvikStatsDir Directory in which the stats of the input jars are kept from one
+   *     split to the next.  Unlike the outputs, it should not be cleaned before each split.
    */
   public SplitZipStep(
       ProjectFilesystem filesystem,
@@ -129,7 +132,8 @@ public class SplitZipStep implements Step {
       Optional<Path> secondaryDexTailClassesFile,
       ImmutableMultimap<APKModule, Path> apkModuleToJarPathMap,
       APKModuleGraph apkModuleGraph,
-      Path pathToReportDir) {
+      Path pathToReportDir,
+      Path pathToDalvikStatsDir) {
     this.filesystem = filesystem;
     this.inputPathsToSplit = ImmutableSet.copyOf(inputPathsToSplit);
     this.secondaryJarMetaPath = secondaryJarMetaPath;
@@ -149,6 +153,7 @@ public class SplitZipStep implements Step {
     this.apkModuleToJarPathMap = apkModuleToJarPathMap;
     this.apkModuleGraph = apkModuleGraph;
     this.pathToReportDir = pathToReportDir;
+    this.pathToDalvikStatsDir = pathToDalvikStatsDir;
 
     if (!skipProguard) {
       Preconditions.checkArgument(
@@ -185,7 +190,8 @@ public class SplitZipStep implements Step {
       ZipSplitterFactory zipSplitterFactory;
       zipSplitterFactory = new DalvikAwareZipSplitterFactory(
           dexSplitMode.getLinearAllocHardLimit(),
-          wantedInPrimaryZip);
+          wantedInPrimaryZip,
+          filesystem.resolve(pathToDalvikStatsDir));
 
       outputFiles = zipSplitterFactory.newInstance(
           filesystem,
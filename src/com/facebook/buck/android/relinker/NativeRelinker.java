@@ -38,6 +38,7 @@ import com.google.common.base.Functions;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
@@ -136,6 +137,8 @@ public class NativeRelinker {
 
     // Create the relinker rules for the libraries that couldn't be resolved back to a base rule.
     ImmutableList.Builder<RelinkerRule> relinkRules = ImmutableList.builder();
+    ImmutableListMultimap.Builder<TargetCpuType, RelinkerRule> copiedLibrariesRulesBuilder =
+        ImmutableListMultimap.builder();
     for (Pair<TargetCpuType, SourcePath> p : copiedLibraries.build()) {
       // TODO(cjhopman): We shouldn't really need a full RelinkerRule at this point. We know that we
       // are just going to copy it, we could just leave these libraries in place and only calculate
@@ -144,9 +147,13 @@ public class NativeRelinker {
       SourcePath source = p.getSecond();
       RelinkerRule relink = makeRelinkerRule(cpuType, source, ImmutableList.of());
       relinkRules.add(relink);
+      copiedLibrariesRulesBuilder.put(cpuType, relink);
       pathMap.put(source, relink.getLibFileSourcePath());
     }
-    ImmutableList<RelinkerRule> copiedLibrariesRules = relinkRules.build();
+    // Libraries are only loaded alongside the libraries of the same cpu type, so only those can
+    // need their symbols. Keeping the cpu types apart also lets their relinks run in parallel.
+    ImmutableListMultimap<TargetCpuType, RelinkerRule> copiedLibrariesRules =
+        copiedLibrariesRulesBuilder.build();
 
     // Process the remaining linkable rules in the reverse sorted order. This makes it easy to refer
     // to the RelinkerRules of dependents.
@@ -166,7 +173,7 @@ public class NativeRelinker {
       // in relinkerDeps.
       ImmutableList<RelinkerRule> relinkerDeps =
           ImmutableList.<RelinkerRule>builder()
-              .addAll(copiedLibrariesRules)
+              .addAll(copiedLibrariesRules.get(cpuType))
               .addAll(
                   Lists.transform(
                       ImmutableList.copyOf(allDependentsMap.get(baseRule)),
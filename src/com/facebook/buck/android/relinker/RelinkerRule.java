@@ -20,6 +20,8 @@ import com.facebook.buck.cxx.CxxBuckConfig;
 import com.facebook.buck.cxx.CxxLink;
 import com.facebook.buck.cxx.Linker;
 import com.facebook.buck.cxx.LinkerMapMode;
+import com.facebook.buck.event.PerfEventId;
+import com.facebook.buck.event.SimplePerfEvent;
 import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.model.BuildTargets;
 import com.facebook.buck.model.InternalFlavor;
@@ -37,17 +39,20 @@ import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.rules.Tool;
 import com.facebook.buck.rules.args.Arg;
 import com.facebook.buck.rules.args.StringArg;
+import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
 import com.facebook.buck.step.AbstractExecutionStep;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.util.ProcessExecutor;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 
 import java.io.IOException;
@@ -58,7 +63,13 @@ import java.util.Set;
 
 import javax.annotation.Nullable;
 
-class RelinkerRule extends AbstractBuildRuleWithResolver implements OverrideScheduleRule {
+/**
+ * Relinks a library so that it only exports the symbols needed by the libraries that were relinked
+ * before it.  Its rule key is input-based, so a library is only relinked again when the symbols
+ * it needs to keep, or the library itself, change.
+ */
+class RelinkerRule extends AbstractBuildRuleWithResolver
+    implements OverrideScheduleRule, SupportsInputBasedRuleKey {
 
   @AddToRuleKey
   private final ImmutableSortedSet<SourcePath> symbolsNeededPaths;
@@ -109,8 +120,9 @@ class RelinkerRule extends AbstractBuildRuleWithResolver implements OverrideSche
         Iterables.concat(Iterables.transform(args, arg -> arg.getDeps(ruleFinder))));
   }
 
-  private static String getVersionScript(Set<String> needed, Set<String> provided) {
-    Set<String> keep = new ImmutableSet.Builder<String>()
+  @VisibleForTesting
+  static String getVersionScript(Set<String> needed, Set<String> provided) {
+    Set<String> keep = new ImmutableSortedSet.Builder<String>(Ordering.natural())
         .addAll(Sets.intersection(needed, provided))
         .addAll(
             Sets.filter(
@@ -124,15 +136,16 @@ class RelinkerRule extends AbstractBuildRuleWithResolver implements OverrideSche
                   return false;
                 }))
         .build();
-    String res = "{\n";
+    // Libraries can export tens of thousands of symbols, so don't build this by concatenation.
+    StringBuilder res = new StringBuilder("{\n");
     if (!keep.isEmpty()) {
-      res += "global:\n";
+      res.append("global:\n");
     }
     for (String s : keep) {
-      res += "  " + s + ";\n";
+      res.append("  ").append(s).append(";\n");
     }
-    res += "local: *;\n};\n";
-    return res;
+    res.append("local: *;\n};\n");
+    return res.toString();
   }
 
   public SourcePath getLibFileSourcePath() {
@@ -181,25 +194,32 @@ class RelinkerRule extends AbstractBuildRuleWithResolver implements OverrideSche
           @Override
           public StepExecutionResult execute(ExecutionContext context)
               throws IOException, InterruptedException {
-            ImmutableSet<String> symbolsNeeded = readSymbolsNeeded();
-            if (linker == null) {
-              getProjectFilesystem().copyFile(getBaseLibPath(), getLibFilePath());
-              buildableContext.recordArtifact(getLibFilePath());
-            } else {
-              writeVersionScript(context.getProcessExecutor(), symbolsNeeded);
-              for (Step s : relinkerSteps.build()) {
-                StepExecutionResult executionResult = s.execute(context);
-                if (!executionResult.isSuccess()) {
-                  return StepExecutionResult.ERROR;
+            try (SimplePerfEvent.Scope scope = SimplePerfEvent.scope(
+                context.getBuckEventBus(),
+                PerfEventId.of("relink_library"),
+                "library", getBaseLibPath().getFileName().toString(),
+                "cpu_type", cpuType.toString())) {
+              ImmutableSet<String> symbolsNeeded = readSymbolsNeeded();
+              scope.appendFinishedInfo("symbols_needed", symbolsNeeded.size());
+              if (linker == null) {
+                getProjectFilesystem().copyFile(getBaseLibPath(), getLibFilePath());
+                buildableContext.recordArtifact(getLibFilePath());
+              } else {
+                writeVersionScript(context.getProcessExecutor(), symbolsNeeded);
+                for (Step s : relinkerSteps.build()) {
+                  StepExecutionResult executionResult = s.execute(context);
+                  if (!executionResult.isSuccess()) {
+                    return StepExecutionResult.ERROR;
+                  }
                 }
               }
+              writeSymbols(
+                  getSymbolsNeededOutPath(),
+                  Sets.union(
+                      symbolsNeeded,
+                      getSymbols(context.getProcessExecutor(), getLibFilePath()).undefined));
+              return StepExecutionResult.SUCCESS;
             }
-            writeSymbols(
-                getSymbolsNeededOutPath(),
-                Sets.union(
-                    symbolsNeeded,
-                    getSymbols(context.getProcessExecutor(), getLibFilePath()).undefined));
-            return StepExecutionResult.SUCCESS;
           }
         });
   }
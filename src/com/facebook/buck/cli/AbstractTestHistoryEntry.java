@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.util.immutables.BuckStyleImmutable;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import org.immutables.value.Value;
+
+/**
+ * What we remember about previous runs of a single test rule.
+ */
+@Value.Immutable
+@BuckStyleImmutable
+@JsonDeserialize(as = TestHistoryEntry.class)
+abstract class AbstractTestHistoryEntry {
+
+  /**
+   * @return moving average of the time, in milliseconds, spent running the rule's tests. The
+   *     time of a run split into shards is the sum of the time of its shards.
+   */
+  @Value.Parameter
+  public abstract long getAverageDurationMillis();
+
+  /**
+   * @return the number of times the rule's tests have actually been run (not read from cache).
+   */
+  @Value.Parameter
+  public abstract int getRuns();
+
+  /**
+   * @return the number of those runs which reported a failure.
+   */
+  @Value.Parameter
+  public abstract int getFailures();
+
+  /**
+   * @return whether the most recent run reported a failure.
+   */
+  @Value.Parameter
+  public abstract boolean isLastRunFailed();
+
+  public double failureRate() {
+    return getRuns() == 0 ? 0 : (double) getFailures() / getRuns();
+  }
+}
@@ -20,6 +20,7 @@ import com.facebook.buck.rules.TestRule;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.test.TestResults;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
+import com.google.common.collect.ImmutableList;
 
 import org.immutables.value.Value;
 
@@ -43,4 +44,21 @@ interface AbstractTestRun {
 
   @Value.Parameter
   TestRule.TestReportingCallback getTestReportingCallback();
+
+  /**
+   * Independent groups of steps, each running a subset of the tests, which may run concurrently
+   * once {@link #getSteps()} have completed.
+   */
+  @Value.Default
+  default List<List<Step>> getShardSteps() {
+    return ImmutableList.of();
+  }
+
+  /**
+   * Steps to run once all of the {@link #getShardSteps()} have completed.
+   */
+  @Value.Default
+  default List<Step> getFinalSteps() {
+    return ImmutableList.of();
+  }
 }
@@ -85,6 +85,8 @@ public class BuckConfig implements ConfigPathGetter {
   public static final String RESOURCES_SECTION_HEADER = "resources";
   public static final String RESOURCES_PER_RULE_SECTION_HEADER = "resources_per_rule";
 
+  private static final String CXX_PREPROCESS_COMPILE_RULE_TYPE = "cxx_preprocess_compile";
+
   private static final Float DEFAULT_THREAD_CORE_RATIO = Float.valueOf(1.0F);
 
   /**
@@ -997,9 +999,11 @@ public class BuckConfig implements ConfigPathGetter {
           RESOURCES_PER_RULE_SECTION_HEADER,
           ruleName);
       Preconditions.checkArgument(
-          configAmounts.size() == ResourceAmounts.RESOURCE_TYPE_COUNT,
+          configAmounts.size() == ResourceAmounts.RESOURCE_TYPE_COUNT ||
+              configAmounts.size() == ResourceAmounts.RESOURCE_TYPE_COUNT + 1,
           "Buck config entry [%s].%s contains %s values, but expected to contain %s values " +
-              "in the following order: cpu, memory, disk_io, network_io",
+              "in the following order: cpu, memory, disk_io, network_io, optionally followed " +
+              "by remote_cpu",
           RESOURCES_PER_RULE_SECTION_HEADER,
           ruleName,
           configAmounts.size(),
@@ -1009,8 +1013,22 @@ public class BuckConfig implements ConfigPathGetter {
           Integer.valueOf(configAmounts.get(1)),
           Integer.valueOf(configAmounts.get(2)),
           Integer.valueOf(configAmounts.get(3)));
+      if (configAmounts.size() > ResourceAmounts.RESOURCE_TYPE_COUNT) {
+        amounts = amounts.withRemoteCpu(Integer.valueOf(configAmounts.get(4)));
+      }
       result.put(ruleName, amounts);
     }
+    // Compilations sent to the workers of [cxx].compile_worker_command wait on other machines,
+    // so unless told otherwise they are also scheduled against the remote_cpu resource. They keep
+    // a local core for preprocessing, which always runs here, as do the built-in workers.
+    if (getValue("cxx", "compile_workers").isPresent() &&
+        getValue("cxx", "compile_worker_command").isPresent() &&
+        !entries.containsKey(CXX_PREPROCESS_COMPILE_RULE_TYPE)) {
+      ResourceAmounts defaultAmounts = getDefaultResourceAmounts();
+      result.put(
+          CXX_PREPROCESS_COMPILE_RULE_TYPE,
+          defaultAmounts.withCpu(Math.max(1, defaultAmounts.getCpu())).withRemoteCpu(1));
+    }
     return result.build();
   }
 
@@ -1051,7 +1069,11 @@ public class BuckConfig implements ConfigPathGetter {
             "max_disk_io_resource").orElse(estimated.getDiskIO()),
         getInteger(
             BuckConfig.RESOURCES_SECTION_HEADER,
-            "max_network_io_resource").orElse(estimated.getNetworkIO()));
+            "max_network_io_resource").orElse(estimated.getNetworkIO()))
+        .withRemoteCpu(
+            getInteger(
+                BuckConfig.RESOURCES_SECTION_HEADER,
+                "max_remote_cpu_resource").orElse(estimated.getRemoteCpu()));
   }
 
   public boolean getIncludeAutodepsSignature() {
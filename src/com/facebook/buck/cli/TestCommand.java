@@ -153,6 +153,13 @@ public class TestCommand extends BuildCommand {
           "WARNING: only works for Java tests!")
   private boolean isShufflingTests;
 
+  @Option(
+      name = "--failing-first",
+      usage =
+          "Start the tests which failed last time, or which fail most often, before the others, " +
+          "so that failures are reported as early as possible.")
+  private boolean isRunningFailingTestsFirst;
+
   @Option(
       name = "--exclude-transitive-tests",
       usage =
@@ -282,6 +289,10 @@ public class TestCommand extends BuildCommand {
         .setShouldExplainTestSelectorList(testSelectorOptions.shouldExplain())
         .setTestResultCacheMode(getResultsCacheMode(params.getBuckConfig()))
         .setShufflingTests(isShufflingTests)
+        .setUsingTestHistory(params.getBuckConfig().getBooleanValue("test", "use_history", true))
+        .setRunningFailingTestsFirst(isRunningFailingTestsFirst)
+        .setMaxJavaTestShards(
+            params.getBuckConfig().getInteger("test", "java_test_max_shards").orElse(1))
         .setPathToXmlTestOutput(Optional.ofNullable(pathToXmlTestOutput))
         .setPathToJavaAgent(Optional.ofNullable(pathToJavaAgent))
         .setCoverageReportFormat(coverageReportFormat)
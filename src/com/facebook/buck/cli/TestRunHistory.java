@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.util.ObjectMappers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSortedMap;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Durations and failures of previous test runs, keyed by test target, persisted in buck-out so
+ * that {@link TestRunning} can start the slowest (and, optionally, the flakiest) tests first.
+ */
+public class TestRunHistory {
+
+  private static final Logger LOG = Logger.get(TestRunHistory.class);
+
+  private static final ObjectMapper MAPPER = ObjectMappers.newDefaultInstance();
+
+  @VisibleForTesting
+  static final String HISTORY_FILE_NAME = "test_history.json";
+
+  /**
+   * Weight given to the most recent duration when updating the moving average, so that a test
+   * which got faster (or slower) is rescheduled after a couple of runs.
+   */
+  private static final double DURATION_WEIGHT = 0.5;
+
+  private final ConcurrentMap<String, TestHistoryEntry> entries;
+
+  @VisibleForTesting
+  TestRunHistory(Map<String, TestHistoryEntry> entries) {
+    this.entries = new ConcurrentHashMap<>(entries);
+  }
+
+  public static TestRunHistory empty() {
+    return new TestRunHistory(ImmutableSortedMap.of());
+  }
+
+  /**
+   * Reads the history written by a previous run. A missing or unreadable file yields an empty
+   * history: losing it only costs us the scheduling hints.
+   */
+  public static TestRunHistory load(ProjectFilesystem filesystem) {
+    Optional<String> contents = filesystem.readFileIfItExists(getHistoryPath(filesystem));
+    if (!contents.isPresent()) {
+      return empty();
+    }
+    try {
+      Map<String, TestHistoryEntry> entries = MAPPER.readValue(
+          contents.get(),
+          new TypeReference<Map<String, TestHistoryEntry>>() {});
+      return new TestRunHistory(entries);
+    } catch (IOException e) {
+      LOG.warn(e, "Ignoring unreadable test history.");
+      return empty();
+    }
+  }
+
+  public void save(ProjectFilesystem filesystem) throws IOException {
+    Path path = getHistoryPath(filesystem);
+    filesystem.createParentDirs(path);
+    filesystem.writeContentsToPath(
+        MAPPER.writeValueAsString(ImmutableSortedMap.copyOf(entries)),
+        path);
+  }
+
+  public Optional<TestHistoryEntry> get(BuildTarget target) {
+    return Optional.ofNullable(entries.get(target.toString()));
+  }
+
+  /**
+   * Records the outcome of actually running the tests of {@code target}. Results read from the
+   * test result cache should not be recorded, as their duration says nothing about the test.
+   */
+  public void record(BuildTarget target, long durationMillis, boolean success) {
+    entries.compute(
+        target.toString(),
+        (key, previous) -> {
+          if (previous == null) {
+            return TestHistoryEntry.of(durationMillis, 1, success ? 0 : 1, !success);
+          }
+          long average = Math.round(
+              DURATION_WEIGHT * durationMillis +
+                  (1 - DURATION_WEIGHT) * previous.getAverageDurationMillis());
+          return TestHistoryEntry.of(
+              average,
+              previous.getRuns() + 1,
+              previous.getFailures() + (success ? 0 : 1),
+              !success);
+        });
+  }
+
+  /**
+   * Orders targets so that those most worth starting early come first. Targets we know nothing
+   * about go first, as they may well be slow. When {@code failingFirst} is set, targets which
+   * failed last time, and then those which fail most often, are started before everything else so
+   * that failures surface as early as possible.
+   */
+  public Comparator<BuildTarget> getSchedulingOrder(boolean failingFirst) {
+    Comparator<BuildTarget> byDuration = Comparator.comparingLong(
+        target -> get(target)
+            .map(entry -> -entry.getAverageDurationMillis())
+            .orElse(Long.MIN_VALUE));
+    if (!failingFirst) {
+      return byDuration;
+    }
+    Comparator<BuildTarget> byFailures = Comparator
+        .<BuildTarget, Boolean>comparing(
+            target -> !get(target).map(TestHistoryEntry::isLastRunFailed).orElse(false))
+        .thenComparingDouble(
+            target -> -get(target).map(TestHistoryEntry::failureRate).orElse(0.0));
+    return byFailures.thenComparing(byDuration);
+  }
+
+  private static Path getHistoryPath(ProjectFilesystem filesystem) {
+    return filesystem.getBuckPaths().getLogDir().resolve(HISTORY_FILE_NAME);
+  }
+}
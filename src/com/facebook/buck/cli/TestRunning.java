@@ -71,6 +71,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.io.Files;
 import com.google.common.util.concurrent.FutureCallback;
@@ -89,6 +90,7 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.file.Path;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -98,7 +100,9 @@ import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.Nullable;
@@ -120,6 +124,12 @@ public class TestRunning {
 
   private static final Logger LOG = Logger.get(TestRunning.class);
 
+  /**
+   * {@code java_test}s which took less than this on previous runs are never split across JVMs, as
+   * the extra JVM startup would likely cost more than it saves.
+   */
+  private static final long MIN_SHARDED_JAVA_TEST_DURATION_MILLIS = 30_000;
+
   // Utility class; do not instantiate.
   private TestRunning() { }
 
@@ -171,6 +181,10 @@ public class TestRunning {
 
     final int totalNumberOfTests = Iterables.size(tests);
 
+    final TestRunHistory history = options.isUsingTestHistory() ?
+        TestRunHistory.load(params.getCell().getFilesystem()) :
+        TestRunHistory.empty();
+
     params.getBuckEventBus().post(
         TestRunEvent.started(
             options.isRunAllTests(),
@@ -293,18 +307,35 @@ public class TestRunning {
         };
 
       List<Step> steps;
+      List<List<Step>> shardSteps = ImmutableList.of();
+      List<Step> finalSteps = ImmutableList.of();
       if (isTestRunRequired) {
         params.getBuckEventBus().post(IndividualTestEvent.started(testTargets));
         ImmutableList.Builder<Step> stepsBuilder = ImmutableList.builder();
         Preconditions.checkState(buildEngine.isRuleBuilt(test.getBuildTarget()));
-        List<Step> testSteps = test.runTests(
-            executionContext,
-            options,
-            sourcePathResolver,
-            testReportingCallback);
-        if (!testSteps.isEmpty()) {
-          stepsBuilder.addAll(testSteps);
-          stepsBuilder.add(testRuleKeyFileHelper.createRuleKeyInDirStep(test));
+        int shardCount = getJavaTestShardCount(test, executionContext, options, history);
+        if (shardCount > 1) {
+          ImmutableList<ImmutableList<Step>> shards = ((JavaTest) test).runTestsInShards(
+              executionContext,
+              options,
+              sourcePathResolver,
+              shardCount);
+          if (!shards.isEmpty()) {
+            LOG.debug("Splitting test %s into %d shards", test, shards.size() - 1);
+            stepsBuilder.addAll(shards.get(0));
+            shardSteps = ImmutableList.copyOf(shards.subList(1, shards.size()));
+            finalSteps = ImmutableList.of(testRuleKeyFileHelper.createRuleKeyInDirStep(test));
+          }
+        } else {
+          List<Step> testSteps = test.runTests(
+              executionContext,
+              options,
+              sourcePathResolver,
+              testReportingCallback);
+          if (!testSteps.isEmpty()) {
+            stepsBuilder.addAll(testSteps);
+            stepsBuilder.add(testRuleKeyFileHelper.createRuleKeyInDirStep(test));
+          }
         }
         steps = stepsBuilder.build();
       } else {
@@ -317,7 +348,9 @@ public class TestRunning {
           getStatusTransformingCallable(
               isTestRunRequired,
               resultsInterpreter),
-          testReportingCallback);
+          testReportingCallback)
+          .withShardSteps(shardSteps)
+          .withFinalSteps(finalSteps);
 
       // Always run the commands, even if the list of commands as empty. There may be zero
       // commands because the rule is cached, but its results must still be processed.
@@ -330,24 +363,39 @@ public class TestRunning {
       }
     }
 
-    for (TestRun testRun : parallelTestRuns) {
+    // Start the tests which are likely to take longest first, so that they don't end up holding
+    // up the whole run by starting last. Results are still reported in the original order.
+    List<TestRun> scheduledTestRuns = Lists.newArrayList(parallelTestRuns);
+    if (options.isUsingTestHistory()) {
+      Comparator<BuildTarget> order =
+          history.getSchedulingOrder(options.isRunningFailingTestsFirst());
+      scheduledTestRuns.sort(
+          (first, second) -> order.compare(
+              first.getTest().getBuildTarget(),
+              second.getTest().getBuildTarget()));
+    }
+    Map<TestRun, ListenableFuture<TestResults>> scheduledResults = Maps.newIdentityHashMap();
+    for (TestRun testRun : scheduledTestRuns) {
       ListenableFuture<TestResults> testResults = runStepsAndYieldResult(
           stepRunner,
           executionContext,
-          testRun.getSteps(),
-          testRun.getTestResultsCallable(),
-          testRun.getTest().getBuildTarget(),
+          testRun,
+          history,
           params.getBuckEventBus(),
           service);
-      results.add(
-            transformTestResults(
-                params,
-                testResults,
-                testRun.getTest(),
-                testRun.getTestReportingCallback(),
-                testTargets,
-                lastReportedTestSequenceNumber,
-                totalNumberOfTests));
+      scheduledResults.put(
+          testRun,
+          transformTestResults(
+              params,
+              testResults,
+              testRun.getTest(),
+              testRun.getTestReportingCallback(),
+              testTargets,
+              lastReportedTestSequenceNumber,
+              totalNumberOfTests));
+    }
+    for (TestRun testRun : parallelTestRuns) {
+      results.add(scheduledResults.get(testRun));
     }
 
 
@@ -371,9 +419,8 @@ public class TestRunning {
                       runStepsAndYieldResult(
                           stepRunner,
                           executionContext,
-                          testRun.getSteps(),
-                          testRun.getTestResultsCallable(),
-                          testRun.getTest().getBuildTarget(),
+                          testRun,
+                          history,
                           params.getBuckEventBus(),
                           directExecutorService),
                       testRun.getTest(),
@@ -427,6 +474,14 @@ public class TestRunning {
 
     params.getBuckEventBus().post(TestRunEvent.finished(testTargets, completedResults));
 
+    if (options.isUsingTestHistory()) {
+      try {
+        history.save(params.getCell().getFilesystem());
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to save test history.");
+      }
+    }
+
     // Write out the results as XML, if requested.
     Optional<String> path = options.getPathToXmlTestOutput();
     if (path.isPresent()) {
@@ -904,27 +959,153 @@ public class TestRunning {
     return ImmutableSet.copyOf(srcFolders);
   }
 
+  /**
+   * Decides how many JVMs the test classes of {@code test} should be split across. Only
+   * {@code java_test}s whose previous runs were slow are split; everything else runs as usual.
+   * The recorded duration of a sharded run is the sum of its shards' durations, so a test which
+   * is sharded because it is slow stays sharded.
+   */
+  @VisibleForTesting
+  static int getJavaTestShardCount(
+      TestRule test,
+      ExecutionContext executionContext,
+      TestRunningOptions options,
+      TestRunHistory history) {
+    if (!(test instanceof JavaTest) ||
+        options.getMaxJavaTestShards() <= 1 ||
+        executionContext.isDebugEnabled() ||
+        test.runTestSeparately()) {
+      return 1;
+    }
+    Optional<TestHistoryEntry> entry = history.get(test.getBuildTarget());
+    if (!entry.isPresent() ||
+        entry.get().getAverageDurationMillis() < MIN_SHARDED_JAVA_TEST_DURATION_MILLIS) {
+      return 1;
+    }
+    return options.getMaxJavaTestShards();
+  }
+
   private static ListenableFuture<TestResults> runStepsAndYieldResult(
       StepRunner stepRunner,
       ExecutionContext context,
-      final List<Step> steps,
-      final Callable<TestResults> interpretResults,
-      final BuildTarget buildTarget,
+      final TestRun testRun,
+      final TestRunHistory history,
       BuckEventBus eventBus,
       ListeningExecutorService listeningExecutorService) {
     Preconditions.checkState(!listeningExecutorService.isShutdown());
-    Callable<TestResults> callable = () -> {
+    final BuildTarget buildTarget = testRun.getTest().getBuildTarget();
+    // Only record the tests which actually ran: cached results say nothing about the test.
+    final boolean isRecordingHistory = !testRun.getSteps().isEmpty();
+    // The time spent running the steps, summed over the shards of a sharded test, so that it
+    // estimates how long an unsharded run would take whether or not this run was sharded.
+    final AtomicLong durationMillis = new AtomicLong();
+    final AtomicBoolean started = new AtomicBoolean();
+
+    Callable<Void> runSteps = () -> {
       LOG.debug("Test steps will run for %s", buildTarget);
       eventBus.post(TestRuleEvent.started(buildTarget));
-      for (Step step : steps) {
-        stepRunner.runStepForBuildTarget(context, step, Optional.of(buildTarget));
-      }
+      started.set(true);
+      runTimedStepsForBuildTarget(
+          stepRunner,
+          context,
+          testRun.getSteps(),
+          buildTarget,
+          durationMillis);
+      return null;
+    };
+    Callable<TestResults> finish = () -> {
+      runTimedStepsForBuildTarget(
+          stepRunner,
+          context,
+          testRun.getFinalSteps(),
+          buildTarget,
+          durationMillis);
       LOG.debug("Test steps did run for %s", buildTarget);
       eventBus.post(TestRuleEvent.finished(buildTarget));
 
-      return interpretResults.call();
+      TestResults results = testRun.getTestResultsCallable().call();
+      if (isRecordingHistory) {
+        history.record(buildTarget, durationMillis.get(), results.isSuccess());
+      }
+      return results;
     };
 
-    return listeningExecutorService.submit(callable);
+    ListenableFuture<TestResults> results;
+    if (testRun.getShardSteps().isEmpty()) {
+      results = listeningExecutorService.submit(() -> {
+        runSteps.call();
+        return finish.call();
+      });
+    } else {
+      ListenableFuture<List<Void>> shards = Futures.transformAsync(
+          listeningExecutorService.submit(runSteps),
+          ignored -> {
+            List<ListenableFuture<Void>> shardResults = Lists.newArrayList();
+            for (List<Step> shardSteps : testRun.getShardSteps()) {
+              shardResults.add(
+                  listeningExecutorService.submit(() -> {
+                    runTimedStepsForBuildTarget(
+                        stepRunner,
+                        context,
+                        shardSteps,
+                        buildTarget,
+                        durationMillis);
+                    return null;
+                  }));
+            }
+            return Futures.allAsList(shardResults);
+          },
+          MoreExecutors.directExecutor());
+      results = Futures.transformAsync(
+          shards,
+          ignored -> Futures.immediateFuture(finish.call()),
+          MoreExecutors.directExecutor());
+    }
+
+    if (isRecordingHistory) {
+      Futures.addCallback(
+          results,
+          new FutureCallback<TestResults>() {
+            @Override
+            public void onSuccess(TestResults result) {}
+
+            @Override
+            public void onFailure(Throwable t) {
+              // The test steps themselves failed, which TestRunning reports as a test failure.
+              // Tests which never started, e.g. because the run was cancelled, took no time.
+              if (started.get()) {
+                history.record(buildTarget, durationMillis.get(), /* success */ false);
+              }
+            }
+          });
+    }
+    return results;
+  }
+
+  /**
+   * Runs the steps, adding the time they took to {@code durationMillis}, even when they fail.
+   */
+  private static void runTimedStepsForBuildTarget(
+      StepRunner stepRunner,
+      ExecutionContext context,
+      List<Step> steps,
+      BuildTarget buildTarget,
+      AtomicLong durationMillis) throws StepFailedException, InterruptedException {
+    long startMillis = System.currentTimeMillis();
+    try {
+      runStepsForBuildTarget(stepRunner, context, steps, buildTarget);
+    } finally {
+      durationMillis.addAndGet(System.currentTimeMillis() - startMillis);
+    }
+  }
+
+  private static void runStepsForBuildTarget(
+      StepRunner stepRunner,
+      ExecutionContext context,
+      List<Step> steps,
+      BuildTarget buildTarget) throws StepFailedException, InterruptedException {
+    for (Step step : steps) {
+      stepRunner.runStepForBuildTarget(context, step, Optional.of(buildTarget));
+    }
   }
 }
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.facebook.buck.cxx;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+
+import com.facebook.buck.cxx.elf.Elf;
+import com.facebook.buck.cxx.elf.ElfSection;
+import com.facebook.buck.cxx.elf.ElfSectionHeader;
+import com.facebook.buck.cxx.elf.ElfSymbolTable;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.immutables.BuckStyleTuple;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.immutables.value.Value;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * A step which writes a GNU format archive of ELF objects, indexing the global symbols they define
+ * with the ELF readers instead of running ranlib.  The member headers are written as the archiver's
+ * scrubbers would leave them, so the archive is the same as one made by ar, ranlib and the
+ * scrubbers.
+ *
+ * <p>A thin archive, which only refers to its members, is small enough to build in memory, and when
+ * its members and their symbols are the same as those of the archive already at the output, only
+ * the member headers whose sizes changed are written to it.
+ *
+ * <p>If any input is not an ELF file, such as LLVM bitcode, the fallback steps are run instead.
+ */
+@Value.Immutable
+@BuckStyleTuple
+abstract class AbstractArchiveWriterStep implements Step {
+
+  private static final Logger LOG = Logger.get(AbstractArchiveWriterStep.class);
+
+  private static final int MEMBER_HEADER_SIZE = 60;
+
+  // Longer member names are written to the long names member, and referred to by their offset in
+  // it.  Thin archives refer to all their members this way.
+  private static final int MAX_MEMBER_NAME_LENGTH = 15;
+
+  // Offsets in the symbol table are 32 bits wide.
+  private static final long MAX_SYMBOL_OFFSET = 0xffffffffL;
+
+  // A section index of 0 means the symbol is undefined.
+  private static final int SHN_UNDEF = 0;
+
+  abstract ProjectFilesystem getFilesystem();
+  abstract Path getOutput();
+  abstract ImmutableList<Path> getInputs();
+  abstract Archive.Contents getContents();
+
+  /**
+   * @return steps which archive the inputs with the archiver tool, run if any input is not ELF.
+   */
+  abstract ImmutableList<Step> getFallbackSteps();
+
+  private ImmutableList<Path> getAllInputs() throws IOException {
+    ImmutableList.Builder<Path> allInputs = ImmutableList.builder();
+    for (Path input : getInputs()) {
+      if (getFilesystem().isDirectory(input)) {
+        // Sort the files found under directories so that the output is deterministic.
+        allInputs.addAll(ImmutableSortedSet.copyOf(getFilesystem().getFilesUnderPath(input)));
+      } else {
+        allInputs.add(input);
+      }
+    }
+    return allInputs.build();
+  }
+
+  /**
+   * @return the names of the global symbols defined by the given ELF object, in the order of its
+   *     symbol table, or nothing if the file isn't ELF.
+   */
+  private static Optional<ImmutableList<byte[]>> readDefinedSymbols(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(READ_ONLY, 0, channel.size());
+      if (!Elf.isElf(buffer)) {
+        return Optional.empty();
+      }
+      Elf elf = new Elf(buffer);
+      ImmutableList.Builder<byte[]> symbols = ImmutableList.builder();
+      for (int index = 0; index < elf.getNumberOfSections(); index++) {
+        ElfSection section = elf.getSectionByIndex(index);
+        if (section.header.sh_type != ElfSectionHeader.SHType.SHT_SYMTAB) {
+          continue;
+        }
+        ElfSection strings = elf.getSectionByIndex((int) section.header.sh_link);
+        ElfSymbolTable table = ElfSymbolTable.parse(elf.header.ei_class, section.body);
+        for (ElfSymbolTable.Entry entry : table.entries) {
+          if (entry.st_info.st_bind != ElfSymbolTable.Entry.Info.Bind.STB_LOCAL &&
+              entry.st_shndx != SHN_UNDEF) {
+            symbols.add(getString(strings.body, (int) entry.st_name));
+          }
+        }
+      }
+      return Optional.of(symbols.build());
+    } catch (IllegalArgumentException | BufferUnderflowException e) {
+      // Symbol bindings or types the ELF readers don't know, or a truncated file.
+      LOG.debug(e, "Could not read the symbols of %s", path);
+      return Optional.empty();
+    }
+  }
+
+  private static byte[] getString(ByteBuffer strings, int offset) {
+    int end = offset;
+    while (strings.get(end) != 0) {
+      end++;
+    }
+    byte[] string = new byte[end - offset];
+    for (int index = 0; index < string.length; index++) {
+      string[index] = strings.get(offset + index);
+    }
+    return string;
+  }
+
+  private static byte[] getMemberHeader(String name, long size) {
+    ByteBuffer header = ByteBuffer.allocate(MEMBER_HEADER_SIZE);
+    header.put(Strings.padEnd(name, 16, ' ').getBytes(StandardCharsets.US_ASCII));
+    // The same padding as the scrubbers of GnuArchiver.
+    ObjectFileScrubbers.PaddingStyle padding = ObjectFileScrubbers.PaddingStyle.LEFT;
+    ObjectFileScrubbers.putIntAsDecimalString(
+        header,
+        12,
+        ObjectFileCommonModificationDate.COMMON_MODIFICATION_TIME_STAMP,
+        padding);
+    ObjectFileScrubbers.putIntAsDecimalString(header, 6, 0, padding);
+    ObjectFileScrubbers.putIntAsDecimalString(header, 6, 0, padding);
+    @SuppressWarnings("PMD.AvoidUsingOctalValues")
+    int mode = 0100644;
+    ObjectFileScrubbers.putIntAsOctalString(header, 8, mode, padding);
+    header.put(Strings.padEnd(Long.toString(size), 10, ' ').getBytes(StandardCharsets.US_ASCII));
+    header.put(ObjectFileScrubbers.END_OF_FILE_HEADER_MARKER);
+    return header.array();
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    ImmutableList<Path> inputs = getAllInputs();
+    if (inputs.isEmpty()) {
+      getFilesystem().writeBytesToPath(ObjectFileScrubbers.GLOBAL_HEADER, getOutput());
+      return StepExecutionResult.SUCCESS;
+    }
+    boolean thin = getContents() == Archive.Contents.THIN;
+
+    // Read the symbols of every member, and name the members as ar would.
+    ImmutableList.Builder<ImmutableList<byte[]>> symbolsBuilder = ImmutableList.builder();
+    ImmutableList.Builder<String> namesBuilder = ImmutableList.builder();
+    ImmutableList.Builder<Long> sizesBuilder = ImmutableList.builder();
+    Path outputDir = getOutput().getParent();
+    for (Path input : inputs) {
+      Optional<ImmutableList<byte[]>> symbols =
+          readDefinedSymbols(getFilesystem().resolve(input));
+      if (!symbols.isPresent()) {
+        return runFallbackSteps(context, input + " is not an ELF file");
+      }
+      symbolsBuilder.add(symbols.get());
+      namesBuilder.add(
+          thin ?
+              (outputDir == null ? input : outputDir.relativize(input)).toString() :
+              input.getFileName().toString());
+      sizesBuilder.add(getFilesystem().getFileSize(input));
+    }
+    ImmutableList<ImmutableList<byte[]>> symbols = symbolsBuilder.build();
+    ImmutableList<String> names = namesBuilder.build();
+    ImmutableList<Long> sizes = sizesBuilder.build();
+
+    // The long names member: each name is followed by "/\n", and the member is padded to an even
+    // size with a newline.
+    ByteArrayOutputStream longNames = new ByteArrayOutputStream();
+    String[] memberNames = new String[names.size()];
+    for (int index = 0; index < names.size(); index++) {
+      byte[] name = names.get(index).getBytes(StandardCharsets.UTF_8);
+      if (thin || name.length > MAX_MEMBER_NAME_LENGTH) {
+        memberNames[index] = "/" + longNames.size();
+        longNames.write(name);
+        longNames.write('/');
+        longNames.write('\n');
+      } else {
+        memberNames[index] = names.get(index) + "/";
+      }
+    }
+    if (longNames.size() % 2 != 0) {
+      longNames.write('\n');
+    }
+
+    // The symbol table member: the number of symbols, the offset of the header of the member
+    // defining each symbol, and the null terminated symbol names, padded to an even size.
+    int symbolCount = 0;
+    int symbolNamesSize = 0;
+    for (ImmutableList<byte[]> memberSymbols : symbols) {
+      symbolCount += memberSymbols.size();
+      for (byte[] symbol : memberSymbols) {
+        symbolNamesSize += symbol.length + 1;
+      }
+    }
+    int symbolTableSize = 4 + 4 * symbolCount + symbolNamesSize;
+    symbolTableSize += symbolTableSize % 2;
+
+    // Lay out the members.
+    long[] offsets = new long[names.size()];
+    long offset = ObjectFileScrubbers.GLOBAL_HEADER.length;
+    offset += MEMBER_HEADER_SIZE + symbolTableSize;
+    if (longNames.size() > 0) {
+      offset += MEMBER_HEADER_SIZE + longNames.size();
+    }
+    for (int index = 0; index < names.size(); index++) {
+      offsets[index] = offset;
+      offset += MEMBER_HEADER_SIZE;
+      if (!thin) {
+        offset += sizes.get(index) + sizes.get(index) % 2;
+      }
+    }
+    if (offsets[names.size() - 1] > MAX_SYMBOL_OFFSET) {
+      return runFallbackSteps(context, "the archive needs a 64-bit symbol table");
+    }
+
+    ByteBuffer symbolTable = ByteBuffer.allocate(symbolTableSize);
+    symbolTable.putInt(symbolCount);
+    for (int index = 0; index < names.size(); index++) {
+      for (int symbol = 0; symbol < symbols.get(index).size(); symbol++) {
+        symbolTable.putInt((int) offsets[index]);
+      }
+    }
+    for (ImmutableList<byte[]> memberSymbols : symbols) {
+      for (byte[] symbol : memberSymbols) {
+        symbolTable.put(symbol);
+        symbolTable.put((byte) 0);
+      }
+    }
+
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    header.write(thin ? ObjectFileScrubbers.GLOBAL_THIN_HEADER : ObjectFileScrubbers.GLOBAL_HEADER);
+    header.write(getMemberHeader("/", symbolTableSize));
+    header.write(symbolTable.array());
+    if (longNames.size() > 0) {
+      header.write(getMemberHeader("//", longNames.size()));
+      longNames.writeTo(header);
+    }
+
+    if (thin) {
+      for (int index = 0; index < names.size(); index++) {
+        header.write(getMemberHeader(memberNames[index], sizes.get(index)));
+      }
+      writeThinArchive(header.toByteArray(), offsets);
+    } else {
+      try (OutputStream output =
+               new BufferedOutputStream(getFilesystem().newFileOutputStream(getOutput()))) {
+        header.writeTo(output);
+        for (int index = 0; index < names.size(); index++) {
+          output.write(getMemberHeader(memberNames[index], sizes.get(index)));
+          Files.copy(getFilesystem().resolve(inputs.get(index)), output);
+          if (sizes.get(index) % 2 != 0) {
+            output.write('\n');
+          }
+        }
+      }
+    }
+
+    return StepExecutionResult.SUCCESS;
+  }
+
+  /**
+   * Writes a thin archive, only writing the member headers which changed if the archive already at
+   * the output has the same members and symbols.
+   */
+  private void writeThinArchive(byte[] contents, long[] memberOffsets) throws IOException {
+    Path output = getFilesystem().resolve(getOutput());
+    int membersOffset = (int) memberOffsets[0];
+    if (Files.isRegularFile(output) && Files.size(output) == contents.length) {
+      byte[] existing = Files.readAllBytes(output);
+      if (Arrays.equals(
+              Arrays.copyOf(existing, membersOffset),
+              Arrays.copyOf(contents, membersOffset))) {
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE)) {
+          for (long memberOffset : memberOffsets) {
+            int start = (int) memberOffset;
+            int end = start + MEMBER_HEADER_SIZE;
+            if (!Arrays.equals(
+                    Arrays.copyOfRange(existing, start, end),
+                    Arrays.copyOfRange(contents, start, end))) {
+              channel.write(ByteBuffer.wrap(contents, start, MEMBER_HEADER_SIZE), start);
+            }
+          }
+        }
+        LOG.verbose("Updated the member headers of %s in place", getOutput());
+        return;
+      }
+    }
+    getFilesystem().writeBytesToPath(contents, getOutput());
+  }
+
+  private StepExecutionResult runFallbackSteps(ExecutionContext context, String reason)
+      throws IOException, InterruptedException {
+    LOG.debug("Archiving %s with the archiver: %s", getOutput(), reason);
+    for (Step step : getFallbackSteps()) {
+      StepExecutionResult result = step.execute(context);
+      if (!result.isSuccess()) {
+        return result;
+      }
+    }
+    return StepExecutionResult.SUCCESS;
+  }
+
+  @Override
+  public String getShortName() {
+    return "archive";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format(
+        "write %s archive %s of %s",
+        getContents() == Archive.Contents.THIN ? "thin" : "normal",
+        getOutput(),
+        Joiner.on(' ').join(getInputs()));
+  }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.util.immutables.BuckStyleTuple;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import org.immutables.value.Value;
+
+import java.util.Optional;
+
+/**
+ * Where C/C++ sources are compiled when they are compiled by {@link CxxCompileWorkerPool}.
+ */
+@Value.Immutable
+@BuckStyleTuple
+abstract class AbstractCxxCompileWorkers {
+
+  /**
+   * The number of workers to run, which is the number of sources compiled at the same time.
+   */
+  public abstract int getCount();
+
+  /**
+   * The command that starts a worker, which may start it on another machine.  Without one, the
+   * workers are processes on this machine that stand in for ones on other machines.
+   */
+  public abstract Optional<ImmutableList<String>> getCommand();
+
+  @Value.Check
+  protected void check() {
+    Preconditions.checkState(getCount() > 0, "There must be at least one compile worker");
+  }
+}
@@ -51,6 +51,11 @@ abstract class AbstractCxxHeadersDir extends CxxHeaders {
     return Optional.empty();
   }
 
+  @Override
+  public Optional<SourcePath> getVfsOverlay() {
+    return Optional.empty();
+  }
+
   @Override
   public void addToHeaderPathNormalizer(HeaderPathNormalizer.Builder builder) {
     builder.addHeaderDir(getRoot());
@@ -94,6 +94,15 @@ interface AbstractCxxPlatform extends FlavorConvertible {
 
   HeaderVerification getHeaderVerification();
 
+  /**
+   * @return whether to make headers available through virtual file system overlays, if the
+   *     preprocessors support them, instead of creating trees of symbolic links to them.
+   */
+  @Value.Default
+  default boolean getUseHeaderVfsOverlays() {
+    return false;
+  }
+
   /**
    * @return a map for macro names to their respective expansions, to be used to expand macro
    *     references in user-provided flags.
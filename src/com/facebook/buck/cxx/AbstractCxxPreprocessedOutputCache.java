@@ -0,0 +1,48 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.util.immutables.BuckStyleTuple;
+import com.google.common.base.Preconditions;
+
+import org.immutables.value.Value;
+
+import java.nio.file.Path;
+
+/**
+ * Where {@link CxxPreprocessAndCompileStep} keeps the objects it compiled, keyed by the
+ * preprocessed source they were compiled from, and how much of them it keeps.
+ */
+@Value.Immutable
+@BuckStyleTuple
+abstract class AbstractCxxPreprocessedOutputCache {
+
+  /**
+   * The directory of the objects, relative to the project root.
+   */
+  public abstract Path getDirectory();
+
+  /**
+   * The most bytes of objects to keep.  The objects used least recently are deleted first.
+   */
+  public abstract long getMaxSizeBytes();
+
+  @Value.Check
+  protected void check() {
+    Preconditions.checkState(getMaxSizeBytes() > 0, "The cache must be allowed some objects");
+  }
+}
@@ -53,6 +53,11 @@ abstract class AbstractCxxSandboxInclude extends CxxHeaders {
     return Optional.empty();
   }
 
+  @Override
+  public Optional<SourcePath> getVfsOverlay() {
+    return Optional.empty();
+  }
+
   @Override
   public void addToHeaderPathNormalizer(HeaderPathNormalizer.Builder builder) {
     builder.addHeaderDir(getRoot());
@@ -536,7 +536,13 @@ abstract class AbstractCxxSourceRuleFactory {
         precompiledHeaderRule,
         getCxxPlatform().getCompilerDebugPathSanitizer(),
         getCxxPlatform().getAssemblerDebugPathSanitizer(),
-        getSandboxTree());
+        getSandboxTree(),
+        getCxxBuckConfig().getPreprocessedOutputCacheMaxSize().map(
+            maxSize -> CxxPreprocessedOutputCache.of(
+                getParams().getProjectFilesystem().getBuckPaths().getCacheDir()
+                    .resolve("cxx_preprocessed_output"),
+                maxSize)),
+        getCxxBuckConfig().getCompileWorkers());
     getResolver().addToIndex(result);
     return result;
   }
@@ -672,9 +678,11 @@ abstract class AbstractCxxSourceRuleFactory {
     // Build compiler flags, taking from the source rule, but leaving out its deps.
     // We just need the flags pertaining to PCH compatibility: language, PIC, macros, etc.
     // and nothing related to the deps of this particular rule (hence 'getNonIncludePathFlags').
-    CxxToolFlags compilerFlags = CxxToolFlags.concat(
-        preprocessorDelegateForCxxRule.getNonIncludePathFlags(/* no pch */ Optional.empty()),
-        computeCompilerFlags(sourceType, sourceFlags));
+    // These are canonicalized, so that every rule whose flags are compatible shares one PCH.
+    CxxToolFlags compilerFlags = CxxPrecompiledHeader.getCompatibilityFlags(
+        CxxToolFlags.concat(
+            preprocessorDelegateForCxxRule.getNonIncludePathFlags(/* no pch */ Optional.empty()),
+            computeCompilerFlags(sourceType, sourceFlags)));
 
     // Now build a new pp-delegate specially for this PCH rule.
     PreprocessorDelegate preprocessorDelegate =
@@ -686,8 +694,16 @@ abstract class AbstractCxxSourceRuleFactory {
     // Language needs to be part of the key, PCHs built under a different language are incompatible.
     // (Replace `c++` with `cxx`; avoid default scrubbing which would make it the cryptic `c__`.)
     final String langCode = sourceType.getLanguage().replaceAll("c\\+\\+", "cxx");
+    // The flags above already include the non-include-path flags of this rule, so hash them alone
+    // rather than with this rule's preprocessor flags, which aren't canonical.
     final String pchBaseID =
-        "pch-" + langCode + "-" + preprocessorDelegateCacheValue.getBaseHash(compilerFlags);
+        "pch-" + langCode + "-" +
+        preprocessorDelegate.hashCommand(
+            ImmutableList.<String>builder()
+                .addAll(preprocessorDelegate.getCommandPrefix())
+                .addAll(compilerFlags.getAllFlags())
+                .build())
+            .substring(0, 10);
 
     for (BuildRule rule : pchTemplate.getDeps()) {
       depsBuilder.add(rule);
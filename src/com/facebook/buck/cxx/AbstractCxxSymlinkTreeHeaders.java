@@ -58,6 +58,9 @@ abstract class AbstractCxxSymlinkTreeHeaders extends CxxHeaders {
   @Override
   public abstract Optional<SourcePath> getHeaderMap();
 
+  @Override
+  public abstract Optional<SourcePath> getVfsOverlay();
+
   abstract ImmutableMap<Path, SourcePath> getNameToPathMap();
 
   @Override
@@ -75,6 +78,7 @@ abstract class AbstractCxxSymlinkTreeHeaders extends CxxHeaders {
     deps.addAll(ruleFinder.filterBuildRuleInputs(getRoot()));
     deps.addAll(ruleFinder.filterBuildRuleInputs(getIncludeRoot()));
     deps.addAll(ruleFinder.filterBuildRuleInputs(OptionalCompat.asSet(getHeaderMap())));
+    deps.addAll(ruleFinder.filterBuildRuleInputs(OptionalCompat.asSet(getVfsOverlay())));
     return deps.build();
   }
 
@@ -117,6 +121,13 @@ abstract class AbstractCxxSymlinkTreeHeaders extends CxxHeaders {
               symlinkTree.getBuildTarget(),
               symlinkTree.getRoot()));
     }
+    // The overlay is what makes the root exist, whichever way it's included.
+    if (symlinkTree.getVfsOverlay().isPresent()) {
+      builder.setVfsOverlay(
+          new ExplicitBuildTargetSourcePath(
+              symlinkTree.getBuildTarget(),
+              symlinkTree.getVfsOverlay().get()));
+    }
     builder.putAllNameToPathMap(symlinkTree.getLinks());
     return builder.build();
   }
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+
+import com.facebook.buck.cxx.elf.Elf;
+import com.facebook.buck.cxx.elf.ElfHeader;
+import com.facebook.buck.cxx.elf.ElfSection;
+import com.facebook.buck.cxx.elf.ElfSectionHeader;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.immutables.BuckStyleTuple;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.immutables.value.Value;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A step which copies specific sections of an ELF file into a new ELF file, which has no program
+ * headers and places the sections right after its header.  Both files are memory mapped, so the
+ * sections are copied directly from one to the other.
+ */
+@Value.Immutable
+@BuckStyleTuple
+abstract class AbstractElfCompactSectionsStep implements Step {
+
+  private static final String SECTION_NAMES_SECTION = ".shstrtab";
+
+  abstract ProjectFilesystem getFilesystem();
+  abstract Path getInput();
+  abstract Path getOutput();
+  abstract ImmutableSet<String> getSections();
+
+  private static long align(long offset, long alignment) {
+    return alignment > 1 ? (offset + alignment - 1) / alignment * alignment : offset;
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context) throws IOException {
+    try (FileChannel input =
+             FileChannel.open(
+                 getFilesystem().resolve(getInput()),
+                 StandardOpenOption.READ);
+         FileChannel output =
+             FileChannel.open(
+                 getFilesystem().resolve(getOutput()),
+                 StandardOpenOption.READ,
+                 StandardOpenOption.WRITE,
+                 StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+      Elf elf = new Elf(input.map(READ_ONLY, 0, input.size()));
+      ElfHeader.EIClass eiClass = elf.header.ei_class;
+
+      // Find the sections to copy, in the order they appear in the input, and their indices in
+      // the output, which start with the null section.
+      ImmutableList.Builder<ElfSection> sectionsBuilder = ImmutableList.builder();
+      Map<Long, Long> newIndices = new HashMap<>();
+      for (int index = 1; index < elf.getNumberOfSections(); index++) {
+        ElfSection section = elf.getSectionByIndex(index);
+        if (getSections().contains(elf.getSectionName(section.header))) {
+          sectionsBuilder.add(section);
+          newIndices.put((long) index, (long) newIndices.size() + 1);
+        }
+      }
+      ImmutableList<ElfSection> sections = sectionsBuilder.build();
+
+      // Lay out the copied sections after the header, then the section names, then the section
+      // headers.  As the sections are never loaded, their addresses are just their offsets.
+      ByteArrayOutputStream names = new ByteArrayOutputStream();
+      names.write(0);
+      ImmutableList.Builder<ElfSectionHeader> headers = ImmutableList.builder();
+      headers.add(
+          new ElfSectionHeader(0, ElfSectionHeader.SHType.SHT_NULL, 0, 0, 0, 0, 0, 0, 0, 0));
+      long offset = elf.header.e_ehsize;
+      for (ElfSection section : sections) {
+        long nameOffset = names.size();
+        names.write(
+            (elf.getSectionName(section.header) + '\0').getBytes(StandardCharsets.US_ASCII));
+        offset = align(offset, section.header.sh_addralign);
+        headers.add(
+            new ElfSectionHeader(
+                nameOffset,
+                section.header.sh_type,
+                section.header.sh_flags,
+                /* sh_addr */ offset,
+                /* sh_off */ offset,
+                section.header.sh_size,
+                // Links are section indices (e.g. from ".dynsym" to ".dynstr"), so renumber them,
+                // dropping links to sections which aren't copied.
+                newIndices.getOrDefault(section.header.sh_link, 0L),
+                section.header.sh_info,
+                section.header.sh_addralign,
+                section.header.sh_entsize));
+        offset += section.header.sh_size;
+      }
+      long namesOffset = names.size();
+      names.write((SECTION_NAMES_SECTION + '\0').getBytes(StandardCharsets.US_ASCII));
+      headers.add(
+          new ElfSectionHeader(
+              namesOffset,
+              ElfSectionHeader.SHType.SHT_STRTAB,
+              0,
+              0,
+              offset,
+              names.size(),
+              0,
+              0,
+              1,
+              0));
+      ImmutableList<ElfSectionHeader> sectionHeaders = headers.build();
+      long sectionHeadersOffset =
+          align(offset + names.size(), eiClass == ElfHeader.EIClass.ELFCLASS32 ? 4 : 8);
+
+      ElfHeader header =
+          new ElfHeader(
+              eiClass,
+              elf.header.ei_data,
+              elf.header.e_type,
+              elf.header.e_machine,
+              elf.header.e_version,
+              /* e_entry */ 0,
+              /* e_phoff */ 0,
+              sectionHeadersOffset,
+              elf.header.e_flags,
+              elf.header.e_ehsize,
+              elf.header.e_phentsize,
+              /* e_phnum */ 0,
+              elf.header.e_shentsize,
+              sectionHeaders.size(),
+              sectionHeaders.size() - 1);
+
+      MappedByteBuffer buffer =
+          output.map(
+              READ_WRITE,
+              0,
+              sectionHeadersOffset + sectionHeaders.size() * elf.header.e_shentsize);
+      header.write(buffer);
+      int index = 1;
+      for (ElfSection section : sections) {
+        buffer.position((int) sectionHeaders.get(index++).sh_off);
+        ByteBuffer body = section.body.duplicate();
+        body.rewind();
+        buffer.put(body);
+      }
+      buffer.position((int) offset);
+      buffer.put(names.toByteArray());
+      for (int i = 0; i < sectionHeaders.size(); i++) {
+        buffer.position((int) (sectionHeadersOffset + i * elf.header.e_shentsize));
+        sectionHeaders.get(i).write(eiClass, buffer);
+      }
+    }
+    return StepExecutionResult.SUCCESS;
+  }
+
+  @Override
+  public final String getShortName() {
+    return "compact_sections";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format(
+        "Copy sections %s from %s to %s",
+        Joiner.on(", ").join(getSections()),
+        getInput(),
+        getOutput());
+  }
+
+}
@@ -23,8 +23,8 @@ import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
-import com.facebook.buck.rules.ToolProvider;
 import com.facebook.buck.util.immutables.BuckStyleTuple;
+import com.google.common.collect.ImmutableList;
 
 import org.immutables.value.Value;
 
@@ -32,8 +32,6 @@ import org.immutables.value.Value;
 @BuckStyleTuple
 abstract class AbstractElfSharedLibraryInterfaceFactory implements SharedLibraryInterfaceFactory {
 
-  abstract ToolProvider getObjcopy();
-
   @Override
   public final BuildRule createSharedInterfaceLibrary(
       BuildTarget target,
@@ -47,13 +45,12 @@ abstract class AbstractElfSharedLibraryInterfaceFactory implements SharedLibrary
         baseParams,
         pathResolver,
         ruleFinder,
-        getObjcopy().resolve(resolver),
         library);
   }
 
   @Override
   public Iterable<BuildTarget> getParseTimeDeps() {
-    return getObjcopy().getParseTimeDeps();
+    return ImmutableList.of();
   }
 
 }
@@ -173,10 +173,12 @@ public class Archive extends AbstractBuildRule implements SupportsInputBasedRule
               .equals(getProjectFilesystem().getRootPath()));
     }
 
-    ImmutableList.Builder<Step> builder = ImmutableList.builder();
+    ImmutableList<Path> inputPaths = inputs.stream()
+        .map(resolver::getRelativePath)
+        .collect(MoreCollectors.toImmutableList());
 
-    builder.add(
-        new MkdirStep(getProjectFilesystem(), output.getParent()),
+    ImmutableList.Builder<Step> archiveSteps = ImmutableList.builder();
+    archiveSteps.add(
         new RmStep(getProjectFilesystem(), output),
         new ArchiveStep(
             getProjectFilesystem(),
@@ -185,13 +187,11 @@ public class Archive extends AbstractBuildRule implements SupportsInputBasedRule
             archiverFlags,
             archiver.getArchiveOptions(contents == Contents.THIN),
             output,
-            inputs.stream()
-                .map(resolver::getRelativePath)
-                .collect(MoreCollectors.toImmutableList()),
+            inputPaths,
             archiver));
 
     if (archiver.isRanLibStepRequired()) {
-      builder.add(
+      archiveSteps.add(
           new RanlibStep(
               getProjectFilesystem(),
               ranlib.getEnvironment(resolver),
@@ -201,7 +201,25 @@ public class Archive extends AbstractBuildRule implements SupportsInputBasedRule
     }
 
     if (!archiver.getScrubbers().isEmpty()) {
-      builder.add(new FileScrubberStep(getProjectFilesystem(), output, archiver.getScrubbers()));
+      archiveSteps.add(
+          new FileScrubberStep(getProjectFilesystem(), output, archiver.getScrubbers()));
+    }
+
+    ImmutableList.Builder<Step> builder = ImmutableList.builder();
+    builder.add(new MkdirStep(getProjectFilesystem(), output.getParent()));
+
+    // Archives of ELF objects are written directly, leaving the output in place so that a thin
+    // archive can be updated, unless flags for the tools are given, which the writer can't honor.
+    if (archiver.supportsArchiveWriter() && archiverFlags.isEmpty() && ranlibFlags.isEmpty()) {
+      builder.add(
+          ArchiveWriterStep.of(
+              getProjectFilesystem(),
+              output,
+              inputPaths,
+              contents,
+              archiveSteps.build()));
+    } else {
+      builder.addAll(archiveSteps.build());
     }
 
     return builder.build();
@@ -26,6 +26,12 @@ public interface Archiver extends Tool {
 
   boolean supportsThinArchives();
 
+  /**
+   * @return whether archives of ELF objects made by this archiver can instead be written by
+   *     {@link ArchiveWriterStep}, without running the archiver or ranlib.
+   */
+  boolean supportsArchiveWriter();
+
   ImmutableList<String> getArchiveOptions(boolean isThinArchive);
 
   ImmutableList<String> outputArgs(String outputPath);
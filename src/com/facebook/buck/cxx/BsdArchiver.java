@@ -134,6 +134,11 @@ public class BsdArchiver implements Archiver {
     return false;
   }
 
+  @Override
+  public boolean supportsArchiveWriter() {
+    return false;
+  }
+
   @Override
   public ImmutableList<String> getArchiveOptions(boolean isThinArchive) {
     String options = isThinArchive ? "qcT" : "qc";
@@ -43,6 +43,11 @@ public class ClangPreprocessor extends AbstractPreprocessor {
     return true;
   }
 
+  @Override
+  public boolean supportsVfsOverlays() {
+    return true;
+  }
+
   @Override
   public boolean supportsPrecompiledHeaders() {
     return true;
@@ -63,6 +68,11 @@ public class ClangPreprocessor extends AbstractPreprocessor {
     return MoreIterables.zipAndConcat(Iterables.cycle("-iquote"), includeRoots);
   }
 
+  @Override
+  public final Iterable<String> vfsOverlayArgs(Iterable<String> vfsOverlays) {
+    return MoreIterables.zipAndConcat(Iterables.cycle("-ivfsoverlay"), vfsOverlays);
+  }
+
   @Override
   public final Iterable<String> prefixHeaderArgs(
       SourcePathResolver resolver,
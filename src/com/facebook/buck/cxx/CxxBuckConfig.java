@@ -27,6 +27,7 @@ import com.facebook.buck.rules.Tool;
 import com.facebook.buck.rules.ToolProvider;
 import com.facebook.buck.util.environment.Platform;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
+import com.facebook.buck.util.unit.SizeUnit;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
@@ -48,6 +49,8 @@ public class CxxBuckConfig {
   private static final String UNFLAVORED_CXX_SECTION_PREFIX = "cxx";
 
   private static final long DEFAULT_MAX_TEST_OUTPUT_SIZE = 8096;
+  private static final long DEFAULT_PREPROCESSED_OUTPUT_CACHE_MAX_SIZE =
+      SizeUnit.GIGABYTES.toBytes(1);
 
   private final BuckConfig delegate;
   private final String cxxSection;
@@ -276,11 +279,57 @@ public class CxxBuckConfig {
     return delegate.getBooleanValue(cxxSection, "sandbox_sources", false);
   }
 
-  public Archive.Contents getArchiveContents() {
+  /**
+   * @return whether to make headers available through clang virtual file system overlays instead
+   *     of creating trees of symbolic links to them.
+   */
+  public boolean shouldUseHeaderVfsOverlays() {
+    return delegate.getBooleanValue(cxxSection, "header_vfs_overlays", false);
+  }
+
+  /**
+   * @return the most bytes of objects to keep compiled from preprocessed sources, if sources should
+   *     be preprocessed first and the objects previously compiled from the same preprocessed output
+   *     reused instead of compiling them again.
+   */
+  public Optional<Long> getPreprocessedOutputCacheMaxSize() {
+    if (!delegate.getBooleanValue(cxxSection, "cache_preprocessed_output", false)) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        delegate.getValue(cxxSection, "preprocessed_output_cache_max_size")
+            .map(SizeUnit::parseBytes)
+            .orElse(DEFAULT_PREPROCESSED_OUTPUT_CACHE_MAX_SIZE));
+  }
+
+  /**
+   * @return the workers to compile sources in, if sources should be compiled in workers, which may
+   *     be on other machines, rather than in processes of their own on this one.
+   */
+  public Optional<CxxCompileWorkers> getCompileWorkers() {
+    Optional<Integer> count = delegate.getInteger(cxxSection, "compile_workers");
+    if (!count.isPresent()) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        CxxCompileWorkers.of(
+            count.get(),
+            delegate.getOptionalListWithoutComments(cxxSection, "compile_worker_command", ' ')));
+  }
+
+  /**
+   * @return how static libraries made with the given archiver package their contents, which are
+   *     thin archives by default when the archiver supports them.
+   */
+  public Archive.Contents getArchiveContents(Archiver archiver) {
     return delegate.getEnum(
         cxxSection,
         "archive_contents",
-        Archive.Contents.class).orElse(Archive.Contents.NORMAL);
+        Archive.Contents.class)
+        .orElseGet(
+            () -> archiver.supportsThinArchives() ?
+                Archive.Contents.THIN :
+                Archive.Contents.NORMAL);
   }
 
   public ImmutableMap<String, Flavor> getDefaultFlavorsForRuleType(BuildRuleType type) {
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.io.MoreFiles;
+import com.facebook.buck.shell.BuiltInWorkerMain;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Entry point of the workers {@link CxxCompileWorkerPool} starts when no worker command is
+ * configured, which stand in for workers on other machines.  Like a worker on another machine, it
+ * runs each command, with the environment the job gives, in a new directory that holds copies of
+ * only the files the command reads, and copies the files the command writes back.  Everything the
+ * command prints goes to the job's stderr file.
+ */
+public class CxxCompileWorkerMain {
+
+  private CxxCompileWorkerMain() {
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    ObjectMapper objectMapper = new ObjectMapper();
+    BuiltInWorkerMain.run(
+        (argsPath, stdoutPath, stderrPath) -> runJob(objectMapper, argsPath, stderrPath));
+  }
+
+  private static int runJob(
+      ObjectMapper objectMapper,
+      Path argsPath,
+      Path stderrPath) throws IOException, InterruptedException {
+    Path workDir = Files.createTempDirectory("buck-cxx-compile-");
+    try (OutputStream stderrFile = Files.newOutputStream(stderrPath);
+         PrintStream stderr = new PrintStream(stderrFile, true, StandardCharsets.UTF_8.name())) {
+      try {
+        JsonNode job = objectMapper.readTree(argsPath.toFile());
+        ImmutableList.Builder<String> command = ImmutableList.builder();
+        for (JsonNode argument : job.get("command")) {
+          command.add(argument.asText());
+        }
+        for (Map.Entry<Path, Path> input : getFiles(workDir, job.get("inputs")).entrySet()) {
+          Files.createDirectories(input.getKey().getParent());
+          Files.copy(input.getValue(), input.getKey());
+        }
+        ImmutableMap<Path, Path> outputs = getFiles(workDir, job.get("outputs"));
+        for (Path output : outputs.keySet()) {
+          Files.createDirectories(output.getParent());
+        }
+
+        ProcessBuilder processBuilder = new ProcessBuilder(command.build())
+            .directory(workDir.toFile())
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.appendTo(stderrPath.toFile()));
+        Iterator<Map.Entry<String, JsonNode>> environment = job.get("environment").fields();
+        while (environment.hasNext()) {
+          Map.Entry<String, JsonNode> variable = environment.next();
+          processBuilder.environment().put(variable.getKey(), variable.getValue().asText());
+        }
+        Process process = processBuilder.start();
+        process.getOutputStream().close();
+        int exitCode = process.waitFor();
+
+        if (exitCode == 0) {
+          for (Map.Entry<Path, Path> output : outputs.entrySet()) {
+            Files.copy(output.getKey(), output.getValue(), StandardCopyOption.REPLACE_EXISTING);
+          }
+        }
+        return exitCode;
+      } catch (IOException | RuntimeException e) {
+        stderr.print(Throwables.getStackTraceAsString(e));
+        return 1;
+      }
+    } finally {
+      MoreFiles.deleteRecursivelyIfExists(workDir);
+    }
+  }
+
+  /**
+   * @return map from the paths of the given files in the command's directory to their paths
+   *     outside it.
+   */
+  private static ImmutableMap<Path, Path> getFiles(Path workDir, JsonNode files) {
+    ImmutableMap.Builder<Path, Path> result = ImmutableMap.builder();
+    Iterator<Map.Entry<String, JsonNode>> fields = files.fields();
+    while (fields.hasNext()) {
+      Map.Entry<String, JsonNode> field = fields.next();
+      Path name = workDir.resolve(field.getKey()).normalize();
+      Preconditions.checkState(
+          name.startsWith(workDir),
+          "%s is not in the command's directory",
+          field.getKey());
+      result.put(name, Paths.get(field.getValue().asText()));
+    }
+    return result.build();
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.shell.BuiltInWorkerProcessPool;
+import com.facebook.buck.shell.WorkerJobResult;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.util.ProcessExecutor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * A pool of workers that compile preprocessed C/C++ sources, possibly on other machines, used by
+ * {@link CxxPreprocessAndCompileStep}.  Buck speaks
+ * {@link com.facebook.buck.shell.WorkerProcessProtocolZero} with each worker.  Each command's args
+ * file is a JSON object naming the compiler command to run, the environment variables to add to
+ * its environment, the files it reads and the files it writes.  The worker runs the command in a
+ * directory of its own that holds only the files it reads, under their paths in the command, and
+ * then copies the files it writes back:
+ * <pre>
+ * {
+ *   "command": ["/usr/bin/clang", "-x", "c++-cpp-output", "-c", "lib/foo.cpp", "-o", "foo.o"],
+ *   "environment": {"PWD": "/abs/path/to/project"},
+ *   "inputs": {"lib/foo.cpp": "/abs/path/to/preprocessed"},
+ *   "outputs": {"foo.o": "/abs/path/to/foo.o"}
+ * }
+ * </pre>
+ * The paths and the environment are those of a compilation in the project root, {@code PWD}
+ * included, so that the object is the same as one compiled there.  Compilers record the directory
+ * the preprocessor ran in, which is in the preprocessed source, rather than the worker's own.
+ * A worker on another machine ships the inputs there and the outputs back.  The worker run without
+ * a configured command, {@link CxxCompileWorkerMain}, does it all on this machine.
+ */
+public class CxxCompileWorkerPool extends BuiltInWorkerProcessPool {
+
+  private final ObjectMapper objectMapper;
+
+  private CxxCompileWorkerPool(
+      int maxWorkers,
+      HashCode poolHash,
+      ProcessExecutor processExecutor,
+      ImmutableList<String> command,
+      ProjectFilesystem filesystem,
+      ObjectMapper objectMapper) {
+    super(maxWorkers, poolHash, processExecutor, command, filesystem, "cxx-compile-workers");
+    this.objectMapper = objectMapper;
+  }
+
+  /**
+   * Returns the pool for this build, creating it if there is none or if the existing one was
+   * created with different settings.
+   */
+  public static CxxCompileWorkerPool get(
+      ExecutionContext context,
+      ProjectFilesystem filesystem,
+      CxxCompileWorkers workers) {
+    // The stand-in workers run CxxCompileWorkerMain from Buck's own classpath.
+    ImmutableList<String> command = workers.getCommand().orElseGet(
+        () -> getJavaWorkerCommand(Optional.empty(), CxxCompileWorkerMain.class.getName()));
+    return get(
+        context,
+        CxxCompileWorkerPool.class,
+        command,
+        workers.getCount(),
+        poolHash -> new CxxCompileWorkerPool(
+            workers.getCount(),
+            poolHash,
+            context.getProcessExecutor(),
+            command,
+            filesystem,
+            context.getObjectMapper()));
+  }
+
+  /**
+   * Runs the given command in the next available worker.
+   *
+   * @param environment the variables to add to the command's environment
+   * @param inputs map from the names the command reads files by to their absolute paths
+   * @param outputs map from the names the command writes files by to the absolute paths to copy
+   *     them to
+   * @return the command's exit code and output
+   */
+  public WorkerJobResult compile(
+      ImmutableList<String> command,
+      ImmutableMap<String, String> environment,
+      ImmutableMap<String, Path> inputs,
+      ImmutableMap<String, Path> outputs)
+      throws IOException, InterruptedException {
+    return runJob(
+        objectMapper.writeValueAsString(
+            ImmutableMap.of(
+                "command", command,
+                "environment", environment,
+                "inputs", toStrings(inputs),
+                "outputs", toStrings(outputs))));
+  }
+
+  private static ImmutableMap<String, String> toStrings(ImmutableMap<String, Path> paths) {
+    return ImmutableMap.copyOf(Maps.transformValues(paths, Path::toString));
+  }
+}
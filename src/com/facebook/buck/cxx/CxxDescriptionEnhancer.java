@@ -107,6 +107,11 @@ public class CxxDescriptionEnhancer {
       BuildRuleResolver resolver,
       CxxPlatform cxxPlatform,
       boolean shouldCreateHeadersSymlinks) {
+    if (cxxPlatform.getUseHeaderVfsOverlays() &&
+        cxxPlatform.getCpp().resolve(resolver).supportsVfsOverlays() &&
+        cxxPlatform.getCxxpp().resolve(resolver).supportsVfsOverlays()) {
+      return CxxPreprocessables.HeaderMode.VFS_OVERLAY_ONLY;
+    }
     boolean useHeaderMap = (
         cxxPlatform.getCpp().resolve(resolver).supportsHeaderMaps() &&
             cxxPlatform.getCxxpp().resolve(resolver).supportsHeaderMaps());
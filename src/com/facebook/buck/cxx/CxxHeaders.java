@@ -28,7 +28,9 @@ import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
 
 import java.nio.file.Path;
+import java.util.LinkedHashSet;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Encapsulates headers from a single root location.
@@ -47,6 +49,12 @@ public abstract class CxxHeaders implements RuleKeyAppendable {
    */
   public abstract Optional<SourcePath> getHeaderMap();
 
+  /**
+   * @return the path to the optional virtual file system overlay that makes the headers of this
+   *     header pack appear under its root.
+   */
+  public abstract Optional<SourcePath> getVfsOverlay();
+
   /**
    * @return the path to add to the preprocessor search path to find the includes.  This defaults
    *     to the root, but can be overridden to use an alternate path.
@@ -87,7 +95,13 @@ public abstract class CxxHeaders implements RuleKeyAppendable {
     // 2) De-duplicate redundant include paths.
     Multimap<CxxPreprocessables.IncludeType, String> headerMaps = LinkedHashMultimap.create();
     Multimap<CxxPreprocessables.IncludeType, String> roots = LinkedHashMultimap.create();
+    Set<String> vfsOverlays = new LinkedHashSet<>();
     for (CxxHeaders cxxHeaders : cxxHeaderses) {
+      Optional<SourcePath> vfsOverlay = cxxHeaders.getVfsOverlay();
+      if (vfsOverlay.isPresent()) {
+        vfsOverlays.add(
+            resolveSourcePathAndShorten(resolver, vfsOverlay.get(), pathMinimizer).toString());
+      }
       Optional<SourcePath> headerMap = cxxHeaders.getHeaderMap();
       if (headerMap.isPresent()) {
         headerMaps.put(
@@ -107,6 +121,16 @@ public abstract class CxxHeaders implements RuleKeyAppendable {
             CxxPreprocessables.IncludeType.LOCAL,
             CxxPreprocessables.IncludeType.SYSTEM);
 
+    // The overlays make the include roots of their header packs exist, so they go before any of
+    // those.
+    if (!vfsOverlays.isEmpty()) {
+      Preconditions.checkState(
+          preprocessor.supportsVfsOverlays(),
+          "VFS overlays were requested, but are not supported by %s",
+          preprocessor.getClass());
+      args.addAll(preprocessor.vfsOverlayArgs(vfsOverlays));
+    }
+
     // Apply the header maps first, so that headers that matching there avoid falling back to
     // stat'ing files in the normal include roots.
     Preconditions.checkState(includeTypes.containsAll(headerMaps.keySet()));
@@ -629,7 +629,7 @@ public class CxxLibraryDescription implements
         params,
         ruleFinder,
         cxxPlatform,
-        cxxBuckConfig.getArchiveContents(),
+        cxxBuckConfig.getArchiveContents(cxxPlatform.getAr()),
         staticLibraryPath,
         ImmutableList.copyOf(objects.values()));
   }
@@ -56,9 +56,7 @@ public class CxxPlatforms {
     if (config.shouldUseSharedLibraryInterfaces()) {
       switch (platform) {
         case LINUX:
-          sharedLibraryInterfaceFactory =
-              Optional.of(
-                  ElfSharedLibraryInterfaceFactory.of(config.getToolProvider("objcopy").get()));
+          sharedLibraryInterfaceFactory = Optional.of(ElfSharedLibraryInterfaceFactory.of());
           break;
         // $CASES-OMITTED$
         default:
@@ -130,7 +128,8 @@ public class CxxPlatforms {
         .setAssemblerDebugPathSanitizer(assemblerDebugPathSanitizer)
         .setFlagMacros(flagMacros)
         .setBinaryExtension(binaryExtension)
-        .setHeaderVerification(headerVerification);
+        .setHeaderVerification(headerVerification)
+        .setUseHeaderVfsOverlays(config.shouldUseHeaderVfsOverlays());
 
 
     builder.setSymbolNameTool(new LazyDelegatingSymbolNameTool(() -> {
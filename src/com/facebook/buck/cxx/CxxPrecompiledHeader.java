@@ -38,13 +38,21 @@ import com.google.common.base.Throwables;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Predicate;
 
@@ -76,6 +84,28 @@ public class CxxPrecompiledHeader
     extends AbstractBuildRule
     implements SupportsDependencyFileRuleKey, SupportsInputBasedRuleKey {
 
+  // Flags which take their argument as the next flag.
+  private static final ImmutableSet<String> FLAGS_WITH_SEPARATE_ARGUMENT =
+      ImmutableSet.of(
+          "-Xassembler",
+          "-Xclang",
+          "-Xlinker",
+          "-Xpreprocessor",
+          "-arch",
+          "-I",
+          "-F",
+          "-idirafter",
+          "-imacros",
+          "-include",
+          "-include-pch",
+          "-iquote",
+          "-isysroot",
+          "-isystem",
+          "-ivfsoverlay",
+          "-mllvm",
+          "-target",
+          "-x");
+
   // Fields that are added to rule key as is.
   @AddToRuleKey
   private final PreprocessorDelegate preprocessorDelegate;
@@ -260,7 +290,76 @@ public class CxxPrecompiledHeader
         assemblerSanitizer,
         scratchDir,
         /* useArgFile*/ true,
-        compilerDelegate.getCompiler());
+        compilerDelegate.getCompiler(),
+        Optional.empty(),
+        Optional.empty());
+  }
+
+  /**
+   * Reduces the given flags to those which decide whether a precompiled header built with them can
+   * be used by a compilation, so that rules whose flags only differ in other ways can share it:
+   * <ul>
+   *   <li>Flags which only affect diagnostics, such as {@code -W} flags, are dropped.</li>
+   *   <li>Flags given more than once are only kept where they last appear.</li>
+   *   <li>
+   *     Only the last {@code -D} or {@code -U} of each macro is kept, and these are sorted by the
+   *     name of the macro and placed last, as the compiler processes them before the source
+   *     anyway.
+   *   </li>
+   * </ul>
+   * Flags which take their argument as the next flag are left as they are.
+   */
+  public static CxxToolFlags getCompatibilityFlags(CxxToolFlags flags) {
+    List<ImmutableList<String>> groups = new ArrayList<>();
+    Map<String, String> macros = new TreeMap<>();
+    Iterator<String> it = flags.getAllFlags().iterator();
+    while (it.hasNext()) {
+      String flag = it.next();
+      if ((flag.equals("-D") || flag.equals("-U")) && it.hasNext()) {
+        putMacro(macros, flag + it.next());
+      } else if (flag.startsWith("-D") || flag.startsWith("-U")) {
+        putMacro(macros, flag);
+      } else if (FLAGS_WITH_SEPARATE_ARGUMENT.contains(flag) && it.hasNext()) {
+        groups.add(ImmutableList.of(flag, it.next()));
+      } else if (!isDiagnosticFlag(flag)) {
+        groups.add(ImmutableList.of(flag));
+      }
+    }
+
+    // Walk backwards to keep the last of each repeated flag.
+    Set<String> seen = new HashSet<>();
+    List<ImmutableList<String>> kept = new ArrayList<>();
+    for (ImmutableList<String> group : Lists.reverse(groups)) {
+      if (group.size() > 1 || seen.add(group.get(0))) {
+        kept.add(group);
+      }
+    }
+
+    ImmutableList.Builder<String> compatibilityFlags = ImmutableList.builder();
+    for (ImmutableList<String> group : Lists.reverse(kept)) {
+      compatibilityFlags.addAll(group);
+    }
+    compatibilityFlags.addAll(macros.values());
+    return CxxToolFlags.explicitBuilder().addAllRuleFlags(compatibilityFlags.build()).build();
+  }
+
+  private static void putMacro(Map<String, String> macros, String flag) {
+    String definition = flag.substring(2);
+    int equals = definition.indexOf('=');
+    macros.put(equals < 0 ? definition : definition.substring(0, equals), flag);
+  }
+
+  private static boolean isDiagnosticFlag(String flag) {
+    if (flag.startsWith("-W")) {
+      // These pass flags through to the assembler, linker and preprocessor.
+      return !flag.startsWith("-Wa,") && !flag.startsWith("-Wl,") && !flag.startsWith("-Wp,");
+    }
+    return flag.equals("-w") ||
+        flag.equals("-fcolor-diagnostics") ||
+        flag.equals("-fno-color-diagnostics") ||
+        flag.startsWith("-fdiagnostics-") ||
+        flag.startsWith("-fmessage-length=") ||
+        flag.startsWith("-ferror-limit=");
   }
 
   /**
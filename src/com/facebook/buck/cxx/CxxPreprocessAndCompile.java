@@ -66,6 +66,8 @@ public class CxxPreprocessAndCompile
   private final DebugPathSanitizer compilerSanitizer;
   private final DebugPathSanitizer assemblerSanitizer;
   private final Optional<SymlinkTree> sandboxTree;
+  private final Optional<CxxPreprocessedOutputCache> preprocessedOutputCache;
+  private final Optional<CxxCompileWorkers> compileWorkers;
 
   @VisibleForTesting
   public CxxPreprocessAndCompile(
@@ -79,7 +81,9 @@ public class CxxPreprocessAndCompile
       Optional<CxxPrecompiledHeader> precompiledHeaderRule,
       DebugPathSanitizer compilerSanitizer,
       DebugPathSanitizer assemblerSanitizer,
-      Optional<SymlinkTree> sandboxTree) {
+      Optional<SymlinkTree> sandboxTree,
+      Optional<CxxPreprocessedOutputCache> preprocessedOutputCache,
+      Optional<CxxCompileWorkers> compileWorkers) {
     super(params);
     this.sandboxTree = sandboxTree;
     Preconditions.checkState(operation.isPreprocess() == preprocessDelegate.isPresent());
@@ -97,6 +101,8 @@ public class CxxPreprocessAndCompile
     this.precompiledHeaderRule = precompiledHeaderRule;
     this.compilerSanitizer = compilerSanitizer;
     this.assemblerSanitizer = assemblerSanitizer;
+    this.preprocessedOutputCache = preprocessedOutputCache;
+    this.compileWorkers = compileWorkers;
     performChecks(params);
   }
 
@@ -135,7 +141,9 @@ public class CxxPreprocessAndCompile
         Optional.empty(),
         compilerSanitizer,
         assemblerSanitizer,
-        sandboxTree);
+        sandboxTree,
+        Optional.empty(),
+        Optional.empty());
   }
 
   /**
@@ -151,7 +159,9 @@ public class CxxPreprocessAndCompile
       Optional<CxxPrecompiledHeader> precompiledHeaderRule,
       DebugPathSanitizer compilerSanitizer,
       DebugPathSanitizer assemblerSanitizer,
-      Optional<SymlinkTree> sandboxTree) {
+      Optional<SymlinkTree> sandboxTree,
+      Optional<CxxPreprocessedOutputCache> preprocessedOutputCache,
+      Optional<CxxCompileWorkers> compileWorkers) {
     return new CxxPreprocessAndCompile(
         params,
         CxxPreprocessAndCompileStep.Operation.PREPROCESS_AND_COMPILE,
@@ -163,7 +173,9 @@ public class CxxPreprocessAndCompile
         precompiledHeaderRule,
         compilerSanitizer,
         assemblerSanitizer,
-        sandboxTree);
+        sandboxTree,
+        preprocessedOutputCache,
+        compileWorkers);
   }
 
   @Override
@@ -234,6 +246,10 @@ public class CxxPreprocessAndCompile
       compilerCommand = Optional.empty();
     }
 
+    // What the precompiled header declares is not in the preprocessed source, so that source
+    // neither identifies the object nor is all a worker would need to compile it.
+    boolean canPreprocessFirst = !precompiledHeaderRule.isPresent();
+
     return new CxxPreprocessAndCompileStep(
         getProjectFilesystem(),
         operation,
@@ -248,7 +264,9 @@ public class CxxPreprocessAndCompile
         assemblerSanitizer,
         scratchDir,
         useArgfile,
-        compilerDelegate.getCompiler());
+        compilerDelegate.getCompiler(),
+        canPreprocessFirst ? preprocessedOutputCache : Optional.empty(),
+        canPreprocessFirst ? compileWorkers : Optional.empty());
   }
 
   public Path getRelativeInputPathIfPossible(SourcePathResolver resolver) {
@@ -17,8 +17,13 @@
 package com.facebook.buck.cxx;
 
 import com.facebook.buck.event.ConsoleEvent;
+import com.facebook.buck.event.PerfEventId;
+import com.facebook.buck.event.SimplePerfEvent;
+import com.facebook.buck.io.ExecutableFinder;
+import com.facebook.buck.io.PathListing;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
+import com.facebook.buck.shell.WorkerJobResult;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
@@ -36,14 +41,24 @@ import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 /**
@@ -53,6 +68,11 @@ public class CxxPreprocessAndCompileStep implements Step {
 
   private static final Logger LOG = Logger.get(CxxPreprocessAndCompileStep.class);
 
+  /**
+   * The number of directories the objects in the preprocessed output cache are spread over.
+   */
+  private static final int CACHE_DIRECTORIES = 256;
+
   private final ProjectFilesystem filesystem;
   private final Operation operation;
   private final Path output;
@@ -72,6 +92,18 @@ public class CxxPreprocessAndCompileStep implements Step {
   private final Path scratchDir;
   private final boolean useArgfile;
 
+  /**
+   * Objects keyed by the hash of the preprocessed source they were compiled from, if compiled
+   * objects should be looked up there before running the compiler.
+   */
+  private final Optional<CxxPreprocessedOutputCache> preprocessedOutputCache;
+
+  /**
+   * Workers to compile the preprocessed source in, instead of compiling in a process of this
+   * step's own.
+   */
+  private final Optional<CxxCompileWorkers> compileWorkers;
+
   private static final FileLastModifiedDateContentsScrubber FILE_LAST_MODIFIED_DATE_SCRUBBER =
       new FileLastModifiedDateContentsScrubber();
 
@@ -89,7 +121,9 @@ public class CxxPreprocessAndCompileStep implements Step {
       DebugPathSanitizer assemblerSanitizer,
       Path scratchDir,
       boolean useArgfile,
-      Compiler compiler) {
+      Compiler compiler,
+      Optional<CxxPreprocessedOutputCache> preprocessedOutputCache,
+      Optional<CxxCompileWorkers> compileWorkers) {
     Preconditions.checkState(operation.isPreprocess() == preprocessorCommand.isPresent());
     Preconditions.checkState(operation.isCompile() == compilerCommand.isPresent());
 
@@ -107,6 +141,8 @@ public class CxxPreprocessAndCompileStep implements Step {
     this.scratchDir = scratchDir;
     this.useArgfile = useArgfile;
     this.compiler = compiler;
+    this.preprocessedOutputCache = preprocessedOutputCache;
+    this.compileWorkers = compileWorkers;
   }
 
   @Override
@@ -190,26 +226,51 @@ public class CxxPreprocessAndCompileStep implements Step {
         .build();
   }
 
+  private ImmutableList<String> makePreprocessArguments(
+      Path preprocessedOutput,
+      boolean allowColorsInDiagnostics) {
+    return ImmutableList.<String>builder()
+        .addAll(compilerCommand.get().getArguments(allowColorsInDiagnostics))
+        .addAll(getLanguageArgs(inputType.getLanguage()))
+        .addAll(getSanitizer().getCompilationFlags())
+        .add("-E")
+        // The dep file is written while preprocessing, so it is there even if compilation is
+        // skipped.
+        .addAll(getDepFileArgs(depFile))
+        .add(input.toString())
+        .addAll(compiler.outputArgs(preprocessedOutput.toString()))
+        .build();
+  }
+
   private int executeCompilation(ExecutionContext context) throws Exception {
+    return executeCommand(
+        context,
+        getArguments(context.getAnsi().isAnsiTerminal()),
+        getArgfile());
+  }
+
+  private int executeCommand(
+      ExecutionContext context,
+      ImmutableList<String> arguments,
+      Path argfile)
+      throws Exception {
     ProcessExecutorParams.Builder builder =
         makeSubprocessBuilder(context, ImmutableMap.of());
 
     if (useArgfile) {
       filesystem.writeLinesToPath(
-          Iterables.transform(
-              getArguments(context.getAnsi().isAnsiTerminal()),
-              Escaper.ARGFILE_ESCAPER),
-          getArgfile());
+          Iterables.transform(arguments, Escaper.ARGFILE_ESCAPER),
+          argfile);
       builder.setCommand(
           ImmutableList.<String>builder()
               .addAll(getCommandPrefix())
-              .add("@" + getArgfile())
+              .add("@" + argfile)
               .build());
     } else {
       builder.setCommand(
           ImmutableList.<String>builder()
               .addAll(getCommandPrefix())
-              .addAll(getArguments(context.getAnsi().isAnsiTerminal()))
+              .addAll(arguments)
               .build());
     }
 
@@ -218,7 +279,9 @@ public class CxxPreprocessAndCompileStep implements Step {
     LOG.debug(
         "Running command (pwd=%s): %s",
         params.getDirectory(),
-        getDescription(context));
+        context.getVerbosity().shouldPrintCommand() ?
+            Joiner.on(' ').join(Iterables.transform(params.getCommand(), Escaper.SHELL_ESCAPER)) :
+            "(verbosity level disables command output)");
 
     // Start the process.
     ProcessExecutor executor = new DefaultProcessExecutor(Console.createNullConsole());
@@ -284,36 +347,261 @@ public class CxxPreprocessAndCompileStep implements Step {
     try {
       LOG.debug("%s %s -> %s", operation.toString().toLowerCase(), input, output);
 
-      int exitCode = executeCompilation(context);
-
-      // If the compilation completed successfully and we didn't effect debug-info normalization
-      // through #line directive modification, perform the in-place update of the compilation per
-      // above.  This locates the relevant debug section and swaps out the expanded actual
-      // compilation directory with the one we really want.
-      if (exitCode == 0 && shouldSanitizeOutputBinary()) {
-        try {
-          Path path = filesystem.getRootPath().toAbsolutePath().resolve(output);
-          getSanitizer().restoreCompilationDirectory(
-              path,
-              filesystem.getRootPath().toAbsolutePath());
-          FILE_LAST_MODIFIED_DATE_SCRUBBER.scrubFileWithPath(path);
-        } catch (IOException e) {
-          context.logError(e, "error updating compilation directory");
-          return StepExecutionResult.ERROR;
-        }
+      if (shouldPreprocessFirst()) {
+        return executePreprocessingFirst(context);
       }
+      return StepExecutionResult.of(executeAndSanitizeCompilation(context));
 
+    } catch (Exception e) {
+      MoreThrowables.propagateIfInterrupt(e);
+      context.logError(e, "Build error caused by exception");
+      return StepExecutionResult.ERROR;
+    }
+  }
+
+  private int executeAndSanitizeCompilation(ExecutionContext context) throws Exception {
+    return sanitizeCompilationOutput(context, executeCompilation(context));
+  }
+
+  private int sanitizeCompilationOutput(ExecutionContext context, int exitCode) {
+    // If the compilation completed successfully and we didn't effect debug-info normalization
+    // through #line directive modification, perform the in-place update of the compilation per
+    // above.  This locates the relevant debug section and swaps out the expanded actual
+    // compilation directory with the one we really want.
+    if (exitCode == 0 && shouldSanitizeOutputBinary()) {
+      try {
+        Path path = filesystem.getRootPath().toAbsolutePath().resolve(output);
+        getSanitizer().restoreCompilationDirectory(
+            path,
+            filesystem.getRootPath().toAbsolutePath());
+        FILE_LAST_MODIFIED_DATE_SCRUBBER.scrubFileWithPath(path);
+      } catch (IOException e) {
+        context.logError(e, "error updating compilation directory");
+        return StepExecutionResult.ERROR.getExitCode();
+      }
+    }
+
+    if (exitCode != 0) {
+      LOG.warn("error %d %s %s", exitCode, operation.toString().toLowerCase(), input);
+    }
+
+    return exitCode;
+  }
+
+  @VisibleForTesting
+  boolean shouldPreprocessFirst() {
+    return (preprocessedOutputCache.isPresent() || compileWorkers.isPresent()) &&
+        operation == Operation.PREPROCESS_AND_COMPILE &&
+        inputType.isPreprocessable();
+  }
+
+  /**
+   * Runs only the preprocessor first.  The object compiled from the same preprocessed source with
+   * the same flags is then looked up, so that changes which do not change what the compiler sees
+   * (to comments, or to headers that are not included) do not cause recompilation.  Otherwise, the
+   * preprocessed source is what is sent to the compile workers, as it needs no other inputs.
+   */
+  private StepExecutionResult executePreprocessingFirst(ExecutionContext context)
+      throws Exception {
+    try (SimplePerfEvent.Scope scope = SimplePerfEvent.scope(
+        context.getBuckEventBus(),
+        PerfEventId.of("cxx_preprocessed_output_cache"),
+        "input",
+        input.toString())) {
+      Path preprocessedOutput = scratchDir.resolve("preprocessed");
+      long preprocessStart = System.nanoTime();
+      int exitCode = executeCommand(
+          context,
+          makePreprocessArguments(preprocessedOutput, context.getAnsi().isAnsiTerminal()),
+          filesystem.resolve(scratchDir).resolve("preprocess.argsfile"));
       if (exitCode != 0) {
-        LOG.warn("error %d %s %s", exitCode, operation.toString().toLowerCase(), input);
+        LOG.warn("error %d preprocessing %s", exitCode, input);
+        return StepExecutionResult.of(exitCode);
+      }
+      Optional<Path> cachedOutput = Optional.empty();
+      if (preprocessedOutputCache.isPresent()) {
+        Optional<HashCode> key;
+        try (InputStream inputStream = filesystem.newFileInputStream(preprocessedOutput)) {
+          // Preprocessed sources need not be UTF-8, so decode them in a way that keeps every byte.
+          key = getPreprocessedOutputKey(
+              context.getEnvironment(),
+              new String(ByteStreams.toByteArray(inputStream), StandardCharsets.ISO_8859_1));
+        }
+        cachedOutput = key.map(
+            hash -> preprocessedOutputCache.get().getDirectory()
+                .resolve(hash.toString().substring(0, 2))
+                .resolve(hash + ".o"));
+      }
+      scope.appendFinishedInfo(
+          "preprocess_millis",
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - preprocessStart));
+
+      if (cachedOutput.isPresent()) {
+        if (filesystem.isFile(cachedOutput.get())) {
+          LOG.debug("Using %s for %s", cachedOutput.get(), input);
+          try {
+            filesystem.copyFile(cachedOutput.get(), output);
+            // The objects used least recently are the first to be deleted.
+            filesystem.setLastModifiedTime(
+                cachedOutput.get(),
+                FileTime.fromMillis(System.currentTimeMillis()));
+            scope.appendFinishedInfo("hit", true);
+            return StepExecutionResult.SUCCESS;
+          } catch (NoSuchFileException e) {
+            LOG.debug("%s was deleted while it was being used", cachedOutput.get());
+          }
+        }
+        scope.appendFinishedInfo("hit", false);
       }
 
+      if (compileWorkers.isPresent()) {
+        scope.appendFinishedInfo("compile_worker", true);
+        exitCode = sanitizeCompilationOutput(
+            context,
+            compileInWorker(context, preprocessedOutput));
+      } else {
+        exitCode = executeAndSanitizeCompilation(context);
+      }
+      if (exitCode == 0 && cachedOutput.isPresent()) {
+        // Other builds may be reading or writing the same object, so only ever move a complete
+        // one into place.
+        Path cacheDir = cachedOutput.get().getParent();
+        filesystem.mkdirs(cacheDir);
+        Path tmp = filesystem.createTempFile(cacheDir, "object", ".tmp");
+        filesystem.copyFile(output, tmp);
+        filesystem.move(
+            tmp,
+            cachedOutput.get(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        trimPreprocessedOutputCache(cacheDir);
+      }
       return StepExecutionResult.of(exitCode);
+    }
+  }
 
-    } catch (Exception e) {
-      MoreThrowables.propagateIfInterrupt(e);
-      context.logError(e, "Build error caused by exception");
-      return StepExecutionResult.ERROR;
+  /**
+   * Deletes the objects used least recently from the given directory of the cache until it fits in
+   * its share of the cache's size.  The objects are spread over directories by the first byte of
+   * their keys, so that each object stored only makes this look through a small part of the
+   * cache.
+   */
+  private void trimPreprocessedOutputCache(Path cacheDir) throws IOException {
+    for (Path object : PathListing.listMatchingPathsWithFilters(
+        filesystem.resolve(cacheDir),
+        "*.o",
+        PathListing.GET_PATH_MODIFIED_TIME,
+        PathListing.FilterMode.EXCLUDE,
+        Optional.empty(),
+        Optional.of(preprocessedOutputCache.get().getMaxSizeBytes() / CACHE_DIRECTORIES))) {
+      filesystem.deleteFileAtPathIfExists(object);
+    }
+  }
+
+  /**
+   * Compiles the preprocessed source in one of the compile workers, which may be on another
+   * machine: the worker is sent the preprocessed source, which is all the compiler reads, and
+   * sends back the object.  The dep file was already written by the preprocessor.
+   */
+  private int compileInWorker(ExecutionContext context, Path preprocessedOutput)
+      throws IOException, InterruptedException {
+    // The worker compiles in a directory of its own, but under the paths and with the environment
+    // of a compilation here, so that the object it sends back is the same.
+    String workerInput = getWorkerPath(input);
+    String workerOutput = getWorkerPath(output);
+    ImmutableList<String> command = ImmutableList.<String>builder()
+        .addAll(getCommandPrefix())
+        .addAll(compilerCommand.get().getArguments(context.getAnsi().isAnsiTerminal()))
+        .addAll(getLanguageArgs(inputType.getPreprocessedLanguage()))
+        .addAll(getSanitizer().getCompilationFlags())
+        .add("-c")
+        .add(workerInput)
+        .addAll(compiler.outputArgs(workerOutput))
+        .build();
+
+    WorkerJobResult result = CxxCompileWorkerPool.get(context, filesystem, compileWorkers.get())
+        .compile(
+            command,
+            getSanitizer().getCompilationEnvironment(
+                filesystem.getRootPath().toAbsolutePath(),
+                shouldSanitizeOutputBinary()),
+            ImmutableMap.of(workerInput, filesystem.resolve(preprocessedOutput)),
+            ImmutableMap.of(workerOutput, filesystem.resolve(output)));
+
+    String err = result.getStderr().orElse("");
+    if (!err.isEmpty()) {
+      context.getBuckEventBus().post(
+          createConsoleEvent(
+              context,
+              compilerCommand.get().supportsColorsInDiagnostics(),
+              result.getExitCode() == 0 ? Level.WARNING : Level.SEVERE,
+              err));
+    }
+    return result.getExitCode();
+  }
+
+  /**
+   * @return the path a worker's command names the given file by: its path relative to the project
+   *     root when it is in the project, otherwise only its name.
+   */
+  private static String getWorkerPath(Path path) {
+    Path normalized = path.normalize();
+    if (normalized.isAbsolute() || normalized.startsWith("..")) {
+      return path.getFileName().toString();
+    }
+    return normalized.toString();
+  }
+
+  /**
+   * @return the key of the object compiled from the given preprocessed source with this step's
+   *     compiler and flags, with the paths in them sanitized so that it is the same in all
+   *     checkouts, or nothing if the compiler's binary cannot be found to tell it apart from other
+   *     versions of it.
+   */
+  @VisibleForTesting
+  Optional<HashCode> getPreprocessedOutputKey(
+      ImmutableMap<String, String> environment,
+      String preprocessedOutput) throws IOException {
+    Optional<Path> compilerPath = getCompilerBinary(environment);
+    if (!compilerPath.isPresent()) {
+      LOG.debug("Not caching %s, as %s was not found", input, getCommandPrefix().get(0));
+      return Optional.empty();
+    }
+    Optional<Path> workingDir = Optional.of(filesystem.getRootPath().toAbsolutePath());
+    Hasher hasher = Hashing.sha1().newHasher();
+    for (String part : getCommandPrefix()) {
+      hasher.putString(part, StandardCharsets.UTF_8).putByte((byte) 0);
+    }
+    // Like ccache, identify the compiler by the size and modification time of its binary, as the
+    // rule key that tracks its contents is not part of the key.
+    hasher.putLong(filesystem.getFileSize(compilerPath.get()));
+    hasher.putLong(filesystem.getLastModifiedTime(compilerPath.get()));
+    for (String argument : Iterables.concat(
+        compilerCommand.get().getArguments(false),
+        getLanguageArgs(inputType.getLanguage()),
+        getSanitizer().getCompilationFlags())) {
+      hasher
+          .putString(getSanitizer().sanitize(workingDir, argument), StandardCharsets.UTF_8)
+          .putByte((byte) 0);
+    }
+    hasher.putString(
+        getSanitizer().sanitize(workingDir, preprocessedOutput),
+        StandardCharsets.ISO_8859_1);
+    return Optional.of(hasher.hash());
+  }
+
+  /**
+   * @return the absolute path of the binary the compiler command runs, which is looked up on the
+   *     {@code PATH} when the command names it without a directory.
+   */
+  private Optional<Path> getCompilerBinary(ImmutableMap<String, String> environment) {
+    Path compiler = filesystem.getRootPath().getFileSystem().getPath(getCommandPrefix().get(0));
+    if (compiler.getNameCount() > 1 || compiler.isAbsolute()) {
+      Path resolved = filesystem.getRootPath().toAbsolutePath().resolve(compiler).normalize();
+      return filesystem.isFile(resolved) ? Optional.of(resolved) : Optional.empty();
     }
+    return new ExecutableFinder().getOptionalExecutable(compiler, environment)
+        .map(Path::toAbsolutePath);
   }
 
   public ImmutableList<String> getCommand() {
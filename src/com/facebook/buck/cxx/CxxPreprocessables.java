@@ -69,6 +69,11 @@ public class CxxPreprocessables {
      * references the symbolic links to the headers.
      */
     SYMLINK_TREE_WITH_HEADER_MAP,
+    /**
+     * Creates a clang virtual file system overlay that makes the headers appear at their paths
+     * in the tree, without creating the tree or any symbolic links on disk.
+     */
+    VFS_OVERLAY_ONLY,
     ;
 
     private final Flavor flavor;
@@ -216,6 +221,13 @@ public class CxxPreprocessables {
             root,
             links,
             ruleFinder);
+      case VFS_OVERLAY_ONLY:
+        return new HeaderVfsOverlay(
+            target,
+            filesystem,
+            root,
+            links,
+            ruleFinder);
       default:
       case SYMLINK_TREE_ONLY:
         return new HeaderSymlinkTree(
@@ -29,10 +29,10 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.CharBuffer;
 import java.nio.file.Path;
 import java.util.Objects;
@@ -58,7 +58,7 @@ public class Depfiles {
       ADD_PREREQ
   }
 
-  private static final String WHITESPACE_CHARS = " \n\r\t";
+  private static final int BUFFER_SIZE = 64 * 1024;
   private static final String ESCAPED_TARGET_CHARS = ": #";
   private static final String ESCAPED_PREREQ_CHARS = " #";
 
@@ -72,19 +72,33 @@ public class Depfiles {
     State state = State.LOOKING_FOR_TARGET;
     StringBuilder identifierBuilder = new StringBuilder();
 
-    CharBuffer buffer = CharBuffer.allocate(4096);
+    CharBuffer buffer = CharBuffer.allocate(BUFFER_SIZE);
+    char[] chars = buffer.array();
     int numBackslashes = 0;
 
     while (readable.read(buffer) != -1) {
       buffer.flip();
+      int length = buffer.limit();
+
+      for (int index = 0; index < length; index++) {
+        char c = chars[index];
+        if (numBackslashes == 0 && isIdentifierChar(c, state)) {
+          // Most characters are part of a path and need no unescaping: copy the run of them at
+          // once.
+          int end = index + 1;
+          while (end < length && isIdentifierChar(chars[end], state)) {
+            end++;
+          }
+          identifierBuilder.append(chars, index, end - index);
+          index = end - 1;
+          continue;
+        }
 
-      while (buffer.hasRemaining()) {
-        char c = buffer.get();
         Action action = Action.NONE;
         boolean isBackslash = c == '\\';
         boolean isCarriageReturn = c == '\r';
         boolean isNewline = c == '\n';
-        boolean isWhitespace = WHITESPACE_CHARS.indexOf(c) != -1;
+        boolean isWhitespace = isWhitespace(c);
         boolean inIdentifier = identifierBuilder.length() > 0;
         boolean isEscaped;
         if (state == State.LOOKING_FOR_TARGET) {
@@ -172,6 +186,18 @@ public class Depfiles {
     }
   }
 
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+  }
+
+  /**
+   * @return whether {@code c}, when not preceded by a backslash, is simply appended to the
+   *     identifier being parsed.
+   */
+  private static boolean isIdentifierChar(char c, State state) {
+    return c != '\\' && !isWhitespace(c) && !(c == ':' && state == State.LOOKING_FOR_TARGET);
+  }
+
   /**
    * Reads and processes {@code .dep} file produced by a cxx compiler.
    *
@@ -208,7 +234,7 @@ public class Depfiles {
     Logger.get(Depfiles.class).debug("Processing dependency file %s as Makefile", sourceDepFile);
     ImmutableList.Builder<Path> resultBuilder = ImmutableList.builder();
     try (InputStream input = filesystem.newFileInputStream(sourceDepFile);
-         BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+         Reader reader = new InputStreamReader(input);
          SimplePerfEvent.Scope perfEvent = SimplePerfEvent.scope(
              eventBus,
              PerfEventId.of("depfile-parse"),
@@ -233,7 +259,7 @@ public class Depfiles {
       Iterable<String> headers = Iterables.skip(prereqs, inputIndex + 1);
 
       for (String rawHeader : headers) {
-        Path header = filesystem.resolve(rawHeader).normalize();
+        Path header = headerPathNormalizer.getDepFileHeaderPath(filesystem, rawHeader);
         Optional<Path> absolutePath =
             headerPathNormalizer.getAbsolutePathForUnnormalizedPath(header);
         Optional<Path> repoRelativePath = filesystem.getPathRelativeToProjectRoot(header);
@@ -21,14 +21,12 @@ import com.facebook.buck.model.BuildTargets;
 import com.facebook.buck.rules.AbstractBuildRuleWithResolver;
 import com.facebook.buck.rules.AddToRuleKey;
 import com.facebook.buck.rules.BuildContext;
-import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildableContext;
 import com.facebook.buck.rules.ExplicitBuildTargetSourcePath;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
-import com.facebook.buck.rules.Tool;
 import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
@@ -40,7 +38,11 @@ import com.google.common.collect.ImmutableSortedSet;
 import java.nio.file.Path;
 
 /**
- * Build a shared library interface from an ELF shared library.
+ * Build a shared library interface from an ELF shared library, by copying only the sections
+ * relevant to dynamic linking into a new file and scrubbing them of anything that changes with the
+ * library's code.  The interface changes only when the library's dynamic symbols or dependencies
+ * do, so, as its contents feed the input-based rule keys of the links that use it, most changes to
+ * the library don't cause anything which links against it to relink.
  */
 class ElfSharedLibraryInterface
     extends AbstractBuildRuleWithResolver
@@ -57,8 +59,6 @@ class ElfSharedLibraryInterface
           ".gnu.version_r");
 
   private final SourcePathResolver pathResolver;
-  @AddToRuleKey
-  private final Tool objcopy;
 
   @AddToRuleKey
   private final SourcePath input;
@@ -66,11 +66,9 @@ class ElfSharedLibraryInterface
   private ElfSharedLibraryInterface(
       BuildRuleParams buildRuleParams,
       SourcePathResolver resolver,
-      Tool objcopy,
       SourcePath input) {
     super(buildRuleParams, resolver);
     this.pathResolver = resolver;
-    this.objcopy = objcopy;
     this.input = input;
   }
 
@@ -79,20 +77,15 @@ class ElfSharedLibraryInterface
       BuildRuleParams baseParams,
       SourcePathResolver resolver,
       SourcePathRuleFinder ruleFinder,
-      Tool objcopy,
       SourcePath input) {
     return new ElfSharedLibraryInterface(
         baseParams
             .withBuildTarget(target)
             .copyReplacingDeclaredAndExtraDeps(
                 Suppliers.ofInstance(
-                    ImmutableSortedSet.<BuildRule>naturalOrder()
-                        .addAll(objcopy.getDeps(ruleFinder))
-                        .addAll(ruleFinder.filterBuildRuleInputs(input))
-                        .build()),
+                    ImmutableSortedSet.copyOf(ruleFinder.filterBuildRuleInputs(input))),
                 Suppliers.ofInstance(ImmutableSortedSet.of())),
         resolver,
-        objcopy,
         input);
   }
 
@@ -112,23 +105,16 @@ class ElfSharedLibraryInterface
     buildableContext.recordArtifact(output);
     return ImmutableList.of(
         new MakeCleanDirectoryStep(getProjectFilesystem(), getOutputDir()),
-        ElfExtractSectionsStep.of(
+        ElfCompactSectionsStep.of(
             getProjectFilesystem(),
-            objcopy.getCommandPrefix(context.getSourcePathResolver()),
             context.getSourcePathResolver().getAbsolutePath(input),
             output,
             SECTIONS),
-        ElfClearProgramHeadersStep.of(getProjectFilesystem(), output),
         ElfSymbolTableScrubberStep.of(
             getProjectFilesystem(),
             output,
             /* section */ ".dynsym",
             /* allowMissing */ false),
-        ElfSymbolTableScrubberStep.of(
-            getProjectFilesystem(),
-            output,
-            /* section */ ".symtab",
-            /* allowMissing */ true),
         ElfDynamicSectionScrubberStep.of(getProjectFilesystem(), output));
   }
 
@@ -47,6 +47,11 @@ public class GnuArchiver implements Archiver {
     return true;
   }
 
+  @Override
+  public boolean supportsArchiveWriter() {
+    return true;
+  }
+
   @Override
   public ImmutableList<String> getArchiveOptions(boolean isThinArchive) {
     String options = isThinArchive ? "qcT" : "qc";
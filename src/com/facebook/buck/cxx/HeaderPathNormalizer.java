@@ -17,6 +17,7 @@
 package com.facebook.buck.cxx;
 
 import com.facebook.buck.io.MorePaths;
+import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.google.common.base.Preconditions;
@@ -27,6 +28,8 @@ import java.util.AbstractMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class HeaderPathNormalizer {
 
@@ -44,6 +47,19 @@ public class HeaderPathNormalizer {
    */
   private final ImmutableMap<Path, SourcePath> normalized;
 
+  /**
+   * Results of {@link #getAbsolutePathForUnnormalizedPath(Path)}, as the same headers are looked up
+   * for each source preprocessed with this normalizer.
+   */
+  private final ConcurrentMap<Path, Optional<Path>> absolutePaths = new ConcurrentHashMap<>();
+
+  /**
+   * Results of {@link #getDepFileHeaderPath(ProjectFilesystem, String)}, as the dep files of the
+   * sources preprocessed with this normalizer mostly name the same headers.  They are dropped with
+   * the normalizer, and so with the rules that use it.
+   */
+  private final ConcurrentMap<String, Path> depFileHeaderPaths = new ConcurrentHashMap<>();
+
   protected HeaderPathNormalizer(
       SourcePathResolver pathResolver,
       ImmutableMap<Path, SourcePath> headers,
@@ -73,6 +89,10 @@ public class HeaderPathNormalizer {
 
   public Optional<Path> getAbsolutePathForUnnormalizedPath(Path unnormalizedPath) {
     Preconditions.checkArgument(unnormalizedPath.isAbsolute());
+    return absolutePaths.computeIfAbsent(unnormalizedPath, this::lookUpAbsolutePath);
+  }
+
+  private Optional<Path> lookUpAbsolutePath(Path unnormalizedPath) {
     Optional<Map.Entry<Path, SourcePath>> result = pathLookup(unnormalizedPath, normalized);
     if (!result.isPresent()) {
       return Optional.empty();
@@ -82,6 +102,17 @@ public class HeaderPathNormalizer {
             .resolve(result.get().getKey().relativize(unnormalizedPath)));
   }
 
+  /**
+   * @param filesystem the filesystem of the rules preprocessing with this normalizer
+   * @param rawHeader a header as named in a dep file
+   * @return {@code filesystem.resolve(rawHeader).normalize()}
+   */
+  public Path getDepFileHeaderPath(ProjectFilesystem filesystem, String rawHeader) {
+    return depFileHeaderPaths.computeIfAbsent(
+        rawHeader,
+        header -> filesystem.resolve(header).normalize());
+  }
+
   /**
    * @return the {@link SourcePath} which corresponds to the given absolute path.
    */
@@ -54,4 +54,13 @@ public class HeaderSymlinkTree extends SymlinkTree {
     return Optional.empty();
   }
 
+  /**
+   * Get path of the virtual file system overlay that maps the paths in this tree to the headers,
+   * if the tree is not created on disk.  It needs to be passed to the preprocessor for the include
+   * path to be usable.
+   */
+  public Optional<Path> getVfsOverlay() {
+    return Optional.empty();
+  }
+
 }
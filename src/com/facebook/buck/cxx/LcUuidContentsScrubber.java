@@ -17,18 +17,61 @@
 package com.facebook.buck.cxx;
 
 import com.facebook.buck.io.FileContentsScrubber;
+import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class LcUuidContentsScrubber implements FileContentsScrubber {
 
   private static final byte[] ZERO_UUID = new byte[16];
 
+  // Linked binaries with debug info run into gigabytes, so they are hashed in chunks of this size
+  // in parallel, and the UUID is the hash of the hashes of the chunks.
+  private static final int HASH_CHUNK_SIZE = 16 * 1024 * 1024;
+
+  private static byte[] hashInParallel(ByteBuffer map) {
+    int size = map.remaining();
+    int numChunks = (int) ((size + (long) HASH_CHUNK_SIZE - 1) / HASH_CHUNK_SIZE);
+    List<HashCode> chunkHashes =
+        IntStream.range(0, numChunks)
+            .parallel()
+            .mapToObj(
+                chunk -> {
+                  ByteBuffer slice = map.duplicate();
+                  slice.position(chunk * HASH_CHUNK_SIZE);
+                  slice.limit((int) Math.min(size, (chunk + 1L) * HASH_CHUNK_SIZE));
+                  MessageDigest digest = newSha1Digest();
+                  digest.update(slice);
+                  return HashCode.fromBytes(digest.digest());
+                })
+            .collect(Collectors.toList());
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putInt(size);
+    for (HashCode chunkHash : chunkHashes) {
+      hasher.putBytes(chunkHash.asBytes());
+    }
+    return hasher.hash().asBytes();
+  }
+
+  private static MessageDigest newSha1Digest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
   @Override
   public void scrubFile(FileChannel file) throws IOException, ScrubException {
     if (!Machos.isMacho(file)) {
@@ -45,14 +88,11 @@ public class LcUuidContentsScrubber implements FileContentsScrubber {
     }
     map.rewind();
 
-    Hasher hasher = Hashing.sha1().newHasher();
-    while (map.hasRemaining()) {
-      hasher.putByte(map.get());
-    }
+    byte[] hash = hashInParallel(map);
 
     map.rewind();
     try {
-      Machos.setUuid(map, Arrays.copyOf(hasher.hash().asBytes(), 16));
+      Machos.setUuid(map, Arrays.copyOf(hash, 16));
     } catch (Machos.MachoException e) {
       throw new ScrubException(e.getMessage());
     }
@@ -52,6 +52,10 @@ import javax.annotation.Nonnull;
 public class MungingDebugPathSanitizer extends DebugPathSanitizer {
 
   private static final DebugSectionFinder DEBUG_SECTION_FINDER = new DebugSectionFinder();
+
+  // Debug sections of large binaries run into gigabytes, so they are searched in chunks of this
+  // size in parallel.  Smaller sections are searched in one go.
+  private static final int REPLACEMENT_CHUNK_SIZE = 8 * 1024 * 1024;
   protected final ImmutableBiMap<Path, Path> other;
   private final LoadingCache<Path, ImmutableBiMap<Path, Path>> pathCache =
       CacheBuilder
@@ -137,11 +141,11 @@ public class MungingDebugPathSanitizer extends DebugPathSanitizer {
         // We can't do in-place updates on compressed debug sections.
         Preconditions.checkState(!section.properties.contains(COMPRESSED));
         if (section.properties.contains(STRINGS)) {
-          replacer.replace(section.body);
+          replacer.replaceInParallel(section.body, REPLACEMENT_CHUNK_SIZE);
         }
       }
     } else {
-      replacer.replace(buffer);
+      replacer.replaceInParallel(buffer, REPLACEMENT_CHUNK_SIZE);
     }
   }
 
@@ -94,6 +94,7 @@ public class ObjectFileScrubbers {
             checkArchive(read == entrySize, "Not all bytes have been read");
 
             buffer.position(0); // position points just past the last byte read, so need to reset
+            byte[] original = buffer.array().clone();
             String fileName = new String(getBytes(buffer, 16), Charsets.US_ASCII).trim();
 
             // Inject 0's for the non-deterministic meta-data entries.
@@ -114,11 +115,14 @@ public class ObjectFileScrubbers {
                 Arrays.equals(END_OF_FILE_HEADER_MARKER, fileMagic),
                 "invalid file magic");
 
-            // write the changes
-            buffer.position(0); // position points just past the last byte accessed, need to reset
-            file.position(start);
-            int written = file.write(buffer);
-            checkArchive(written == entrySize, "Not all bytes have been written");
+            // Write the changes, if there are any, so that archives which are already scrubbed
+            // aren't written to at all.
+            if (!Arrays.equals(original, buffer.array())) {
+              buffer.position(0); // position points just past the last byte accessed, need to reset
+              file.position(start);
+              int written = file.write(buffer);
+              checkArchive(written == entrySize, "Not all bytes have been written");
+            }
 
             // Skip the file data.
             start += entrySize;
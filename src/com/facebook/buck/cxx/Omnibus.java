@@ -16,7 +16,6 @@
 
 package com.facebook.buck.cxx;
 
-import com.facebook.buck.graph.AbstractBreadthFirstTraversal;
 import com.facebook.buck.graph.DirectedAcyclicGraph;
 import com.facebook.buck.graph.MutableDirectedGraph;
 import com.facebook.buck.graph.TopologicalSort;
@@ -34,7 +33,6 @@ import com.facebook.buck.rules.args.Arg;
 import com.facebook.buck.rules.args.SourcePathArg;
 import com.facebook.buck.rules.args.StringArg;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
-import com.google.common.base.Functions;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicates;
 import com.google.common.collect.FluentIterable;
@@ -44,17 +42,23 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
 
 import org.immutables.value.Value;
 
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
+import java.util.function.IntPredicate;
 
 public class Omnibus {
 
@@ -89,23 +93,6 @@ public class Omnibus {
         nativeLinkable.getNativeLinkableExportedDepsForPlatform(cxxPlatform));
   }
 
-  // Returned the dependencies for the given node, which can either be a `NativeLinkable` or a
-  // `NativeLinkTarget`.
-  private static Iterable<? extends NativeLinkable> getDeps(
-      BuildTarget target,
-      Map<BuildTarget, ? extends NativeLinkTarget> nativeLinkTargets,
-      Map<BuildTarget, ? extends NativeLinkable> nativeLinkables,
-      CxxPlatform cxxPlatform) {
-    if (nativeLinkables.containsKey(target)) {
-      NativeLinkable nativeLinkable = Preconditions.checkNotNull(nativeLinkables.get(target));
-      return getDeps(nativeLinkable, cxxPlatform);
-    } else {
-      NativeLinkTarget nativeLinkTarget =
-          Preconditions.checkNotNull(nativeLinkTargets.get(target));
-      return nativeLinkTarget.getNativeLinkTargetDeps(cxxPlatform);
-    }
-  }
-
   // Build the data structure containing bookkeeping which describing the omnibus link for the
   // given included and excluded roots.
   protected static OmnibusSpec buildSpec(
@@ -113,24 +100,28 @@ public class Omnibus {
       final Iterable<? extends NativeLinkTarget> includedRoots,
       final Iterable<? extends NativeLinkable> excludedRoots) {
 
-    // A map of targets to native linkable objects.  We maintain this, so that we index our
-    // bookkeeping around `BuildTarget` and avoid having to guarantee that all other types are
-    // hashable.
-    final Map<BuildTarget, NativeLinkable> nativeLinkables = new LinkedHashMap<>();
+    // The native linkable graph reachable from the roots, in which we number the nodes so that
+    // the walks below can track them in bit sets, and ask each node for its deps just once.
+    final LinkableGraph linkables = new LinkableGraph(cxxPlatform);
 
-    // The nodes which should *not* be included in the omnibus link.
-    final Set<BuildTarget> excluded = new LinkedHashSet<>();
+    // The nodes which should *not* be included in the omnibus link, in the order they're found.
+    final BitSet excluded = new BitSet();
+    final List<Integer> excludedOrder = new ArrayList<>();
 
     // Process all the roots included in the omnibus link.
     final Map<BuildTarget, NativeLinkTarget> roots = new LinkedHashMap<>();
-    Map<BuildTarget, NativeLinkable> rootDeps = new LinkedHashMap<>();
+    ImmutableMap.Builder<BuildTarget, ImmutableMap<BuildTarget, NativeLinkable>> rootLinkables =
+        ImmutableMap.builder();
+    Set<Integer> rootDeps = new LinkedHashSet<>();
     for (NativeLinkTarget root : includedRoots) {
       roots.put(root.getBuildTarget(), root);
-      for (NativeLinkable dep :
-           NativeLinkables.getNativeLinkables(
-               cxxPlatform,
-               root.getNativeLinkTargetDeps(cxxPlatform),
-               Linker.LinkableDepType.SHARED).values()) {
+      ImmutableMap<BuildTarget, NativeLinkable> linkablesOfRoot =
+          NativeLinkables.getNativeLinkables(
+              cxxPlatform,
+              root.getNativeLinkTargetDeps(cxxPlatform),
+              Linker.LinkableDepType.SHARED);
+      rootLinkables.put(root.getBuildTarget(), linkablesOfRoot);
+      for (NativeLinkable dep : linkablesOfRoot.values()) {
         Linker.LinkableDepType linkStyle =
             NativeLinkables.getLinkStyle(
                 dep.getPreferredLinkage(cxxPlatform),
@@ -139,8 +130,7 @@ public class Omnibus {
 
         // We only consider deps which aren't *only* statically linked.
         if (linkStyle == Linker.LinkableDepType.SHARED) {
-          rootDeps.put(dep.getBuildTarget(), dep);
-          nativeLinkables.put(dep.getBuildTarget(), dep);
+          rootDeps.add(linkables.add(dep));
         }
       }
     }
@@ -148,87 +138,143 @@ public class Omnibus {
     // Process all roots excluded from the omnibus link, and add them to our running list of
     // excluded nodes.
     for (NativeLinkable root : excludedRoots) {
-      nativeLinkables.put(root.getBuildTarget(), root);
-      excluded.add(root.getBuildTarget());
+      int node = linkables.add(root);
+      if (!excluded.get(node)) {
+        excluded.set(node);
+        excludedOrder.add(node);
+      }
     }
 
     // Perform the first walk starting from the native linkable nodes immediately reachable via the
-    // included roots.  We'll accomplish two things here:
-    // 1. Build up the map of node names to their native linkable objects.
-    // 2. Perform an initial discovery of dependency nodes to exclude from the omnibus link.
-    new AbstractBreadthFirstTraversal<BuildTarget>(rootDeps.keySet()) {
-      @Override
-      public ImmutableSet<BuildTarget> visit(BuildTarget target) {
-        NativeLinkable nativeLinkable = Preconditions.checkNotNull(nativeLinkables.get(target));
-        ImmutableMap<BuildTarget, NativeLinkable> deps =
-            Maps.uniqueIndex(
-                getDeps(nativeLinkable, cxxPlatform),
-                NativeLinkable::getBuildTarget);
-        nativeLinkables.putAll(deps);
-        if (nativeLinkable.getPreferredLinkage(cxxPlatform) == NativeLinkable.Linkage.SHARED) {
-          excluded.add(target);
-        }
-        return deps.keySet();
-      }
-    }.start();
+    // included roots, to perform an initial discovery of dependency nodes to exclude from the
+    // omnibus link.
+    walk(
+        rootDeps,
+        linkables,
+        node -> {
+          if (!excluded.get(node) &&
+              linkables.get(node).getPreferredLinkage(cxxPlatform) ==
+                  NativeLinkable.Linkage.SHARED) {
+            excluded.set(node);
+            excludedOrder.add(node);
+          }
+          return true;
+        });
 
     // Do another walk to flesh out the transitively excluded nodes.
-    new AbstractBreadthFirstTraversal<BuildTarget>(excluded) {
-      @Override
-      public Iterable<BuildTarget> visit(BuildTarget target) {
-        NativeLinkable nativeLinkable = Preconditions.checkNotNull(nativeLinkables.get(target));
-        ImmutableMap<BuildTarget, NativeLinkable> deps =
-            Maps.uniqueIndex(
-                getDeps(nativeLinkable, cxxPlatform),
-                NativeLinkable::getBuildTarget);
-        nativeLinkables.putAll(deps);
-        excluded.add(target);
-        return deps.keySet();
-      }
-    }.start();
+    walk(
+        new ArrayList<>(excludedOrder),
+        linkables,
+        node -> {
+          if (!excluded.get(node)) {
+            excluded.set(node);
+            excludedOrder.add(node);
+          }
+          return true;
+        });
 
     // And then we can do one last walk to create the actual graph which contain only root and body
     // nodes to include in the omnibus link.
     final MutableDirectedGraph<BuildTarget> graphBuilder = new MutableDirectedGraph<>();
     final Set<BuildTarget> deps = new LinkedHashSet<>();
-    new AbstractBreadthFirstTraversal<BuildTarget>(Sets.difference(rootDeps.keySet(), excluded)) {
-      @Override
-      public Iterable<BuildTarget> visit(BuildTarget target) {
-        graphBuilder.addNode(target);
-        Set<BuildTarget> keep = new LinkedHashSet<>();
-        for (BuildTarget dep :
-            Iterables.transform(
-                getDeps(target, roots, nativeLinkables, cxxPlatform),
-                NativeLinkable::getBuildTarget)) {
-          if (excluded.contains(dep)) {
-            deps.add(dep);
-          } else {
-            keep.add(dep);
-            graphBuilder.addEdge(target, dep);
-          }
-        }
-        return keep;
+    List<Integer> included = new ArrayList<>();
+    for (int node : rootDeps) {
+      if (!excluded.get(node)) {
+        included.add(node);
       }
-    }.start();
+    }
+    walk(
+        included,
+        linkables,
+        node -> {
+          if (excluded.get(node)) {
+            return false;
+          }
+          graphBuilder.addNode(linkables.getTarget(node));
+          for (int dep : linkables.getDeps(node)) {
+            if (excluded.get(dep)) {
+              deps.add(linkables.getTarget(dep));
+            } else {
+              graphBuilder.addEdge(linkables.getTarget(node), linkables.getTarget(dep));
+            }
+          }
+          return true;
+        });
     DirectedAcyclicGraph<BuildTarget> graph = new DirectedAcyclicGraph<>(graphBuilder);
 
     // Since we add all undefined root symbols into the omnibus library, we also need to include
     // any excluded root deps as deps of omnibus, as they may fulfill these undefined symbols.
     // Also add any excluded nodes that are also root dependencies.
-    deps.addAll(Sets.intersection(rootDeps.keySet(), excluded));
+    for (int node : rootDeps) {
+      if (excluded.get(node)) {
+        deps.add(linkables.getTarget(node));
+      }
+    }
 
+    ImmutableMap.Builder<BuildTarget, NativeLinkable> excludedLinkables = ImmutableMap.builder();
+    for (int node : excludedOrder) {
+      excludedLinkables.put(linkables.getTarget(node), linkables.get(node));
+    }
     return ImmutableOmnibusSpec.builder()
         .graph(graph)
         .roots(roots)
+        .rootLinkables(rootLinkables.build())
         .body(
             FluentIterable.from(graph.getNodes())
                 .filter(Predicates.not(roots.keySet()::contains))
-                .toMap(Functions.forMap(nativeLinkables)))
-        .deps(Maps.asMap(deps, Functions.forMap(nativeLinkables)))
-        .excluded(Maps.asMap(excluded, Functions.forMap(nativeLinkables)))
+                .toMap(linkables::get))
+        .deps(Maps.asMap(deps, linkables::get))
+        .excluded(excludedLinkables.build())
         .build();
   }
 
+  /**
+   * Walks the linkable graph breadth first from the given nodes, following the deps of the nodes
+   * for which {@code visitor} returns true.
+   */
+  private static void walk(
+      Iterable<Integer> initialNodes,
+      LinkableGraph linkables,
+      IntPredicate visitor) {
+    BitSet explored = new BitSet();
+    Queue<Integer> toExplore = new ArrayDeque<>();
+    Iterables.addAll(toExplore, initialNodes);
+    while (!toExplore.isEmpty()) {
+      int node = toExplore.remove();
+      if (explored.get(node)) {
+        continue;
+      }
+      explored.set(node);
+      if (visitor.test(node)) {
+        for (int dep : linkables.getDeps(node)) {
+          if (!explored.get(dep)) {
+            toExplore.add(dep);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Memoizes {@link #buildSpec} on the rule resolver for the binaries of an action graph, which
+   * often share their native roots, as binaries and tests depending on the same libraries do.
+   */
+  protected static OmnibusSpec getSpec(
+      BuildRuleResolver ruleResolver,
+      CxxPlatform cxxPlatform,
+      Iterable<? extends NativeLinkTarget> includedRoots,
+      Iterable<? extends NativeLinkable> excludedRoots) {
+    OmnibusSpecKey key =
+        OmnibusSpecKey.of(
+            cxxPlatform.getFlavor(),
+            FluentIterable.from(includedRoots).transform(NativeLinkTarget::getBuildTarget).toList(),
+            FluentIterable.from(excludedRoots).transform(NativeLinkable::getBuildTarget).toList());
+    return ruleResolver.computeMemoIfAbsent(
+        key,
+        OmnibusSpec.class,
+        () -> buildSpec(cxxPlatform, includedRoots, excludedRoots));
+  }
+
   // Build a dummy library with the omnibus SONAME.  We'll need this to break any dep cycle between
   // the omnibus roots and the merged omnibus body, by first linking the roots against this
   // dummy lib (ignoring missing symbols), then linking the omnibus body with the roots.
@@ -293,10 +339,7 @@ public class Omnibus {
 
     // Grab a topologically sorted mapping of all the root's deps.
     ImmutableMap<BuildTarget, NativeLinkable> deps =
-        NativeLinkables.getNativeLinkables(
-            cxxPlatform,
-            root.getNativeLinkTargetDeps(cxxPlatform),
-            Linker.LinkableDepType.SHARED);
+        Preconditions.checkNotNull(spec.getRootLinkables().get(root.getBuildTarget()));
 
     // Now process the dependencies in topological order, to assemble the link line.
     boolean alreadyAddedOmnibusToArgs = false;
@@ -610,7 +653,8 @@ public class Omnibus {
 
     OmnibusLibraries.Builder libs = OmnibusLibraries.builder();
 
-    OmnibusSpec spec = buildSpec(cxxPlatform, nativeLinkTargetRoots, nativeLinkableRoots);
+    OmnibusSpec spec =
+        getSpec(ruleResolver, cxxPlatform, nativeLinkTargetRoots, nativeLinkableRoots);
 
     // Create an empty dummy omnibus library, to give the roots something to link against before
     // we have the actual omnibus library available.  Note that this requires that the linker
@@ -715,6 +759,10 @@ public class Omnibus {
     // libraries which depend on the giant statically linked omnibus body.
     public abstract ImmutableMap<BuildTarget, NativeLinkTarget> getRoots();
 
+    // The topologically sorted transitive native linkable deps of each root.
+    public abstract ImmutableMap<BuildTarget, ImmutableMap<BuildTarget, NativeLinkable>>
+        getRootLinkables();
+
     // All native nodes which are to be statically linked into the giant combined shared library.
     public abstract ImmutableMap<BuildTarget, NativeLinkable> getBody();
 
@@ -748,6 +796,74 @@ public class Omnibus {
 
   }
 
+  /**
+   * The native linkable graph reachable from the nodes added to it, with nodes numbered in the
+   * order they're added.
+   */
+  private static class LinkableGraph {
+
+    private final CxxPlatform cxxPlatform;
+    private final Map<BuildTarget, Integer> nodes = new HashMap<>();
+    private final List<NativeLinkable> linkables = new ArrayList<>();
+    private final List<int[]> deps = new ArrayList<>();
+
+    public LinkableGraph(CxxPlatform cxxPlatform) {
+      this.cxxPlatform = cxxPlatform;
+    }
+
+    public int add(NativeLinkable linkable) {
+      Integer node = nodes.get(linkable.getBuildTarget());
+      if (node == null) {
+        node = linkables.size();
+        nodes.put(linkable.getBuildTarget(), node);
+        linkables.add(linkable);
+        deps.add(null);
+      }
+      return node;
+    }
+
+    public NativeLinkable get(int node) {
+      return linkables.get(node);
+    }
+
+    public NativeLinkable get(BuildTarget target) {
+      return linkables.get(Preconditions.checkNotNull(nodes.get(target)));
+    }
+
+    public BuildTarget getTarget(int node) {
+      return linkables.get(node).getBuildTarget();
+    }
+
+    public int[] getDeps(int node) {
+      int[] nodeDeps = deps.get(node);
+      if (nodeDeps == null) {
+        List<Integer> found = new ArrayList<>();
+        for (NativeLinkable dep : Omnibus.getDeps(linkables.get(node), cxxPlatform)) {
+          found.add(add(dep));
+        }
+        nodeDeps = Ints.toArray(found);
+        deps.set(node, nodeDeps);
+      }
+      return nodeDeps;
+    }
+
+  }
+
+  @Value.Immutable
+  @BuckStyleImmutable
+  interface AbstractOmnibusSpecKey {
+
+    @Value.Parameter
+    Flavor getPlatform();
+
+    @Value.Parameter
+    ImmutableList<BuildTarget> getIncludedRoots();
+
+    @Value.Parameter
+    ImmutableList<BuildTarget> getExcludedRoots();
+
+  }
+
   @Value.Immutable
   @BuckStyleImmutable
   interface AbstractOmnibusRoot {
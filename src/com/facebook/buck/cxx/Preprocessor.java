@@ -31,6 +31,12 @@ public interface Preprocessor extends Tool {
 
   boolean supportsHeaderMaps();
 
+  /**
+   * @return whether clang virtual file system overlays, which map paths to other files without
+   *     creating them on disk, are supported.
+   */
+  boolean supportsVfsOverlays();
+
   boolean supportsPrecompiledHeaders();
 
   Iterable<String> localIncludeArgs(Iterable<String> includeRoots);
@@ -39,6 +45,8 @@ public interface Preprocessor extends Tool {
 
   Iterable<String> quoteIncludeArgs(Iterable<String> includeRoots);
 
+  Iterable<String> vfsOverlayArgs(Iterable<String> vfsOverlays);
+
   Iterable<String> precompiledHeaderArgs(Path pchOutputPath);
 
   Iterable<String> prefixHeaderArgs(SourcePathResolver resolver, SourcePath prefixHeader);
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes a clang virtual file system overlay (passed with {@code -ivfsoverlay}) that makes files
+ * appear at paths under a root directory.  The overlay is YAML, of which JSON is a subset.
+ */
+public class VfsOverlayStep implements Step {
+
+  private static final Logger LOG = Logger.get(VfsOverlayStep.class);
+
+  private final ProjectFilesystem filesystem;
+  private final Path output;
+  private final Path root;
+  private final ImmutableMap<Path, Path> entries;
+
+  /**
+   * @param root  Absolute path of the directory the files appear in.
+   * @param entries  Map from the paths of the files relative to {@code root} to the absolute paths
+   *     of the files.
+   */
+  public VfsOverlayStep(
+      ProjectFilesystem filesystem,
+      Path output,
+      Path root,
+      ImmutableMap<Path, Path> entries) {
+    Preconditions.checkArgument(root.isAbsolute());
+    this.filesystem = filesystem;
+    this.output = output;
+    this.root = root;
+    this.entries = entries;
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return "vfs overlay @ " + output.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return "vfs_overlay";
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context) throws IOException {
+    LOG.debug("Writing vfs overlay with %d entries to %s", entries.size(), output);
+    try (OutputStream outputStream = filesystem.newFileOutputStream(output)) {
+      context.getObjectMapper().writeValue(outputStream, getOverlay(root, entries));
+    }
+    return StepExecutionResult.SUCCESS;
+  }
+
+  @VisibleForTesting
+  static ImmutableMap<String, Object> getOverlay(Path root, ImmutableMap<Path, Path> entries) {
+    // Maps the names in a directory to either a nested directory or the file's absolute path.
+    Map<String, Object> tree = new TreeMap<>();
+    for (Map.Entry<Path, Path> entry : entries.entrySet()) {
+      Map<String, Object> directory = tree;
+      Path path = entry.getKey();
+      for (int i = 0; i < path.getNameCount() - 1; i++) {
+        Object child =
+            directory.computeIfAbsent(path.getName(i).toString(), name -> new TreeMap<>());
+        Preconditions.checkState(
+            child instanceof Map,
+            "%s is both a file and a directory in the overlay",
+            path.subpath(0, i + 1));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> childDirectory = (Map<String, Object>) child;
+        directory = childDirectory;
+      }
+      Object previous = directory.put(path.getFileName().toString(), entry.getValue());
+      Preconditions.checkState(
+          previous == null,
+          "%s is both a file and a directory in the overlay",
+          path);
+    }
+
+    return ImmutableMap.of(
+        "version", 0,
+        // Report the paths of the files in the overlay, rather than the paths they map to, so that
+        // dep files and diagnostics name the same paths as they would with a symlink tree.
+        "use-external-names", false,
+        "roots", ImmutableList.of(getDirectory(root.toString(), tree)));
+  }
+
+  private static ImmutableMap<String, Object> getDirectory(
+      String name,
+      Map<String, Object> contents) {
+    ImmutableList.Builder<ImmutableMap<String, Object>> entries = ImmutableList.builder();
+    for (Map.Entry<String, Object> entry : contents.entrySet()) {
+      if (entry.getValue() instanceof Path) {
+        entries.add(
+            ImmutableMap.of(
+                "type", "file",
+                "name", entry.getKey(),
+                "external-contents", entry.getValue().toString()));
+      } else {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> directory = (Map<String, Object>) entry.getValue();
+        entries.add(getDirectory(entry.getKey(), directory));
+      }
+    }
+    return ImmutableMap.of(
+        "type", "directory",
+        "name", name,
+        "contents", entries.build());
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof VfsOverlayStep)) {
+      return false;
+    }
+    VfsOverlayStep that = (VfsOverlayStep) obj;
+    return Objects.equal(this.output, that.output) &&
+        Objects.equal(this.root, that.root) &&
+        Objects.equal(this.entries, that.entries);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(output, root, entries);
+  }
+
+}
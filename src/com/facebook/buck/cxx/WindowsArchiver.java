@@ -45,6 +45,11 @@ public class WindowsArchiver implements Archiver {
     return false;
   }
 
+  @Override
+  public boolean supportsArchiveWriter() {
+    return false;
+  }
+
   @Override
   public ImmutableList<String> getArchiveOptions(boolean isThinArchive) {
     return ImmutableList.of();
@@ -38,6 +38,11 @@ public class WindowsPreprocessor extends AbstractPreprocessor {
     return false;
   }
 
+  @Override
+  public boolean supportsVfsOverlays() {
+    return false;
+  }
+
   @Override
   public boolean supportsPrecompiledHeaders() {
     // TODO(elsteveogrande) Should be easy to add support; will try @ later time,
@@ -61,6 +66,11 @@ public class WindowsPreprocessor extends AbstractPreprocessor {
     return Iterables.transform(includeRoots, prependIncludeFlag);
   }
 
+  @Override
+  public Iterable<String> vfsOverlayArgs(Iterable<String> vfsOverlays) {
+    throw new UnsupportedOperationException("vfs overlays not supported by " + getClass());
+  }
+
   @Override
   public Iterable<String> prefixHeaderArgs(
       SourcePathResolver resolver,
@@ -41,6 +41,8 @@ public class ElfHeader {
   public static final byte ELFMAG2 = 'L';
   public static final byte ELFMAG3 = 'F';
 
+  public static final byte EV_CURRENT = 1;
+
   // CHECKSTYLE.OFF: MemberName
   public final EIClass ei_class;
   public final EIData ei_data;
@@ -59,7 +61,7 @@ public class ElfHeader {
   public final int e_shstrndx;
   // CHECKSTYLE.ON: MemberName
 
-  ElfHeader(
+  public ElfHeader(
       EIClass ei_class,
       EIData ei_data,
       int e_type,
@@ -117,6 +119,43 @@ public class ElfHeader {
     return ei_class.parseHeader(ei_data, buffer);
   }
 
+  /**
+   * Writes this header to the given buffer, and sets the byte order of the buffer to that of the
+   * header, for writing the rest of the file.
+   */
+  public void write(ByteBuffer buffer) {
+    byte[] e_ident = new byte[EI_NIDENT];
+    e_ident[EI_MAG0] = ELFMAG0;
+    e_ident[EI_MAG1] = ELFMAG1;
+    e_ident[EI_MAG2] = ELFMAG2;
+    e_ident[EI_MAG3] = ELFMAG3;
+    e_ident[EI_CLASS] = (byte) ei_class.value;
+    e_ident[EI_DATA] = (byte) ei_data.value;
+    e_ident[EI_VERSION] = EV_CURRENT;
+    buffer.put(e_ident);
+    ei_data.setOrder(buffer);
+
+    buffer.putShort((short) e_type);
+    buffer.putShort((short) e_machine);
+    buffer.putInt((int) e_version);
+    if (ei_class == EIClass.ELFCLASS32) {
+      buffer.putInt((int) e_entry);
+      buffer.putInt((int) e_phoff);
+      buffer.putInt((int) e_shoff);
+    } else {
+      buffer.putLong(e_entry);
+      buffer.putLong(e_phoff);
+      buffer.putLong(e_shoff);
+    }
+    buffer.putInt((int) e_flags);
+    buffer.putShort((short) e_ehsize);
+    buffer.putShort((short) e_phentsize);
+    buffer.putShort((short) e_phnum);
+    buffer.putShort((short) e_shentsize);
+    buffer.putShort((short) e_shnum);
+    buffer.putShort((short) e_shstrndx);
+  }
+
   public enum EIClass {
 
     ELFCLASSNONE(0) {
@@ -16,6 +16,8 @@
 
 package com.facebook.buck.cxx.elf;
 
+import com.google.common.base.Preconditions;
+
 import java.nio.ByteBuffer;
 
 /**
@@ -38,7 +40,7 @@ public class ElfSectionHeader {
   public final long sh_entsize;
   // CHECKSTYLE.ON: MemberName
 
-  ElfSectionHeader(
+  public ElfSectionHeader(
       long sh_name,
       SHType sh_type,
       long sh_flags,
@@ -92,6 +94,38 @@ public class ElfSectionHeader {
     }
   }
 
+  /**
+   * Writes this section header to the given buffer, as either a 32- or 64-bit ELF section header.
+   */
+  public void write(ElfHeader.EIClass eiClass, ByteBuffer buffer) {
+    Preconditions.checkState(
+        sh_type != SHType.SHT_UNKNOWN,
+        "cannot write a section header of unknown type");
+    if (eiClass == ElfHeader.EIClass.ELFCLASS32) {
+      Elf.Elf32.putElf32Word(buffer, (int) sh_name);
+      Elf.Elf32.putElf32Word(buffer, sh_type.value);
+      Elf.Elf32.putElf32Word(buffer, (int) sh_flags);
+      Elf.Elf32.putElf32Addr(buffer, (int) sh_addr);
+      Elf.Elf32.putElf32Word(buffer, (int) sh_off);
+      Elf.Elf32.putElf32Word(buffer, (int) sh_size);
+      Elf.Elf32.putElf32Word(buffer, (int) sh_link);
+      Elf.Elf32.putElf32Word(buffer, (int) sh_info);
+      Elf.Elf32.putElf32Word(buffer, (int) sh_addralign);
+      Elf.Elf32.putElf32Word(buffer, (int) sh_entsize);
+    } else {
+      Elf.Elf64.putElf64Word(buffer, (int) sh_name);
+      Elf.Elf64.putElf64Word(buffer, sh_type.value);
+      Elf.Elf64.putElf64Xword(buffer, sh_flags);
+      Elf.Elf64.putElf64Addr(buffer, sh_addr);
+      Elf.Elf64.putElf64Xword(buffer, sh_off);
+      Elf.Elf64.putElf64Xword(buffer, sh_size);
+      Elf.Elf64.putElf64Word(buffer, (int) sh_link);
+      Elf.Elf64.putElf64Word(buffer, (int) sh_info);
+      Elf.Elf64.putElf64Xword(buffer, sh_addralign);
+      Elf.Elf64.putElf64Xword(buffer, sh_entsize);
+    }
+  }
+
   public static enum SHType {
 
     SHT_NULL(0),
@@ -106,6 +140,9 @@ public class ElfSectionHeader {
     SHT_REL(9),
     SHT_SHLIB(10),
     SHT_DYNSYM(11),
+    SHT_GNU_VERDEF(0x6ffffffd),
+    SHT_GNU_VERNEED(0x6ffffffe),
+    SHT_GNU_VERSYM(0x6fffffff),
 
     // Represents one of the user/processor specific values.
     SHT_UNKNOWN(0xffffffff),
@@ -140,6 +140,7 @@ public class ElfSymbolTable {
         STB_LOCAL(0),
         STB_GLOBAL(1),
         STB_WEAK(2),
+        STB_GNU_UNIQUE(10),
         ;
 
         private int value;
@@ -168,6 +169,7 @@ public class ElfSymbolTable {
         STT_FILE(4),
         STT_COMMON(5),
         STT_TLS(6),
+        STT_GNU_IFUNC(10),
         ;
 
         private int value;
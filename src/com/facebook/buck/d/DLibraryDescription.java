@@ -162,7 +162,7 @@ public class DLibraryDescription implements
         params,
         ruleFinder,
         cxxPlatform,
-        cxxBuckConfig.getArchiveContents(),
+        cxxBuckConfig.getArchiveContents(cxxPlatform.getAr()),
         staticLibraryPath,
         compiledSources);
   }
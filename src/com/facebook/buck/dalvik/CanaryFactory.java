@@ -33,6 +33,7 @@ import java.util.Arrays;
 public class CanaryFactory {
 
   static final String CANARY_PATH_FORMAT = "%s/dex%02d/Canary.class";
+  private static final String KEYED_CANARY_CLASS_NAME_FORMAT = "%s/dex%s/Canary";
 
   /**
    * Produced by compiling the following Java file with JDK 7 with "-target 6 -source 6".
@@ -61,6 +62,12 @@ public class CanaryFactory {
   private static final int CANARY_INDEX_OFFSET = 32;
   private static final int CANARY_STORE_OFFSET = 19;
 
+  /**
+   * Offset into {@link #CANARY_TEMPLATE} of the 2-byte length of the class name, which is followed
+   * by the name itself.
+   */
+  private static final int CANARY_NAME_LENGTH_OFFSET = 17;
+
   /** Utility class: do not instantiate */
   private CanaryFactory() {}
 
@@ -88,6 +95,38 @@ public class CanaryFactory {
     return getCanaryClass(relativePath, canaryClass);
   }
 
+  /**
+   * Like {@link #create(String, int)}, but names the canary class after a key rather than an index,
+   * for secondary dexes which are themselves named by key.
+   *
+   * @param store dex store name of the current zip (to ensure unique names).
+   * @param key a key, made of letters and digits, unique to the current zip.
+   */
+  public static FileLike create(final String store, final String key) {
+    byte[] className = String.format(KEYED_CANARY_CLASS_NAME_FORMAT, store, key)
+        .getBytes(Charsets.UTF_8);
+    int templateNameLength =
+        ((CANARY_TEMPLATE[CANARY_NAME_LENGTH_OFFSET] & 0xff) << 8) |
+            (CANARY_TEMPLATE[CANARY_NAME_LENGTH_OFFSET + 1] & 0xff);
+    int templateNameEnd = CANARY_STORE_OFFSET + templateNameLength;
+
+    byte[] canaryClass =
+        new byte[CANARY_TEMPLATE.length - templateNameLength + className.length];
+    System.arraycopy(CANARY_TEMPLATE, 0, canaryClass, 0, CANARY_NAME_LENGTH_OFFSET);
+    canaryClass[CANARY_NAME_LENGTH_OFFSET] = (byte) (className.length >> 8);
+    canaryClass[CANARY_NAME_LENGTH_OFFSET + 1] = (byte) className.length;
+    System.arraycopy(className, 0, canaryClass, CANARY_STORE_OFFSET, className.length);
+    System.arraycopy(
+        CANARY_TEMPLATE,
+        templateNameEnd,
+        canaryClass,
+        CANARY_STORE_OFFSET + className.length,
+        CANARY_TEMPLATE.length - templateNameEnd);
+    return getCanaryClass(
+        String.format(KEYED_CANARY_CLASS_NAME_FORMAT, store, key) + ".class",
+        canaryClass);
+  }
+
   private static FileLike getCanaryClass(final String relativePath, final byte[] canaryClass) {
     return new AbstractFileLike() {
       @Override
@@ -115,7 +115,8 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
       APKModuleGraph apkModuleGraph,
       DexSplitStrategy dexSplitStrategy,
       ZipSplitter.CanaryStrategy canaryStrategy,
-      Path reportDir) {
+      Path reportDir,
+      Path dalvikStatsDir) {
     if (linearAllocLimit <= 0) {
       throw new HumanReadableException("linear_alloc_hard_limit must be greater than zero.");
     }
@@ -145,7 +146,7 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
     this.reportDir = reportDir;
     this.dexSplitStrategy = dexSplitStrategy;
     this.linearAllocLimit = linearAllocLimit;
-    this.dalvikStatsCache = new DalvikStatsCache();
+    this.dalvikStatsCache = new DalvikStatsCache(dalvikStatsDir);
   }
 
   public static DalvikAwareZipSplitter splitZip(
@@ -164,7 +165,8 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
       APKModuleGraph apkModuleGraph,
       DexSplitStrategy dexSplitStrategy,
       ZipSplitter.CanaryStrategy canaryStrategy,
-      Path reportDir) {
+      Path reportDir,
+      Path dalvikStatsDir) {
     return new DalvikAwareZipSplitter(
         filesystem,
         inFiles,
@@ -181,7 +183,8 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
         apkModuleGraph,
         dexSplitStrategy,
         canaryStrategy,
-        reportDir);
+        reportDir,
+        dalvikStatsDir);
   }
 
   @Override
@@ -308,6 +311,7 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
     }
     primaryOut.close();
     secondaryDexWriter.close();
+    dalvikStatsCache.deleteUnusedStatsFiles();
 
     ImmutableMultimap.Builder<APKModule, Path> outputFilesBuilder = ImmutableMultimap.builder();
     APKModule secondaryDexStore = apkModuleGraph.getRootAPKModule();
@@ -30,12 +30,19 @@ public class DalvikAwareZipSplitterFactory implements ZipSplitterFactory {
 
   private final long linearAllocLimit;
   private final Set<String> wantedInPrimaryZip;
+  private final Path dalvikStatsDir;
 
+  /**
+   * @param dalvikStatsDir Absolute path of a directory in which to keep the stats of the classes
+   *     in the input jars from one split to the next.
+   */
   public DalvikAwareZipSplitterFactory(
       long linearAllocLimit,
-      Set<String> wantedInPrimaryZip) {
+      Set<String> wantedInPrimaryZip,
+      Path dalvikStatsDir) {
     this.linearAllocLimit = linearAllocLimit;
     this.wantedInPrimaryZip = wantedInPrimaryZip;
+    this.dalvikStatsDir = dalvikStatsDir;
   }
 
   @Override
@@ -70,6 +77,7 @@ public class DalvikAwareZipSplitterFactory implements ZipSplitterFactory {
         apkModuleGraph,
         dexSplitStrategy,
         canaryStrategy,
-        reportDir);
+        reportDir,
+        dalvikStatsDir);
   }
 }
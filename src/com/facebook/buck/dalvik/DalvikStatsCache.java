@@ -17,21 +17,61 @@
 package com.facebook.buck.dalvik;
 
 import com.facebook.buck.jvm.java.classes.FileLike;
+import com.facebook.buck.log.Logger;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.MapMaker;
+import com.google.common.hash.Hashing;
 
-import java.io.InputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * Cache to memoize results from DalvikStatsTool.
+ * <p>
+ * The stats of the classes in a jar are also written to a file in {@code statsDir} named after
+ * the SHA-1 of the jar, so splitting again after only some of the jars have changed parses just
+ * the classes in those.
  */
 class DalvikStatsCache {
 
+  private static final Logger LOG = Logger.get(DalvikStatsCache.class);
+
+  /**
+   * Change this whenever the estimates of {@link DalvikStatsTool} or the format of the stats files
+   * change, so that older files are ignored.
+   */
+  private static final int STATS_FILE_VERSION = 1;
+
+  private static final String STATS_FILE_SUFFIX = ".dalvik_stats";
+
   private final ConcurrentMap<FileLike, DalvikStatsTool.Stats> cache;
+  private final Path statsDir;
+  private final Map<Path, Map<String, DalvikStatsTool.Stats>> statsByJar = new HashMap<>();
+  private final Set<Path> usedStatsFiles = new HashSet<>();
 
-  DalvikStatsCache() {
-    cache = new MapMaker().weakKeys().makeMap();
+  /**
+   * @param statsDir Absolute path of the directory to keep the stats of jars in.
+   */
+  DalvikStatsCache(Path statsDir) {
+    this.cache = new MapMaker().weakKeys().makeMap();
+    this.statsDir = statsDir;
   }
 
   DalvikStatsTool.Stats getStats(FileLike entry) {
@@ -42,6 +82,13 @@ class DalvikStatsCache {
       return DalvikStatsTool.Stats.ZERO;
     }
 
+    if (Files.isRegularFile(entry.getContainer())) {
+      DalvikStatsTool.Stats stats = getJarStats(entry.getContainer()).get(name);
+      if (stats != null) {
+        return stats;
+      }
+    }
+
     DalvikStatsTool.Stats stats = cache.get(entry);
     if (stats != null) {
       return stats;
@@ -57,4 +104,182 @@ class DalvikStatsCache {
       throw new RuntimeException(String.format("Error calculating size for %s.", name), e);
     }
   }
+
+  /**
+   * Deletes the stats files of jars that were not asked about since this cache was created, so
+   * that the directory does not grow with every build.
+   */
+  void deleteUnusedStatsFiles() throws IOException {
+    if (!Files.isDirectory(statsDir)) {
+      return;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(statsDir)) {
+      for (Path file : files) {
+        if (!usedStatsFiles.contains(file)) {
+          Files.deleteIfExists(file);
+        }
+      }
+    }
+  }
+
+  private Map<String, DalvikStatsTool.Stats> getJarStats(Path jar) {
+    Map<String, DalvikStatsTool.Stats> stats = statsByJar.get(jar);
+    if (stats != null) {
+      return stats;
+    }
+
+    Path statsFile;
+    try {
+      String hash = com.google.common.io.Files.asByteSource(jar.toFile())
+          .hash(Hashing.sha1())
+          .toString();
+      statsFile = statsDir.resolve(hash + "-" + STATS_FILE_VERSION + STATS_FILE_SUFFIX);
+    } catch (IOException e) {
+      throw new RuntimeException(String.format("Error hashing %s.", jar), e);
+    }
+    usedStatsFiles.add(statsFile);
+
+    if (Files.exists(statsFile)) {
+      try {
+        stats = readStatsFile(statsFile);
+      } catch (IOException | RuntimeException e) {
+        LOG.warn(e, "Ignoring unreadable stats file %s.", statsFile);
+      }
+    }
+    if (stats == null) {
+      stats = computeJarStats(jar);
+      try {
+        writeStatsFile(statsFile, stats);
+      } catch (IOException e) {
+        LOG.warn(e, "Could not write stats file %s.", statsFile);
+      }
+    }
+    statsByJar.put(jar, stats);
+    return stats;
+  }
+
+  private static Map<String, DalvikStatsTool.Stats> computeJarStats(Path jar) {
+    Map<String, DalvikStatsTool.Stats> stats = new HashMap<>();
+    try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+      for (ZipEntry entry : Collections.list(zipFile.entries())) {
+        String name = entry.getName();
+        if (!name.endsWith(".class")) {
+          continue;
+        }
+        try (InputStream is = zipFile.getInputStream(entry)) {
+          stats.put(name, DalvikStatsTool.getEstimate(is));
+        } catch (IOException | RuntimeException e) {
+          throw new RuntimeException(
+              String.format("Error calculating size for %s in %s.", name, jar),
+              e);
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(String.format("Error reading %s.", jar), e);
+    }
+    return stats;
+  }
+
+  /**
+   * Writes the stats with each distinct string once, in a table at the start of the file, as
+   * class names and descriptors are repeated across many references.
+   */
+  private void writeStatsFile(Path statsFile, Map<String, DalvikStatsTool.Stats> stats)
+      throws IOException {
+    Map<String, Integer> strings = new LinkedHashMap<>();
+    for (Map.Entry<String, DalvikStatsTool.Stats> entry : stats.entrySet()) {
+      addString(strings, entry.getKey());
+      for (DalvikStatsTool.MethodReference method : entry.getValue().methodReferences) {
+        addString(strings, method.className);
+        addString(strings, method.methodName);
+        addString(strings, method.methodDesc);
+      }
+      for (DalvikStatsTool.FieldReference field : entry.getValue().fieldReferences) {
+        addString(strings, field.className);
+        addString(strings, field.fieldName);
+        addString(strings, field.fieldDesc);
+      }
+    }
+
+    Files.createDirectories(statsDir);
+    // Write to a temporary file first, so that a partially written file is never read.
+    Path tempFile = Files.createTempFile(statsDir, "stats", ".tmp");
+    try {
+      try (DataOutputStream out =
+               new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+        out.writeInt(strings.size());
+        for (String string : strings.keySet()) {
+          out.writeUTF(string);
+        }
+        out.writeInt(stats.size());
+        for (Map.Entry<String, DalvikStatsTool.Stats> entry : stats.entrySet()) {
+          DalvikStatsTool.Stats classStats = entry.getValue();
+          out.writeInt(strings.get(entry.getKey()));
+          out.writeInt(classStats.estimatedLinearAllocSize);
+          out.writeInt(classStats.methodReferences.size());
+          for (DalvikStatsTool.MethodReference method : classStats.methodReferences) {
+            out.writeInt(strings.get(method.className));
+            out.writeInt(strings.get(method.methodName));
+            out.writeInt(strings.get(method.methodDesc));
+          }
+          out.writeInt(classStats.fieldReferences.size());
+          for (DalvikStatsTool.FieldReference field : classStats.fieldReferences) {
+            out.writeInt(strings.get(field.className));
+            out.writeInt(strings.get(field.fieldName));
+            out.writeInt(strings.get(field.fieldDesc));
+          }
+        }
+      }
+      Files.move(
+          tempFile,
+          statsFile,
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  private static Map<String, DalvikStatsTool.Stats> readStatsFile(Path statsFile)
+      throws IOException {
+    try (DataInputStream in =
+             new DataInputStream(new BufferedInputStream(Files.newInputStream(statsFile)))) {
+      String[] strings = new String[in.readInt()];
+      for (int i = 0; i < strings.length; i++) {
+        strings[i] = in.readUTF();
+      }
+      int classCount = in.readInt();
+      Map<String, DalvikStatsTool.Stats> stats = new HashMap<>();
+      for (int i = 0; i < classCount; i++) {
+        String name = strings[in.readInt()];
+        int estimatedLinearAllocSize = in.readInt();
+        ImmutableSet.Builder<DalvikStatsTool.MethodReference> methods = ImmutableSet.builder();
+        for (int count = in.readInt(); count > 0; count--) {
+          methods.add(
+              new DalvikStatsTool.MethodReference(
+                  strings[in.readInt()],
+                  strings[in.readInt()],
+                  strings[in.readInt()]));
+        }
+        ImmutableSet.Builder<DalvikStatsTool.FieldReference> fields = ImmutableSet.builder();
+        for (int count = in.readInt(); count > 0; count--) {
+          fields.add(
+              new DalvikStatsTool.FieldReference(
+                  strings[in.readInt()],
+                  strings[in.readInt()],
+                  strings[in.readInt()]));
+        }
+        stats.put(
+            name,
+            new DalvikStatsTool.Stats(estimatedLinearAllocSize, methods.build(), fields.build()));
+      }
+      return stats;
+    }
+  }
+
+  private static void addString(Map<String, Integer> strings, String string) {
+    if (!strings.containsKey(string)) {
+      strings.put(string, strings.size());
+    }
+  }
 }
@@ -221,7 +221,7 @@ public class HalideLibraryDescription
         params,
         ruleFinder,
         platform,
-        cxxBuckConfig.getArchiveContents(),
+        cxxBuckConfig.getArchiveContents(platform.getAr()),
         CxxDescriptionEnhancer.getStaticLibraryPath(
             params.getProjectFilesystem(),
             params.getBuildTarget(),
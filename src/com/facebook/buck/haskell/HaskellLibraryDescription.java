@@ -150,7 +150,7 @@ public class HaskellLibraryDescription implements
         baseParams,
         ruleFinder,
         cxxPlatform,
-        cxxBuckConfig.getArchiveContents(),
+        cxxBuckConfig.getArchiveContents(cxxPlatform.getAr()),
         CxxDescriptionEnhancer.getStaticLibraryPath(
             baseParams.getProjectFilesystem(),
             target,
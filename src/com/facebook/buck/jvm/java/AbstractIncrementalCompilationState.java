@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.util.immutables.BuckStyleImmutable;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import org.immutables.value.Value;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What {@link IncrementalJavacStep} remembers about the last successful compilation of a rule.
+ */
+@Value.Immutable
+@BuckStyleImmutable
+@JsonDeserialize(as = IncrementalCompilationState.class)
+abstract class AbstractIncrementalCompilationState {
+
+  /**
+   * @return a hash of everything other than the sources which went into the compilation: the
+   *     compiler, its options, and the contents of the classpath
+   */
+  @Value.Parameter
+  public abstract String getInputsHash();
+
+  /**
+   * @return the SHA-1 of each source file, keyed by its path relative to the project root
+   */
+  @Value.Parameter
+  public abstract Map<String, String> getSourceHashes();
+
+  /**
+   * @return the class files, relative to the output directory, which were compiled from each
+   *     source file
+   */
+  @Value.Parameter
+  public abstract Map<String, List<String>> getClassFiles();
+}
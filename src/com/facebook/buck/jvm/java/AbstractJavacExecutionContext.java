@@ -54,4 +54,10 @@ abstract class AbstractJavacExecutionContext {
    */
   public abstract Optional<DirectToJarOutputSettings> getDirectToJarOutputSettings();
 
+  /**
+   * The workers that {@link OutOfProcessJsr199Javac} compiles in. This is not sent to the workers
+   * themselves.
+   */
+  public abstract Optional<OutOfProcessJavacWorkerPool> getOutOfProcessJavacWorkerPool();
+
 }
@@ -107,7 +107,9 @@ abstract class AbstractJavacOptions implements RuleKeyAppendable {
     CLASS,
     /** Output warnings for things that aren't legal when generating ABIs from source */
     MIGRATING_TO_SOURCE,
-    /** Generate ABIs by parsing .java files (has some limitations) */
+    /**
+     * Generate ABIs by parsing .java files (has some limitations, and needs a {@link Jsr199Javac})
+     */
     SOURCE,
   }
 
@@ -183,11 +185,28 @@ abstract class AbstractJavacOptions implements RuleKeyAppendable {
     return JavacLocation.IN_PROCESS;
   }
 
+  /**
+   * The heap size, in the form accepted by {@code -Xmx}, of each of the worker JVMs that compile
+   * when the javac location is {@link JavacLocation#OUT_OF_PROCESS}. This is not part of the rule
+   * key, since the output is the same either way.
+   */
+  public abstract Optional<String> getOutOfProcessHeapSize();
+
   @Value.Default
   public AbiGenerationMode getAbiGenerationMode() {
     return AbiGenerationMode.CLASS;
   }
 
+  /**
+   * Whether to recompile only the sources affected by a change, starting from the output of the
+   * previous compilation. This is part of the rule key, since the used classes file of an
+   * incremental compilation can list more classes than that of a clean one.
+   */
+  @Value.Default
+  public boolean isIncrementalCompilation() {
+    return false;
+  }
+
   @Value.Lazy
   public Javac getJavac() {
     final JavacSource javacSource = getJavacSource();
@@ -320,7 +339,8 @@ abstract class AbstractJavacOptions implements RuleKeyAppendable {
         .setReflectively("annotationProcessingParams", getAnnotationProcessingParams())
         .setReflectively("spoolMode", getSpoolMode())
         .setReflectively("trackClassUsage", trackClassUsage())
-        .setReflectively("abiGenerationMode", getAbiGenerationMode());
+        .setReflectively("abiGenerationMode", getAbiGenerationMode())
+        .setReflectively("incrementalCompilation", isIncrementalCompilation());
   }
 
   public ImmutableSortedSet<SourcePath> getInputs(SourcePathRuleFinder ruleFinder) {
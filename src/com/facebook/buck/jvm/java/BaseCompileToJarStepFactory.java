@@ -20,6 +20,7 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.jvm.core.SuggestBuildRules;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildableContext;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
@@ -49,6 +50,11 @@ public abstract class BaseCompileToJarStepFactory implements CompileToJarStepFac
   public static final Function<BuildContext, Iterable<Path>> EMPTY_EXTRA_CLASSPATH =
       input -> ImmutableList.of();
 
+  @Override
+  public ImmutableSet<BuildRule> getCompilerDeps(SourcePathRuleFinder ruleFinder) {
+    return ImmutableSet.of();
+  }
+
   @Override
   public void createCompileToJarStep(
       BuildContext context,
@@ -31,12 +31,15 @@ import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.MkdirStep;
 import com.facebook.buck.step.fs.RmStep;
+import com.facebook.buck.util.Optionals;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
 
 import java.nio.file.Path;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public class CalculateAbi extends AbstractBuildRule
     implements SupportsInputBasedRuleKey {
@@ -45,13 +48,27 @@ public class CalculateAbi extends AbstractBuildRule
 
   @AddToRuleKey
   private final SourcePath binaryJar;
+  @AddToRuleKey
+  private final Optional<SourcePath> sourceAbiJarToCompare;
   private final Path outputPath;
 
   public CalculateAbi(
       BuildRuleParams buildRuleParams,
       SourcePath binaryJar) {
+    this(buildRuleParams, binaryJar, Optional.empty());
+  }
+
+  /**
+   * @param sourceAbiJarToCompare if present, warn about any differences between the calculated ABI
+   *                              and this one, generated from source
+   */
+  public CalculateAbi(
+      BuildRuleParams buildRuleParams,
+      SourcePath binaryJar,
+      Optional<SourcePath> sourceAbiJarToCompare) {
     super(buildRuleParams);
     this.binaryJar = binaryJar;
+    this.sourceAbiJarToCompare = sourceAbiJarToCompare;
     this.outputPath = getAbiJarPath();
   }
 
@@ -70,14 +87,28 @@ public class CalculateAbi extends AbstractBuildRule
       SourcePathRuleFinder ruleFinder,
       BuildRuleParams libraryParams,
       SourcePath library) {
+    return of(target, ruleFinder, libraryParams, library, Optional.empty());
+  }
+
+  public static CalculateAbi of(
+      BuildTarget target,
+      SourcePathRuleFinder ruleFinder,
+      BuildRuleParams libraryParams,
+      SourcePath library,
+      Optional<SourcePath> sourceAbiJarToCompare) {
     return new CalculateAbi(
         libraryParams
             .withBuildTarget(target)
             .copyReplacingDeclaredAndExtraDeps(
                 Suppliers.ofInstance(
-                    ImmutableSortedSet.copyOf(ruleFinder.filterBuildRuleInputs(library))),
+                    ImmutableSortedSet.copyOf(
+                        ruleFinder.filterBuildRuleInputs(
+                            Stream.concat(
+                                Stream.of(library),
+                                Optionals.toStream(sourceAbiJarToCompare))))),
                 Suppliers.ofInstance(ImmutableSortedSet.of())),
-        library);
+        library,
+        sourceAbiJarToCompare);
   }
 
   private Path getAbiJarPath() {
@@ -89,7 +120,8 @@ public class CalculateAbi extends AbstractBuildRule
   public ImmutableList<Step> getBuildSteps(
       BuildContext context,
       BuildableContext buildableContext) {
-    return ImmutableList.of(
+    ImmutableList.Builder<Step> steps = ImmutableList.builder();
+    steps.add(
         new MkdirStep(getProjectFilesystem(), getAbiJarPath().getParent()),
         new RmStep(getProjectFilesystem(), getAbiJarPath()),
         new CalculateAbiStep(
@@ -97,6 +129,15 @@ public class CalculateAbi extends AbstractBuildRule
             getProjectFilesystem(),
             context.getSourcePathResolver().getAbsolutePath(binaryJar),
             context.getSourcePathResolver().getRelativePath(getSourcePathToOutput())));
+    if (sourceAbiJarToCompare.isPresent()) {
+      steps.add(
+          new CompareAbiJarsStep(
+              getProjectFilesystem(),
+              getLibraryTarget(getBuildTarget()),
+              context.getSourcePathResolver().getRelativePath(getSourcePathToOutput()),
+              context.getSourcePathResolver().getRelativePath(sourceAbiJarToCompare.get())));
+    }
+    return steps.build();
   }
 
   @Override
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargets;
+import com.facebook.buck.parser.NoSuchBuildTargetException;
+import com.facebook.buck.rules.AbstractBuildRule;
+import com.facebook.buck.rules.AddToRuleKey;
+import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.BuildRuleParams;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.BuildableContext;
+import com.facebook.buck.rules.ExplicitBuildTargetSourcePath;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
+import com.facebook.buck.step.fs.MkdirStep;
+import com.facebook.buck.step.fs.RmStep;
+import com.facebook.buck.util.MoreCollectors;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Generates a library's ABI jar from its sources and the ABI jars of its dependencies, without
+ * waiting for the library, or anything else, to be compiled. Since this only needs javac to parse
+ * and enter the sources, it can run for a whole dependency graph while the compilations are still
+ * queued behind it.
+ * <p>
+ * In source mode, libraries compile against the ABI jars of their dependencies, so they too wait
+ * only for those ABI jars rather than for their dependencies to be compiled.
+ */
+public class CalculateSourceAbi extends AbstractBuildRule implements SupportsInputBasedRuleKey {
+
+  @AddToRuleKey
+  private final ImmutableSortedSet<SourcePath> srcs;
+  @AddToRuleKey
+  private final ImmutableSortedSet<SourcePath> abiClasspath;
+  @AddToRuleKey
+  private final JavacOptions javacOptions;
+  private final SourcePathRuleFinder ruleFinder;
+  private final Path outputPath;
+
+  public CalculateSourceAbi(
+      BuildRuleParams params,
+      SourcePathRuleFinder ruleFinder,
+      ImmutableSortedSet<SourcePath> srcs,
+      ImmutableSortedSet<SourcePath> abiClasspath,
+      JavacOptions javacOptions) {
+    super(params);
+    this.ruleFinder = ruleFinder;
+    this.srcs = srcs;
+    this.abiClasspath = abiClasspath;
+    // Annotation processors don't run when generating a source ABI.
+    this.javacOptions =
+        javacOptions.withAnnotationProcessingParams(AnnotationProcessingParams.EMPTY);
+    this.outputPath = BuildTargets.getGenPath(getProjectFilesystem(), getBuildTarget(), "%s")
+        .resolve(String.format("%s-abi.jar", getBuildTarget().getShortName()));
+  }
+
+  public static boolean isSourceAbiTarget(BuildTarget target) {
+    return target.getFlavors().contains(HasJavaAbi.SOURCE_ABI_FLAVOR);
+  }
+
+  /**
+   * Whether a library with these options can have its ABI generated from source. That takes a
+   * {@link Jsr199Javac}, which runs in Buck's JVM, since the ABI is written by an annotation
+   * processor that Buck adds to the compiler. Annotation processors and resources can both
+   * contribute to the ABI of a library, but neither is available until the library has been built.
+   */
+  public static boolean isSupported(
+      JavacOptions javacOptions,
+      ImmutableSortedSet<SourcePath> resources) {
+    return javacOptions.getJavac() instanceof Jsr199Javac &&
+        javacOptions.getAnnotationProcessingParams().isEmpty() &&
+        resources.isEmpty();
+  }
+
+  /**
+   * @param classpathDeps the rules whose ABI jars the library compiles against
+   */
+  public static CalculateSourceAbi of(
+      BuildTarget target,
+      BuildRuleResolver resolver,
+      SourcePathRuleFinder ruleFinder,
+      BuildRuleParams libraryParams,
+      Iterable<BuildRule> classpathDeps,
+      ImmutableSortedSet<SourcePath> srcs,
+      JavacOptions javacOptions) throws NoSuchBuildTargetException {
+    ImmutableSortedSet<SourcePath> abiClasspath =
+        JavaLibraryRules.getAbiInputs(resolver, classpathDeps);
+    return new CalculateSourceAbi(
+        libraryParams
+            .withBuildTarget(target)
+            .copyReplacingDeclaredAndExtraDeps(
+                Suppliers.ofInstance(
+                    ImmutableSortedSet.<BuildRule>naturalOrder()
+                        .addAll(ruleFinder.filterBuildRuleInputs(srcs))
+                        .addAll(ruleFinder.filterBuildRuleInputs(abiClasspath))
+                        .addAll(ruleFinder.filterBuildRuleInputs(
+                            javacOptions.getInputs(ruleFinder)))
+                        .build()),
+                Suppliers.ofInstance(ImmutableSortedSet.of())),
+        ruleFinder,
+        srcs,
+        abiClasspath,
+        javacOptions);
+  }
+
+  @Override
+  public ImmutableList<Step> getBuildSteps(
+      BuildContext context,
+      BuildableContext buildableContext) {
+    SourcePathResolver resolver = context.getSourcePathResolver();
+    // javac insists on an output directory, even though nothing is written to it.
+    Path scratchDir =
+        BuildTargets.getScratchPath(getProjectFilesystem(), getBuildTarget(), "lib__%s__scratch");
+    Path pathToSrcsList =
+        BuildTargets.getGenPath(getProjectFilesystem(), getBuildTarget(), "__%s__srcs");
+
+    buildableContext.recordArtifact(outputPath);
+    return ImmutableList.of(
+        new MkdirStep(getProjectFilesystem(), outputPath.getParent()),
+        new RmStep(getProjectFilesystem(), outputPath),
+        new MakeCleanDirectoryStep(getProjectFilesystem(), scratchDir),
+        new MkdirStep(getProjectFilesystem(), pathToSrcsList.getParent()),
+        new JavacStep(
+            scratchDir,
+            NoOpClassUsageFileWriter.instance(),
+            Optional.empty(),
+            srcs.stream()
+                .map(resolver::getRelativePath)
+                .collect(MoreCollectors.toImmutableSortedSet()),
+            pathToSrcsList,
+            abiClasspath.stream()
+                .map(resolver::getAbsolutePath)
+                .collect(MoreCollectors.toImmutableSortedSet())
+                .asList(),
+            javacOptions.getJavac(),
+            javacOptions,
+            getBuildTarget(),
+            Optional.empty(),
+            resolver,
+            ruleFinder,
+            getProjectFilesystem(),
+            new ClasspathChecker(),
+            Optional.empty(),
+            Optional.of(outputPath)));
+  }
+
+  @Override
+  public SourcePath getSourcePathToOutput() {
+    return new ExplicitBuildTargetSourcePath(getBuildTarget(), outputPath);
+  }
+}
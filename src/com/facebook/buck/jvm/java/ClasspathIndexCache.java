@@ -0,0 +1,164 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Enumeration;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A thread-safe cache of the contents of classpath jars, shared by every in-memory compilation in
+ * the process. As long as buckd is running, each distinct jar only has its central directory read
+ * and bucketed by package once, no matter how many {@code java_library} rules have it on their
+ * classpath.
+ * <p>
+ * Indexes are keyed by the hash of the jar's contents, so identical jars at different paths (for
+ * example, the same prebuilt jar in several cells) share one index. The hash itself is memoized by
+ * path, size and modification time, much like javac's own zip index cache.
+ */
+class ClasspathIndexCache {
+
+  /**
+   * Upper bound on the total number of jar entries held across all indexes, which keeps the cache
+   * in the tens of megabytes.
+   */
+  private static final long MAX_INDEXED_ENTRIES = 2_000_000;
+
+  private static final long MAX_MEMOIZED_HASHES = 100_000;
+
+  private static final ClasspathIndexCache INSTANCE = new ClasspathIndexCache(MAX_INDEXED_ENTRIES);
+
+  private final Cache<JarKey, HashCode> hashes = CacheBuilder.newBuilder()
+      .maximumSize(MAX_MEMOIZED_HASHES)
+      .build();
+
+  private final Cache<HashCode, ImmutableListMultimap<String, String>> indexes;
+
+  @VisibleForTesting
+  ClasspathIndexCache(long maxIndexedEntries) {
+    indexes = CacheBuilder.newBuilder()
+        .maximumWeight(maxIndexedEntries)
+        .<HashCode, ImmutableListMultimap<String, String>>weigher(
+            (hash, index) -> Math.max(1, index.size()))
+        .build();
+  }
+
+  public static ClasspathIndexCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @return the names of the entries of {@code jar}, keyed by the (dotted) name of the package
+   *     they are in. Directory entries are omitted.
+   */
+  public ImmutableListMultimap<String, String> getEntriesByPackage(Path jar) throws IOException {
+    HashCode hash = getContentHash(jar);
+    try {
+      return indexes.get(hash, () -> index(jar));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throw unwrap(e);
+    }
+  }
+
+  /**
+   * @return the SHA-1 of the contents of {@code jar}, which is only recomputed when the jar's size
+   *     or modification time changes
+   */
+  public HashCode getContentHash(Path jar) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+    JarKey key = new JarKey(jar, attributes.size(), attributes.lastModifiedTime().toMillis());
+    try {
+      return hashes.get(
+          key,
+          () -> com.google.common.io.Files.asByteSource(jar.toFile()).hash(Hashing.sha1()));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throw unwrap(e);
+    }
+  }
+
+  private static IOException unwrap(Exception e) {
+    if (e.getCause() instanceof IOException) {
+      return (IOException) e.getCause();
+    }
+    return new IOException(e.getCause());
+  }
+
+  @VisibleForTesting
+  long size() {
+    return indexes.size();
+  }
+
+  private static ImmutableListMultimap<String, String> index(Path jar) throws IOException {
+    ImmutableListMultimap.Builder<String, String> entriesByPackage =
+        ImmutableListMultimap.builder();
+    try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+      for (Enumeration<? extends ZipEntry> entries = zipFile.entries();
+           entries.hasMoreElements();
+          ) {
+        ZipEntry entry = entries.nextElement();
+        if (entry.isDirectory()) {
+          continue;
+        }
+        String name = entry.getName();
+        int lastSlash = name.lastIndexOf('/');
+        String packageName = lastSlash < 0 ? "" : name.substring(0, lastSlash).replace('/', '.');
+        entriesByPackage.put(packageName, name);
+      }
+    }
+    return entriesByPackage.build();
+  }
+
+  private static class JarKey {
+    private final Path path;
+    private final long size;
+    private final long lastModified;
+
+    private JarKey(Path path, long size, long lastModified) {
+      this.path = path;
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof JarKey)) {
+        return false;
+      }
+      JarKey that = (JarKey) other;
+      return path.equals(that.path) && size == that.size && lastModified == that.lastModified;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(path, size, lastModified);
+    }
+  }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.log.Logger;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.io.ByteStreams;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.annotation.Nullable;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * A file manager which answers javac's classpath listings from the process-wide
+ * {@link ClasspathIndexCache}, rather than having javac open and index every jar on the classpath
+ * afresh for each compilation. Entries are only read from the jars when javac actually needs their
+ * contents.
+ * <p>
+ * Listed entries report the usual {@code jar:file:...!/entry} URIs, so that the
+ * {@link ClassUsageTracker} attributes them to the right jars. If the classpath contains anything
+ * other than jars, all requests are passed through to the underlying file manager.
+ */
+class ClasspathIndexingFileManager extends ForwardingStandardJavaFileManager {
+
+  private static final Logger LOG = Logger.get(ClasspathIndexingFileManager.class);
+
+  private final ClasspathIndexCache indexCache;
+  private final Map<Path, ZipFile> openJars = new HashMap<>();
+
+  @Nullable
+  private Optional<ImmutableListMultimap<String, IndexedJarEntryFileObject>> classpathEntries;
+
+  public ClasspathIndexingFileManager(
+      StandardJavaFileManager fileManager,
+      ClasspathIndexCache indexCache) {
+    super(fileManager);
+    this.indexCache = indexCache;
+  }
+
+  @Override
+  public Iterable<JavaFileObject> list(
+      Location location,
+      String packageName,
+      Set<JavaFileObject.Kind> kinds,
+      boolean recurse) throws IOException {
+    Optional<ImmutableListMultimap<String, IndexedJarEntryFileObject>> entries =
+        getClasspathEntries(location);
+    if (!entries.isPresent()) {
+      return super.list(location, packageName, kinds, recurse);
+    }
+
+    List<JavaFileObject> result = new ArrayList<>();
+    addEntries(entries.get().get(packageName), kinds, result);
+    if (recurse) {
+      String packagePrefix = packageName + ".";
+      for (String entryPackage : entries.get().keySet()) {
+        if (packageName.isEmpty() ?
+            !entryPackage.isEmpty() :
+            entryPackage.startsWith(packagePrefix)) {
+          addEntries(entries.get().get(entryPackage), kinds, result);
+        }
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public String inferBinaryName(Location location, JavaFileObject file) {
+    if (file instanceof IndexedJarEntryFileObject) {
+      String name = file.getName();
+      return name.substring(0, name.lastIndexOf('.')).replace('/', '.');
+    }
+    return super.inferBinaryName(location, file);
+  }
+
+  @Override
+  public boolean isSameFile(FileObject a, FileObject b) {
+    if (a instanceof IndexedJarEntryFileObject || b instanceof IndexedJarEntryFileObject) {
+      return a.toUri().equals(b.toUri());
+    }
+    return super.isSameFile(a, b);
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (ZipFile jar : openJars.values()) {
+      try {
+        jar.close();
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to close %s. We may be leaking file handles.", jar.getName());
+      }
+    }
+    openJars.clear();
+    super.close();
+  }
+
+  /**
+   * @return every entry of the jars on the classpath, keyed by package, if {@code location} is the
+   *     classpath and it consists only of jars. This is resolved once per compilation, as javac
+   *     lists the classpath once for every package it looks up.
+   */
+  private Optional<ImmutableListMultimap<String, IndexedJarEntryFileObject>> getClasspathEntries(
+      Location location) throws IOException {
+    if (location != StandardLocation.CLASS_PATH) {
+      return Optional.empty();
+    }
+    if (classpathEntries == null) {
+      Optional<ImmutableList<Path>> jars = findClasspathJars();
+      if (jars.isPresent()) {
+        ImmutableListMultimap.Builder<String, IndexedJarEntryFileObject> builder =
+            ImmutableListMultimap.builder();
+        for (Path jar : jars.get()) {
+          for (Map.Entry<String, String> entry :
+              indexCache.getEntriesByPackage(jar).entries()) {
+            String pathInJar = entry.getValue();
+            builder.put(
+                entry.getKey(),
+                new IndexedJarEntryFileObject(jar, pathInJar, getKind(pathInJar)));
+          }
+        }
+        classpathEntries = Optional.of(builder.build());
+      } else {
+        classpathEntries = Optional.empty();
+      }
+    }
+    return classpathEntries;
+  }
+
+  private Optional<ImmutableList<Path>> findClasspathJars() {
+    Iterable<? extends File> classpath = getLocation(StandardLocation.CLASS_PATH);
+    if (classpath == null) {
+      return Optional.empty();
+    }
+    ImmutableList.Builder<Path> jars = ImmutableList.builder();
+    for (File entry : classpath) {
+      if (!entry.exists()) {
+        // javac silently ignores missing classpath entries, and so do we.
+        continue;
+      }
+      String name = entry.getName();
+      if (!entry.isFile() || !(name.endsWith(".jar") || name.endsWith(".zip"))) {
+        return Optional.empty();
+      }
+      jars.add(entry.toPath().toAbsolutePath());
+    }
+    return Optional.of(jars.build());
+  }
+
+  private static void addEntries(
+      List<IndexedJarEntryFileObject> entries,
+      Set<JavaFileObject.Kind> kinds,
+      List<JavaFileObject> result) {
+    for (IndexedJarEntryFileObject entry : entries) {
+      if (kinds.contains(entry.getKind())) {
+        result.add(entry);
+      }
+    }
+  }
+
+  private static JavaFileObject.Kind getKind(String name) {
+    for (JavaFileObject.Kind kind : JavaFileObject.Kind.values()) {
+      if (kind != JavaFileObject.Kind.OTHER && name.endsWith(kind.extension)) {
+        return kind;
+      }
+    }
+    return JavaFileObject.Kind.OTHER;
+  }
+
+  private InputStream openEntry(Path jar, String entryName) throws IOException {
+    ZipFile zipFile = openJars.get(jar);
+    if (zipFile == null) {
+      zipFile = new ZipFile(jar.toFile());
+      openJars.put(jar, zipFile);
+    }
+    ZipEntry entry = zipFile.getEntry(entryName);
+    if (entry == null) {
+      throw new IOException(String.format("%s no longer contains %s", jar, entryName));
+    }
+    return zipFile.getInputStream(entry);
+  }
+
+  private static URI createJarUri(Path jar, String pathInJar) {
+    try {
+      return new URI(
+          "jar",
+          "file:" + jar.toUri().getSchemeSpecificPart() + "!/" + pathInJar,
+          null);
+    } catch (URISyntaxException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private class IndexedJarEntryFileObject extends JarFileObject {
+    private final Path jar;
+
+    private IndexedJarEntryFileObject(Path jar, String pathInJar, Kind kind) {
+      super(createJarUri(jar, pathInJar), pathInJar, kind);
+      this.jar = jar;
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+      return openEntry(jar, pathInJar);
+    }
+
+    @Override
+    public OutputStream openOutputStream() throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Reader openReader(boolean ignoreEncodingErrors) throws IOException {
+      return new InputStreamReader(openInputStream(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+      try (InputStream inputStream = openInputStream()) {
+        return new String(
+            ByteStreams.toByteArray(inputStream),
+            StandardCharsets.UTF_8);
+      }
+    }
+
+    @Override
+    public Writer openWriter() throws IOException {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
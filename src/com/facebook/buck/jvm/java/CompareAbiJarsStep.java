@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.event.ConsoleEvent;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.abi.StubJarComparator;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.google.common.base.Joiner;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.SortedSet;
+
+/**
+ * Warns about the classes whose source-based ABI differs from the one calculated from the compiled
+ * library, so that libraries migrating to source-based ABIs can find out what would break.
+ */
+public class CompareAbiJarsStep implements Step {
+
+  private final ProjectFilesystem filesystem;
+  private final BuildTarget libraryTarget;
+  private final Path classAbiJar;
+  private final Path sourceAbiJar;
+
+  public CompareAbiJarsStep(
+      ProjectFilesystem filesystem,
+      BuildTarget libraryTarget,
+      Path classAbiJar,
+      Path sourceAbiJar) {
+    this.filesystem = filesystem;
+    this.libraryTarget = libraryTarget;
+    this.classAbiJar = classAbiJar;
+    this.sourceAbiJar = sourceAbiJar;
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context) {
+    SortedSet<Path> differingClasses;
+    try {
+      differingClasses = StubJarComparator.findDifferingClasses(
+          filesystem.resolve(classAbiJar),
+          filesystem.resolve(sourceAbiJar));
+    } catch (IOException e) {
+      context.logError(e, "Failed to compare ABIs for %s.", libraryTarget);
+      return StepExecutionResult.ERROR;
+    }
+
+    if (!differingClasses.isEmpty()) {
+      context.postEvent(
+          ConsoleEvent.warning(
+              "%s: the source-based ABI differs from the compiled one in:\n  %s",
+              libraryTarget,
+              Joiner.on("\n  ").join(differingClasses)));
+    }
+    return StepExecutionResult.SUCCESS;
+  }
+
+  @Override
+  public String getShortName() {
+    return "compare_abi_jars";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format("%s %s %s", getShortName(), classAbiJar, sourceAbiJar);
+  }
+}
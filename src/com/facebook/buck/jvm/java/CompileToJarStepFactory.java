@@ -20,6 +20,7 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.jvm.core.SuggestBuildRules;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildableContext;
 import com.facebook.buck.rules.RuleKeyAppendable;
 import com.facebook.buck.rules.SourcePathResolver;
@@ -39,6 +40,12 @@ import java.util.regex.Pattern;
  */
 public interface CompileToJarStepFactory extends RuleKeyAppendable {
 
+  /**
+   * @return the rules whose outputs the compiler itself runs, such as annotation processors, as
+   *     opposed to the libraries on the classpath of the sources it compiles
+   */
+  ImmutableSet<BuildRule> getCompilerDeps(SourcePathRuleFinder ruleFinder);
+
   void createCompileStep(
       BuildContext context,
       ImmutableSortedSet<Path> sourceFilePaths,
@@ -69,10 +69,13 @@ class DefaultClassUsageFileReader {
 
       Path jarAbsolutePath = pathResolver.getAbsolutePath(
           Preconditions.checkNotNull(dep.getSourcePathToOutput()));
+      SourcePath abiJarSourcePath = new DefaultBuildTargetSourcePath(depAbiJar.get());
 
+      jarAbsolutePathToAbiJarSourcePathBuilder.put(jarAbsolutePath, abiJarSourcePath);
+      // Rules compiled against ABI jars record the classes they use in those jars.
       jarAbsolutePathToAbiJarSourcePathBuilder.put(
-          jarAbsolutePath,
-          new DefaultBuildTargetSourcePath(depAbiJar.get()));
+          pathResolver.getAbsolutePath(abiJarSourcePath),
+          abiJarSourcePath);
     }
 
     return jarAbsolutePathToAbiJarSourcePathBuilder.build();
@@ -59,6 +59,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import com.google.common.hash.HashCode;
 import com.google.common.reflect.ClassPath;
@@ -131,6 +132,11 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
   @AddToRuleKey
   @SuppressWarnings("PMD.UnusedPrivateField")
   private final JarArchiveDependencySupplier abiClasspath;
+  // The ABI jars compiled against in place of the full jars of the compile time classpath, if any.
+  private final Optional<ImmutableSortedSet<SourcePath>> compileTimeClasspathAbiJars;
+  // When compiling against ABI jars, the rule does not depend on the full jars of its declared
+  // deps, but those are still what it puts on the classpath of its dependents.
+  private final ImmutableSortedSet<BuildRule> fullJarDeclaredDeps;
   private final ImmutableSortedSet<BuildRule> deps;
   @Nullable private Path depFileOutputPath;
 
@@ -199,6 +205,7 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
       ImmutableSortedSet<BuildRule> exportedDeps,
       ImmutableSortedSet<BuildRule> providedDeps,
       ImmutableSortedSet<SourcePath> abiInputs,
+      Optional<ImmutableSortedSet<SourcePath>> compileTimeClasspathAbiJars,
       boolean trackClassUsage,
       ImmutableSet<Either<SourcePath, Path>> additionalClasspathEntries,
       CompileToJarStepFactory compileStepFactory,
@@ -221,6 +228,7 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
         providedDeps,
         trackClassUsage,
         new JarArchiveDependencySupplier(abiInputs),
+        compileTimeClasspathAbiJars,
         additionalClasspathEntries,
         compileStepFactory,
         suggestDependencies,
@@ -244,6 +252,7 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
       ImmutableSortedSet<BuildRule> providedDeps,
       boolean trackClassUsage,
       final JarArchiveDependencySupplier abiClasspath,
+      Optional<ImmutableSortedSet<SourcePath>> compileTimeClasspathAbiJars,
       ImmutableSet<Either<SourcePath, Path>> additionalClasspathEntries,
       CompileToJarStepFactory compileStepFactory,
       boolean suggestDependencies,
@@ -253,7 +262,25 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
       ImmutableSortedSet<BuildTarget> tests,
       ImmutableSet<Pattern> classesToRemoveFromJar) {
     super(
-        params.copyAppendingExtraDeps(() -> ruleFinder.filterBuildRuleInputs(abiClasspath.get())),
+        getBuildRuleParams(
+            params.copyAppendingExtraDeps(
+                () -> ruleFinder.filterBuildRuleInputs(abiClasspath.get())),
+            ruleFinder,
+            compileTimeClasspathAbiJars.isPresent(),
+            exportedDeps,
+            providedDeps,
+            ImmutableSet.<SourcePath>builder()
+                .addAll(srcs)
+                .addAll(resources)
+                .addAll(manifestFile.map(ImmutableSet::of).orElse(ImmutableSet.of()))
+                .addAll(proguardConfig.map(ImmutableSet::of).orElse(ImmutableSet.of()))
+                .addAll(
+                    additionalClasspathEntries.stream()
+                        .filter(Either::isLeft)
+                        .map(Either::getLeft)
+                        .iterator())
+                .build(),
+            compileStepFactory),
         resolver);
     this.ruleFinder = ruleFinder;
     this.compileStepFactory = compileStepFactory;
@@ -284,6 +311,8 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
 
     this.trackClassUsage = trackClassUsage;
     this.abiClasspath = abiClasspath;
+    this.compileTimeClasspathAbiJars = compileTimeClasspathAbiJars;
+    this.fullJarDeclaredDeps = params.getDeclaredDeps().get();
     this.deps = params.getDeps();
     if (!srcs.isEmpty() || !resources.isEmpty() || manifestFile.isPresent()) {
       this.outputJar = Optional.of(getOutputJarPath(getBuildTarget(), getProjectFilesystem()));
@@ -310,6 +339,38 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
     this.classesToRemoveFromJar = classesToRemoveFromJar;
   }
 
+  /**
+   * A library compiled against the ABI jars of the libraries on its compile time classpath depends
+   * on those ABI jars, which are among those of {@code params}, rather than on the libraries
+   * themselves, unless it has other uses for them.
+   */
+  private static BuildRuleParams getBuildRuleParams(
+      BuildRuleParams params,
+      SourcePathRuleFinder ruleFinder,
+      boolean compileAgainstAbis,
+      ImmutableSortedSet<BuildRule> exportedDeps,
+      ImmutableSortedSet<BuildRule> providedDeps,
+      Iterable<SourcePath> inputs,
+      CompileToJarStepFactory compileStepFactory) {
+    if (!compileAgainstAbis) {
+      return params;
+    }
+    Supplier<Set<BuildRule>> fullJarDeps = Suppliers.memoize(
+        () -> Sets.difference(
+            JavaLibraryClasspathProvider.getCompileTimeClasspathDeps(
+                Iterables.concat(params.getDeclaredDeps().get(), exportedDeps, providedDeps)),
+            Sets.union(
+                ruleFinder.filterBuildRuleInputs(inputs),
+                compileStepFactory.getCompilerDeps(ruleFinder))));
+    return params.copyReplacingDeclaredAndExtraDeps(
+        Suppliers.memoize(
+            () -> ImmutableSortedSet.copyOf(
+                Sets.difference(params.getDeclaredDeps().get(), fullJarDeps.get()))),
+        Suppliers.memoize(
+            () -> ImmutableSortedSet.copyOf(
+                Sets.difference(params.getExtraDeps().get(), fullJarDeps.get()))));
+  }
+
   private Path getPathToAbiOutputDir() {
     return BuildTargets.getGenPath(getProjectFilesystem(), getBuildTarget(), "lib__%s__abi");
   }
@@ -364,7 +425,7 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
 
   @Override
   public ImmutableSortedSet<BuildRule> getDepsForTransitiveClasspathEntries() {
-    return ImmutableSortedSet.copyOf(Sets.union(getDeclaredDeps(), exportedDeps));
+    return ImmutableSortedSet.copyOf(Sets.union(fullJarDeclaredDeps, exportedDeps));
   }
 
   @Override
@@ -455,6 +516,13 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
     Iterable<Path> declaredClasspaths = declaredClasspathDeps
         .transformAndConcat(JavaLibrary::getOutputClasspaths)
         .transform(context.getSourcePathResolver()::getAbsolutePath);
+    if (compileTimeClasspathAbiJars.isPresent()) {
+      // The ABI jars stand in for the full jars of the provided deps too.
+      provided = ImmutableSet.of();
+      declaredClasspaths = compileTimeClasspathAbiJars.get().stream()
+          .map(context.getSourcePathResolver()::getAbsolutePath)
+          .collect(MoreCollectors.toImmutableList());
+    }
     // Only override the bootclasspath if this rule is supposed to compile Android code.
     ImmutableSortedSet<Path> declared = ImmutableSortedSet.<Path>naturalOrder()
         .addAll(declaredClasspaths)
@@ -613,7 +681,7 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
   public Iterable<AndroidPackageable> getRequiredPackageables() {
     return AndroidPackageableCollector.getPackageableRules(ImmutableSortedSet.copyOf(
             Sets.difference(
-                Sets.union(getDeclaredDeps(), exportedDeps),
+                Sets.union(fullJarDeclaredDeps, exportedDeps),
                 providedDeps)));
   }
 
@@ -30,6 +30,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
 
 import java.nio.file.Path;
 import java.util.Optional;
@@ -56,6 +57,7 @@ public class DefaultJavaLibraryBuilder {
   protected Optional<String> mavenCoords = Optional.empty();
   protected ImmutableSortedSet<BuildTarget> tests = ImmutableSortedSet.of();
   protected ImmutableSet<Pattern> classesToRemoveFromJar = ImmutableSet.of();
+  protected boolean compileAgainstAbis = false;
 
   protected DefaultJavaLibraryBuilder(
       BuildRuleParams params,
@@ -166,8 +168,36 @@ public class DefaultJavaLibraryBuilder {
     return this;
   }
 
+  /**
+   * Compiles the library against the ABI jars of the libraries on its compile time classpath rather
+   * than their full jars, so that it depends on those ABI jars and need not wait for the libraries
+   * to be compiled.
+   */
+  public DefaultJavaLibraryBuilder setCompileAgainstAbis(boolean compileAgainstAbis) {
+    this.compileAgainstAbis = compileAgainstAbis;
+    return this;
+  }
+
+  protected ImmutableSortedSet<BuildRule> getCompileTimeClasspathDeps() {
+    return JavaLibraryClasspathProvider.getCompileTimeClasspathDeps(
+        Iterables.concat(params.getDeclaredDeps().get(), exportedDeps, providedDeps));
+  }
+
   protected ImmutableSortedSet<SourcePath> getAbiInputs() throws NoSuchBuildTargetException {
-    return JavaLibraryRules.getAbiInputs(buildRuleResolver, params.getDeps());
+    return JavaLibraryRules.getAbiInputs(
+        buildRuleResolver,
+        compileAgainstAbis ?
+            Iterables.concat(params.getDeps(), getCompileTimeClasspathDeps()) :
+            params.getDeps());
+  }
+
+  protected Optional<ImmutableSortedSet<SourcePath>> getCompileTimeClasspathAbiJars()
+      throws NoSuchBuildTargetException {
+    if (!compileAgainstAbis) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        JavaLibraryRules.getAbiInputs(buildRuleResolver, getCompileTimeClasspathDeps()));
   }
 
   public DefaultJavaLibrary build() throws NoSuchBuildTargetException {
@@ -183,6 +213,7 @@ public class DefaultJavaLibraryBuilder {
         exportedDeps,
         providedDeps,
         getAbiInputs(),
+        getCompileTimeClasspathAbiJars(),
         trackClassUsage,
         additionalClasspathEntries,
         compileStepFactory,
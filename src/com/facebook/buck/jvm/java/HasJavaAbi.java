@@ -25,6 +25,7 @@ import java.util.Optional;
 
 public interface HasJavaAbi {
   Flavor ABI_FLAVOR = InternalFlavor.of("abi");
+  Flavor SOURCE_ABI_FLAVOR = InternalFlavor.of("source-abi");
 
   BuildTarget getBuildTarget();
 
@@ -0,0 +1,622 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.abi.ClassFileSummary;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.MoreCollectors;
+import com.facebook.buck.util.ObjectMappers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles the sources of a rule, recompiling only those which changed since the last successful
+ * compilation, along with those that use classes whose ABI changed as a result. The class files
+ * of everything else are copied from a copy of the previous output kept alongside the rule.
+ * <p>
+ * The result is meant to be identical to a clean compilation, so anything this step cannot reason
+ * about precisely leads to all of the sources being compiled:
+ * <ul>
+ *   <li>a change to the compiler, its options, or the contents of the classpath;</li>
+ *   <li>sources being added or removed, or classes (other than local and anonymous ones) being
+ *   added to or removed from a source, since either can change what names resolve to;</li>
+ *   <li>a change to the value of a constant, since javac copies constants into the classes that
+ *   use them and leaves no other trace of the reference;</li>
+ *   <li>class files which cannot be attributed to exactly one source.</li>
+ * </ul>
+ * When class usage is tracked, javac only reports the classes used by a compilation as a whole, so
+ * the classes used by sources which were not recompiled are carried over from the previous
+ * compilation. The used classes file then lists everything a clean build would, and possibly a few
+ * classes that a recompiled source no longer uses. That is why this is off by default, and part of
+ * the rule key when it is on, so that such outputs are never mistaken for those of a clean build.
+ */
+public class IncrementalJavacStep implements Step {
+
+  private static final Logger LOG = Logger.get(IncrementalJavacStep.class);
+
+  private static final ObjectMapper MAPPER = ObjectMappers.newDefaultInstance();
+
+  /** Changed whenever the way the state is written changes, so that older state is ignored. */
+  private static final int STATE_VERSION = 1;
+
+  @VisibleForTesting
+  static final String STATE_FILE_NAME = "state.json";
+  private static final String USED_CLASSES_FILE_NAME = "used-classes.json";
+  private static final String CLASSES_DIR_NAME = "classes";
+
+  /**
+   * Creates the {@link JavacStep} which compiles the given sources, against the given classpath,
+   * into the rule's output directory.
+   */
+  public interface JavacStepFactory {
+    JavacStep create(
+        ImmutableSortedSet<Path> sources,
+        ImmutableList<Path> classpath,
+        ClassUsageFileWriter usedClassesFileWriter);
+  }
+
+  private final ProjectFilesystem filesystem;
+  private final Path stateDirectory;
+  private final Path outputDirectory;
+  private final ImmutableSortedSet<Path> sources;
+  private final ImmutableList<Path> classpath;
+  private final JavacOptions javacOptions;
+  private final SourcePathResolver resolver;
+  private final SourcePathRuleFinder ruleFinder;
+  private final ClassUsageFileWriter usedClassesFileWriter;
+  private final JavacStepFactory javacStepFactory;
+
+  /**
+   * @param stateDirectory where to keep the copy of the output and what is known about it. Nothing
+   *     else should write to it.
+   */
+  public IncrementalJavacStep(
+      ProjectFilesystem filesystem,
+      Path stateDirectory,
+      Path outputDirectory,
+      ImmutableSortedSet<Path> sources,
+      ImmutableList<Path> classpath,
+      JavacOptions javacOptions,
+      SourcePathResolver resolver,
+      SourcePathRuleFinder ruleFinder,
+      ClassUsageFileWriter usedClassesFileWriter,
+      JavacStepFactory javacStepFactory) {
+    this.filesystem = filesystem;
+    this.stateDirectory = stateDirectory;
+    this.outputDirectory = outputDirectory;
+    this.sources = sources;
+    this.classpath = classpath;
+    this.javacOptions = javacOptions;
+    this.resolver = resolver;
+    this.ruleFinder = ruleFinder;
+    this.usedClassesFileWriter = usedClassesFileWriter;
+    this.javacStepFactory = javacStepFactory;
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    // Resources are copied into the output directory before compilation, and may include classes.
+    ImmutableSet<Path> resourceClassFiles = listClassFiles();
+    String inputsHash = hashInputs(context);
+    ImmutableSortedMap<Path, String> sourceHashes = hashSources();
+
+    Optional<IncrementalCompilationState> state = readState(inputsHash, sourceHashes.keySet());
+    if (!state.isPresent()) {
+      return compileEverything(context, resourceClassFiles, inputsHash, sourceHashes);
+    }
+    return compileChanges(context, resourceClassFiles, inputsHash, sourceHashes, state.get());
+  }
+
+  private StepExecutionResult compileEverything(
+      ExecutionContext context,
+      ImmutableSet<Path> resourceClassFiles,
+      String inputsHash,
+      ImmutableSortedMap<Path, String> sourceHashes) throws IOException, InterruptedException {
+    filesystem.deleteRecursivelyIfExists(stateDirectory);
+
+    StepExecutionResult result =
+        javacStepFactory.create(sources, classpath, usedClassesFileWriter).execute(context);
+    if (!result.isSuccess()) {
+      return result;
+    }
+
+    ImmutableMap<Path, ClassFileSummary> classes = readClasses(
+        outputDirectory,
+        Sets.difference(listClassFiles(), resourceClassFiles));
+    Optional<SortedMap<Path, SortedSet<Path>>> classFiles = attributeToSources(classes, sources);
+    if (!classFiles.isPresent()) {
+      LOG.info("Not all classes could be matched to their sources; not compiling incrementally.");
+      return result;
+    }
+
+    Path classesDirectory = stateDirectory.resolve(CLASSES_DIR_NAME);
+    for (Path classFile : classes.keySet()) {
+      copy(outputDirectory, classesDirectory, classFile);
+    }
+    if (usedClassesFileWriter instanceof DefaultClassUsageFileWriter) {
+      filesystem.copyFile(
+          ((DefaultClassUsageFileWriter) usedClassesFileWriter).getRelativePath(),
+          stateDirectory.resolve(USED_CLASSES_FILE_NAME));
+    }
+    writeState(inputsHash, sourceHashes, classFiles.get());
+    return result;
+  }
+
+  private StepExecutionResult compileChanges(
+      ExecutionContext context,
+      ImmutableSet<Path> resourceClassFiles,
+      String inputsHash,
+      ImmutableSortedMap<Path, String> sourceHashes,
+      IncrementalCompilationState state) throws IOException, InterruptedException {
+    Path classesDirectory = stateDirectory.resolve(CLASSES_DIR_NAME);
+    SortedMap<Path, SortedSet<Path>> classFiles = new TreeMap<>();
+    for (Map.Entry<String, List<String>> entry : state.getClassFiles().entrySet()) {
+      classFiles.put(
+          Paths.get(entry.getKey()),
+          entry.getValue().stream().map(Paths::get).collect(Collectors.toCollection(TreeSet::new)));
+    }
+
+    ImmutableMap<Path, ClassFileSummary> previousClasses = readClasses(
+        classesDirectory,
+        classFiles.values().stream().flatMap(Set::stream).collect(Collectors.toList()));
+    Map<String, ClassFileSummary> previousClassesByName = new HashMap<>();
+    for (ClassFileSummary summary : previousClasses.values()) {
+      previousClassesByName.put(summary.getName(), summary);
+    }
+
+    SortedSet<Path> toCompile = new TreeSet<>();
+    for (Path source : sources) {
+      if (!sourceHashes.get(source).equals(state.getSourceHashes().get(source.toString()))) {
+        toCompile.add(source);
+      }
+    }
+
+    // Start from the previous output, and replace the classes of whatever needs compiling.
+    for (SortedSet<Path> sourceClassFiles : classFiles.values()) {
+      for (Path classFile : sourceClassFiles) {
+        copy(classesDirectory, outputDirectory, classFile);
+      }
+    }
+
+    Map<Path, ClassFileSummary> currentClasses = new HashMap<>(previousClasses);
+    SortedMap<Path, SortedSet<Path>> currentClassFiles = new TreeMap<>(classFiles);
+    Optional<ClassUsageFileWriter> lastUsedClassesFileWriter = Optional.empty();
+    // In a clean build the classes of this rule come from its sources, which javac prefers to
+    // anything on the classpath, so the classes that were not recompiled have to come first.
+    ImmutableList<Path> outputClasspath = ImmutableList.<Path>builder()
+        .add(filesystem.resolve(outputDirectory))
+        .addAll(classpath)
+        .build();
+
+    while (!toCompile.isEmpty()) {
+      LOG.debug("Compiling %d of %d sources.", toCompile.size(), sources.size());
+      for (Path source : toCompile) {
+        for (Path classFile : currentClassFiles.get(source)) {
+          filesystem.deleteFileAtPathIfExists(outputDirectory.resolve(classFile));
+          currentClasses.remove(classFile);
+        }
+      }
+
+      ClassUsageFileWriter usedClassesFileWriter = newUsedClassesFileWriter();
+      StepExecutionResult result = javacStepFactory
+          .create(ImmutableSortedSet.copyOf(toCompile), outputClasspath, usedClassesFileWriter)
+          .execute(context);
+      if (!result.isSuccess()) {
+        return result;
+      }
+      lastUsedClassesFileWriter = Optional.of(usedClassesFileWriter);
+
+      ImmutableMap<Path, ClassFileSummary> compiledClasses = readClasses(
+          outputDirectory,
+          Sets.difference(
+              Sets.difference(listClassFiles(), resourceClassFiles),
+              currentClasses.keySet()));
+      Optional<SortedMap<Path, SortedSet<Path>>> compiledClassFiles =
+          attributeToSources(compiledClasses, toCompile);
+      if (!compiledClassFiles.isPresent()) {
+        LOG.info("Not all classes could be matched to their sources; compiling everything.");
+        return recompileEverything(context, resourceClassFiles, inputsHash, sourceHashes);
+      }
+      currentClasses.putAll(compiledClasses);
+      for (Path source : toCompile) {
+        currentClassFiles.put(
+            source,
+            compiledClassFiles.get().getOrDefault(source, ImmutableSortedSet.of()));
+      }
+
+      Optional<Set<String>> changedClasses = findChangedClasses(
+          toCompile.stream()
+              .flatMap(source -> classFiles.get(source).stream())
+              .map(previousClasses::get)
+              .collect(Collectors.toList()),
+          compiledClasses.values(),
+          previousClassesByName);
+      if (!changedClasses.isPresent()) {
+        return recompileEverything(context, resourceClassFiles, inputsHash, sourceHashes);
+      }
+
+      Set<String> affectedClasses = addSubclasses(changedClasses.get(), currentClasses.values());
+      SortedSet<Path> dependents = new TreeSet<>();
+      for (Path source : sources) {
+        if (toCompile.contains(source)) {
+          continue;
+        }
+        for (Path classFile : currentClassFiles.get(source)) {
+          if (!Sets.intersection(
+              currentClasses.get(classFile).getReferencedClasses(),
+              affectedClasses).isEmpty()) {
+            dependents.add(source);
+            break;
+          }
+        }
+      }
+      if (dependents.isEmpty()) {
+        break;
+      }
+      // Everything compiled so far is compiled again with the dependents, so that it sees their
+      // new ABIs too.
+      toCompile.addAll(dependents);
+    }
+
+    updateState(
+        inputsHash,
+        sourceHashes,
+        classFiles,
+        currentClassFiles,
+        toCompile,
+        lastUsedClassesFileWriter);
+    return StepExecutionResult.SUCCESS;
+  }
+
+  /**
+   * @return the names of the classes whose ABI changed, or nothing if a change means that all
+   *     sources have to be compiled
+   */
+  private static Optional<Set<String>> findChangedClasses(
+      List<ClassFileSummary> previous,
+      Iterable<ClassFileSummary> compiled,
+      Map<String, ClassFileSummary> previousClassesByName) {
+    Set<String> previousNames = previous.stream()
+        .filter(summary -> !summary.isLocalOrAnonymous())
+        .map(ClassFileSummary::getName)
+        .collect(Collectors.toSet());
+    Set<String> changed = new HashSet<>();
+    for (ClassFileSummary summary : compiled) {
+      if (summary.isLocalOrAnonymous()) {
+        continue;
+      }
+      if (!previousNames.remove(summary.getName())) {
+        LOG.info("%s was added; compiling everything.", summary.getName());
+        return Optional.empty();
+      }
+      ClassFileSummary previousSummary = previousClassesByName.get(summary.getName());
+      if (!previousSummary.getConstantsHash().equals(summary.getConstantsHash())) {
+        LOG.info("The constants of %s changed; compiling everything.", summary.getName());
+        return Optional.empty();
+      }
+      if (!previousSummary.getAbiHash().equals(summary.getAbiHash())) {
+        changed.add(summary.getName());
+      }
+    }
+    if (!previousNames.isEmpty()) {
+      LOG.info("%s were removed; compiling everything.", previousNames);
+      return Optional.empty();
+    }
+    return Optional.of(changed);
+  }
+
+  /**
+   * A change to a class can change what is inherited by its subclasses, even though their own
+   * class files stay the same, so users of the subclasses are affected too.
+   */
+  private static Set<String> addSubclasses(
+      Set<String> changedClasses,
+      Iterable<ClassFileSummary> classes) {
+    Set<String> affected = new HashSet<>(changedClasses);
+    boolean added;
+    do {
+      added = false;
+      for (ClassFileSummary summary : classes) {
+        if (!affected.contains(summary.getName()) &&
+            !Sets.intersection(summary.getSupertypes(), affected).isEmpty()) {
+          added |= affected.add(summary.getName());
+        }
+      }
+    } while (added);
+    return affected;
+  }
+
+  private StepExecutionResult recompileEverything(
+      ExecutionContext context,
+      ImmutableSet<Path> resourceClassFiles,
+      String inputsHash,
+      ImmutableSortedMap<Path, String> sourceHashes) throws IOException, InterruptedException {
+    for (Path classFile : Sets.difference(listClassFiles(), resourceClassFiles)) {
+      filesystem.deleteFileAtPath(outputDirectory.resolve(classFile));
+    }
+    return compileEverything(context, resourceClassFiles, inputsHash, sourceHashes);
+  }
+
+  private void updateState(
+      String inputsHash,
+      ImmutableSortedMap<Path, String> sourceHashes,
+      SortedMap<Path, SortedSet<Path>> previousClassFiles,
+      SortedMap<Path, SortedSet<Path>> currentClassFiles,
+      Set<Path> compiledSources,
+      Optional<ClassUsageFileWriter> lastUsedClassesFileWriter) throws IOException {
+    // Without the state file, a build interrupted part way through this won't trust the rest.
+    filesystem.deleteFileAtPathIfExists(stateDirectory.resolve(STATE_FILE_NAME));
+
+    Path classesDirectory = stateDirectory.resolve(CLASSES_DIR_NAME);
+    for (Path source : compiledSources) {
+      for (Path classFile : previousClassFiles.get(source)) {
+        filesystem.deleteFileAtPathIfExists(classesDirectory.resolve(classFile));
+      }
+      for (Path classFile : currentClassFiles.get(source)) {
+        copy(outputDirectory, classesDirectory, classFile);
+      }
+    }
+
+    if (usedClassesFileWriter instanceof DefaultClassUsageFileWriter) {
+      Path usedClassesFile =
+          ((DefaultClassUsageFileWriter) usedClassesFileWriter).getRelativePath();
+      Path previousUsedClassesFile = stateDirectory.resolve(USED_CLASSES_FILE_NAME);
+      SortedMap<String, SortedSet<String>> usedClasses = readUsedClasses(previousUsedClassesFile);
+      if (lastUsedClassesFileWriter.isPresent()) {
+        readUsedClasses(usedClassesFile).forEach(
+            (jar, classes) -> usedClasses.computeIfAbsent(jar, key -> new TreeSet<>())
+                .addAll(classes));
+      }
+      filesystem.writeContentsToPath(MAPPER.writeValueAsString(usedClasses), usedClassesFile);
+      filesystem.copyFile(usedClassesFile, previousUsedClassesFile);
+    }
+
+    writeState(inputsHash, sourceHashes, currentClassFiles);
+  }
+
+  private void writeState(
+      String inputsHash,
+      ImmutableSortedMap<Path, String> sourceHashes,
+      SortedMap<Path, SortedSet<Path>> classFiles) throws IOException {
+    ImmutableSortedMap.Builder<String, List<String>> classFileNames =
+        ImmutableSortedMap.naturalOrder();
+    for (Map.Entry<Path, SortedSet<Path>> entry : classFiles.entrySet()) {
+      classFileNames.put(
+          entry.getKey().toString(),
+          entry.getValue().stream().map(Path::toString).collect(Collectors.toList()));
+    }
+    IncrementalCompilationState state = IncrementalCompilationState.of(
+        inputsHash,
+        sourceHashes.entrySet().stream()
+            .collect(Collectors.toMap(entry -> entry.getKey().toString(), Map.Entry::getValue)),
+        classFileNames.build());
+    filesystem.mkdirs(stateDirectory);
+    filesystem.writeContentsToPath(
+        MAPPER.writeValueAsString(state),
+        stateDirectory.resolve(STATE_FILE_NAME));
+  }
+
+  private Optional<IncrementalCompilationState> readState(
+      String inputsHash,
+      Set<Path> currentSources) {
+    Optional<String> contents =
+        filesystem.readFileIfItExists(stateDirectory.resolve(STATE_FILE_NAME));
+    if (!contents.isPresent()) {
+      return Optional.empty();
+    }
+    IncrementalCompilationState state;
+    try {
+      state = MAPPER.readValue(contents.get(), IncrementalCompilationState.class);
+    } catch (IOException e) {
+      LOG.warn(e, "Ignoring unreadable incremental compilation state.");
+      return Optional.empty();
+    }
+    if (!state.getInputsHash().equals(inputsHash)) {
+      LOG.info("The compiler, its options or the classpath changed; compiling everything.");
+      return Optional.empty();
+    }
+    if (!state.getSourceHashes().keySet().equals(
+        currentSources.stream().map(Path::toString).collect(Collectors.toSet()))) {
+      LOG.info("Sources were added or removed; compiling everything.");
+      return Optional.empty();
+    }
+    return Optional.of(state);
+  }
+
+  private SortedMap<String, SortedSet<String>> readUsedClasses(Path path) throws IOException {
+    Optional<String> contents = filesystem.readFileIfItExists(path);
+    SortedMap<String, SortedSet<String>> usedClasses = new TreeMap<>();
+    if (contents.isPresent()) {
+      usedClasses.putAll(
+          MAPPER.<Map<String, SortedSet<String>>>readValue(
+              contents.get(),
+              new TypeReference<Map<String, TreeSet<String>>>() {}));
+    }
+    return usedClasses;
+  }
+
+  private ClassUsageFileWriter newUsedClassesFileWriter() {
+    if (usedClassesFileWriter instanceof DefaultClassUsageFileWriter) {
+      return new DefaultClassUsageFileWriter(
+          ((DefaultClassUsageFileWriter) usedClassesFileWriter).getRelativePath());
+    }
+    return usedClassesFileWriter;
+  }
+
+  /**
+   * Matches each class to the source it was compiled from, using the source file name recorded in
+   * the class file and, where several sources have the same name, the package of the class.
+   */
+  @VisibleForTesting
+  static Optional<SortedMap<Path, SortedSet<Path>>> attributeToSources(
+      Map<Path, ClassFileSummary> classes,
+      Set<Path> sources) {
+    SortedMap<Path, SortedSet<Path>> classFiles = new TreeMap<>();
+    for (Map.Entry<Path, ClassFileSummary> entry : classes.entrySet()) {
+      Optional<String> sourceFileName = entry.getValue().getSourceFileName();
+      if (!sourceFileName.isPresent()) {
+        return Optional.empty();
+      }
+      Path packageDirectory = entry.getKey().getParent();
+      List<Path> candidates = sources.stream()
+          .filter(source -> source.getFileName().toString().equals(sourceFileName.get()))
+          .collect(Collectors.toList());
+      if (candidates.size() > 1 && packageDirectory != null) {
+        candidates = candidates.stream()
+            .filter(source -> source.getParent() != null &&
+                source.getParent().endsWith(packageDirectory))
+            .collect(Collectors.toList());
+      }
+      if (candidates.size() != 1) {
+        return Optional.empty();
+      }
+      classFiles.computeIfAbsent(candidates.get(0), source -> new TreeSet<>()).add(entry.getKey());
+    }
+    return Optional.of(classFiles);
+  }
+
+  private ImmutableMap<Path, ClassFileSummary> readClasses(
+      Path directory,
+      Iterable<Path> classFiles) throws IOException {
+    ImmutableMap.Builder<Path, ClassFileSummary> classes = ImmutableMap.builder();
+    for (Path classFile : classFiles) {
+      try (InputStream input = filesystem.newFileInputStream(directory.resolve(classFile))) {
+        classes.put(classFile, ClassFileSummary.of(ByteStreams.toByteArray(input)));
+      }
+    }
+    return classes.build();
+  }
+
+  /**
+   * @return the class files in the output directory, relative to it
+   */
+  private ImmutableSet<Path> listClassFiles() throws IOException {
+    if (!filesystem.isDirectory(outputDirectory)) {
+      return ImmutableSet.of();
+    }
+    return filesystem.getFilesUnderPath(
+        outputDirectory,
+        path -> path.getFileName().toString().endsWith(".class"))
+        .stream()
+        .map(outputDirectory::relativize)
+        .collect(MoreCollectors.toImmutableSet());
+  }
+
+  private void copy(Path fromDirectory, Path toDirectory, Path classFile) throws IOException {
+    Path target = toDirectory.resolve(classFile);
+    filesystem.createParentDirs(target);
+    filesystem.copyFile(fromDirectory.resolve(classFile), target);
+  }
+
+  private ImmutableSortedMap<Path, String> hashSources() throws IOException {
+    ImmutableSortedMap.Builder<Path, String> hashes = ImmutableSortedMap.naturalOrder();
+    for (Path source : sources) {
+      hashes.put(source, filesystem.computeSha1(source).getHash());
+    }
+    return hashes.build();
+  }
+
+  private String hashInputs(ExecutionContext context) throws IOException {
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putInt(STATE_VERSION);
+    hasher.putString(javacOptions.getJavac().getClass().getName(), StandardCharsets.UTF_8);
+    for (SourcePath input : javacOptions.getInputs(ruleFinder)) {
+      hashPath(hasher, resolver.getAbsolutePath(input));
+    }
+    // Only what is compiled, and against what, matters: not how much javac says while doing it.
+    for (String option : JavacStep.getOptions(
+        javacOptions,
+        filesystem,
+        resolver,
+        outputDirectory,
+        context,
+        classpath)) {
+      if (!option.equals("-verbose")) {
+        hasher.putString(option, StandardCharsets.UTF_8).putByte((byte) 0);
+      }
+    }
+    for (Path entry : classpath) {
+      hashPath(hasher, filesystem.resolve(entry));
+    }
+    return hasher.hash().toString();
+  }
+
+  private void hashPath(Hasher hasher, Path path) throws IOException {
+    hasher.putString(path.toString(), StandardCharsets.UTF_8).putByte((byte) 0);
+    if (Files.isRegularFile(path)) {
+      hasher.putBytes(ClasspathIndexCache.getInstance().getContentHash(path).asBytes());
+    } else if (Files.isDirectory(path)) {
+      List<Path> files;
+      try (Stream<Path> walk = Files.walk(path)) {
+        files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+      }
+      for (Path file : files) {
+        hasher.putString(path.relativize(file).toString(), StandardCharsets.UTF_8)
+            .putByte((byte) 0);
+        hasher.putBytes(filesystem.computeSha1(file).asHashCode().asBytes());
+      }
+    }
+  }
+
+  @Override
+  public String getShortName() {
+    return "javac";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return javacStepFactory.create(sources, classpath, usedClassesFileWriter)
+        .getDescription(context);
+  }
+}
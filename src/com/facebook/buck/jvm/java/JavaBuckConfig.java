@@ -91,6 +91,7 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
     if (location.isPresent()) {
       builder.setJavacLocation(location.get());
     }
+    builder.setOutOfProcessHeapSize(delegate.getValue(SECTION, "out_of_process_heap_size"));
 
     ImmutableList<String> extraArguments = delegate.getListWithoutComments(
         SECTION,
@@ -120,6 +121,9 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
       builder.setAbiGenerationMode(abiGenerationMode.get());
     }
 
+    builder.setIncrementalCompilation(
+        delegate.getBooleanValue(SECTION, "incremental_compilation", false));
+
     ImmutableMap<String, String> allEntries = delegate.getEntriesForSection(SECTION);
     ImmutableMap.Builder<String, String> bootclasspaths = ImmutableMap.builder();
     for (Map.Entry<String, String> entry : allEntries.entrySet()) {
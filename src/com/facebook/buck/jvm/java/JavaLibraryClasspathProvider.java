@@ -17,10 +17,12 @@
 package com.facebook.buck.jvm.java;
 
 import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.BuildRules;
 import com.facebook.buck.rules.ExportDependencies;
 import com.facebook.buck.rules.SourcePath;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Sets;
 
 import java.util.Optional;
@@ -79,6 +81,18 @@ public class JavaLibraryClasspathProvider {
     return FluentIterable.from(deps).filter(JavaLibrary.class);
   }
 
+  /**
+   * @return the libraries whose jars are on the compile time classpath of a library with the given
+   *     deps: the deps themselves, and the libraries they export.
+   */
+  public static ImmutableSortedSet<BuildRule> getCompileTimeClasspathDeps(
+      Iterable<BuildRule> deps) {
+    return ImmutableSortedSet.<BuildRule>naturalOrder()
+        .addAll(getJavaLibraryDeps(deps))
+        .addAll(getJavaLibraryDeps(BuildRules.getExportedRules(deps)))
+        .build();
+  }
+
   /**
    * Include the classpath entries from all JavaLibraryRules that have a direct line of lineage
    * to this rule through other JavaLibraryRules. For example, in the following dependency graph:
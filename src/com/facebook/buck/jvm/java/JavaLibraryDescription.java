@@ -133,14 +133,45 @@ public class JavaLibraryDescription implements
           sources);
     }
 
-    if (CalculateAbi.isAbiTarget(target)) {
+    if (CalculateAbi.isAbiTarget(target) || CalculateSourceAbi.isSourceAbiTarget(target)) {
+      JavacOptions javacOptions = JavacOptionsFactory.create(
+          defaultOptions,
+          params,
+          resolver,
+          ruleFinder,
+          args);
+      JavacOptions.AbiGenerationMode abiGenerationMode = javacOptions.getAbiGenerationMode();
+      boolean isSourceAbiSupported = CalculateSourceAbi.isSupported(javacOptions, args.resources);
+
+      // In source mode, the ABI is generated from source, so it need not wait for this library to
+      // compile, and neither do the dependents compiled against it.
+      if (CalculateSourceAbi.isSourceAbiTarget(target) ||
+          (abiGenerationMode == JavacOptions.AbiGenerationMode.SOURCE && isSourceAbiSupported)) {
+        return CalculateSourceAbi.of(
+            target,
+            resolver,
+            ruleFinder,
+            params,
+            Iterables.concat(params.getDeps(), getExportedRules(params, resolver, args)),
+            args.srcs,
+            javacOptions);
+      }
+
       BuildTarget libraryTarget = CalculateAbi.getLibraryTarget(target);
       BuildRule libraryRule = resolver.requireRule(libraryTarget);
+      Optional<SourcePath> sourceAbiJarToCompare = Optional.empty();
+      if (abiGenerationMode == JavacOptions.AbiGenerationMode.MIGRATING_TO_SOURCE &&
+          isSourceAbiSupported) {
+        sourceAbiJarToCompare = Optional.of(
+            resolver.requireRule(libraryTarget.withAppendedFlavors(HasJavaAbi.SOURCE_ABI_FLAVOR))
+                .getSourcePathToOutput());
+      }
       return CalculateAbi.of(
           params.getBuildTarget(),
           ruleFinder,
           params,
-          Preconditions.checkNotNull(libraryRule.getSourcePathToOutput()));
+          Preconditions.checkNotNull(libraryRule.getSourcePathToOutput()),
+          sourceAbiJarToCompare);
     }
 
     BuildRuleParams paramsWithMavenFlavor = null;
@@ -178,15 +209,10 @@ public class JavaLibraryDescription implements
         ruleFinder,
         args);
 
-    ImmutableSortedSet<BuildRule> exportedDeps = resolver.getAllRules(args.exportedDeps);
     BuildRuleParams javaLibraryParams =
         params.copyAppendingExtraDeps(
             Iterables.concat(
-                BuildRules.getExportedRules(
-                    Iterables.concat(
-                        params.getDeclaredDeps().get(),
-                        exportedDeps,
-                        resolver.getAllRules(args.providedDeps))),
+                getExportedRules(params, resolver, args),
                 ruleFinder.filterBuildRuleInputs(
                     javacOptions.getInputs(ruleFinder))));
     JavacToJarStepFactory compileStepFactory = new JavacToJarStepFactory(
@@ -198,6 +224,8 @@ public class JavaLibraryDescription implements
             .setArgs(args)
             .setGeneratedSourceFolder(javacOptions.getGeneratedSourceFolderName())
             .setTrackClassUsage(javacOptions.trackClassUsage())
+            .setCompileAgainstAbis(
+                javacOptions.getAbiGenerationMode() == JavacOptions.AbiGenerationMode.SOURCE)
             .build();
 
   if (!flavors.contains(JavaLibrary.MAVEN_JAR)) {
@@ -212,6 +240,20 @@ public class JavaLibraryDescription implements
     }
   }
 
+  /**
+   * @return the rules exported by this library's deps, which it compiles against as well
+   */
+  private static ImmutableSortedSet<BuildRule> getExportedRules(
+      BuildRuleParams params,
+      BuildRuleResolver resolver,
+      Arg args) {
+    return BuildRules.getExportedRules(
+        Iterables.concat(
+            params.getDeclaredDeps().get(),
+            resolver.getAllRules(args.exportedDeps),
+            resolver.getAllRules(args.providedDeps)));
+  }
+
   @SuppressFieldNotInitialized
   public static class Arg extends JvmLibraryArg implements HasTests {
     public ImmutableSortedSet<SourcePath> srcs = ImmutableSortedSet.of();
@@ -103,8 +103,14 @@ public class JavaLibraryRules {
           NativeLinkable linkable = (NativeLinkable) rule;
           libraries.putAll(linkable.getSharedLibraries(cxxPlatform));
         }
-        if (rule instanceof NativeLinkable ||
-            rule instanceof JavaLibrary) {
+        if (rule instanceof JavaLibrary) {
+          // A library compiled against ABI jars does not depend on the libraries it compiles
+          // against, but still has them on its classpath.
+          return ImmutableSet.<BuildRule>builder()
+              .addAll(rule.getDeps())
+              .addAll(((JavaLibrary) rule).getDepsForTransitiveClasspathEntries())
+              .build();
+        } else if (rule instanceof NativeLinkable) {
           return rule.getDeps();
         } else {
           return ImmutableSet.of();
@@ -138,6 +138,12 @@ public class JavaTest
 
   private final Path pathToTestLogs;
 
+  /**
+   * The logs written by the last tests to run, which are those of the shards if they were run in
+   * shards.
+   */
+  private ImmutableList<Path> testLogPaths;
+
   private static final int TEST_CLASSES_SHUFFLE_SEED = 0xFACEB00C;
 
   private static final Logger LOG = Logger.get(JavaTest.class);
@@ -196,6 +202,7 @@ public class JavaTest
     this.stdOutLogLevel = stdOutLogLevel;
     this.stdErrLogLevel = stdErrLogLevel;
     this.pathToTestLogs = getPathToTestOutputDirectory().resolve("logs.txt");
+    this.testLogPaths = ImmutableList.of(pathToTestLogs);
   }
 
   @Override
@@ -323,10 +330,93 @@ public class JavaTest
             testClassNames)
       );
     }
+    testLogPaths = ImmutableList.of(pathToTestLogs);
     steps.addAll(junits);
     return steps.build();
   }
 
+  /**
+   * Like {@link #runTests}, but splits the test classes across at most {@code maxShards} groups,
+   * each run by its own JVM(s). The first list of steps prepares the output directory and must run
+   * before the others; each of the remaining lists runs a disjoint subset of the test classes and
+   * may run concurrently with the rest.
+   */
+  public ImmutableList<ImmutableList<Step>> runTestsInShards(
+      ExecutionContext executionContext,
+      TestRunningOptions options,
+      SourcePathResolver pathResolver,
+      int maxShards) {
+    Preconditions.checkArgument(maxShards > 0);
+    Set<String> testClassNames = getClassNamesForSources(pathResolver);
+    LOG.debug("Testing these classes in up to %d shards: %s", maxShards, testClassNames);
+    if (testClassNames.isEmpty()) {
+      return ImmutableList.of();
+    }
+
+    Path pathToTestOutput = getPathToTestOutputDirectory();
+    ImmutableList.Builder<ImmutableList<Step>> shards = ImmutableList.builder();
+    shards.add(
+        ImmutableList.of(new MakeCleanDirectoryStep(getProjectFilesystem(), pathToTestOutput)));
+    ImmutableList.Builder<JUnitStep> junitsBuilder = ImmutableList.builder();
+    ImmutableList.Builder<Path> logPaths = ImmutableList.builder();
+    ImmutableList<ImmutableSet<String>> classesPerShard =
+        getClassesPerShard(testClassNames, maxShards);
+    for (int shard = 0; shard < classesPerShard.size(); shard++) {
+      // The shards run concurrently, so each logs to its own file.
+      Path shardLogs = getPathToShardTestLogs(shard);
+      logPaths.add(shardLogs);
+      ImmutableList.Builder<Step> shardSteps = ImmutableList.builder();
+      Iterable<? extends Set<String>> jvmClasses = forkMode() == ForkMode.PER_TEST ?
+          Iterables.transform(classesPerShard.get(shard), Collections::singleton) :
+          ImmutableList.of(classesPerShard.get(shard));
+      for (Set<String> classes : jvmClasses) {
+        JUnitStep junit = getJUnitStep(
+            executionContext,
+            pathResolver,
+            options,
+            Optional.of(pathToTestOutput),
+            Optional.of(shardLogs),
+            classes);
+        junitsBuilder.add(junit);
+        shardSteps.add(junit);
+      }
+      shards.add(shardSteps.build());
+    }
+    testLogPaths = logPaths.build();
+    junits = junitsBuilder.build();
+    return shards.build();
+  }
+
+  /**
+   * Deals the test classes out to at most {@code maxShards} shards, in the same fixed order
+   * {@link #runTests} would run them, so that the shards are stable from one run to the next.
+   */
+  @VisibleForTesting
+  static ImmutableList<ImmutableSet<String>> getClassesPerShard(
+      Set<String> testClassNames,
+      int maxShards) {
+    int shardCount = Math.min(maxShards, testClassNames.size());
+    List<ImmutableSet.Builder<String>> classesPerShard =
+        Lists.newArrayListWithCapacity(shardCount);
+    for (int i = 0; i < shardCount; i++) {
+      classesPerShard.add(ImmutableSet.builder());
+    }
+    int index = 0;
+    // Sort first so that a class lands in the same shard however its rule listed it.
+    for (String testClass :
+        reorderClasses(ImmutableSortedSet.copyOf(testClassNames), /* shuffle */ false)) {
+      classesPerShard.get(index++ % shardCount).add(testClass);
+    }
+    return classesPerShard.stream()
+        .map(ImmutableSet.Builder::build)
+        .collect(MoreCollectors.toImmutableList());
+  }
+
+  @VisibleForTesting
+  Path getPathToShardTestLogs(int shard) {
+    return getPathToTestOutputDirectory().resolve(String.format("logs-shard-%d.txt", shard));
+  }
+
   private static Iterable<String> reorderClasses(Set<String> testClassNames, boolean shuffle) {
     Random rng;
     if (shuffle) {
@@ -487,7 +577,10 @@ public class JavaTest
           .setLabels(labels.stream()
               .map(Object::toString)
               .collect(MoreCollectors.toImmutableSet()))
-          .addTestLogPaths(getProjectFilesystem().resolve(pathToTestLogs))
+          .addAllTestLogPaths(
+              testLogPaths.stream()
+                  .map(getProjectFilesystem()::resolve)
+                  .collect(MoreCollectors.toImmutableList()))
           .build();
     };
   }
@@ -108,7 +108,7 @@ public class JavacDirectToJarStep implements Step {
         resolver,
         outputDirectory,
         context,
-        declaredClasspathEntries);
+        declaredClasspathEntries.asList());
     String javacDescription = buildTimeOptions.getJavac().getDescription(
         javacStepOptions,
         sourceFilePaths,
@@ -144,7 +144,7 @@ public class JavacDirectToJarStep implements Step {
         workingDirectory,
         sourceFilePaths,
         pathToSrcsList,
-        declaredClasspathEntries,
+        declaredClasspathEntries.asList(),
         buildTimeOptions.getJavac(),
         buildTimeOptions,
         invokingRule,
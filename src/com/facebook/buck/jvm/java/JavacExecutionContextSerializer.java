@@ -140,6 +140,7 @@ public class JavacExecutionContextSerializer {
             "Missing environment when deserializing JavacExectionContext"),
         processExecutor,
         absolutePathsForInputs,
-        directToJarOutputSettings);
+        directToJarOutputSettings,
+        Optional.empty());
   }
 }
@@ -28,6 +28,7 @@ import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.util.CapturingPrintStream;
+import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.MoreCollectors;
 import com.facebook.buck.util.Verbosity;
 import com.google.common.annotations.VisibleForTesting;
@@ -47,6 +48,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
+import javax.lang.model.SourceVersion;
 
 /**
  * Command used to compile java libraries with a variety of ways to handle dependencies.
@@ -65,7 +67,7 @@ public class JavacStep implements Step {
 
   private final JavacOptions javacOptions;
 
-  private final ImmutableSortedSet<Path> declaredClasspathEntries;
+  private final ImmutableList<Path> declaredClasspathEntries;
 
   private final BuildTarget invokingRule;
 
@@ -83,6 +85,8 @@ public class JavacStep implements Step {
 
   private final Optional<DirectToJarOutputSettings> directToJarOutputSettings;
 
+  private final Optional<Path> sourceAbiJar;
+
   private static final Pattern IS_WARNING =
       Pattern.compile(":\\s*warning:", Pattern.CASE_INSENSITIVE);
 
@@ -118,7 +122,7 @@ public class JavacStep implements Step {
       Optional<Path> workingDirectory,
       ImmutableSortedSet<Path> javaSourceFilePaths,
       Path pathToSrcsList,
-      ImmutableSortedSet<Path> declaredClasspathEntries,
+      ImmutableList<Path> declaredClasspathEntries,
       Javac javac,
       JavacOptions javacOptions,
       BuildTarget invokingRule,
@@ -128,6 +132,46 @@ public class JavacStep implements Step {
       ProjectFilesystem filesystem,
       ClasspathChecker classpathChecker,
       Optional<DirectToJarOutputSettings> directToJarOutputSettings) {
+    this(
+        outputDirectory,
+        usedClassesFileWriter,
+        workingDirectory,
+        javaSourceFilePaths,
+        pathToSrcsList,
+        declaredClasspathEntries,
+        javac,
+        javacOptions,
+        invokingRule,
+        suggestBuildRules,
+        resolver,
+        ruleFinder,
+        filesystem,
+        classpathChecker,
+        directToJarOutputSettings,
+        Optional.empty());
+  }
+
+  /**
+   * @param declaredClasspathEntries the classpath, in the order javac should search it
+   * @param sourceAbiJar if present, rather than compiling the sources, write their ABI jar here.
+   */
+  public JavacStep(
+      Path outputDirectory,
+      ClassUsageFileWriter usedClassesFileWriter,
+      Optional<Path> workingDirectory,
+      ImmutableSortedSet<Path> javaSourceFilePaths,
+      Path pathToSrcsList,
+      ImmutableList<Path> declaredClasspathEntries,
+      Javac javac,
+      JavacOptions javacOptions,
+      BuildTarget invokingRule,
+      Optional<SuggestBuildRules> suggestBuildRules,
+      SourcePathResolver resolver,
+      SourcePathRuleFinder ruleFinder,
+      ProjectFilesystem filesystem,
+      ClasspathChecker classpathChecker,
+      Optional<DirectToJarOutputSettings> directToJarOutputSettings,
+      Optional<Path> sourceAbiJar) {
     this.outputDirectory = outputDirectory;
     this.usedClassesFileWriter = usedClassesFileWriter;
     this.workingDirectory = workingDirectory;
@@ -143,6 +187,7 @@ public class JavacStep implements Step {
     this.filesystem = filesystem;
     this.classpathChecker = classpathChecker;
     this.directToJarOutputSettings = directToJarOutputSettings;
+    this.sourceAbiJar = sourceAbiJar;
   }
 
   @Override
@@ -186,7 +231,14 @@ public class JavacStep implements Step {
           firstOrderContext.getEnvironment(),
           firstOrderContext.getProcessExecutor(),
           getAbsolutePathsForJavacInputs(javac),
-          directToJarOutputSettings);
+          directToJarOutputSettings,
+          javac instanceof OutOfProcessJsr199Javac ?
+              Optional.of(
+                  OutOfProcessJavacWorkerPool.get(
+                      context,
+                      filesystem,
+                      javacOptions.getOutOfProcessHeapSize())) :
+              Optional.empty());
       return performBuild(context, stdout, stderr, javac, javacExecutionContext);
     }
   }
@@ -197,15 +249,37 @@ public class JavacStep implements Step {
       CapturingPrintStream stderr,
       Javac javac,
       JavacExecutionContext javacExecutionContext) throws InterruptedException {
-    int declaredDepsBuildResult = javac.buildWithClasspath(
-        javacExecutionContext,
-        invokingRule,
-        getOptions(context, declaredClasspathEntries),
-        javacOptions.getAnnotationProcessingParams().getAnnotationProcessors(filesystem, resolver),
-        javaSourceFilePaths,
-        pathToSrcsList,
-        workingDirectory,
-        javacOptions.getAbiGenerationMode());
+    ImmutableList<String> options = getOptions(context, declaredClasspathEntries);
+    ImmutableList<ResolvedJavacPluginProperties> annotationProcessors =
+        javacOptions.getAnnotationProcessingParams().getAnnotationProcessors(filesystem, resolver);
+    int declaredDepsBuildResult;
+    if (sourceAbiJar.isPresent()) {
+      if (!(javac instanceof Jsr199Javac)) {
+        context.postEvent(
+            ConsoleEvent.severe(
+                "%s: source-based ABI generation requires the in-process Java compiler.",
+                invokingRule));
+        return StepExecutionResult.ERROR;
+      }
+      declaredDepsBuildResult = ((Jsr199Javac) javac).buildSourceAbiJar(
+          javacExecutionContext,
+          invokingRule,
+          options,
+          javaSourceFilePaths,
+          pathToSrcsList,
+          filesystem.resolve(sourceAbiJar.get()),
+          getClassFileVersion(javacOptions.getTargetLevel()));
+    } else {
+      declaredDepsBuildResult = javac.buildWithClasspath(
+          javacExecutionContext,
+          invokingRule,
+          options,
+          annotationProcessors,
+          javaSourceFilePaths,
+          pathToSrcsList,
+          workingDirectory,
+          javacOptions.getAbiGenerationMode());
+    }
     String firstOrderStdout = stdout.getContentsAsString(Charsets.UTF_8);
     String firstOrderStderr = stderr.getContentsAsString(Charsets.UTF_8);
     Optional<String> returnedStderr;
@@ -291,6 +365,20 @@ public class JavacStep implements Step {
     }).collect(MoreCollectors.toImmutableList());
   }
 
+  /**
+   * @param targetLevel a javac {@code -target} level, such as "1.7" or "8"
+   */
+  @VisibleForTesting
+  static SourceVersion getClassFileVersion(String targetLevel) {
+    String release = "RELEASE_" + targetLevel.replaceFirst("^1\\.", "").replaceFirst("\\.0$", "");
+    for (SourceVersion version : SourceVersion.values()) {
+      if (version.name().equals(release)) {
+        return version;
+      }
+    }
+    throw new HumanReadableException("Unsupported target level for source ABIs: %s", targetLevel);
+  }
+
   @VisibleForTesting
   Javac getJavac() {
     return javac;
@@ -306,7 +394,7 @@ public class JavacStep implements Step {
 
   @Override
   public String getShortName() {
-    return getJavac().getShortName();
+    return sourceAbiJar.isPresent() ? "calculate_source_abi" : getJavac().getShortName();
   }
 
   @VisibleForTesting
@@ -338,7 +426,7 @@ public class JavacStep implements Step {
   @VisibleForTesting
   ImmutableList<String> getOptions(
       ExecutionContext context,
-      ImmutableSortedSet<Path> buildClasspathEntries) {
+      ImmutableList<Path> buildClasspathEntries) {
     return getOptions(
         javacOptions,
         filesystem,
@@ -354,7 +442,7 @@ public class JavacStep implements Step {
       SourcePathResolver pathResolver,
       Path outputDirectory,
       ExecutionContext context,
-      ImmutableSortedSet<Path> buildClasspathEntries) {
+      ImmutableList<Path> buildClasspathEntries) {
     final ImmutableList.Builder<String> builder = ImmutableList.builder();
 
     javacOptions.appendOptionsTo(
@@ -400,7 +488,7 @@ public class JavacStep implements Step {
    * @return The classpath entries used to invoke javac.
    */
   @VisibleForTesting
-  ImmutableSortedSet<Path> getClasspathEntries() {
+  ImmutableList<Path> getClasspathEntries() {
     return declaredClasspathEntries;
   }
 
@@ -22,7 +22,9 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.jvm.core.SuggestBuildRules;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargets;
 import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildableContext;
 import com.facebook.buck.rules.RuleKeyObjectSink;
 import com.facebook.buck.rules.SourcePathResolver;
@@ -48,6 +50,11 @@ public class JavacToJarStepFactory extends BaseCompileToJarStepFactory {
     this.amender = amender;
   }
 
+  @Override
+  public ImmutableSet<BuildRule> getCompilerDeps(SourcePathRuleFinder ruleFinder) {
+    return ruleFinder.filterBuildRuleInputs(javacOptions.getInputs(ruleFinder));
+  }
+
   @Override
   public void createCompileStep(
       BuildContext context,
@@ -70,6 +77,40 @@ public class JavacToJarStepFactory extends BaseCompileToJarStepFactory {
     // Javac requires that the root directory for generated sources already exist.
     addAnnotationGenFolderStep(buildTimeOptions, filesystem, steps, buildableContext);
 
+    // Annotation processors can generate sources and resources from any of the sources they see,
+    // so there is no telling what compiling only some of the sources would miss.
+    if (buildTimeOptions.isIncrementalCompilation() &&
+        buildTimeOptions.getAnnotationProcessingParams().isEmpty()) {
+      steps.add(
+          new IncrementalJavacStep(
+              filesystem,
+              BuildTargets.getScratchPath(filesystem, invokingRule, "lib__%s__incremental"),
+              outputDirectory,
+              sourceFilePaths,
+              declaredClasspathEntries.asList(),
+              buildTimeOptions,
+              resolver,
+              ruleFinder,
+              usedClassesFileWriter,
+              (sources, classpath, writer) -> new JavacStep(
+                  outputDirectory,
+                  writer,
+                  workingDirectory,
+                  sources,
+                  pathToSrcsList,
+                  classpath,
+                  buildTimeOptions.getJavac(),
+                  buildTimeOptions,
+                  invokingRule,
+                  suggestBuildRules,
+                  resolver,
+                  ruleFinder,
+                  filesystem,
+                  new ClasspathChecker(),
+                  Optional.empty())));
+      return;
+    }
+
     steps.add(
         new JavacStep(
             outputDirectory,
@@ -77,7 +118,7 @@ public class JavacToJarStepFactory extends BaseCompileToJarStepFactory {
             workingDirectory,
             sourceFilePaths,
             pathToSrcsList,
-            declaredClasspathEntries,
+            declaredClasspathEntries.asList(),
             buildTimeOptions.getJavac(),
             buildTimeOptions,
             invokingRule,
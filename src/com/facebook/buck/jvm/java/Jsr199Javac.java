@@ -18,6 +18,7 @@ package com.facebook.buck.jvm.java;
 
 import com.facebook.buck.event.api.BuckTracing;
 import com.facebook.buck.jvm.java.abi.SourceBasedAbiStubber;
+import com.facebook.buck.jvm.java.abi.StubJarGeneratingProcessor;
 import com.facebook.buck.jvm.java.abi.source.api.BootClasspathOracle;
 import com.facebook.buck.jvm.java.tracing.TranslatingJavacPhaseTracer;
 import com.facebook.buck.log.Logger;
@@ -56,6 +57,8 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import javax.annotation.Nullable;
+import javax.annotation.processing.Processor;
+import javax.lang.model.SourceVersion;
 import javax.tools.Diagnostic;
 import javax.tools.DiagnosticCollector;
 import javax.tools.JavaCompiler;
@@ -117,12 +120,65 @@ public abstract class Jsr199Javac implements Javac {
       Path pathToSrcsList,
       Optional<Path> workingDirectory,
       JavacOptions.AbiGenerationMode abiGenerationMode) {
+    return build(
+        context,
+        invokingRule,
+        options,
+        annotationProcessors,
+        javaSourceFilePaths,
+        pathToSrcsList,
+        abiGenerationMode,
+        Optional.empty());
+  }
+
+  /**
+   * Writes the ABI jar for the given sources without compiling them. Only parsing, entering and
+   * the ABI validation run, which is what lets the ABI be ready long before the library is.
+   * Annotation processors are not run, so types they would generate are not part of the ABI.
+   *
+   * @param classFileVersion the class file version of the stubs, expressed as the corresponding
+   *                         Java source version
+   */
+  public int buildSourceAbiJar(
+      JavacExecutionContext context,
+      BuildTarget invokingRule,
+      ImmutableList<String> options,
+      ImmutableSortedSet<Path> javaSourceFilePaths,
+      Path pathToSrcsList,
+      Path abiJar,
+      SourceVersion classFileVersion) {
+    return build(
+        context,
+        invokingRule,
+        ImmutableList.<String>builder().addAll(options).add("-proc:only").build(),
+        ImmutableList.of(),
+        javaSourceFilePaths,
+        pathToSrcsList,
+        JavacOptions.AbiGenerationMode.SOURCE,
+        Optional.of(
+            new StubJarGeneratingProcessor(
+                context.getProjectFilesystem(),
+                abiJar,
+                classFileVersion)));
+  }
+
+  private int build(
+      JavacExecutionContext context,
+      BuildTarget invokingRule,
+      ImmutableList<String> options,
+      ImmutableList<ResolvedJavacPluginProperties> annotationProcessors,
+      ImmutableSortedSet<Path> javaSourceFilePaths,
+      Path pathToSrcsList,
+      JavacOptions.AbiGenerationMode abiGenerationMode,
+      Optional<Processor> stubJarGenerator) {
     JavaCompiler compiler = createCompiler(context);
     CustomZipOutputStream jarOutputStream = null;
     StandardJavaFileManager fileManager = null;
     JavaInMemoryFileManager inMemoryFileManager = null;
     try {
-      fileManager = compiler.getStandardFileManager(null, null, null);
+      fileManager = new ClasspathIndexingFileManager(
+          compiler.getStandardFileManager(null, null, null),
+          ClasspathIndexCache.getInstance());
       Supplier<ImmutableSet<String>> alreadyAddedFilesAvailableAfterCompilation =
           Suppliers.ofInstance(ImmutableSet.of());
       if (context.getDirectToJarOutputSettings().isPresent()) {
@@ -162,7 +218,8 @@ public abstract class Jsr199Javac implements Javac {
             compiler,
             fileManager,
             compilationUnits,
-            abiGenerationMode);
+            abiGenerationMode,
+            stubJarGenerator);
         if (result != 0 || !context.getDirectToJarOutputSettings().isPresent()) {
           return result;
         }
@@ -223,7 +280,8 @@ public abstract class Jsr199Javac implements Javac {
       JavaCompiler compiler,
       StandardJavaFileManager fileManager,
       Iterable<? extends JavaFileObject> compilationUnits,
-      JavacOptions.AbiGenerationMode abiGenerationMode) {
+      JavacOptions.AbiGenerationMode abiGenerationMode,
+      Optional<Processor> stubJarGenerator) {
     // write javaSourceFilePaths to classes file
     // for buck user to have a list of all .java files to be compiled
     // since we do not print them out to console in case of error
@@ -286,7 +344,11 @@ public abstract class Jsr199Javac implements Javac {
               compiler.getClass().getClassLoader(),
               context.getClassLoaderCache(),
               invokingRule)) {
-        compilationTask.setProcessors(processorFactory.createProcessors(annotationProcessors));
+        if (stubJarGenerator.isPresent()) {
+          compilationTask.setProcessors(ImmutableList.of(stubJarGenerator.get()));
+        } else {
+          compilationTask.setProcessors(processorFactory.createProcessors(annotationProcessors));
+        }
 
         // Invoke the compilation and inspect the result.
         isSuccess = compilationTask.call();
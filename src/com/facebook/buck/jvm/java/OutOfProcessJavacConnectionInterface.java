@@ -22,28 +22,51 @@ import java.util.Map;
 import javax.annotation.Nullable;
 
 public interface OutOfProcessJavacConnectionInterface {
+  /**
+   * Key of the compiler's exit code (an int) in the map returned by
+   * {@link #buildWithClasspath}.
+   */
+  String EXIT_CODE = "exit_code";
+
+  /**
+   * Key of everything the compiler wrote to its standard error (a String) in the map returned by
+   * {@link #buildWithClasspath}.
+   */
+  String STDERR = "stderr";
+
   /**
    * This is interface that will be used to perform out of process compilation.
    *
+   * The worker remembers the JavacExecutionContext of the previous invocation on the same
+   * connection, so that only the entries which changed since then need to be sent. Most of the
+   * context (cells, environment, process executor settings) is the same for every rule.
+   *
    * @param compilerClassNameForJarBackedJavacMode String value of compilerClassName for Jar-backed
    *                                               mode, or null
-   * @param serializedJavacExecutionContext JavacExecutionContext converted to String
+   * @param resetJavacExecutionContext true if the worker should forget the context of previous
+   *                                   invocations before applying the changes below
+   * @param changedJavacExecutionContextEntries entries of the serialized JavacExecutionContext
+   *                                            that differ from the previous invocation
+   * @param removedJavacExecutionContextKeys keys of the serialized JavacExecutionContext that were
+   *                                         present in the previous invocation but not this one
    * @param invokingRuleBuildTargetAsString BuildTarget converted to String
    * @param options Immutable list of string options
-   * @param setOfSafeAnnotationProcessorsAsList ImmutableSet represented as a List
    * @param sortedSetOfJavaSourceFilePathsAsStringsAsList ImmutableSortedSet<Path> represented as
    *                                                      List of String objects.
    * @param pathToSrcsListAsString Path represented as String.
    * @param workingDirectory Path represented as String, or null.
-   * @return Resulting code, 0 if build finished without issues, non-zero otherwise.
+   * @return map with the resulting code under {@link #EXIT_CODE}, 0 if build finished without
+   *     issues, non-zero otherwise, and the compiler's output under {@link #STDERR}.
    */
-  int buildWithClasspath(
+  Map<String, Object> buildWithClasspath(
       @Nullable String compilerClassNameForJarBackedJavacMode,
-      Map<String, Object> serializedJavacExecutionContext,
+      boolean resetJavacExecutionContext,
+      Map<String, Object> changedJavacExecutionContextEntries,
+      List<String> removedJavacExecutionContextKeys,
       String invokingRuleBuildTargetAsString,
       List<String> options,
       List<String> sortedSetOfJavaSourceFilePathsAsStringsAsList,
       String pathToSrcsListAsString,
       @Nullable String workingDirectory,
-      JavacOptions.AbiGenerationMode abiGenerationMode);
+      JavacOptions.AbiGenerationMode abiGenerationMode) throws InterruptedException;
 }
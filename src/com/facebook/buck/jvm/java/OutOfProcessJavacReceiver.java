@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.event.DefaultBuckEventBus;
+import com.facebook.buck.model.BuildId;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.parser.BuildTargetParser;
+import com.facebook.buck.parser.BuildTargetPatternParser;
+import com.facebook.buck.timing.DefaultClock;
+import com.facebook.buck.util.CapturingPrintStream;
+import com.facebook.buck.util.ClassLoaderCache;
+import com.facebook.buck.util.Console;
+import com.facebook.buck.util.ObjectMappers;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.annotation.Nullable;
+
+/**
+ * The worker end of {@link OutOfProcessJavacConnectionInterface}. It lives as long as the worker
+ * JVM, so the compilers it creates, and the class loaders of jar-backed compilers, stay loaded and
+ * JIT-compiled from one rule to the next.
+ */
+class OutOfProcessJavacReceiver implements OutOfProcessJavacConnectionInterface {
+
+  private final Console console;
+  private final ObjectMapper objectMapper = ObjectMappers.newDefaultInstance();
+  private final ClassLoaderCache classLoaderCache = new ClassLoaderCache();
+  private final JavacEventSink eventSink = new JavacEventSinkToBuckEventBusBridge(
+      new DefaultBuckEventBus(new DefaultClock(), new BuildId()));
+  private final Javac jdkJavac = new JdkProvidedInMemoryJavac();
+  private final Map<String, Javac> jarBackedJavacs = new HashMap<>();
+  private final Map<String, Object> serializedContext = new HashMap<>();
+
+  OutOfProcessJavacReceiver(Console console) {
+    this.console = console;
+  }
+
+  @Override
+  public synchronized Map<String, Object> buildWithClasspath(
+      @Nullable String compilerClassNameForJarBackedJavacMode,
+      boolean resetJavacExecutionContext,
+      Map<String, Object> changedJavacExecutionContextEntries,
+      List<String> removedJavacExecutionContextKeys,
+      String invokingRuleBuildTargetAsString,
+      List<String> options,
+      List<String> sortedSetOfJavaSourceFilePathsAsStringsAsList,
+      String pathToSrcsListAsString,
+      @Nullable String workingDirectory,
+      JavacOptions.AbiGenerationMode abiGenerationMode) throws InterruptedException {
+    if (resetJavacExecutionContext) {
+      serializedContext.clear();
+    }
+    serializedContext.keySet().removeAll(removedJavacExecutionContextKeys);
+    serializedContext.putAll(changedJavacExecutionContextEntries);
+
+    CapturingPrintStream stdErr = new CapturingPrintStream();
+    JavacExecutionContext context = JavacExecutionContextSerializer.deserialize(
+        serializedContext,
+        eventSink,
+        stdErr,
+        classLoaderCache,
+        objectMapper,
+        console);
+    BuildTarget invokingRule = BuildTargetParser.INSTANCE.parse(
+        invokingRuleBuildTargetAsString,
+        BuildTargetPatternParser.fullyQualified(),
+        context.getCellPathResolver());
+
+    Javac javac;
+    if (compilerClassNameForJarBackedJavacMode == null) {
+      javac = jdkJavac;
+    } else {
+      // The compiler's classpath comes from the context's absolute paths for inputs.
+      javac = jarBackedJavacs.computeIfAbsent(
+          compilerClassNameForJarBackedJavacMode,
+          name -> new JarBackedJavac(name, ImmutableSet.of()));
+    }
+
+    int exitCode = javac.buildWithClasspath(
+        context,
+        invokingRule,
+        ImmutableList.copyOf(options),
+        ImmutableList.of(),
+        ImmutableSortedSet.copyOf(
+            sortedSetOfJavaSourceFilePathsAsStringsAsList.stream().map(Paths::get).iterator()),
+        Paths.get(pathToSrcsListAsString),
+        Optional.ofNullable(workingDirectory).map(Paths::get),
+        abiGenerationMode);
+    stdErr.flush();
+
+    return ImmutableMap.of(
+        EXIT_CODE, exitCode,
+        STDERR, stdErr.getContentsAsString(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.shell.WorkerProcess;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A long-lived javac worker JVM, as seen from Buck. The worker keeps its compilers (and the JIT's
+ * work on them) warm across rules, and remembers the JavacExecutionContext it was last sent, so
+ * each compilation only transfers the parts of the context that changed.
+ */
+public class OutOfProcessJavacWorker {
+
+  private static final Logger LOG = Logger.get(OutOfProcessJavacWorker.class);
+
+  private final WorkerProcess workerProcess;
+  private final OutOfProcessJavacConnectionInterface connection;
+
+  /**
+   * The serialized context the worker is known to hold, or null if that is unknown, in which case
+   * the next invocation resets it.
+   */
+  @GuardedBy("this")
+  @Nullable
+  private Map<String, Object> lastSentContext;
+
+  public OutOfProcessJavacWorker(
+      WorkerProcess workerProcess,
+      OutOfProcessJavacConnectionInterface connection) {
+    this.workerProcess = workerProcess;
+    this.connection = connection;
+  }
+
+  public WorkerProcess getWorkerProcess() {
+    return workerProcess;
+  }
+
+  public synchronized int buildWithClasspath(
+      @Nullable String compilerClassNameForJarBackedJavacMode,
+      JavacExecutionContext context,
+      BuildTarget invokingRule,
+      ImmutableList<String> options,
+      ImmutableSortedSet<Path> javaSourceFilePaths,
+      Path pathToSrcsList,
+      Optional<Path> workingDirectory,
+      JavacOptions.AbiGenerationMode abiGenerationMode) throws InterruptedException {
+    ImmutableMap<String, Object> serializedContext =
+        JavacExecutionContextSerializer.serialize(context);
+    boolean reset = lastSentContext == null;
+
+    ImmutableMap.Builder<String, Object> changedEntries = ImmutableMap.builder();
+    for (Map.Entry<String, Object> entry : serializedContext.entrySet()) {
+      if (reset || !Objects.equals(lastSentContext.get(entry.getKey()), entry.getValue())) {
+        changedEntries.put(entry);
+      }
+    }
+    ImmutableList.Builder<String> removedKeys = ImmutableList.builder();
+    if (!reset) {
+      for (String key : lastSentContext.keySet()) {
+        if (!serializedContext.containsKey(key)) {
+          removedKeys.add(key);
+        }
+      }
+    }
+    ImmutableMap<String, Object> changed = changedEntries.build();
+    if (LOG.isVerboseEnabled()) {
+      LOG.verbose("Changed JavacExecutionContext entries: %s", changed);
+    }
+
+    // If the invocation fails part-way through, we no longer know what the worker holds.
+    lastSentContext = null;
+    Map<String, Object> result = connection.buildWithClasspath(
+        compilerClassNameForJarBackedJavacMode,
+        reset,
+        changed,
+        removedKeys.build(),
+        invokingRule.getFullyQualifiedName(),
+        options,
+        ImmutableList.copyOf(javaSourceFilePaths.stream().map(Path::toString).iterator()),
+        pathToSrcsList.toString(),
+        workingDirectory.isPresent() ? workingDirectory.get().toString() : null,
+        abiGenerationMode);
+    lastSentContext = serializedContext;
+
+    context.getStdErr().print(
+        Preconditions.checkNotNull(result.get(OutOfProcessJavacConnectionInterface.STDERR)));
+    return ((Number) Preconditions.checkNotNull(
+        result.get(OutOfProcessJavacConnectionInterface.EXIT_CODE))).intValue();
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.message_ipc.MessageDispatcher;
+import com.facebook.buck.message_ipc.MessageSerializer;
+import com.facebook.buck.shell.BuiltInWorkerMain;
+import com.facebook.buck.util.Ansi;
+import com.facebook.buck.util.Console;
+import com.facebook.buck.util.ObjectMappers;
+import com.facebook.buck.util.Verbosity;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Throwables;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Entry point of the javac worker JVMs started by {@link OutOfProcessJavacWorkerPool}. Each job's
+ * args file holds an invocation of {@link OutOfProcessJavacConnectionInterface}, and the result is
+ * written to the job's stdout file.
+ */
+public class OutOfProcessJavacWorkerMain {
+
+  private OutOfProcessJavacWorkerMain() {
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    ObjectMapper objectMapper = ObjectMappers.newDefaultInstance();
+    MessageSerializer serializer = new MessageSerializer(objectMapper);
+    MessageDispatcher<OutOfProcessJavacConnectionInterface> dispatcher = new MessageDispatcher<>(
+        OutOfProcessJavacConnectionInterface.class,
+        new OutOfProcessJavacReceiver(
+            new Console(Verbosity.STANDARD_INFORMATION, System.err, System.err, Ansi.withoutTty())),
+        objectMapper);
+
+    BuiltInWorkerMain.run(
+        (argsPath, stdoutPath, stderrPath) ->
+            runJob(serializer, dispatcher, argsPath, stdoutPath, stderrPath));
+  }
+
+  private static int runJob(
+      MessageSerializer serializer,
+      MessageDispatcher<OutOfProcessJavacConnectionInterface> dispatcher,
+      Path argsPath,
+      Path stdoutPath,
+      Path stderrPath) throws IOException {
+    try {
+      String invocation = new String(Files.readAllBytes(argsPath), StandardCharsets.UTF_8);
+      String result = serializer.serializeResult(
+          dispatcher.dispatch(serializer.deserializeInvocation(invocation)));
+      Files.write(stdoutPath, result.getBytes(StandardCharsets.UTF_8));
+      return 0;
+    } catch (Exception e) {
+      Files.write(
+          stderrPath,
+          Throwables.getStackTraceAsString(e).getBytes(StandardCharsets.UTF_8));
+      return 1;
+    }
+  }
+}
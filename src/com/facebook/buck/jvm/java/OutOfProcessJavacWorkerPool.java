@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.message_ipc.Connection;
+import com.facebook.buck.message_ipc.MessageSerializer;
+import com.facebook.buck.message_ipc.MessageTransport;
+import com.facebook.buck.shell.BuiltInWorkerProcessPool;
+import com.facebook.buck.shell.WorkerProcess;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.util.ObjectMappers;
+import com.facebook.buck.util.ProcessExecutor;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A pool of long-lived javac worker JVMs, used by {@link OutOfProcessJsr199Javac}.
+ * <p>
+ * Each worker has a heap of {@code java.out_of_process_heap_size}, or {@link #DEFAULT_HEAP_SIZE},
+ * and the pool is sized so that the workers fit in the memory
+ * {@link com.facebook.buck.util.concurrent.ResourceAmounts} says is available, and never
+ * outnumber the build threads.
+ */
+public class OutOfProcessJavacWorkerPool extends BuiltInWorkerProcessPool {
+
+  /**
+   * The workers run Buck's own classes, so that annotation processors are not exposed to Buck's
+   * dependencies when Buck has been started through the bootstrapper. The class is named rather
+   * than referenced, as it depends on this one.
+   */
+  private static final String WORKER_MAIN_CLASS_NAME =
+      "com.facebook.buck.jvm.java.OutOfProcessJavacWorkerMain";
+
+  /** The heap size of the workers, used when none is configured. */
+  @VisibleForTesting
+  static final String DEFAULT_HEAP_SIZE = "1024m";
+
+  private final ConcurrentMap<WorkerProcess, OutOfProcessJavacWorker> workers =
+      new ConcurrentHashMap<>();
+
+  private OutOfProcessJavacWorkerPool(
+      int maxWorkers,
+      HashCode poolHash,
+      ProcessExecutor processExecutor,
+      ImmutableList<String> command,
+      ProjectFilesystem filesystem) {
+    super(maxWorkers, poolHash, processExecutor, command, filesystem, "javac-workers");
+  }
+
+  /**
+   * Returns the pool for this build, creating it if there is none or if the existing one was
+   * created with different settings.
+   *
+   * @param heapSize the heap size of each worker, in the form accepted by {@code -Xmx}, or absent
+   *     for {@link #DEFAULT_HEAP_SIZE}
+   */
+  public static OutOfProcessJavacWorkerPool get(
+      ExecutionContext context,
+      ProjectFilesystem filesystem,
+      Optional<String> heapSize) {
+    String workerHeapSize = heapSize.orElse(DEFAULT_HEAP_SIZE);
+    ImmutableList<String> command =
+        getJavaWorkerCommand(Optional.of(workerHeapSize), WORKER_MAIN_CLASS_NAME);
+    int maxWorkers =
+        getMaxWorkers(context.getConcurrencyLimit(), parseHeapSize(workerHeapSize));
+    return get(
+        context,
+        OutOfProcessJavacWorkerPool.class,
+        command,
+        maxWorkers,
+        poolHash -> new OutOfProcessJavacWorkerPool(
+            maxWorkers,
+            poolHash,
+            context.getProcessExecutor(),
+            command,
+            filesystem));
+  }
+
+  /**
+   * If there are idle workers, returns one. Otherwise starts a new worker, or waits for one to
+   * become idle if the pool is full. You must give the worker back with
+   * {@link #returnWorker(OutOfProcessJavacWorker)}, or with
+   * {@link #destroyWorker(OutOfProcessJavacWorker)} if it failed, when you are done with it.
+   */
+  public OutOfProcessJavacWorker borrowWorker() throws IOException, InterruptedException {
+    return workers.get(borrowWorkerProcess());
+  }
+
+  public void returnWorker(OutOfProcessJavacWorker worker) throws InterruptedException {
+    returnWorkerProcess(worker.getWorkerProcess());
+  }
+
+  /**
+   * Drops a borrowed worker which failed to run a compilation, so that it is not given another.
+   */
+  public void destroyWorker(OutOfProcessJavacWorker worker) {
+    workers.remove(worker.getWorkerProcess());
+    destroyWorkerProcess(worker.getWorkerProcess());
+  }
+
+  @Override
+  @SuppressWarnings("resource") // The connection lives as long as the process, which we close.
+  protected WorkerProcess startWorkerProcess() throws IOException {
+    WorkerProcess process = super.startWorkerProcess();
+    Connection<OutOfProcessJavacConnectionInterface> connection = new Connection<>(
+        new MessageTransport(
+            process,
+            new MessageSerializer(ObjectMappers.newDefaultInstance())));
+    connection.setRemoteInterface(
+        OutOfProcessJavacConnectionInterface.class,
+        OutOfProcessJavacConnectionInterface.class.getClassLoader());
+    workers.put(process, new OutOfProcessJavacWorker(process, connection.getRemoteObjectProxy()));
+    return process;
+  }
+}
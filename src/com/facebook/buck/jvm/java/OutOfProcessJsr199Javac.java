@@ -16,24 +16,26 @@
 
 package com.facebook.buck.jvm.java;
 
-import com.facebook.buck.message_ipc.Connection;
+import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.util.HumanReadableException;
 import com.google.common.base.Joiner;
-import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Optional;
 
-import javax.annotation.Nullable;
-
+/**
+ * A javac that runs in one of the long-lived worker JVMs of the
+ * {@link JavacExecutionContext#getOutOfProcessJavacWorkerPool()}, which keeps javac's memory use
+ * out of Buck's own heap.
+ */
 public abstract class OutOfProcessJsr199Javac implements Javac {
   private static final JavacVersion VERSION = JavacVersion.of("oop in memory");
 
-  @Nullable
-  private Connection<OutOfProcessJavacConnectionInterface> connection;
-
   @Override
   public JavacVersion getVersion() {
     return VERSION;
@@ -66,13 +68,62 @@ public abstract class OutOfProcessJsr199Javac implements Javac {
     throw new UnsupportedOperationException("In memory javac(oop) may not be used externally");
   }
 
-  public void setConnection(Connection<OutOfProcessJavacConnectionInterface> connection) {
-    this.connection = connection;
+  @Override
+  public int buildWithClasspath(
+      JavacExecutionContext context,
+      BuildTarget invokingRule,
+      ImmutableList<String> options,
+      ImmutableList<ResolvedJavacPluginProperties> annotationProcessors,
+      ImmutableSortedSet<Path> javaSourceFilePaths,
+      Path pathToSrcsList,
+      Optional<Path> workingDirectory,
+      JavacOptions.AbiGenerationMode abiGenerationMode) throws InterruptedException {
+    if (!annotationProcessors.isEmpty()) {
+      throw new HumanReadableException(
+          "%s: annotation processors are not supported by out of process javac. " +
+              "Set java.location to IN_PROCESS to build this rule.",
+          invokingRule);
+    }
+    OutOfProcessJavacWorkerPool workerPool =
+        context.getOutOfProcessJavacWorkerPool().orElseThrow(
+            () -> new HumanReadableException(
+                "%s: out of process javac needs workers to compile in.",
+                invokingRule));
+    OutOfProcessJavacWorker worker;
+    try {
+      worker = workerPool.borrowWorker();
+    } catch (IOException e) {
+      context.getStdErr().println("Unable to start a javac worker.");
+      e.printStackTrace(context.getStdErr());
+      return 1;
+    }
+    // A worker which fails to compile, rather than reporting errors in the sources, may have died
+    // or run out of memory, and is replaced rather than given the next compilation.
+    boolean compiled = false;
+    try {
+      int exitCode = worker.buildWithClasspath(
+          getCompilerClassNameForJarBackedJavacMode().orElse(null),
+          context,
+          invokingRule,
+          options,
+          javaSourceFilePaths,
+          pathToSrcsList,
+          workingDirectory,
+          abiGenerationMode);
+      compiled = true;
+      return exitCode;
+    } finally {
+      if (compiled) {
+        workerPool.returnWorker(worker);
+      } else {
+        workerPool.destroyWorker(worker);
+      }
+    }
   }
 
-  public Connection<OutOfProcessJavacConnectionInterface> getConnection() {
-    return Preconditions.checkNotNull(
-        connection,
-        "Cannot get connection before calling setConnection");
-  }
+  /**
+   * @return the class name of the compiler to load from the javac jar, or absent to use the
+   *     compiler of the JDK the worker runs on.
+   */
+  protected abstract Optional<String> getCompilerClassNameForJarBackedJavacMode();
 }
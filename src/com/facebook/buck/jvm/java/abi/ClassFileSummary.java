@@ -0,0 +1,211 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.abi;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InnerClassNode;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * What a compiled class exposes to, and needs from, the other classes it is compiled with: a hash
+ * of its ABI, a separate hash of the values of its constants (which javac copies into the classes
+ * that use them, leaving no other trace of the reference), and the names of every class it
+ * refers to.
+ */
+public final class ClassFileSummary {
+
+  private static final int CONSTANT_UTF8 = 1;
+  private static final int CONSTANT_CLASS = 7;
+
+  // A class type in a descriptor or signature, such as "com/example/A" in "(Lcom/example/A;)V".
+  private static final Pattern CLASS_TYPE = Pattern.compile("L([^;<:.\\[]+)[;<.]");
+
+  private final String name;
+  private final Optional<String> sourceFileName;
+  private final boolean localOrAnonymous;
+  private final ImmutableSet<String> supertypes;
+  private final HashCode abiHash;
+  private final HashCode constantsHash;
+  private final ImmutableSortedSet<String> referencedClasses;
+
+  private ClassFileSummary(
+      String name,
+      Optional<String> sourceFileName,
+      boolean localOrAnonymous,
+      ImmutableSet<String> supertypes,
+      HashCode abiHash,
+      HashCode constantsHash,
+      ImmutableSortedSet<String> referencedClasses) {
+    this.name = name;
+    this.sourceFileName = sourceFileName;
+    this.localOrAnonymous = localOrAnonymous;
+    this.supertypes = supertypes;
+    this.abiHash = abiHash;
+    this.constantsHash = constantsHash;
+    this.referencedClasses = referencedClasses;
+  }
+
+  public static ClassFileSummary of(byte[] classFile) throws IOException {
+    ClassReader reader = new ClassReader(classFile);
+
+    ClassNode debugInfo = new ClassNode(Opcodes.ASM5);
+    reader.accept(debugInfo, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+
+    ClassNode abi = new ClassNode(Opcodes.ASM5);
+    reader.accept(
+        new AbiFilteringClassVisitor(abi),
+        ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    StringBuilder constants = new StringBuilder();
+    abi.fields.sort((a, b) -> a.name.compareTo(b.name));
+    for (FieldNode field : abi.fields) {
+      if (field.value != null) {
+        constants.append(field.name).append('=').append(field.value).append('\n');
+        field.value = null;
+      }
+    }
+
+    ImmutableSet.Builder<String> supertypes = ImmutableSet.builder();
+    if (abi.superName != null) {
+      supertypes.add(abi.superName);
+    }
+    supertypes.addAll(abi.interfaces);
+
+    return new ClassFileSummary(
+        reader.getClassName(),
+        Optional.ofNullable(debugInfo.sourceFile),
+        isLocalOrAnonymous(debugInfo),
+        supertypes.build(),
+        Hashing.sha1().hashString(StubJarComparator.describe(abi), StandardCharsets.UTF_8),
+        Hashing.sha1().hashString(constants, StandardCharsets.UTF_8),
+        getReferencedClasses(reader));
+  }
+
+  /**
+   * @return the internal name of the class, such as {@code com/example/Foo$Bar}
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the name (without a directory) of the source file the class was compiled from, if the
+   *     class file records it
+   */
+  public Optional<String> getSourceFileName() {
+    return sourceFileName;
+  }
+
+  /**
+   * Local and anonymous classes cannot be named from outside the code that declares them, so they
+   * are not part of the ABI of anything.
+   */
+  public boolean isLocalOrAnonymous() {
+    return localOrAnonymous;
+  }
+
+  /**
+   * @return the internal names of the superclass (if any) and of the directly implemented
+   *     interfaces
+   */
+  public ImmutableSet<String> getSupertypes() {
+    return supertypes;
+  }
+
+  /**
+   * @return a hash of the non-private parts of the class, not including the values of constants
+   */
+  public HashCode getAbiHash() {
+    return abiHash;
+  }
+
+  /**
+   * @return a hash of the values of the non-private constants of the class
+   */
+  public HashCode getConstantsHash() {
+    return constantsHash;
+  }
+
+  /**
+   * @return the internal names of the classes referred to anywhere in the class file. This may
+   *     include a few names which are not classes at all, but never misses one.
+   */
+  public ImmutableSortedSet<String> getReferencedClasses() {
+    return referencedClasses;
+  }
+
+  private static boolean isLocalOrAnonymous(ClassNode node) {
+    for (InnerClassNode innerClass : node.innerClasses) {
+      if (innerClass.name.equals(node.name)) {
+        return innerClass.outerName == null;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Every class a class file refers to is named in its constant pool, either by a class constant
+   * or within a descriptor or signature.
+   */
+  private static ImmutableSortedSet<String> getReferencedClasses(ClassReader reader)
+      throws IOException {
+    ImmutableSortedSet.Builder<String> referencedClasses = ImmutableSortedSet.naturalOrder();
+    char[] buffer = new char[reader.getMaxStringLength()];
+    for (int i = 1; i < reader.getItemCount(); i++) {
+      int offset = reader.getItem(i);
+      // The second slot of a long or double constant has no item of its own.
+      if (offset == 0) {
+        continue;
+      }
+      int tag = reader.b[offset - 1];
+      if (tag == CONSTANT_CLASS) {
+        String className = reader.readUTF8(offset, buffer);
+        if (className.startsWith("[")) {
+          Matcher arrayElement = CLASS_TYPE.matcher(className);
+          while (arrayElement.find()) {
+            referencedClasses.add(arrayElement.group(1));
+          }
+        } else {
+          referencedClasses.add(className);
+        }
+      } else if (tag == CONSTANT_UTF8) {
+        try (DataInputStream value = new DataInputStream(
+            new ByteArrayInputStream(reader.b, offset, reader.b.length - offset))) {
+          Matcher classType = CLASS_TYPE.matcher(value.readUTF());
+          while (classType.find()) {
+            referencedClasses.add(classType.group(1));
+          }
+        }
+      }
+    }
+    return referencedClasses.build();
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.abi;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.util.Textifier;
+import org.objectweb.asm.util.TraceClassVisitor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Compares the classes in two stub jars, such as the one {@link StubJar} makes from a compiled
+ * library and the one {@link StubJarGeneratingProcessor} makes from its sources. Members are
+ * compared irrespective of the order in which they were written, since that is the one thing the
+ * two ways of generating a stub are not expected to agree on.
+ */
+public final class StubJarComparator {
+
+  private StubJarComparator() {
+  }
+
+  /**
+   * @return the paths of the classes that are in only one of the jars, or that differ between them
+   */
+  public static SortedSet<Path> findDifferingClasses(Path first, Path second) throws IOException {
+    Map<Path, String> firstClasses = describeClasses(first);
+    Map<Path, String> secondClasses = describeClasses(second);
+
+    SortedSet<Path> differing = new TreeSet<>();
+    for (Map.Entry<Path, String> entry : firstClasses.entrySet()) {
+      if (!Objects.equals(entry.getValue(), secondClasses.get(entry.getKey()))) {
+        differing.add(entry.getKey());
+      }
+    }
+    for (Path path : secondClasses.keySet()) {
+      if (!firstClasses.containsKey(path)) {
+        differing.add(path);
+      }
+    }
+    return differing;
+  }
+
+  private static Map<Path, String> describeClasses(Path jar) throws IOException {
+    Map<Path, String> classes = new HashMap<>();
+    try (LibraryReader reader = LibraryReader.of(jar)) {
+      for (Path path : reader.getRelativePaths()) {
+        if (reader.isClass(path)) {
+          ClassNode node = new ClassNode(Opcodes.ASM5);
+          reader.visitClass(path, node);
+          // The paths belong to the jar's file system, which is gone once the reader is closed.
+          classes.put(Paths.get(path.toString()), describe(node));
+        }
+      }
+    }
+    return classes;
+  }
+
+  static String describe(ClassNode node) {
+    node.fields.sort(Comparator.comparing(field -> field.name));
+    node.methods.sort(Comparator.comparing(method -> method.name + method.desc));
+    node.innerClasses.sort(Comparator.comparing(innerClass -> innerClass.name));
+
+    StringWriter description = new StringWriter();
+    node.accept(new TraceClassVisitor(null, new Textifier(), new PrintWriter(description)));
+    return description.toString();
+  }
+}
@@ -41,7 +41,7 @@ import javax.lang.model.util.Elements;
  */
 @SupportedAnnotationTypes("*")
 @SupportedSourceVersion(SourceVersion.RELEASE_8)
-class StubJarGeneratingProcessor extends AbstractProcessor {
+public class StubJarGeneratingProcessor extends AbstractProcessor {
   private final ProjectFilesystem filesystem;
   private final Path stubJarPath;
   private final Set<Name> topLevelTypeNames = new LinkedHashSet<>();
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.message_ipc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * MessageDispatcher is the receiving end of a {@link Connection}. It turns InvocationMessage
+ * objects back into calls on a local object implementing the remote interface, and wraps their
+ * return values into ReturnResultMessage objects.
+ *
+ * Arguments arrive as whatever the JSON parser produced (maps, lists, strings, numbers), so they
+ * are converted to the declared parameter types of the interface method before the call.
+ *
+ * Example (the worker process end of the example in {@link Connection}):
+ *
+ * MessageDispatcher<RemoteInterface> dispatcher =
+ *     new MessageDispatcher<>(RemoteInterface.class, new RemoteInterfaceImpl(), objectMapper);
+ * InvocationMessage invocation = messageSerializer.deserializeInvocation(jobArgs);
+ * String response = messageSerializer.serializeResult(dispatcher.dispatch(invocation));
+ */
+public class MessageDispatcher<LOCAL> {
+  private final Class<LOCAL> localInterface;
+  private final LOCAL localObject;
+  private final ObjectMapper objectMapper;
+
+  public MessageDispatcher(
+      Class<LOCAL> localInterface,
+      LOCAL localObject,
+      ObjectMapper objectMapper) {
+    this.localInterface = localInterface;
+    this.localObject = localObject;
+    this.objectMapper = objectMapper;
+  }
+
+  public ReturnResultMessage dispatch(InvocationMessage invocation) throws Exception {
+    List<Object> arguments = invocation.getArguments();
+    Method method = findMethod(invocation.getMethodName(), arguments.size());
+    Type[] parameterTypes = method.getGenericParameterTypes();
+    Object[] convertedArguments = new Object[parameterTypes.length];
+    for (int i = 0; i < parameterTypes.length; i++) {
+      convertedArguments[i] = objectMapper.convertValue(
+          arguments.get(i),
+          objectMapper.constructType(parameterTypes[i]));
+    }
+
+    try {
+      return new ReturnResultMessage(method.invoke(localObject, convertedArguments));
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private Method findMethod(String name, int argumentCount) {
+    Method result = null;
+    for (Method method : localInterface.getMethods()) {
+      if (method.getName().equals(name) && method.getParameterCount() == argumentCount) {
+        Preconditions.checkArgument(
+            result == null,
+            "%s has more than one method %s with %s arguments",
+            localInterface.getName(), name, argumentCount);
+        result = method;
+      }
+    }
+    return Preconditions.checkNotNull(
+        result,
+        "%s has no method %s with %s arguments",
+        localInterface.getName(), name, argumentCount);
+  }
+}
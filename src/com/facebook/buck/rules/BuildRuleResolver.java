@@ -33,6 +33,7 @@ import com.google.common.collect.Iterables;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
 
 import javax.annotation.Nullable;
 
@@ -54,6 +55,7 @@ public class BuildRuleResolver {
 
   private final ConcurrentHashMap<BuildTarget, BuildRule> buildRuleIndex;
   private final LoadingCache<Pair<BuildTarget, Class<?>>, Optional<?>> metadataCache;
+  private final ConcurrentHashMap<Object, Object> memos = new ConcurrentHashMap<>();
 
   public BuildRuleResolver(
       TargetGraph targetGraph,
@@ -181,6 +183,28 @@ public class BuildRuleResolver {
     }
   }
 
+  /**
+   * Returns the value computed for {@code key}, computing it if this is the first request for it.
+   * This lets descriptions share work derived from the rules in this resolver, and the value is
+   * dropped with the resolver.  The value may be computed more than once if it's requested
+   * concurrently, but only one is kept.
+   *
+   * @param key identifies the value.  It should be of a type private to the caller, so that the
+   *     keys of different callers don't collide.
+   */
+  public <T> T computeMemoIfAbsent(Object key, Class<T> valueClass, Supplier<T> compute) {
+    Object value = memos.get(key);
+    if (value == null) {
+      // Not computeIfAbsent, as computing the value may well need memos of its own.
+      value = compute.get();
+      Object previous = memos.putIfAbsent(key, value);
+      if (previous != null) {
+        value = previous;
+      }
+    }
+    return valueClass.cast(value);
+  }
+
   @SuppressWarnings("unchecked")
   public <T> Optional<T> getRuleOptionalWithType(
       BuildTarget buildTarget,
@@ -86,6 +86,7 @@ import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
@@ -1646,6 +1647,9 @@ public class CachingBuildEngine implements BuildEngine {
       try (InputStream inputStream =
                rule.getProjectFilesystem().newFileInputStream(manifestPath)) {
         manifest = new Manifest(inputStream);
+      } catch (IOException e) {
+        // E.g. written by a version of buck with a different format: just start a new one.
+        LOG.warn(e, "Ignoring unreadable manifest %s.", manifestPath);
       }
     } else {
       // Ensure the path to manifest exist
@@ -1747,19 +1751,25 @@ public class CachingBuildEngine implements BuildEngine {
     // Now, fetch an existing manifest from the cache.
     rule.getProjectFilesystem().createParentDirs(manifestPath);
 
-    try (OutputStream outputStream =
-             rule.getProjectFilesystem().newFileOutputStream(manifestPath);
-         InputStream inputStream = new GZIPInputStream(
+    // Keep the uncompressed manifest in memory, so it's parsed without reading it back.
+    byte[] manifestBytes;
+    try (InputStream inputStream = new GZIPInputStream(
              new BufferedInputStream(Files.newInputStream(tempFile.get())))) {
-      ByteStreams.copy(inputStream, outputStream);
+      manifestBytes = ByteStreams.toByteArray(inputStream);
+    }
+    try (OutputStream outputStream =
+             rule.getProjectFilesystem().newFileOutputStream(manifestPath)) {
+      outputStream.write(manifestBytes);
     }
     Files.delete(tempFile.get());
 
     // Deserialize the manifest.
     Manifest manifest;
-    try (InputStream input =
-             rule.getProjectFilesystem().newFileInputStream(manifestPath)) {
-      manifest = new Manifest(input);
+    try {
+      manifest = new Manifest(ByteBuffer.wrap(manifestBytes));
+    } catch (IOException e) {
+      LOG.warn(e, "Ignoring unreadable manifest fetched for %s.", rule.getBuildTarget());
+      return Optional.empty();
     }
 
     // Lookup the rule for the current state of our inputs.
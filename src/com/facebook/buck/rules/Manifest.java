@@ -25,16 +25,22 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Multimaps;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Ints;
 
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -42,18 +48,37 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
+import javax.annotation.Nullable;
+
+/**
+ * Maps the hashes of the inputs a rule actually used, as recorded in its dep file, to the rule key
+ * of its output.
+ * <p>
+ * The serialized form is binary: the headers are written once, hashes and rule keys as raw bytes,
+ * and entries refer to them by index.  The index that lookups use follows the entries, so that it
+ * isn't rebuilt each time the manifest is read.  It is read from a {@link ByteBuffer}, so it can be
+ * parsed from a mapped file as well as from memory.
+ */
 public class Manifest {
 
-  private static final int VERSION = 0;
+  private static final int VERSION = 2;
+
+  private static final int[] EMPTY_BUCKET = new int[0];
 
   private final List<String> headers;
   private final Map<String, Integer> headerIndices;
 
   private final List<Pair<Integer, HashCode>> hashes;
-  private final Map<HashCode, Integer> hashIndices;
+  private final Map<Pair<Integer, HashCode>, Integer> hashIndices;
 
   private final List<Pair<RuleKey, int[]>> entries;
 
+  /**
+   * Read with the manifest or built on the first lookup, and dropped whenever an entry is added.
+   */
+  @Nullable
+  private LookupIndex lookupIndex;
+
   /**
    * Create an empty manifest.
    */
@@ -69,39 +94,81 @@ public class Manifest {
    * Deserialize an existing manifest from the given {@link InputStream}.
    */
   public Manifest(InputStream rawInput) throws IOException {
-    DataInputStream input = new DataInputStream(rawInput);
+    this(ByteBuffer.wrap(ByteStreams.toByteArray(rawInput)));
+  }
+
+  /**
+   * Deserialize an existing manifest from the remaining bytes of the given {@link ByteBuffer}.
+   */
+  public Manifest(ByteBuffer buffer) throws IOException {
+    ByteBuffer input = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+    try {
+      int version = input.getInt();
+      if (version != VERSION) {
+        throw new IOException(
+            String.format("Unsupported manifest version %d, expected %d.", version, VERSION));
+      }
 
-    Preconditions.checkState(input.readInt() == VERSION);
+      int numberOfHeaders = input.getInt();
+      headers = new ArrayList<>(numberOfHeaders);
+      headerIndices = new HashMap<>(numberOfHeaders);
+      for (int index = 0; index < numberOfHeaders; index++) {
+        byte[] header = new byte[input.getInt()];
+        input.get(header);
+        String headerString = new String(header, StandardCharsets.UTF_8);
+        headers.add(headerString);
+        headerIndices.put(headerString, index);
+      }
 
-    int numberOfHeaders = input.readInt();
-    headers = new ArrayList<>(numberOfHeaders);
-    headerIndices = new HashMap<>(numberOfHeaders);
-    for (int index = 0; index < numberOfHeaders; index++) {
-      String header = input.readUTF();
-      headers.add(header);
-      headerIndices.put(header, index);
+      int numberOfHashes = input.getInt();
+      hashes = new ArrayList<>(numberOfHashes);
+      hashIndices = new HashMap<>(numberOfHashes);
+      for (int index = 0; index < numberOfHashes; index++) {
+        int headerIndex = input.getInt();
+        Pair<Integer, HashCode> hash = new Pair<>(headerIndex, readHashCode(input));
+        hashes.add(hash);
+        hashIndices.put(hash, index);
+      }
+
+      int numberOfEntries = input.getInt();
+      entries = new ArrayList<>(numberOfEntries);
+      for (int entryIndex = 0; entryIndex < numberOfEntries; entryIndex++) {
+        RuleKey key = new RuleKey(readHashCode(input));
+        entries.add(new Pair<>(key, readIndices(input)));
+      }
+
+      lookupIndex = new LookupIndex(input);
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Manifest is truncated.", e);
     }
+  }
+
+  private static HashCode readHashCode(ByteBuffer input) {
+    byte[] bytes = new byte[input.get() & 0xff];
+    input.get(bytes);
+    return HashCode.fromBytes(bytes);
+  }
 
-    int numberOfHashes = input.readInt();
-    hashes = new ArrayList<>(numberOfHashes);
-    hashIndices = new HashMap<>(numberOfHashes);
-    for (int index = 0; index < numberOfHashes; index++) {
-      int headerIndex = input.readInt();
-      HashCode headerHash = HashCode.fromString(input.readUTF());
-      hashes.add(new Pair<>(headerIndex, headerHash));
-      hashIndices.put(headerHash, index);
+  private static void writeHashCode(DataOutputStream output, HashCode hashCode)
+      throws IOException {
+    byte[] bytes = hashCode.asBytes();
+    Preconditions.checkState(bytes.length <= 0xff);
+    output.writeByte(bytes.length);
+    output.write(bytes);
+  }
+
+  private static int[] readIndices(ByteBuffer input) {
+    int[] indices = new int[input.getInt()];
+    for (int position = 0; position < indices.length; position++) {
+      indices[position] = input.getInt();
     }
+    return indices;
+  }
 
-    int numberOfEntries = input.readInt();
-    entries = new ArrayList<>(numberOfEntries);
-    for (int entryIndex = 0; entryIndex < numberOfEntries; entryIndex++) {
-      int numberOfEntryHashes = input.readInt();
-      int[] entryHashes = new int[numberOfEntryHashes];
-      for (int hashIndex = 0; hashIndex < numberOfEntryHashes; hashIndex++) {
-        entryHashes[hashIndex] = input.readInt();
-      }
-      RuleKey key = new RuleKey(input.readUTF());
-      entries.add(new Pair<>(key, entryHashes));
+  private static void writeIndices(DataOutputStream output, int[] indices) throws IOException {
+    output.writeInt(indices.length);
+    for (int index : indices) {
+      output.writeInt(index);
     }
   }
 
@@ -113,11 +180,13 @@ public class Manifest {
       headerIndices.put(header, headerIndex);
     }
 
-    Integer hashIndex = hashIndices.get(hash);
+    // Different headers can have the same contents, so hashes are only shared within a header.
+    Pair<Integer, HashCode> headerHash = new Pair<>(headerIndex, hash);
+    Integer hashIndex = hashIndices.get(headerHash);
     if (hashIndex == null) {
-      hashes.add(new Pair<>(headerIndex, hash));
+      hashes.add(headerHash);
       hashIndex = hashes.size() - 1;
-      hashIndices.put(hash, hashIndex);
+      hashIndices.put(headerHash, hashIndex);
     }
 
     return hashIndex;
@@ -150,27 +219,12 @@ public class Manifest {
     }
   }
 
-  private boolean hashesMatch(
-      FileHashCache fileHashCache,
-      SourcePathResolver resolver,
-      ImmutableListMultimap<String, SourcePath> universe,
-      int[] hashIndices)
+  private boolean hashesMatch(OnDiskHashes onDiskHashes, int[] hashIndices)
       throws IOException {
     for (int hashIndex : hashIndices) {
       Pair<Integer, HashCode> hashEntry = hashes.get(hashIndex);
-      String header = headers.get(hashEntry.getFirst());
-      ImmutableList<SourcePath> candidates = universe.get(header);
-      if (candidates.isEmpty()) {
-        return false;
-      }
-      HashCode onDiskHeaderHash;
-      try {
-        onDiskHeaderHash = hashSourcePathGroup(fileHashCache, resolver, candidates);
-      } catch (NoSuchFileException e) {
-        return false;
-      }
-      HashCode headerHash = hashEntry.getSecond();
-      if (!headerHash.equals(onDiskHeaderHash)) {
+      Optional<HashCode> onDiskHeaderHash = onDiskHashes.get(hashEntry.getFirst());
+      if (!onDiskHeaderHash.isPresent() || !hashEntry.getSecond().equals(onDiskHeaderHash.get())) {
         return false;
       }
     }
@@ -188,14 +242,47 @@ public class Manifest {
       throws IOException {
     ImmutableListMultimap<String, SourcePath> mappedUniverse =
         Multimaps.index(universe, sourcePathToManifestHeaderFunction(resolver));
-    for (Pair<RuleKey, int[]> entry : entries) {
-      if (hashesMatch(fileHashCache, resolver, mappedUniverse, entry.getSecond())) {
+    OnDiskHashes onDiskHashes = new OnDiskHashes(fileHashCache, resolver, mappedUniverse);
+    LookupIndex index = getLookupIndex();
+
+    // Only the entries that have the on disk hash of the index header, or that don't depend on it
+    // at all, can match.  Check them in the order they were added, as a full scan would.
+    int[] bucket = EMPTY_BUCKET;
+    if (index.header >= 0) {
+      Optional<HashCode> onDiskHash = onDiskHashes.get(index.header);
+      if (onDiskHash.isPresent()) {
+        Integer hashIndex = hashIndices.get(new Pair<>(index.header, onDiskHash.get()));
+        if (hashIndex != null) {
+          bucket = index.buckets.getOrDefault(hashIndex, EMPTY_BUCKET);
+        }
+      }
+    }
+    int[] others = index.entriesWithoutHeader;
+    int bucketPosition = 0;
+    int othersPosition = 0;
+    while (bucketPosition < bucket.length || othersPosition < others.length) {
+      int entryIndex;
+      if (othersPosition >= others.length ||
+          (bucketPosition < bucket.length && bucket[bucketPosition] < others[othersPosition])) {
+        entryIndex = bucket[bucketPosition++];
+      } else {
+        entryIndex = others[othersPosition++];
+      }
+      Pair<RuleKey, int[]> entry = entries.get(entryIndex);
+      if (hashesMatch(onDiskHashes, entry.getSecond())) {
         return Optional.of(entry.getFirst());
       }
     }
     return Optional.empty();
   }
 
+  private LookupIndex getLookupIndex() {
+    if (lookupIndex == null) {
+      lookupIndex = new LookupIndex();
+    }
+    return lookupIndex;
+  }
+
   private static Function<SourcePath, String> sourcePathToManifestHeaderFunction(
       final SourcePathResolver resolver) {
     return input -> sourcePathToManifestHeader(input, resolver);
@@ -237,6 +324,7 @@ public class Manifest {
               hashSourcePathGroup(fileHashCache, resolver, paths));
     }
     entries.add(new Pair<>(key, hashIndices));
+    lookupIndex = null;
   }
 
   /**
@@ -249,23 +337,25 @@ public class Manifest {
 
     output.writeInt(headers.size());
     for (String header : headers) {
-      output.writeUTF(header);
+      byte[] bytes = header.getBytes(StandardCharsets.UTF_8);
+      output.writeInt(bytes.length);
+      output.write(bytes);
     }
 
     output.writeInt(hashes.size());
     for (Pair<Integer, HashCode> hash : hashes) {
       output.writeInt(hash.getFirst());
-      output.writeUTF(hash.getSecond().toString());
+      writeHashCode(output, hash.getSecond());
     }
 
     output.writeInt(entries.size());
     for (Pair<RuleKey, int[]> entry : entries) {
-      output.writeInt(entry.getSecond().length);
-      for (int hashIndex : entry.getSecond()) {
-        output.writeInt(hashIndex);
-      }
-      output.writeUTF(entry.getFirst().toString());
+      writeHashCode(output, entry.getFirst().getHashCode());
+      writeIndices(output, entry.getSecond());
     }
+
+    getLookupIndex().write(output);
+    output.flush();
   }
 
   public int size() {
@@ -303,4 +393,146 @@ public class Manifest {
     return manifest;
   }
 
+  /**
+   * Buckets the entries on their hash of the header that best tells them apart, so that a lookup
+   * only compares the entries in one bucket, plus those that don't depend on that header, against
+   * the files on disk.
+   */
+  private class LookupIndex {
+
+    /**
+     * Index of the bucketing header, or -1 if there are no entries.
+     */
+    private final int header;
+    /**
+     * Indices of the entries, in ascending order, by their hash index for {@link #header}.
+     */
+    private final Map<Integer, int[]> buckets;
+    /**
+     * Indices of the entries, in ascending order, that don't depend on {@link #header}.
+     */
+    private final int[] entriesWithoutHeader;
+
+    LookupIndex() {
+      int[] entriesPerHeader = new int[headers.size()];
+      int[] hashesPerHeader = new int[headers.size()];
+      for (Pair<RuleKey, int[]> entry : entries) {
+        for (int hashIndex : entry.getSecond()) {
+          entriesPerHeader[hashes.get(hashIndex).getFirst()]++;
+        }
+      }
+      for (Pair<Integer, HashCode> hash : hashes) {
+        hashesPerHeader[hash.getFirst()]++;
+      }
+
+      // Pick the header that leaves the fewest entries to check, assuming the entries that depend
+      // on it are spread evenly over its hashes.
+      int bestHeader = -1;
+      double bestCandidates = Double.MAX_VALUE;
+      for (int headerIndex = 0; headerIndex < headers.size(); headerIndex++) {
+        if (entriesPerHeader[headerIndex] == 0) {
+          continue;
+        }
+        double candidates =
+            entries.size() - entriesPerHeader[headerIndex] +
+                (double) entriesPerHeader[headerIndex] / hashesPerHeader[headerIndex];
+        if (candidates < bestCandidates) {
+          bestHeader = headerIndex;
+          bestCandidates = candidates;
+        }
+      }
+      header = bestHeader;
+
+      Map<Integer, List<Integer>> entriesByHash = new HashMap<>();
+      List<Integer> others = new ArrayList<>();
+      for (int entryIndex = 0; entryIndex < entries.size(); entryIndex++) {
+        Integer bucket = null;
+        for (int hashIndex : entries.get(entryIndex).getSecond()) {
+          if (hashes.get(hashIndex).getFirst() == header) {
+            bucket = hashIndex;
+            break;
+          }
+        }
+        if (bucket == null) {
+          others.add(entryIndex);
+        } else {
+          entriesByHash.computeIfAbsent(bucket, k -> new ArrayList<>()).add(entryIndex);
+        }
+      }
+      buckets = new HashMap<>();
+      for (Map.Entry<Integer, List<Integer>> bucket : entriesByHash.entrySet()) {
+        buckets.put(bucket.getKey(), Ints.toArray(bucket.getValue()));
+      }
+      entriesWithoutHeader = Ints.toArray(others);
+    }
+
+    /**
+     * Reads an index written by {@link #write(DataOutputStream)}.
+     */
+    LookupIndex(ByteBuffer input) {
+      header = input.getInt();
+      int numberOfBuckets = input.getInt();
+      buckets = new HashMap<>(numberOfBuckets);
+      for (int bucket = 0; bucket < numberOfBuckets; bucket++) {
+        int hashIndex = input.getInt();
+        buckets.put(hashIndex, readIndices(input));
+      }
+      entriesWithoutHeader = readIndices(input);
+    }
+
+    void write(DataOutputStream output) throws IOException {
+      output.writeInt(header);
+      output.writeInt(buckets.size());
+      // In a fixed order, so that the same manifest is always written the same way.
+      for (int hashIndex : ImmutableSortedSet.copyOf(buckets.keySet())) {
+        output.writeInt(hashIndex);
+        writeIndices(output, buckets.get(hashIndex));
+      }
+      writeIndices(output, entriesWithoutHeader);
+    }
+  }
+
+  /**
+   * The on disk hashes of headers, computed at most once per lookup, as many entries share them.
+   */
+  private class OnDiskHashes {
+
+    private final FileHashCache fileHashCache;
+    private final SourcePathResolver resolver;
+    private final ImmutableListMultimap<String, SourcePath> universe;
+    private final Map<Integer, Optional<HashCode>> hashesByHeader = new HashMap<>();
+
+    OnDiskHashes(
+        FileHashCache fileHashCache,
+        SourcePathResolver resolver,
+        ImmutableListMultimap<String, SourcePath> universe) {
+      this.fileHashCache = fileHashCache;
+      this.resolver = resolver;
+      this.universe = universe;
+    }
+
+    /**
+     * @return the hash of the header on disk, or empty if it's not in the universe or missing.
+     */
+    Optional<HashCode> get(int headerIndex) throws IOException {
+      Optional<HashCode> hash = hashesByHeader.get(headerIndex);
+      if (hash == null) {
+        hash = compute(headers.get(headerIndex));
+        hashesByHeader.put(headerIndex, hash);
+      }
+      return hash;
+    }
+
+    private Optional<HashCode> compute(String header) throws IOException {
+      ImmutableList<SourcePath> candidates = universe.get(header);
+      if (candidates.isEmpty()) {
+        return Optional.empty();
+      }
+      try {
+        return Optional.of(hashSourcePathGroup(fileHashCache, resolver, candidates));
+      } catch (NoSuchFileException e) {
+        return Optional.empty();
+      }
+    }
+  }
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.shell;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The worker end of {@link WorkerProcessProtocolZero}, spoken on stdin and stdout by the workers
+ * of {@link BuiltInWorkerProcessPool}s that run Buck's own code. This class is loaded in the
+ * workers, so it must not depend on more of Buck than it does.
+ */
+public class BuiltInWorkerMain {
+
+  private static final String TYPE_HANDSHAKE = "handshake";
+  private static final String TYPE_COMMAND = "command";
+  private static final String TYPE_RESULT = "result";
+  private static final String TYPE_ERROR = "error";
+  private static final String PROTOCOL_VERSION = "0";
+
+  /**
+   * Runs the jobs sent to a worker.
+   */
+  public interface JobRunner {
+    /**
+     * @param argsPath the file that holds the job
+     * @param stdoutPath the file to write the job's output to
+     * @param stderrPath the file to write the job's errors to
+     * @return the job's exit code
+     */
+    int runJob(Path argsPath, Path stdoutPath, Path stderrPath)
+        throws IOException, InterruptedException;
+  }
+
+  private BuiltInWorkerMain() {
+  }
+
+  /**
+   * Answers the handshake, then runs each job sent to this worker until Buck closes the protocol.
+   */
+  public static void run(JobRunner jobRunner) throws IOException, InterruptedException {
+    // stdout carries the protocol, so keep anything the tool prints out of it.
+    PrintStream protocolOut = System.out;
+    System.setOut(System.err);
+
+    JsonReader reader = new JsonReader(
+        new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+    JsonWriter writer = new JsonWriter(
+        new BufferedWriter(new OutputStreamWriter(protocolOut, StandardCharsets.UTF_8)));
+
+    reader.beginArray();
+    Map<String, Object> handshake = readMessage(reader);
+    writer.beginArray();
+    writer.beginObject();
+    writer.name("id").value((Integer) handshake.get("id"));
+    writer.name("type").value(TYPE_HANDSHAKE);
+    writer.name("protocol_version").value(PROTOCOL_VERSION);
+    writer.name("capabilities").beginArray().endArray();
+    writer.endObject();
+    writer.flush();
+
+    while (reader.hasNext()) {
+      Map<String, Object> command = readMessage(reader);
+      String type = TYPE_RESULT;
+      int exitCode;
+      if (!TYPE_COMMAND.equals(command.get("type"))) {
+        type = TYPE_ERROR;
+        exitCode = 1;
+      } else {
+        exitCode = jobRunner.runJob(
+            Paths.get((String) command.get("args_path")),
+            Paths.get((String) command.get("stdout_path")),
+            Paths.get((String) command.get("stderr_path")));
+      }
+      writer.beginObject();
+      writer.name("id").value((Integer) command.get("id"));
+      writer.name("type").value(type);
+      writer.name("exit_code").value(exitCode);
+      writer.endObject();
+      writer.flush();
+    }
+
+    reader.endArray();
+    writer.endArray();
+    writer.close();
+  }
+
+  private static Map<String, Object> readMessage(JsonReader reader) throws IOException {
+    Map<String, Object> message = new HashMap<>();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      JsonToken token = reader.peek();
+      if (token == JsonToken.NUMBER) {
+        message.put(name, reader.nextInt());
+      } else if (token == JsonToken.STRING) {
+        message.put(name, reader.nextString());
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return message;
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.shell;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.util.HumanReadableException;
+import com.facebook.buck.util.ProcessExecutor;
+import com.facebook.buck.util.ProcessExecutorParams;
+import com.facebook.buck.util.concurrent.ConcurrencyLimit;
+import com.facebook.buck.util.concurrent.ResourceAmountsEstimator;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * A pool of long-lived workers that Buck starts itself to run a tool for its steps, such as a
+ * compiler, rather than one a {@code worker_tool} rule describes. When Buck runs as a daemon the
+ * pool is kept in the persistent worker pools, so the workers, and the JIT's work on the tool,
+ * survive from one build to the next.
+ * <p>
+ * Workers that run Buck's own code are started with {@link #getJavaWorkerCommand(Optional, String)}
+ * and speak the protocol through {@link BuiltInWorkerMain}.
+ */
+public abstract class BuiltInWorkerProcessPool extends WorkerProcessPool {
+
+  private static final Pattern HEAP_SIZE = Pattern.compile("(\\d+)([kmg]?)");
+
+  private final ProcessExecutor processExecutor;
+  private final ProcessExecutorParams processParams;
+  private final ProjectFilesystem filesystem;
+  private final Path tmpDir;
+  private final AtomicInteger workerNumber = new AtomicInteger(0);
+
+  /**
+   * @param tmpDirName the directory, in Buck's temporary directory, that holds a directory for
+   *     each worker
+   */
+  protected BuiltInWorkerProcessPool(
+      int maxWorkers,
+      HashCode poolHash,
+      ProcessExecutor processExecutor,
+      ImmutableList<String> command,
+      ProjectFilesystem filesystem,
+      String tmpDirName) {
+    super(maxWorkers, poolHash);
+    this.processExecutor = processExecutor;
+    this.processParams = ProcessExecutorParams.builder()
+        .setCommand(command)
+        .setDirectory(filesystem.getRootPath())
+        .build();
+    this.filesystem = filesystem;
+    this.tmpDir = filesystem.resolve(filesystem.getBuckPaths().getTmpDir()).resolve(tmpDirName);
+  }
+
+  /**
+   * Returns the pool of the given class for this build, creating it if there is none or if the
+   * existing one was created with different settings.
+   *
+   * @param newPool creates the pool, given the hash of its settings
+   */
+  protected static <T extends BuiltInWorkerProcessPool> T get(
+      ExecutionContext context,
+      Class<T> poolClass,
+      ImmutableList<String> command,
+      int maxWorkers,
+      Function<HashCode, T> newPool) {
+    ConcurrentMap<String, WorkerProcessPool> pools =
+        context.getPersistentWorkerPools().orElse(context.getWorkerProcessPools());
+    String poolKey = poolClass.getName();
+    HashCode poolHash = Hashing.sha1().hashString(
+        Joiner.on(' ').join(command) + " " + maxWorkers,
+        StandardCharsets.UTF_8);
+
+    WorkerProcessPool pool = pools.get(poolKey);
+    if (pool != null && !pool.getPoolHash().equals(poolHash)) {
+      if (pools.remove(poolKey, pool)) {
+        pool.close();
+      }
+      pool = pools.get(poolKey);
+    }
+
+    if (pool == null) {
+      T createdPool = newPool.apply(poolHash);
+      pool = pools.putIfAbsent(poolKey, createdPool);
+      if (pool == null) {
+        pool = createdPool;
+      }
+    }
+    return poolClass.cast(pool);
+  }
+
+  /**
+   * Runs a job in the next available worker. A worker which fails to run the job, rather than
+   * running it and reporting that it failed, is dropped from the pool.
+   *
+   * @param jobArgs the contents of the job's args file
+   */
+  protected WorkerJobResult runJob(String jobArgs) throws IOException, InterruptedException {
+    WorkerProcess process = borrowWorkerProcess();
+    boolean ranJob = false;
+    try {
+      WorkerJobResult result = process.submitAndWaitForJob(jobArgs);
+      ranJob = true;
+      return result;
+    } finally {
+      if (ranJob) {
+        returnWorkerProcess(process);
+      } else {
+        destroyWorkerProcess(process);
+      }
+    }
+  }
+
+  @Override
+  protected WorkerProcess startWorkerProcess() throws IOException {
+    Path workerTmpDir = tmpDir.resolve(Integer.toString(workerNumber.getAndIncrement()));
+    filesystem.mkdirs(workerTmpDir);
+    WorkerProcess process =
+        new WorkerProcess(processExecutor, processParams, filesystem, workerTmpDir);
+    process.ensureLaunchAndHandshake();
+    return process;
+  }
+
+  /**
+   * @return how many workers with heaps of the given size to run, so that they fit in the memory
+   *     {@link com.facebook.buck.util.concurrent.ResourceAmounts} says is available, and never
+   *     outnumber the build threads.
+   */
+  public static int getMaxWorkers(ConcurrencyLimit concurrencyLimit, long workerHeapBytes) {
+    int memoryPerWorker = (int) Math.max(
+        1,
+        (workerHeapBytes + ResourceAmountsEstimator.MEMORY_UNIT_SIZE_BYTES - 1) /
+            ResourceAmountsEstimator.MEMORY_UNIT_SIZE_BYTES);
+    int workersThatFitInMemory = concurrencyLimit.maximumAmounts.getMemory() / memoryPerWorker;
+    return Math.max(1, Math.min(concurrencyLimit.threadLimit, workersThatFitInMemory));
+  }
+
+  /**
+   * @return the number of bytes in a heap size such as {@code 512m} or {@code 2g}
+   */
+  public static long parseHeapSize(String heapSize) {
+    Matcher matcher = HEAP_SIZE.matcher(heapSize.toLowerCase(Locale.US));
+    if (!matcher.matches()) {
+      throw new HumanReadableException("Invalid worker heap size: %s", heapSize);
+    }
+    long bytes = Long.parseLong(matcher.group(1));
+    switch (matcher.group(2)) {
+      case "g":
+        return bytes * 1024L * 1024L * 1024L;
+      case "m":
+        return bytes * 1024L * 1024L;
+      case "k":
+        return bytes * 1024L;
+      default:
+        return bytes;
+    }
+  }
+
+  /**
+   * The command that starts a worker running the given class of Buck's own, on the JVM Buck is
+   * running on. When Buck has been started through the bootstrapper, so must the worker be, so
+   * that the tool is not exposed to Buck's dependencies.
+   *
+   * @param heapSize the heap size of the worker, in the form accepted by {@code -Xmx}, or absent
+   *     for the JVM's default
+   * @param mainClassName the name of the class whose {@code main} runs the worker
+   */
+  @VisibleForTesting
+  public static ImmutableList<String> getJavaWorkerCommand(
+      Optional<String> heapSize,
+      String mainClassName) {
+    ImmutableList.Builder<String> command = ImmutableList.builder();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    if (heapSize.isPresent()) {
+      command.add("-Xmx" + heapSize.get());
+    }
+    command.add(
+        "-classpath",
+        // The workers run in the project root, which need not be where Buck was started.
+        Splitter.on(File.pathSeparatorChar)
+            .splitToList(System.getProperty("java.class.path"))
+            .stream()
+            .map(entry -> Paths.get(entry).toAbsolutePath().toString())
+            .collect(Collectors.joining(File.pathSeparator)));
+    if (System.getenv("BUCK_CLASSPATH") != null) {
+      command.add("com.facebook.buck.cli.bootstrapper.ClassLoaderBootstrapper");
+    }
+    command.add(mainClassName);
+    return command.build();
+  }
+}
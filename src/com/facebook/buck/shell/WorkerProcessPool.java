@@ -16,6 +16,8 @@
 
 package com.facebook.buck.shell;
 
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.HumanReadableException;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
@@ -25,13 +27,14 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 
 public abstract class WorkerProcessPool {
 
+  private static final Logger LOG = Logger.get(WorkerProcessPool.class);
+
   private final int capacity;
   private final BlockingQueue<WorkerProcess> availableWorkers;
   @GuardedBy("createdWorkers")
@@ -48,29 +51,32 @@ public abstract class WorkerProcessPool {
   /**
    * If there are available workers, returns one. Otherwise blocks until one becomes available and
    * returns it. You must free worker process by calling {@link #returnWorkerProcess(WorkerProcess)}
-   * method after you finish using it.
+   * or {@link #destroyWorkerProcess(WorkerProcess)} method after you finish using it.
    */
   public WorkerProcess borrowWorkerProcess()
       throws IOException, InterruptedException {
-    WorkerProcess workerProcess = availableWorkers.poll(0, TimeUnit.SECONDS);
-    if (workerProcess == null) {
-      workerProcess = createNewWorkerIfPossible();
-    }
-    if (workerProcess != null) {
-      return workerProcess;
+    synchronized (createdWorkers) {
+      while (true) {
+        WorkerProcess workerProcess = availableWorkers.poll();
+        if (workerProcess == null) {
+          workerProcess = createNewWorkerIfPossible();
+        }
+        if (workerProcess != null) {
+          return workerProcess;
+        }
+        createdWorkers.wait();
+      }
     }
-    return availableWorkers.take();
   }
 
+  @GuardedBy("createdWorkers")
   private @Nullable WorkerProcess createNewWorkerIfPossible() throws IOException {
-    synchronized (createdWorkers) {
-      if (createdWorkers.size() == capacity) {
-        return null;
-      }
-      WorkerProcess process = Preconditions.checkNotNull(startWorkerProcess());
-      createdWorkers.add(process);
-      return process;
+    if (createdWorkers.size() == capacity) {
+      return null;
     }
+    WorkerProcess process = Preconditions.checkNotNull(startWorkerProcess());
+    createdWorkers.add(process);
+    return process;
   }
 
   public void returnWorkerProcess(WorkerProcess workerProcess)
@@ -79,8 +85,29 @@ public abstract class WorkerProcessPool {
       Preconditions.checkArgument(
           createdWorkers.contains(workerProcess),
           "Trying to return a foreign WorkerProcess to the pool");
+      availableWorkers.put(workerProcess);
+      createdWorkers.notify();
+    }
+  }
+
+  /**
+   * Closes a borrowed worker process which can no longer be trusted with jobs, because it died or
+   * a job failed part-way through, and removes it from the pool. A new worker process is started
+   * in its place when one is next needed.
+   */
+  public void destroyWorkerProcess(WorkerProcess workerProcess) {
+    synchronized (createdWorkers) {
+      Preconditions.checkArgument(
+          createdWorkers.remove(workerProcess),
+          "Trying to destroy a foreign WorkerProcess");
+      createdWorkers.notify();
+    }
+    try {
+      workerProcess.close();
+    } catch (HumanReadableException e) {
+      // The process has been killed all the same; one which already died seldom closes cleanly.
+      LOG.debug(e, "Error while destroying a worker process.");
     }
-    availableWorkers.put(workerProcess);
   }
 
   public void close() {
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.step.fs;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.UnsupportedOptionsException;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Compresses a file with XZ / LZMA2 on several threads at once.
+ * <p>
+ * The file is cut into blocks which are compressed independently, each on its own thread, and
+ * then written out as the blocks of a single XZ stream, the way {@code xz --threads} does. Any XZ
+ * decoder, including XZ Embedded, reads the result. Since LZMA2 cannot refer back across a block
+ * boundary, each block is three times the dictionary size, which costs little in compression.
+ * Files no larger than one block are compressed just as {@link XzStep} would.
+ * <p>
+ * The output depends only on the input and the compression level, not on the number of threads.
+ *
+ * @see <a href="http://tukaani.org/xz/xz-file-format.txt">The .xz File Format</a>
+ */
+public class ParallelXzCompressor {
+
+  private static final int STREAM_HEADER_SIZE = 12;
+  private static final int STREAM_FOOTER_SIZE = 12;
+  private static final byte[] FOOTER_MAGIC = {'Y', 'Z'};
+  private static final int MIN_BLOCK_SIZE = 1024 * 1024;
+
+  private final ProjectFilesystem filesystem;
+  private final Path sourceFile;
+  private final Path destinationFile;
+  private final int compressionLevel;
+  private final int check;
+  private final long blockSize;
+
+  /**
+   * @param check integrity check to use, one of the {@code CHECK_} constants of
+   *     {@link org.tukaani.xz.XZ}
+   */
+  public ParallelXzCompressor(
+      ProjectFilesystem filesystem,
+      Path sourceFile,
+      Path destinationFile,
+      int compressionLevel,
+      int check) {
+    this(
+        filesystem,
+        sourceFile,
+        destinationFile,
+        compressionLevel,
+        check,
+        getBlockSize(compressionLevel));
+  }
+
+  @VisibleForTesting
+  ParallelXzCompressor(
+      ProjectFilesystem filesystem,
+      Path sourceFile,
+      Path destinationFile,
+      int compressionLevel,
+      int check,
+      long blockSize) {
+    Preconditions.checkArgument(compressionLevel >= LZMA2Options.PRESET_MIN &&
+        compressionLevel <= LZMA2Options.PRESET_MAX, "compressionLevel out of bounds.");
+    Preconditions.checkArgument(blockSize > 0);
+    this.filesystem = filesystem;
+    this.sourceFile = sourceFile;
+    this.destinationFile = destinationFile;
+    this.compressionLevel = compressionLevel;
+    this.check = check;
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * Compresses the source file, running the compression of each block on {@code executor}.
+   * Neither this method nor the tasks it submits wait for one another, so it may be called from a
+   * task running on the same executor.
+   *
+   * @return a future which completes when the destination file has been written
+   */
+  public ListenableFuture<Void> compress(ListeningExecutorService executor) throws IOException {
+    long size = filesystem.getFileSize(sourceFile);
+    ImmutableList.Builder<ListenableFuture<byte[]>> blocks = ImmutableList.builder();
+    long offset = 0;
+    do {
+      final long blockOffset = offset;
+      final long blockLength = Math.min(blockSize, size - offset);
+      blocks.add(executor.submit(() -> compressBlock(blockOffset, blockLength)));
+      offset += blockLength;
+    } while (offset < size);
+
+    return Futures.transformAsync(
+        Futures.allAsList(blocks.build()),
+        streams -> {
+          writeStream(streams);
+          return Futures.immediateFuture(null);
+        },
+        executor);
+  }
+
+  /**
+   * @return a complete, single-block XZ stream holding the given part of the source file
+   */
+  private byte[] compressBlock(long offset, long length) throws IOException {
+    XzMemorySemaphore.acquireMemory(compressionLevel);
+    try (SeekableByteChannel channel = Files.newByteChannel(filesystem.resolve(sourceFile))) {
+      channel.position(offset);
+      ByteArrayOutputStream stream = new ByteArrayOutputStream();
+      try (InputStream in = ByteStreams.limit(Channels.newInputStream(channel), length);
+           XZOutputStream xzOut =
+               new XZOutputStream(stream, new LZMA2Options(compressionLevel), check)) {
+        ByteStreams.copy(in, xzOut);
+      }
+      return stream.toByteArray();
+    } finally {
+      XzMemorySemaphore.releaseMemory(compressionLevel);
+    }
+  }
+
+  /**
+   * Writes the blocks of the given single-block streams out as one stream, with an index listing
+   * all of them.
+   */
+  private void writeStream(List<byte[]> streams) throws IOException {
+    if (streams.size() == 1) {
+      try (OutputStream out = filesystem.newFileOutputStream(destinationFile)) {
+        out.write(streams.get(0));
+      }
+      return;
+    }
+
+    ByteArrayOutputStream index = new ByteArrayOutputStream();
+    index.write(0);
+    writeMultibyteInteger(index, streams.size());
+    try (OutputStream out = filesystem.newFileOutputStream(destinationFile)) {
+      // Every stream was written with the same flags, so has the same header.
+      byte[] header = Arrays.copyOf(streams.get(0), STREAM_HEADER_SIZE);
+      out.write(header);
+      for (byte[] stream : streams) {
+        // A single-block stream's index is its indicator, a record count of 1, and the one
+        // record of the block's unpadded and uncompressed sizes, which goes into our index.
+        int indexSize = (readLittleEndianInt(stream, stream.length - 8) + 1) * 4;
+        int indexStart = stream.length - STREAM_FOOTER_SIZE - indexSize;
+        Preconditions.checkState(stream[indexStart] == 0 && stream[indexStart + 1] == 1);
+        int recordEnd = skipMultibyteInteger(stream, skipMultibyteInteger(stream, indexStart + 2));
+        index.write(stream, indexStart + 2, recordEnd - indexStart - 2);
+        out.write(stream, STREAM_HEADER_SIZE, indexStart - STREAM_HEADER_SIZE);
+      }
+      while (index.size() % 4 != 0) {
+        index.write(0);
+      }
+      writeLittleEndianInt(index, crc32(index.toByteArray(), 0, index.size()));
+      index.writeTo(out);
+
+      ByteArrayOutputStream footer = new ByteArrayOutputStream();
+      writeLittleEndianInt(footer, index.size() / 4 - 1);
+      footer.write(header, 6, 2);
+      byte[] backwardSizeAndFlags = footer.toByteArray();
+      writeLittleEndianInt(out, crc32(backwardSizeAndFlags, 0, backwardSizeAndFlags.length));
+      out.write(backwardSizeAndFlags);
+      out.write(FOOTER_MAGIC);
+    }
+  }
+
+  @VisibleForTesting
+  static long getBlockSize(int compressionLevel) {
+    try {
+      return Math.max(MIN_BLOCK_SIZE, 3L * new LZMA2Options(compressionLevel).getDictSize());
+    } catch (UnsupportedOptionsException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  private static void writeMultibyteInteger(ByteArrayOutputStream out, long value) {
+    while (value >= 0x80) {
+      out.write((int) (value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  /**
+   * @return the offset just past the multibyte integer at {@code offset}
+   */
+  private static int skipMultibyteInteger(byte[] bytes, int offset) {
+    while ((bytes[offset] & 0x80) != 0) {
+      offset++;
+    }
+    return offset + 1;
+  }
+
+  private static int readLittleEndianInt(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xff) |
+        (bytes[offset + 1] & 0xff) << 8 |
+        (bytes[offset + 2] & 0xff) << 16 |
+        (bytes[offset + 3] & 0xff) << 24;
+  }
+
+  private static void writeLittleEndianInt(OutputStream out, long value) throws IOException {
+    for (int i = 0; i < 4; i++) {
+      out.write((int) (value >>> (8 * i)) & 0xff);
+    }
+  }
+
+  private static long crc32(byte[] bytes, int offset, int length) {
+    CRC32 crc32 = new CRC32();
+    crc32.update(bytes, offset, length);
+    return crc32.getValue();
+  }
+}
@@ -232,6 +232,7 @@ class SwiftCompile extends AbstractBuildRule {
     // 2) De-duplicate redundant include paths.
     LinkedHashSet<String> headerMaps = new LinkedHashSet<String>();
     LinkedHashSet<String> roots = new LinkedHashSet<String>();
+    LinkedHashSet<String> vfsOverlays = new LinkedHashSet<String>();
 
     for (CxxPreprocessorInput cxxPreprocessorInput : cxxPreprocessorInputs) {
       Iterable<CxxHeaders> cxxHeaderses = cxxPreprocessorInput.getIncludes();
@@ -240,6 +241,10 @@ class SwiftCompile extends AbstractBuildRule {
         if (cxxHeaders.getIncludeType() == CxxPreprocessables.IncludeType.SYSTEM) {
           continue;
         }
+        Optional<SourcePath> vfsOverlay = cxxHeaders.getVfsOverlay();
+        if (vfsOverlay.isPresent()) {
+          vfsOverlays.add(resolver.getAbsolutePath(vfsOverlay.get()).toString());
+        }
         Optional<SourcePath> headerMap = cxxHeaders.getHeaderMap();
         if (headerMap.isPresent()) {
           headerMaps.add(resolver.getAbsolutePath(headerMap.get()).toString());
@@ -260,6 +265,11 @@ class SwiftCompile extends AbstractBuildRule {
       }
     }
 
+    // The overlays make the include roots of their headers exist, so they go before any of those.
+    for (String vfsOverlay : vfsOverlays) {
+      args.add("-Xcc", "-ivfsoverlay", "-Xcc", vfsOverlay);
+    }
+
     // Apply the header maps first, so that headers that matching there avoid falling back to
     // stat'ing files in the normal include roots.
     args.addAll(Iterables.transform(headerMaps, INCLUDE_FLAG::concat));
@@ -63,6 +63,33 @@ abstract class AbstractTestRunningOptions {
     return false;
   }
 
+  /**
+   * Whether to record test durations and failures, and use previous records to start the slowest
+   * tests first.
+   */
+  @Value.Default
+  public boolean isUsingTestHistory() {
+    return false;
+  }
+
+  /**
+   * Whether tests which failed last time, or which fail often, should be started first.  Only
+   * meaningful when {@link #isUsingTestHistory()}.
+   */
+  @Value.Default
+  public boolean isRunningFailingTestsFirst() {
+    return false;
+  }
+
+  /**
+   * The maximum number of JVMs across which the test classes of a historically slow
+   * {@code java_test} may be split.
+   */
+  @Value.Default
+  public int getMaxJavaTestShards() {
+    return 1;
+  }
+
   public abstract Optional<String> getPathToXmlTestOutput();
 
   public abstract Optional<String> getPathToJavaAgent();
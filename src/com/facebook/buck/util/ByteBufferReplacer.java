@@ -23,10 +23,14 @@ import com.google.common.collect.ImmutableMap;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Performs an in-place find-and-replace on {@link ByteBuffer} objects, where the replacements are
@@ -125,6 +129,85 @@ public class ByteBufferReplacer {
     return replace(buffer, -1);
   }
 
+  /**
+   * Perform the same replacements as {@link #replace(ByteBuffer)}, but search chunks of the buffer
+   * of about {@code chunkSize} bytes in parallel.  Each replacement is searched for separately, and
+   * each byte is only written to if it is part of a match, so when the buffer is memory mapped
+   * only the pages with matches in them are written back.
+   *
+   * @return the number of replacements that happened.
+   */
+  public int replaceInParallel(ByteBuffer buffer, int chunkSize) {
+    Preconditions.checkArgument(chunkSize > 0);
+    int numReplacements = 0;
+    for (Map.Entry<byte[], byte[]> entry : replacements.entrySet()) {
+      Pattern pattern = Pattern.compile(
+          new String(entry.getKey(), Charsets.ISO_8859_1),
+          Pattern.LITERAL);
+      int length = entry.getKey().length;
+      int numChunks = (int) ((buffer.remaining() + (long) chunkSize - 1) / chunkSize);
+
+      // Each chunk finds the matches which start in it, so reads past its end by up to the length
+      // of the match.
+      List<List<Integer>> matchesByChunk =
+          IntStream.range(0, numChunks)
+              .parallel()
+              .mapToObj(
+                  chunk -> find(
+                      pattern,
+                      buffer,
+                      getChunkEnd(buffer, chunk - 1, chunkSize),
+                      getChunkEnd(buffer, chunk, chunkSize),
+                      length))
+              .collect(Collectors.toList());
+
+      // Matches of a pattern can overlap themselves, and the first of those is the one that is
+      // replaced.  So if a chunk's first match overlaps the last match of the chunk before, search
+      // it again from where that match ends.
+      int end = buffer.position();
+      for (int chunk = 0; chunk < numChunks; chunk++) {
+        List<Integer> matches = matchesByChunk.get(chunk);
+        if (!matches.isEmpty() && matches.get(0) < end) {
+          matches =
+              find(
+                  pattern,
+                  buffer,
+                  end,
+                  getChunkEnd(buffer, chunk, chunkSize),
+                  length);
+        }
+        for (int start : matches) {
+          for (int i = 0; i < length; i++) {
+            buffer.put(start + i, entry.getValue()[i]);
+          }
+          end = start + length;
+        }
+        numReplacements += matches.size();
+      }
+    }
+    return numReplacements;
+  }
+
+  private static int getChunkEnd(ByteBuffer buffer, int chunk, int chunkSize) {
+    return buffer.position() + (int) Math.min(buffer.remaining(), (chunk + 1L) * chunkSize);
+  }
+
+  /**
+   * @return the absolute positions of the non-overlapping matches of {@code pattern} that start
+   *     between {@code start} and {@code end} in {@code buffer}.
+   */
+  private List<Integer> find(Pattern pattern, ByteBuffer buffer, int start, int end, int length) {
+    ByteBuffer window = buffer.duplicate();
+    window.limit((int) Math.min(buffer.limit(), (long) end + length - 1));
+    window.position(Math.min(start, window.limit()));
+    Matcher matcher = pattern.matcher(new ByteBufferCharSequence(window));
+    List<Integer> matches = new ArrayList<>();
+    while (matcher.find() && start + matcher.start() < end) {
+      matches.add(start + matcher.start());
+    }
+    return matches;
+  }
+
   /**
    * Provides a {@link CharSequence} view of an underlying {@link ByteBuffer} using the ISO-8859-1
    * character encoding.
@@ -31,8 +31,19 @@ abstract class AbstractResourceAmounts {
   @Value.Parameter
   public abstract int getNetworkIO();
 
+  /**
+   * Slots of the workers that run jobs, such as C/C++ compilation, on other machines. These are
+   * accounted apart from {@link #getCpu()}, so that jobs waiting on other machines do not hold the
+   * cores of this one.
+   */
+  @Value.Default
+  public int getRemoteCpu() {
+    return 0;
+  }
+
   /**
    * If you add or remove resource types above please make sure you update the number below.
+   * It does not count {@link #getRemoteCpu()}, which may be left out where amounts are configured.
    */
   public static final int RESOURCE_TYPE_COUNT = 4;
 
@@ -43,7 +54,8 @@ abstract class AbstractResourceAmounts {
         getCpu() + amounts.getCpu(),
         getMemory() + amounts.getMemory(),
         getDiskIO() + amounts.getDiskIO(),
-        getNetworkIO() + amounts.getNetworkIO());
+        getNetworkIO() + amounts.getNetworkIO())
+        .withRemoteCpu(getRemoteCpu() + amounts.getRemoteCpu());
   }
 
   public ResourceAmounts subtract(ResourceAmounts amounts) {
@@ -51,20 +63,23 @@ abstract class AbstractResourceAmounts {
         getCpu() - amounts.getCpu(),
         getMemory() - amounts.getMemory(),
         getDiskIO() - amounts.getDiskIO(),
-        getNetworkIO() - amounts.getNetworkIO());
+        getNetworkIO() - amounts.getNetworkIO())
+        .withRemoteCpu(getRemoteCpu() - amounts.getRemoteCpu());
   }
 
   public boolean containsValuesLessThan(ResourceAmounts amounts) {
     return getCpu() < amounts.getCpu() ||
         getMemory() < amounts.getMemory() ||
         getDiskIO() < amounts.getDiskIO() ||
-        getNetworkIO() < amounts.getNetworkIO();
+        getNetworkIO() < amounts.getNetworkIO() ||
+        getRemoteCpu() < amounts.getRemoteCpu();
   }
 
   public boolean allValuesLessThanOrEqual(ResourceAmounts amounts) {
     return getCpu() <= amounts.getCpu() &&
         getMemory() <= amounts.getMemory() &&
         getDiskIO() <= amounts.getDiskIO() &&
-        getNetworkIO() <= amounts.getNetworkIO();
+        getNetworkIO() <= amounts.getNetworkIO() &&
+        getRemoteCpu() <= amounts.getRemoteCpu();
   }
 }
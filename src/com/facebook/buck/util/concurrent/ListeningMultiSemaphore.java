@@ -127,7 +127,8 @@ public class ListeningMultiSemaphore {
         Math.min(amounts.getCpu(), maximumValues.getCpu()),
         Math.min(amounts.getMemory(), maximumValues.getMemory()),
         Math.min(amounts.getDiskIO(), maximumValues.getDiskIO()),
-        Math.min(amounts.getNetworkIO(), maximumValues.getNetworkIO()));
+        Math.min(amounts.getNetworkIO(), maximumValues.getNetworkIO()))
+        .withRemoteCpu(Math.min(amounts.getRemoteCpu(), maximumValues.getRemoteCpu()));
   }
 
   private synchronized boolean checkIfResourcesAvailable(ResourceAmounts resources) {
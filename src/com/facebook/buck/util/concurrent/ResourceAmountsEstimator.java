@@ -25,8 +25,10 @@ public class ResourceAmountsEstimator {
   /**
    * Memory resource unit size has been chosen arbitrarily. We can tune the value if we need.
    */
+  public static final long MEMORY_UNIT_SIZE_BYTES = 100 * 1024 * 1024;
+
   public static final int DEFAULT_MEMORY_CAP =
-      (int) (Runtime.getRuntime().maxMemory() / (100 * 1024 * 1024));
+      (int) (Runtime.getRuntime().maxMemory() / MEMORY_UNIT_SIZE_BYTES);
 
   /**
    * Disk IO resource unit size has been chosen arbitrarily. Since most of the jobs are light,
@@ -40,11 +42,18 @@ public class ResourceAmountsEstimator {
    */
   public static final int DEFAULT_NETWORK_IO_CAP = 30;
 
+  /**
+   * Remote CPU resource amount is the number of jobs run on other machines at once. Without
+   * knowing how many machines there are, we allow as many as there are local cores.
+   */
+  public static final int DEFAULT_REMOTE_CPU_CAP = DEFAULT_CPU_CAP;
+
   public static final ResourceAmounts DEFAULT_MAXIMUM_AMOUNTS = ResourceAmounts.of(
       DEFAULT_CPU_CAP,
       DEFAULT_MEMORY_CAP,
       DEFAULT_DISK_IO_CAP,
-      DEFAULT_NETWORK_IO_CAP);
+      DEFAULT_NETWORK_IO_CAP)
+      .withRemoteCpu(DEFAULT_REMOTE_CPU_CAP);
 
   /**
    * Total number of threads Buck can use to schedule various work.
@@ -58,7 +67,8 @@ public class ResourceAmountsEstimator {
         DEFAULT_CPU_CAP,
         DEFAULT_MEMORY_CAP,
         DEFAULT_DISK_IO_CAP,
-        DEFAULT_NETWORK_IO_CAP);
+        DEFAULT_NETWORK_IO_CAP)
+        .withRemoteCpu(DEFAULT_REMOTE_CPU_CAP);
   }
 
   public static final int DEFAULT_CPU_AMOUNT = 1;
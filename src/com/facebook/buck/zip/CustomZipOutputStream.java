@@ -48,6 +48,23 @@ public abstract class CustomZipOutputStream extends OutputStream {
     entryOpen = true;
   }
 
+  /**
+   * Puts an entry whose data, written next, is already compressed with the entry's method, such as
+   * the data of an entry copied from another zip file as it is stored there. Nothing is compressed
+   * again. The entry's CRC, size and compressed size must be set: they go in the local file header,
+   * so the entry has no data descriptor.
+   */
+  public final void putNextRawEntry(ZipEntry entry) throws IOException {
+    Preconditions.checkArgument(
+        entry.getMethod() != -1 &&
+            entry.getCrc() != -1 &&
+            entry.getSize() != -1 &&
+            entry.getCompressedSize() != -1,
+        "Raw entry %s needs its method, CRC and sizes.",
+        entry.getName());
+    putNextEntry(new RawZipEntry(entry));
+  }
+
   private void validateEntry(ZipEntry entry) {
     if (entry.getMethod() == ZipEntry.STORED) {
       Preconditions.checkState(
@@ -53,6 +53,8 @@ class EntryAccounting {
 
   private final ZipEntry entry;
   private final Method method;
+  /** Whether the data written is already compressed, and is copied as it is. */
+  private final boolean raw;
   private Hasher crc = Hashing.crc32().newHasher();
   private long offset;
   private long length = 0;
@@ -84,6 +86,7 @@ class EntryAccounting {
   public EntryAccounting(Clock clock, ZipEntry entry, long currentOffset) {
     this.entry = entry;
     this.method = Method.detect(entry.getMethod());
+    this.raw = entry instanceof RawZipEntry;
     this.offset = currentOffset;
 
     if (entry.getTime() == -1) {
@@ -167,7 +170,7 @@ class EntryAccounting {
   }
 
   public long writeLocalFileHeader(OutputStream out) throws IOException {
-    if (method == Method.DEFLATE && entry instanceof CustomZipEntry) {
+    if (method == Method.DEFLATE && entry instanceof CustomZipEntry && !raw) {
       // See http://www.pkware.com/documents/casestudies/APPNOTE.TXT (section 4.4.4)
       // Essentially, we're about to set bits 1 and 2 to indicate to tools such as zipinfo which
       // level of compression we're using. If we've not set a compression level, then we're using
@@ -213,7 +216,7 @@ class EntryAccounting {
         ByteIo.writeInt(stream, 0);
       } else {
         ByteIo.writeInt(stream, entry.getCrc());
-        ByteIo.writeInt(stream, entry.getSize());
+        ByteIo.writeInt(stream, entry.getCompressedSize());
         ByteIo.writeInt(stream, entry.getSize());
       }
 
@@ -254,6 +257,12 @@ class EntryAccounting {
     if (len == 0) {
       return;
     }
+    if (raw) {
+      // Compressed data, which we can neither check against the CRC nor compress.
+      out.write(b, off, len);
+      length += len;
+      return;
+    }
     updateCrc(b, off, len);
 
     if (method == Method.STORE) {
@@ -274,7 +283,11 @@ class EntryAccounting {
    * Must be called exactly once.
    */
   public long finish(OutputStream out) throws IOException {
-    if (method == Method.STORE) {
+    if (raw) {
+      Preconditions.checkState(
+          entry.getCompressedSize() == length,
+          "Number of bytes written differs from what is specified in the entry.");
+    } else if (method == Method.STORE) {
       Preconditions.checkState(
           entry.getSize() == length && entry.getCompressedSize() == length,
           "Number of bytes written differs from what is specified in the entry.");
@@ -302,7 +315,7 @@ class EntryAccounting {
   }
 
   private boolean requiresDataDescriptor() {
-    return method == Method.DEFLATE;
+    return method == Method.DEFLATE && !raw;
   }
 
   private void updateCrc(byte[] b, int off, int len) {
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * A zip file whose entries' data can be read as it is stored, still compressed, to be copied into
+ * another zip with {@link CustomZipOutputStream#putNextRawEntry(ZipEntry)} without inflating and
+ * deflating it again.
+ * <p>
+ * The file is mapped into memory, and {@link #getRawData(Entry)} may be called from several
+ * threads at once. Zip64 and encrypted entries are not supported.
+ */
+public class RawZipFile implements Closeable {
+
+  private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+  private static final int ENCRYPTED_FLAG = 1;
+
+  private final Path path;
+  private final FileChannel channel;
+  private final MappedByteBuffer map;
+  private final ImmutableList<Entry> entries;
+
+  public RawZipFile(Path path) throws IOException {
+    this.path = path;
+    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new ZipException(path + " is too large.");
+      }
+      this.map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      map.order(ByteOrder.LITTLE_ENDIAN);
+      this.entries = readCentralDirectory();
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return the entries, in the order of the central directory
+   */
+  public ImmutableList<Entry> getEntries() {
+    return entries;
+  }
+
+  /**
+   * @return the data of the entry as it is stored: compressed, if its method is
+   *     {@link ZipEntry#DEFLATED}
+   */
+  public byte[] getRawData(Entry entry) throws IOException {
+    ByteBuffer local = slice(entry.localHeaderOffset);
+    check(local.getInt(0) == ZipEntry.LOCSIG, "expected local header signature");
+    int dataOffset = entry.localHeaderOffset +
+        ZipEntry.LOCHDR +
+        unsignedShort(local, ZipEntry.LOCNAM) +
+        unsignedShort(local, ZipEntry.LOCEXT);
+    check(
+        dataOffset + entry.getCompressedSize() <= map.limit(),
+        "entry data past the end of the file");
+
+    byte[] data = new byte[(int) entry.getCompressedSize()];
+    ByteBuffer source = map.duplicate();
+    source.position(dataOffset);
+    source.get(data);
+    return data;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private ImmutableList<Entry> readCentralDirectory() throws IOException {
+    // Search backwards from the end of the file for the end of central directory signature, as
+    // ZipScrubberStep does.
+    int eocdOffset = map.limit() - ZipEntry.ENDHDR;
+    while (eocdOffset >= 0 && map.getInt(eocdOffset) != ZipEntry.ENDSIG) {
+      eocdOffset--;
+    }
+    check(eocdOffset >= 0, "no end of central directory");
+    if (eocdOffset >= 20 && map.getInt(eocdOffset - 20) == ZIP64_LOCATOR_SIGNATURE) {
+      throw new ZipException(path + ": zip64 is not supported.");
+    }
+
+    int entryCount = unsignedShort(map, eocdOffset + ZipEntry.ENDTOT);
+    int offset = map.getInt(eocdOffset + ZipEntry.ENDOFF);
+    ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+    for (int i = 0; i < entryCount; i++) {
+      ByteBuffer header = slice(offset);
+      check(header.getInt(0) == ZipEntry.CENSIG, "expected central directory header signature");
+      if ((header.getShort(ZipEntry.CENFLG) & ENCRYPTED_FLAG) != 0) {
+        throw new ZipException(path + ": encrypted entries are not supported.");
+      }
+
+      int nameLength = unsignedShort(header, ZipEntry.CENNAM);
+      byte[] name = new byte[nameLength];
+      header.position(ZipEntry.CENHDR);
+      header.get(name);
+
+      Entry entry = new Entry(
+          new String(name, Charsets.UTF_8),
+          header.getInt(ZipEntry.CENOFF));
+      entry.setMethod(unsignedShort(header, ZipEntry.CENHOW));
+      entry.setTime(dosToJavaTime(header.getInt(ZipEntry.CENTIM)));
+      entry.setCrc(unsignedInt(header, ZipEntry.CENCRC));
+      entry.setCompressedSize(unsignedInt(header, ZipEntry.CENSIZ));
+      entry.setSize(unsignedInt(header, ZipEntry.CENLEN));
+      entries.add(entry);
+
+      offset += ZipEntry.CENHDR +
+          nameLength +
+          unsignedShort(header, ZipEntry.CENEXT) +
+          unsignedShort(header, ZipEntry.CENCOM);
+    }
+    return entries.build();
+  }
+
+  private ByteBuffer slice(int offset) {
+    ByteBuffer result = map.duplicate();
+    result.position(offset);
+    result = result.slice();
+    result.order(ByteOrder.LITTLE_ENDIAN);
+    return result;
+  }
+
+  private void check(boolean expression, String message) throws ZipException {
+    if (!expression) {
+      throw new ZipException(path + ": " + message);
+    }
+  }
+
+  private static int unsignedShort(ByteBuffer buffer, int offset) {
+    return buffer.getShort(offset) & 0xffff;
+  }
+
+  private static long unsignedInt(ByteBuffer buffer, int offset) {
+    return buffer.getInt(offset) & 0xffffffffL;
+  }
+
+  private static long dosToJavaTime(int dosTime) {
+    // The inverse of EntryAccounting#getTime().
+    Calendar calendar = Calendar.getInstance(Locale.US);
+    calendar.clear();
+    calendar.set(
+        ((dosTime >> 25) & 0x7f) + 1980,
+        ((dosTime >> 21) & 0x0f) - 1,
+        (dosTime >> 16) & 0x1f,
+        (dosTime >> 11) & 0x1f,
+        (dosTime >> 5) & 0x3f,
+        (dosTime << 1) & 0x3e);
+    return calendar.getTimeInMillis();
+  }
+
+  /**
+   * An entry of a {@link RawZipFile}, with its method, CRC and sizes set, ready to be put with
+   * {@link CustomZipOutputStream#putNextRawEntry(ZipEntry)}.
+   */
+  public static class Entry extends ZipEntry {
+
+    private final int localHeaderOffset;
+
+    private Entry(String name, int localHeaderOffset) {
+      super(name);
+      this.localHeaderOffset = localHeaderOffset;
+    }
+  }
+}
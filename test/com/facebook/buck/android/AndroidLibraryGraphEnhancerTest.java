@@ -61,7 +61,8 @@ public class AndroidLibraryGraphEnhancerTest {
         /* forceFinalResourceIds */ false,
         /* unionPackage */ Optional.empty(),
         /* rName */ Optional.empty(),
-        false);
+        false,
+        /* generateRDotClassesDirectly */ false);
     Optional<DummyRDotJava> result = graphEnhancer.getBuildableForAndroidResources(
         new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer()),
         /* createdBuildableIfEmptyDeps */ false);
@@ -79,7 +80,8 @@ public class AndroidLibraryGraphEnhancerTest {
         /* forceFinalResourceIds */ false,
         /* unionPackage */ Optional.empty(),
         /* rName */ Optional.empty(),
-        false);
+        false,
+        /* generateRDotClassesDirectly */ false);
     BuildRuleResolver buildRuleResolver =
         new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
     Optional<DummyRDotJava> result = graphEnhancer.getBuildableForAndroidResources(
@@ -124,7 +126,8 @@ public class AndroidLibraryGraphEnhancerTest {
         /* forceFinalResourceIds */ false,
         /* unionPackage */ Optional.empty(),
         /* rName */ Optional.empty(),
-        false);
+        false,
+        /* generateRDotClassesDirectly */ false);
     Optional<DummyRDotJava> dummyRDotJava = graphEnhancer.getBuildableForAndroidResources(
         ruleResolver,
         /* createBuildableIfEmptyDeps */ false);
@@ -186,7 +189,8 @@ public class AndroidLibraryGraphEnhancerTest {
         /* forceFinalResourceIds */ false,
         /* unionPackage */ Optional.empty(),
         /* rName */ Optional.empty(),
-        false);
+        false,
+        /* generateRDotClassesDirectly */ false);
     Optional<DummyRDotJava> dummyRDotJava = graphEnhancer.getBuildableForAndroidResources(
         ruleResolver,
         /* createBuildableIfEmptyDeps */ false);
@@ -222,7 +226,8 @@ public class AndroidLibraryGraphEnhancerTest {
             /* forceFinalResourceIds */ false,
             /* unionPackage */ Optional.empty(),
             /* rName */ Optional.empty(),
-            false);
+            false,
+            /* generateRDotClassesDirectly */ false);
     Optional<DummyRDotJava> result =
         graphEnhancer.getBuildableForAndroidResources(
             resolver,
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.testutil.integration.TestDataHelper;
+import com.facebook.buck.util.HumanReadableException;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import javax.annotation.Nullable;
+
+public class ApkWriterTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ListeningExecutorService executor;
+  private PrivateKey privateKey;
+  private X509Certificate certificate;
+
+  @Before
+  public void setUp() throws Exception {
+    executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+
+    KeyStore keyStore = KeyStore.getInstance("jks");
+    Path keyStorePath = TestDataHelper.getTestDataDirectory(this)
+        .resolve("android_project/keystores/debug.keystore");
+    try (InputStream in = Files.newInputStream(keyStorePath)) {
+      keyStore.load(in, "android".toCharArray());
+    }
+    privateKey = (PrivateKey) keyStore.getKey("my_alias", "android".toCharArray());
+    certificate = (X509Certificate) keyStore.getCertificate("my_alias");
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void entriesAreWrittenInOrderAndDigested() throws Exception {
+    Path resourceApk = writeZip(
+        "resources.ap_",
+        Deflater.BEST_SPEED,
+        ImmutableMap.of(
+            "AndroidManifest.xml", "<manifest/>",
+            "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n",
+            "res/layout/main.xml", "<LinearLayout/>"),
+        "resources.arsc");
+    Path dex = writeFile("classes.dex", "dex\n035");
+    Path nativeLibraries = tmp.newFolder("libs");
+    writeFile("libs/armeabi/libfoo.so", "ELF");
+    writeFile("libs/armeabi/gdbserver", "debugger");
+    writeFile("libs/README", "not a library");
+    Path assets = tmp.newFolder("assets");
+    writeFile("assets/assets/fonts/font.ttf", "font");
+    writeFile("assets/assets/.hidden", "hidden");
+    writeFile("assets/assets/CVS/Entries", "cvs");
+    Path jar = writeZip(
+        "library.jar",
+        Deflater.DEFAULT_COMPRESSION,
+        ImmutableMap.of(
+            "com/example/Foo.class", "class",
+            "com/example/foo.properties", "key=value"),
+        null);
+
+    Path apk = tmp.getRoot().resolve("app.apk");
+    try (ApkWriter writer =
+             new ApkWriter(executor, privateKey, certificate, /* debugMode */ false)) {
+      writer.addZipFile(resourceApk);
+      writer.addFile(dex, "classes.dex");
+      writer.addNativeLibraries(nativeLibraries);
+      writer.addSourceFolder(assets);
+      writer.addResourcesFromJar(jar);
+      writer.write(apk);
+    }
+
+    ImmutableList.Builder<String> names = ImmutableList.builder();
+    try (JarFile apkFile = new JarFile(apk.toFile())) {
+      Manifest manifest = apkFile.getManifest();
+      for (JarEntry entry : Collections.list(apkFile.entries())) {
+        names.add(entry.getName());
+        if (!entry.getName().startsWith("META-INF/")) {
+          byte[] digest = Hashing.sha1().hashBytes(read(apkFile, entry)).asBytes();
+          assertEquals(
+              BaseEncoding.base64().encode(digest),
+              manifest.getAttributes(entry.getName()).getValue("SHA1-Digest"));
+        }
+      }
+    }
+    assertEquals(
+        ImmutableList.of(
+            "AndroidManifest.xml",
+            "res/layout/main.xml",
+            "resources.arsc",
+            "classes.dex",
+            "lib/armeabi/libfoo.so",
+            "assets/fonts/font.ttf",
+            "com/example/foo.properties",
+            "META-INF/MANIFEST.MF",
+            "META-INF/CERT.SF",
+            "META-INF/CERT.RSA"),
+        names.build());
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void signatureIsTheSameAsSignedJarBuilders() throws Exception {
+    Path dex = writeFile("classes.dex", "dex\n035");
+
+    Path apk = tmp.getRoot().resolve("app.apk");
+    try (ApkWriter writer =
+             new ApkWriter(executor, privateKey, certificate, /* debugMode */ false)) {
+      writer.addFile(dex, "classes.dex");
+      writer.write(apk);
+    }
+    // JarFile no longer accepts SHA1 signatures, so compare with those the SDK writes.
+    Path expectedApk = tmp.getRoot().resolve("expected.apk");
+    try (OutputStream out = Files.newOutputStream(expectedApk)) {
+      com.android.sdklib.internal.build.SignedJarBuilder builder =
+          new com.android.sdklib.internal.build.SignedJarBuilder(out, privateKey, certificate);
+      builder.writeFile(dex.toFile(), "classes.dex");
+      builder.close();
+    }
+
+    try (ZipFile expected = new ZipFile(expectedApk.toFile());
+         ZipFile seen = new ZipFile(apk.toFile())) {
+      for (String name :
+           ImmutableList.of("META-INF/MANIFEST.MF", "META-INF/CERT.SF", "META-INF/CERT.RSA")) {
+        assertArrayEquals(
+            name,
+            read(expected, expected.getEntry(name)),
+            read(seen, seen.getEntry(name)));
+      }
+    }
+  }
+
+  @Test
+  public void zipEntriesAreCopiedAsTheyAreStored() throws Exception {
+    Path resourceApk = writeZip(
+        "resources.ap_",
+        Deflater.BEST_SPEED,
+        ImmutableMap.of("res/values/strings.xml", repeat("<string>hello</string>", 100)),
+        "resources.arsc");
+
+    Path apk = tmp.getRoot().resolve("app.apk");
+    try (ApkWriter writer =
+             new ApkWriter(executor, privateKey, certificate, /* debugMode */ false)) {
+      writer.addZipFile(resourceApk);
+      writer.write(apk);
+    }
+
+    try (ZipFile expected = new ZipFile(resourceApk.toFile());
+         ZipFile seen = new ZipFile(apk.toFile())) {
+      for (String name : ImmutableList.of("res/values/strings.xml", "resources.arsc")) {
+        ZipEntry expectedEntry = expected.getEntry(name);
+        ZipEntry seenEntry = seen.getEntry(name);
+        assertEquals(expectedEntry.getMethod(), seenEntry.getMethod());
+        // Deflating again at the best compression would have changed the size.
+        assertEquals(expectedEntry.getCompressedSize(), seenEntry.getCompressedSize());
+        assertArrayEquals(read(expected, expectedEntry), read(seen, seenEntry));
+      }
+    }
+  }
+
+  @Test
+  public void outputDoesNotDependOnTheNumberOfThreads() throws Exception {
+    Path assets = tmp.newFolder("assets");
+    for (int i = 0; i < 50; i++) {
+      writeFile("assets/file" + i + ".txt", repeat("asset " + i, i * 100));
+    }
+
+    byte[] parallel = writeApk(assets, executor);
+    byte[] serial = writeApk(assets, MoreExecutors.newDirectExecutorService());
+    assertArrayEquals(parallel, serial);
+  }
+
+  @Test(expected = HumanReadableException.class)
+  public void duplicateEntriesAreReported() throws Exception {
+    Path dex = writeFile("classes.dex", "dex");
+    try (ApkWriter writer =
+             new ApkWriter(executor, privateKey, certificate, /* debugMode */ false)) {
+      writer.addFile(dex, "classes.dex");
+      writer.addFile(dex, "classes.dex");
+    }
+  }
+
+  private byte[] writeApk(Path assets, ListeningExecutorService executor) throws Exception {
+    Path apk = Files.createTempFile(tmp.getRoot(), "app", ".apk");
+    try (ApkWriter writer =
+             new ApkWriter(executor, privateKey, certificate, /* debugMode */ false)) {
+      writer.addSourceFolder(assets);
+      writer.write(apk);
+    }
+    return Files.readAllBytes(apk);
+  }
+
+  private Path writeFile(String name, String contents) throws IOException {
+    Path file = tmp.getRoot().resolve(name);
+    Files.createDirectories(file.getParent());
+    Files.write(file, contents.getBytes(Charsets.UTF_8));
+    return file;
+  }
+
+  /**
+   * Writes a zip with the given entries, deflated at {@code level}, and the entry
+   * {@code storedName}, if given, stored.
+   */
+  private Path writeZip(
+      String name,
+      int level,
+      Map<String, String> entries,
+      @Nullable String storedName) throws IOException {
+    Path zip = tmp.getRoot().resolve(name);
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+      out.setLevel(level);
+      for (Map.Entry<String, String> entry : entries.entrySet()) {
+        out.putNextEntry(new ZipEntry(entry.getKey()));
+        out.write(entry.getValue().getBytes(Charsets.UTF_8));
+      }
+      if (storedName != null) {
+        byte[] bytes = repeat("stored", 10).getBytes(Charsets.UTF_8);
+        ZipEntry stored = new ZipEntry(storedName);
+        stored.setMethod(ZipEntry.STORED);
+        stored.setSize(bytes.length);
+        stored.setCrc(Hashing.crc32().hashBytes(bytes).padToLong());
+        out.putNextEntry(stored);
+        out.write(bytes);
+      }
+    }
+    return zip;
+  }
+
+  private static String repeat(String line, int count) {
+    return Strings.repeat(line + "\n", count);
+  }
+
+  private static byte[] read(ZipFile zip, ZipEntry entry) throws IOException {
+    try (InputStream in = zip.getInputStream(entry)) {
+      return ByteStreams.toByteArray(in);
+    }
+  }
+}
@@ -89,7 +89,8 @@ public class DummyRDotJavaTest {
         /* forceFinalResourceIds */ false,
         Optional.empty(),
         Optional.of("R2"),
-        false);
+        false,
+        /* generateRDotClassesDirectly */ false);
 
     FakeBuildableContext buildableContext = new FakeBuildableContext();
     List<Step> steps = dummyRDotJava.getBuildSteps(
@@ -157,6 +158,74 @@ public class DummyRDotJavaTest {
         buildableContext.getRecordedArtifacts());
   }
 
+  @Test
+  public void testBuildStepsWhenGeneratingRDotClassesDirectly() throws IOException {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    BuildRuleResolver ruleResolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(ruleResolver);
+    BuildRule resourceRule = ruleResolver.addToIndex(
+        AndroidResourceRuleBuilder.newBuilder()
+            .setRuleFinder(ruleFinder)
+            .setBuildTarget(BuildTargetFactory.newInstance("//android_res/com/example:res1"))
+            .setRDotJavaPackage("com.facebook")
+            .setRes(new FakeSourcePath("android_res/com/example/res1"))
+            .build());
+    setAndroidResourceBuildOutput(resourceRule);
+
+    DummyRDotJava dummyRDotJava = new DummyRDotJava(
+        new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance("//java/base:rule"))
+            .setProjectFilesystem(filesystem)
+            .build(),
+        ruleFinder,
+        ImmutableSet.of((HasAndroidResourceDeps) resourceRule),
+        ANDROID_JAVAC_OPTIONS,
+        /* forceFinalResourceIds */ false,
+        Optional.empty(),
+        Optional.empty(),
+        false,
+        /* generateRDotClassesDirectly */ true);
+
+    FakeBuildableContext buildableContext = new FakeBuildableContext();
+    List<Step> steps = dummyRDotJava.getBuildSteps(
+        FakeBuildContext.NOOP_CONTEXT,
+        buildableContext);
+
+    String rDotJavaBinFolder =
+        BuildTargets
+            .getScratchPath(filesystem, dummyRDotJava.getBuildTarget(), "__%s_rdotjava_bin__")
+            .toString();
+    String rDotJavaAbiFolder =
+        BuildTargets
+            .getGenPath(filesystem, dummyRDotJava.getBuildTarget(), "__%s_dummyrdotjava_abi__")
+            .toString();
+    String rDotJavaOutputFolder =
+        BuildTargets
+            .getGenPath(filesystem, dummyRDotJava.getBuildTarget(), "__%s_dummyrdotjava_output__")
+            .toString();
+    String rDotJavaOutputJar =
+        MorePaths.pathWithPlatformSeparators(String.format(
+            "%s/%s.jar",
+            rDotJavaOutputFolder,
+            dummyRDotJava.getBuildTarget().getShortNameAndFlavorPostfix()));
+
+    // The merge step writes the classes into the folder that is jarred, and javac is not run.
+    MoreAsserts.assertSteps(
+        "DummyRDotJava.getBuildSteps() must return these exact steps.",
+        Lists.newArrayList(
+            makeCleanDirDescription(filesystem.resolve(rDotJavaBinFolder)),
+            "android-res-merge " + resourceRule,
+            makeCleanDirDescription(filesystem.resolve(rDotJavaAbiFolder)),
+            makeCleanDirDescription(filesystem.resolve(rDotJavaOutputFolder)),
+            String.format("jar cf %s  %s", rDotJavaOutputJar, rDotJavaBinFolder),
+            String.format("calculate_abi %s", rDotJavaBinFolder)),
+        steps,
+        TestExecutionContext.newInstance());
+
+    assertEquals(ImmutableSet.of(Paths.get(rDotJavaBinFolder), Paths.get(rDotJavaOutputJar)),
+        buildableContext.getRecordedArtifacts());
+  }
+
   @Test
   public void testRDotJavaBinFolder() {
     SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(
@@ -172,7 +241,8 @@ public class DummyRDotJavaTest {
         /* forceFinalResourceIds */ false,
         Optional.empty(),
         Optional.empty(),
-        false);
+        false,
+        /* generateRDotClassesDirectly */ false);
     assertEquals(
         BuildTargets.getScratchPath(
             dummyRDotJava.getProjectFilesystem(),
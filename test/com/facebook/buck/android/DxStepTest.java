@@ -230,6 +230,33 @@ public class DxStepTest extends EasyMockSupport {
     }
   }
 
+  @Test
+  public void testMaxHeapSizeIsNotPassedToWorkers() throws IOException {
+    try (ExecutionContext context = createExecutionContext(2)) {
+      ProjectFilesystem filesystem = FakeProjectFilesystem.createJavaOnlyFilesystem();
+
+      DxStep dx = new DxStep(
+          filesystem,
+          SAMPLE_OUTPUT_PATH,
+          SAMPLE_FILES_TO_DEX,
+          EnumSet.of(DxStep.Option.USE_CUSTOM_DX_IF_AVAILABLE, DxStep.Option.RUN_IN_WORKER),
+          Optional.of("2g"));
+
+      String expected = String.format(
+          "%s --dex --output %s %s",
+          BASE_DX_PREFIX,
+          SAMPLE_OUTPUT_PATH,
+          Joiner.on(' ').join(Iterables.transform(SAMPLE_FILES_TO_DEX, filesystem::resolve)));
+      MoreAsserts.assertShellCommands(
+          "The workers' heap size is set when they are started.",
+          ImmutableList.of(expected),
+          ImmutableList.of(dx),
+          context);
+
+      verifyAll();
+    }
+  }
+
   private ExecutionContext createExecutionContext(int verbosityLevel) throws IOException {
     Verbosity verbosity = VerbosityParser.getVerbosityForLevel(verbosityLevel);
     TestConsole console = new TestConsole(verbosity);
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.shell.WorkerJobResult;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+public class DxWorkerPoolTest {
+
+  private static final long ONE_GB = 1024L * 1024L * 1024L;
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void workersDexClassesAndAreReused() throws Exception {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    Path classes = tmp.newFolder("classes");
+    ClassWriter writer = new ClassWriter(0);
+    writer.visit(
+        Opcodes.V1_7,
+        Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER,
+        "Example",
+        null,
+        "java/lang/Object",
+        null);
+    writer.visitEnd();
+    Files.write(classes.resolve("Example.class"), writer.toByteArray());
+
+    try (ExecutionContext context = TestExecutionContext.newInstance()) {
+      DxWorkerPool pool = DxWorkerPool.get(context, filesystem, Optional.of("256m"));
+      for (int i = 0; i < 2; i++) {
+        Path output = tmp.getRoot().resolve("classes" + i + ".dex");
+        WorkerJobResult result = pool.runDexer(
+            ImmutableList.of("--output", output.toString(), classes.toString()));
+
+        assertEquals(result.getStderr().orElse(""), 0, result.getExitCode());
+        assertTrue(Files.size(output) > 0);
+      }
+      assertEquals(pool, DxWorkerPool.get(context, filesystem, Optional.of("256m")));
+    }
+  }
+
+  @Test
+  public void heapSizeDefaultsToTheOneOfTheDxScript() {
+    assertEquals(ONE_GB, DxWorkerPool.parseHeapSize(DxWorkerPool.DEFAULT_HEAP_SIZE));
+  }
+}
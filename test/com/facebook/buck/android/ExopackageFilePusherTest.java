@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusFactory;
+import com.facebook.buck.event.SimplePerfEvent;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.MoreCollectors;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.Subscribe;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class ExopackageFilePusherTest {
+
+  private static final int STREAMS = 4;
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private BuckEventBus eventBus;
+  private List<SimplePerfEvent> perfEvents;
+  private FakeAgentDevice device;
+
+  @Before
+  public void setUp() {
+    eventBus = BuckEventBusFactory.newInstance();
+    perfEvents = new CopyOnWriteArrayList<>();
+    eventBus.register(new Object() {
+      @Subscribe
+      public void onPerfEvent(SimplePerfEvent event) {
+        perfEvents.add(event);
+      }
+    });
+    device = new FakeAgentDevice("serial");
+  }
+
+  @Test
+  public void filesAreSentOverSeveralStreamsAtOnce() throws Exception {
+    ImmutableMap.Builder<String, Path> files = ImmutableMap.builder();
+    long bytes = 0;
+    for (int i = 0; i < 2 * STREAMS; i++) {
+      // Some of these are larger than the socket buffers.
+      String contents = Strings.repeat("dex " + i + "\n", i * 100000);
+      files.put("/data/local/tmp/exopackage/secondary-" + i + ".dex.jar", writeFile(i, contents));
+      bytes += contents.length();
+    }
+    device.waitForConcurrentTransfers(STREAMS);
+
+    newPusher().pushFiles("secondary_dex", files.build());
+
+    ImmutableMap<String, byte[]> received = device.getReadableFiles();
+    assertEquals(files.build().keySet(), received.keySet());
+    for (Map.Entry<String, Path> entry : files.build().entrySet()) {
+      assertArrayEquals(Files.readAllBytes(entry.getValue()), received.get(entry.getKey()));
+    }
+    assertEquals(STREAMS, device.getMaxActiveTransfers());
+    assertEquals(ImmutableSet.of(), device.getForwardedPorts());
+
+    SimplePerfEvent finished = perfEvents.stream()
+        .filter(event -> event.getEventType() == SimplePerfEvent.Type.FINISHED)
+        .filter(event -> event.getEventId().getValue().equals("multi_install_secondary_dex"))
+        .findFirst()
+        .get();
+    assertEquals(2 * STREAMS, finished.getEventInfo().get("files"));
+    assertEquals(bytes, finished.getEventInfo().get("bytes"));
+  }
+
+  @Test
+  public void onlyAsManyPortsAsFilesAreForwarded() throws Exception {
+    device.waitForConcurrentTransfers(1);
+
+    newPusher().pushFiles(
+        "native_library",
+        ImmutableMap.of("/data/local/tmp/exopackage/native-0.so", writeFile(0, "ELF")));
+
+    assertEquals(1, device.getMaxActiveTransfers());
+    assertEquals(1, device.getReadableFiles().size());
+  }
+
+  @Test
+  public void singleFileIsSentUnderItsOwnEvent() throws Exception {
+    device.waitForConcurrentTransfers(1);
+
+    newPusher().pushSingleFile(
+        "secondary_dex_metadata",
+        "/data/local/tmp/exopackage/secondary-dex/metadata.txt",
+        writeFile(0, "secondary-0.dex.jar 0123\n"));
+
+    assertEquals(1, device.getReadableFiles().size());
+    assertEquals(ImmutableSet.of(), device.getForwardedPorts());
+    assertEquals(
+        ImmutableSet.of("install_secondary_dex_metadata"),
+        perfEvents.stream()
+            .map(event -> event.getEventId().getValue())
+            .collect(MoreCollectors.toImmutableSet()));
+  }
+
+  @Test
+  public void failuresAreReportedAndForwardsRemoved() throws Exception {
+    ImmutableMap.Builder<String, Path> files = ImmutableMap.builder();
+    for (int i = 0; i < STREAMS; i++) {
+      files.put("/data/local/tmp/exopackage/native-" + i + ".so", writeFile(i, "ELF " + i));
+    }
+    device.failToReceive("/data/local/tmp/exopackage/native-2.so");
+
+    try {
+      newPusher().pushFiles("native_library", files.build());
+      fail("The failure to receive a file should be reported.");
+    } catch (AdbHelper.CommandFailedException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("native-2.so"));
+    }
+    assertEquals(ImmutableSet.of(), device.getForwardedPorts());
+  }
+
+  private ExopackageFilePusher newPusher() throws IOException {
+    return new ExopackageFilePusher(
+        device,
+        eventBus,
+        "/data/app-lib/agent/libagent.so ",
+        findFreePorts(STREAMS),
+        STREAMS);
+  }
+
+  private Path writeFile(int index, String contents) throws IOException {
+    Path file = tmp.getRoot().resolve("file" + index);
+    Files.write(file, contents.getBytes(Charsets.UTF_8));
+    return file;
+  }
+
+  /**
+   * @return the first of {@code count} consecutive ports that are free
+   */
+  private static int findFreePorts(int count) throws IOException {
+    for (int attempt = 0; attempt < 10; attempt++) {
+      int firstPort;
+      try (ServerSocket socket = new ServerSocket(0)) {
+        firstPort = socket.getLocalPort();
+      }
+      if (firstPort + count > 65536) {
+        continue;
+      }
+      boolean allFree = true;
+      for (int port = firstPort + 1; port < firstPort + count && allFree; port++) {
+        try (ServerSocket ignored = new ServerSocket(port)) {
+          // Free.
+        } catch (IOException e) {
+          allFree = false;
+        }
+      }
+      if (allFree) {
+        return firstPort;
+      }
+    }
+    throw new IOException("Could not find free ports.");
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.android.ddmlib.IShellOutputReceiver;
+import com.facebook.buck.android.agent.util.AgentUtil;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@link TestDevice} that stands in for adb and the exopackage agent.  Forwarded ports are
+ * served on localhost, and "receive-file" speaks the agent's protocol over them, storing the
+ * files it receives in memory.
+ */
+public class FakeAgentDevice extends TestDevice {
+
+  private static final int TIMEOUT_MILLIS = 10000;
+
+  private static final Pattern RECEIVE_FILE_COMMAND =
+      Pattern.compile("umask 022 && .*receive-file (\\d+) (\\d+) (\\S+) ; echo -n :\\$\\?");
+
+  private static final Pattern CHMOD_COMMAND =
+      Pattern.compile("chmod 644 (\\S+) ; echo -n :\\$\\?");
+
+  private final Map<Integer, ServerSocket> forwards = new ConcurrentHashMap<>();
+  private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+  private final Set<String> readableFiles = ConcurrentHashMap.newKeySet();
+  private final Set<String> failingFiles = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger activeTransfers = new AtomicInteger();
+  private final AtomicInteger maxActiveTransfers = new AtomicInteger();
+  @Nullable
+  private CountDownLatch transfersToWaitFor;
+
+  public FakeAgentDevice(String serial) {
+    setSerialNumber(serial);
+    setName("device-" + serial);
+    setState(DeviceState.ONLINE);
+  }
+
+  /**
+   * Makes each transfer wait, for a while, until {@code count} transfers have started, so that
+   * tests can tell whether they run at the same time.
+   */
+  public void waitForConcurrentTransfers(int count) {
+    transfersToWaitFor = new CountDownLatch(count);
+  }
+
+  /**
+   * Makes the agent fail to receive the file at {@code path}.
+   */
+  public void failToReceive(String path) {
+    failingFiles.add(path);
+  }
+
+  /**
+   * @return the files received and made readable, by their path on the device
+   */
+  public ImmutableMap<String, byte[]> getReadableFiles() {
+    ImmutableMap.Builder<String, byte[]> builder = ImmutableMap.builder();
+    for (Map.Entry<String, byte[]> entry : files.entrySet()) {
+      if (readableFiles.contains(entry.getKey())) {
+        builder.put(entry);
+      }
+    }
+    return builder.build();
+  }
+
+  public ImmutableSet<Integer> getForwardedPorts() {
+    return ImmutableSet.copyOf(forwards.keySet());
+  }
+
+  public int getMaxActiveTransfers() {
+    return maxActiveTransfers.get();
+  }
+
+  @Override
+  public void createForward(int localPort, int remotePort)
+      throws IOException {
+    if (localPort != remotePort || forwards.containsKey(localPort)) {
+      throw new IOException("cannot forward " + localPort);
+    }
+    ServerSocket serverSocket = new ServerSocket(localPort);
+    serverSocket.setSoTimeout(TIMEOUT_MILLIS);
+    forwards.put(localPort, serverSocket);
+  }
+
+  @Override
+  public void removeForward(int localPort, int remotePort)
+      throws IOException {
+    ServerSocket serverSocket = forwards.remove(localPort);
+    if (serverSocket == null) {
+      throw new IOException("no forward on " + localPort);
+    }
+    serverSocket.close();
+  }
+
+  @Override
+  public void executeShellCommand(String command, IShellOutputReceiver receiver)
+      throws IOException {
+    Matcher receiveFile = RECEIVE_FILE_COMMAND.matcher(command);
+    Matcher chmod = CHMOD_COMMAND.matcher(command);
+    if (receiveFile.matches()) {
+      activeTransfers.incrementAndGet();
+      try {
+        receiveFile(
+            Integer.parseInt(receiveFile.group(1)),
+            Integer.parseInt(receiveFile.group(2)),
+            receiveFile.group(3),
+            receiver);
+      } finally {
+        activeTransfers.decrementAndGet();
+      }
+    } else if (chmod.matches() && files.containsKey(chmod.group(1))) {
+      readableFiles.add(chmod.group(1));
+      output(receiver, ":0");
+    } else {
+      output(receiver, "unknown command: " + command + ":1");
+    }
+    receiver.flush();
+  }
+
+  private void receiveFile(int port, int size, String path, IShellOutputReceiver receiver)
+      throws IOException {
+    maxActiveTransfers.accumulateAndGet(activeTransfers.get(), Math::max);
+    CountDownLatch latch = transfersToWaitFor;
+    if (latch != null) {
+      latch.countDown();
+      try {
+        latch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+    }
+
+    ServerSocket serverSocket = forwards.get(port);
+    if (serverSocket == null || failingFiles.contains(path)) {
+      output(receiver, "cannot receive " + path + ":1");
+      return;
+    }
+
+    final String key =
+        Strings.padStart(Integer.toString(port), AgentUtil.TEXT_SECRET_KEY_SIZE, '0');
+    output(receiver, key + "\n");
+    try (Socket socket = serverSocket.accept()) {
+      socket.setSoTimeout(TIMEOUT_MILLIS);
+      final DataInputStream in = new DataInputStream(socket.getInputStream());
+      // The installer writes the payload from the receiver's callback, so read it on another
+      // thread in case it does not fit in the socket's buffers.
+      FutureTask<byte[]> payload = new FutureTask<>(() -> {
+        byte[] receivedKey = new byte[AgentUtil.TEXT_SECRET_KEY_SIZE];
+        in.readFully(receivedKey);
+        if (!Arrays.equals(key.getBytes(Charsets.US_ASCII), receivedKey)) {
+          throw new IOException("wrong key");
+        }
+        byte[] data = new byte[size];
+        in.readFully(data);
+        return data;
+      });
+      new Thread(payload).start();
+      output(receiver, "z1\n");
+      files.put(path, payload.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    } catch (InterruptedException | ExecutionException | TimeoutException e) {
+      output(receiver, e + ":1");
+      return;
+    }
+    output(receiver, ":0");
+  }
+
+  private static void output(IShellOutputReceiver receiver, String output) {
+    byte[] bytes = output.getBytes(Charsets.UTF_8);
+    receiver.addOutput(bytes, 0, bytes.length);
+  }
+}
@@ -40,8 +40,10 @@ import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.google.common.collect.SortedSetMultimap;
+import com.google.common.io.ByteStreams;
 
 import org.hamcrest.CoreMatchers;
 import org.hamcrest.Matchers;
@@ -49,8 +51,11 @@ import org.hamcrest.core.StringContains;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -333,7 +338,8 @@ public class MergeAndroidResourcesStepTest {
         /* forceFinalResourceIds */ false,
         /* unionPackage */ Optional.empty(),
         /* rName */ Optional.empty(),
-        /* useOldStyleableFormat */ false);
+        /* useOldStyleableFormat */ false,
+        /* rDotClassVersion */ Optional.empty());
 
     ExecutionContext executionContext = TestExecutionContext.newInstance();
 
@@ -397,7 +403,8 @@ public class MergeAndroidResourcesStepTest {
         /* bannedDuplicateResourceTypes */ EnumSet.noneOf(RType.class),
         /* unionPackage */ Optional.empty(),
         /* rName */ Optional.empty(),
-        /* useOldStyleableFormat */false);
+        /* useOldStyleableFormat */ false,
+        /* rDotClassVersion */ Optional.empty());
 
     ExecutionContext executionContext = TestExecutionContext.newInstance();
 
@@ -475,7 +482,8 @@ public class MergeAndroidResourcesStepTest {
         /* bannedDuplicateResourceTypes */ EnumSet.noneOf(RType.class),
         /* unionPackage */ Optional.empty(),
         /* rName */ Optional.empty(),
-        /* useOldStyleableFormat */ false);
+        /* useOldStyleableFormat */ false,
+        /* rDotClassVersion */ Optional.empty());
 
     ExecutionContext executionContext = TestExecutionContext.newInstance();
 
@@ -549,7 +557,8 @@ public class MergeAndroidResourcesStepTest {
         /* forceFinalResourceIds */ false,
         Optional.of("res1"),
         /* rName */ Optional.empty(),
-        /* useOldStyleableFormat */ false);
+        /* useOldStyleableFormat */ false,
+        /* rDotClassVersion */ Optional.empty());
 
     ExecutionContext executionContext = TestExecutionContext.newInstance();
 
@@ -563,6 +572,78 @@ public class MergeAndroidResourcesStepTest {
     assertThat(res2java, StringContains.containsString("id2"));
   }
 
+  @Test
+  public void testGenerateRDotClassesDirectly() throws IOException {
+    BuildTarget res1Target = BuildTargetFactory.newInstance("//:res1");
+    BuildTarget res2Target = BuildTargetFactory.newInstance("//:res2");
+    RDotTxtEntryBuilder entriesBuilder = new RDotTxtEntryBuilder();
+    entriesBuilder.add(
+        new RDotTxtFile(
+            "com.res1",
+            BuildTargets.getGenPath(
+                entriesBuilder.getProjectFilesystem(),
+                res1Target,
+                "__%s_text_symbols__/R.txt").toString(),
+            ImmutableList.of("int id id1 0x7f020000", "int string hello 0x7f030000")));
+    entriesBuilder.add(
+        new RDotTxtFile(
+            "com.res2",
+            BuildTargets.getGenPath(
+                entriesBuilder.getProjectFilesystem(),
+                res2Target,
+                "__%s_text_symbols__/R.txt").toString(),
+            ImmutableList.of()));
+
+    FakeProjectFilesystem filesystem = entriesBuilder.getProjectFilesystem();
+
+    SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer())
+    );
+    SourcePathResolver resolver = new SourcePathResolver(ruleFinder);
+
+    HasAndroidResourceDeps res1 = AndroidResourceRuleBuilder.newBuilder()
+        .setRuleFinder(ruleFinder)
+        .setBuildTarget(res1Target)
+        .setRes(new FakeSourcePath("res1"))
+        .setRDotJavaPackage("res1")
+        .build();
+
+    HasAndroidResourceDeps res2 = AndroidResourceRuleBuilder.newBuilder()
+        .setRuleFinder(ruleFinder)
+        .setBuildTarget(res2Target)
+        .setRes(new FakeSourcePath("res2"))
+        .setRDotJavaPackage("res2")
+        .build();
+
+    MergeAndroidResourcesStep mergeStep = MergeAndroidResourcesStep.createStepForDummyRDotJava(
+        filesystem,
+        resolver,
+        ImmutableList.of(res1, res2),
+        Paths.get("output"),
+        /* forceFinalResourceIds */ false,
+        /* unionPackage */ Optional.empty(),
+        /* rName */ Optional.empty(),
+        /* useOldStyleableFormat */ false,
+        /* rDotClassVersion */ Optional.of(Opcodes.V1_8));
+
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+
+    assertEquals(0, mergeStep.execute(executionContext).getExitCode());
+
+    assertEquals(
+        ImmutableSet.of(
+            Paths.get("output/res1/R.class"),
+            Paths.get("output/res1/R$id.class"),
+            Paths.get("output/res1/R$string.class"),
+            Paths.get("output/res2/R.class")),
+        filesystem.getFilesUnderPath(Paths.get("output")));
+    try (InputStream rDotClass = filesystem.newFileInputStream(Paths.get("output/res1/R.class"))) {
+      assertEquals(
+          Opcodes.V1_8,
+          new ClassReader(ByteStreams.toByteArray(rDotClass)).readUnsignedShort(6));
+    }
+  }
+
   @Test
   public void testGenerateRDotJavaWithPreviouslyEmptyResourceUnionPackage() throws IOException {
     BuildTarget res1Target = BuildTargetFactory.newInstance("//:res1");
@@ -596,7 +677,8 @@ public class MergeAndroidResourcesStepTest {
         /* forceFinalResourceIds */ false,
         Optional.of("resM"),
         /* rName */ Optional.empty(),
-        /* useOldStyleableFormat */ false);
+        /* useOldStyleableFormat */ false,
+        /* rDotClassVersion */ Optional.empty());
 
     ExecutionContext executionContext = TestExecutionContext.newInstance();
 
@@ -643,7 +725,8 @@ public class MergeAndroidResourcesStepTest {
         /* forceFinalResourceIds */ true,
         Optional.of("res1"),
         Optional.of("R2"),
-        /* useOldStyleableFormat */ false);
+        /* useOldStyleableFormat */ false,
+        /* rDotClassVersion */ Optional.empty());
 
     ExecutionContext executionContext = TestExecutionContext.newInstance();
 
@@ -747,7 +830,8 @@ public class MergeAndroidResourcesStepTest {
         rtypes,
         Optional.empty(),
         Optional.empty(),
-        /* useOldStyleableFormat */ false);
+        /* useOldStyleableFormat */ false,
+        /* rDotClassVersion */ Optional.empty());
 
     StepExecutionResult result = mergeStep.execute(TestExecutionContext.newInstance());
     String message = result.getStderr().orElse("");
@@ -30,6 +30,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
 
 import org.hamcrest.Matchers;
 import org.junit.Before;
@@ -40,6 +42,9 @@ import org.junit.rules.TemporaryFolder;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
 public class PreDexedFilesSorterTest {
@@ -192,6 +197,134 @@ public class PreDexedFilesSorterTest {
     }
   }
 
+  @Test
+  public void testStableGroupingKeepsOtherDexesWhenALibraryGrows() throws IOException {
+    Map<Integer, Integer> weights = createLibraryWeights();
+    ImmutableMultimap<Path, Path> stableBefore = groupSecondaryDexes(weights, true);
+    ImmutableMultimap<Path, Path> packedBefore = groupSecondaryDexes(weights, false);
+
+    weights.put(1000, weights.get(1000) + (int) DEX_WEIGHT_LIMIT / 50);
+    ImmutableMultimap<Path, Path> stableAfter = groupSecondaryDexes(weights, true);
+    ImmutableMultimap<Path, Path> packedAfter = groupSecondaryDexes(weights, false);
+
+    assertThat(countChangedGroups(stableBefore, stableAfter), is(0));
+    assertThat(countChangedGroups(packedBefore, packedAfter), Matchers.greaterThan(1));
+  }
+
+  @Test
+  public void testStableGroupingKeepsOtherDexesWhenALibraryIsAdded() throws IOException {
+    Map<Integer, Integer> weights = createLibraryWeights();
+    ImmutableMultimap<Path, Path> stableBefore = groupSecondaryDexes(weights, true);
+
+    // Sorts between libraries 1000 and 1001.
+    weights.put(10000, weights.get(1000));
+    ImmutableMultimap<Path, Path> stableAfter = groupSecondaryDexes(weights, true);
+
+    assertThat(countChangedGroups(stableBefore, stableAfter), is(1));
+  }
+
+  @Test
+  public void testStableGroupingKeepsTheNamesOfOtherDexesWhenADexIsRemoved() throws IOException {
+    Map<Integer, Integer> weights = createLibraryWeights();
+    ImmutableMultimap<Path, Path> stableBefore = groupSecondaryDexes(weights, true);
+    ImmutableMultimap<Path, Path> packedBefore = groupSecondaryDexes(weights, false);
+
+    // Remove the libraries of the second dex, so that the ones after it are grouped as before.
+    Path secondDex = Iterables.get(stableBefore.keySet(), 1);
+    for (Path library : stableBefore.get(secondDex)) {
+      if (library.startsWith("secondary")) {
+        weights.remove(Integer.parseInt(library.getFileName().toString()));
+      }
+    }
+    ImmutableMultimap<Path, Path> stableAfter = groupSecondaryDexes(weights, true);
+    ImmutableMultimap<Path, Path> packedAfter = groupSecondaryDexes(weights, false);
+
+    assertThat(stableAfter.keySet().size(), is(stableBefore.keySet().size() - 1));
+    assertThat(countChangedGroups(stableBefore, stableAfter), is(1));
+    assertThat(
+        countChangedGroups(packedBefore, packedAfter),
+        Matchers.greaterThan(packedBefore.keySet().size() / 2));
+  }
+
+  @Test
+  public void testStableGroupingRespectsTheWeightLimit() throws IOException {
+    Map<Integer, Integer> weights = createLibraryWeights();
+    ImmutableMultimap<Path, Path> groups = groupSecondaryDexes(weights, true);
+
+    long totalWeight = weights.values().stream().mapToLong(Integer::longValue).sum();
+    for (Collection<Path> group : groups.asMap().values()) {
+      long groupWeight = group.stream()
+          .filter(path -> path.startsWith("secondary"))
+          .mapToLong(path -> weights.get(Integer.parseInt(path.getFileName().toString())))
+          .sum();
+      assertThat(groupWeight, Matchers.lessThanOrEqualTo(DEX_WEIGHT_LIMIT));
+    }
+    assertThat(
+        (long) groups.keySet().size(),
+        Matchers.lessThanOrEqualTo(
+            (long) Math.ceil(totalWeight / (DEX_WEIGHT_LIMIT * 0.75)) + 1));
+  }
+
+  private Map<Integer, Integer> createLibraryWeights() {
+    Map<Integer, Integer> weights = new HashMap<>();
+    int baseWeight = (int) DEX_WEIGHT_LIMIT / 400;
+    for (int i = 0; i < 3000; i++) {
+      weights.put(i, baseWeight + (i * 7919) % baseWeight);
+    }
+    return weights;
+  }
+
+  /**
+   * @return how many secondary dexes would have to be merged again, or deleted
+   */
+  private int countChangedGroups(
+      ImmutableMultimap<Path, Path> before,
+      ImmutableMultimap<Path, Path> after) {
+    int changedGroups = 0;
+    for (Path output : Sets.union(before.keySet(), after.keySet())) {
+      if (!ImmutableList.copyOf(before.get(output))
+          .equals(ImmutableList.copyOf(after.get(output)))) {
+        changedGroups++;
+      }
+    }
+    return changedGroups;
+  }
+
+  /**
+   * @return the inputs of each of the root module's secondary dexes, by the dex they are merged
+   *     into
+   */
+  private ImmutableMultimap<Path, Path> groupSecondaryDexes(
+      Map<Integer, Integer> weights,
+      boolean isGroupingStable) throws IOException {
+    ImmutableMultimap.Builder<APKModule, DexWithClasses> inputDexes = ImmutableMultimap.builder();
+    for (Map.Entry<Integer, Integer> entry : weights.entrySet()) {
+      inputDexes.put(
+          moduleGraph.getRootAPKModule(),
+          createFakeDexWithClasses(
+              Paths.get("secondary").resolve(String.format("%04d", entry.getKey())),
+              ImmutableSet.of(String.format("secondary.secondary%d.class", entry.getKey())),
+              entry.getValue()));
+    }
+    Path secondaryDir = tempDir.getRoot().toPath().resolve("secondary");
+    PreDexedFilesSorter sorter = new PreDexedFilesSorter(
+        Optional.empty(),
+        inputDexes.build(),
+        ImmutableSet.of(PRIMARY_DEX_PATTERN),
+        moduleGraph,
+        tempDir.getRoot().toPath().resolve("scratch"),
+        DEX_WEIGHT_LIMIT,
+        isGroupingStable,
+        DexStore.JAR,
+        secondaryDir,
+        tempDir.getRoot().toPath().resolve("additional"));
+    PreDexedFilesSorter.Result result = sorter
+        .sortIntoPrimaryAndSecondaryDexes(new FakeProjectFilesystem(), ImmutableList.builder())
+        .get(APKModuleGraph.ROOT_APKMODULE_NAME);
+
+    return ImmutableMultimap.copyOf(result.secondaryOutputToInputs);
+  }
+
   private ImmutableMap<String, PreDexedFilesSorter.Result> generatePreDexSorterResults(
       int numberOfPrimaryDexes,
       int numberOfSecondaryDexes, int numberOfExtraDexes) throws IOException {
@@ -231,6 +364,7 @@ public class PreDexedFilesSorterTest {
         moduleGraph,
         tempDir.newFolder("scratch").toPath(),
         DEX_WEIGHT_LIMIT,
+        /* isGroupingStable */ false,
         DexStore.JAR,
         tempDir.newFolder("secondary").toPath(),
         tempDir.newFolder("additional").toPath());
@@ -18,11 +18,15 @@ package com.facebook.buck.android;
 
 import static org.junit.Assert.assertEquals;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.util.Map;
 
 public class ProguardMappingTest {
@@ -37,6 +41,21 @@ public class ProguardMappingTest {
         "foo.bar.Baz$Qux", "foo.bar.Baz$Qux"));
   }
 
+  @Test
+  public void testParseFromStream() throws IOException {
+    Map<String, String> mapping = ProguardMapping.readClassMapping(
+        new ByteArrayInputStream(
+            Joiner.on('\n').join(
+                "foo.bar.Baz -> foo.bar.a:",
+                "    int member -> a",
+                "    void method() -> b",
+                "foo.bar.Baz$Qux -> foo.bar.Baz$Qux:",
+                "").getBytes(Charsets.UTF_8)));
+    assertEquals(mapping, ImmutableMap.of(
+        "foo.bar.Baz", "foo.bar.a",
+        "foo.bar.Baz$Qux", "foo.bar.Baz$Qux"));
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void testInternalNameError() {
     ProguardMapping.readClassMapping(ImmutableList.of(
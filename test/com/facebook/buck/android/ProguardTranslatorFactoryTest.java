@@ -19,15 +19,17 @@ package com.facebook.buck.android;
 import static org.junit.Assert.assertEquals;
 
 import com.facebook.buck.io.ProjectFilesystem;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 
 import org.easymock.EasyMock;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
 import java.util.Optional;
 
 public class ProguardTranslatorFactoryTest {
@@ -36,7 +38,7 @@ public class ProguardTranslatorFactoryTest {
   public void testEnableObfuscation() throws IOException {
     Path proguardConfigFile = Paths.get("the/configuration.txt");
     Path proguardMappingFile = Paths.get("the/mapping.txt");
-    List<String> linesInMappingFile = ImmutableList.of(
+    String mappingFile = Joiner.on('\n').join(
         "foo.bar.MappedPrimary -> foo.bar.a:",
         "foo.bar.UnmappedPrimary -> foo.bar.UnmappedPrimary:",
         "foo.primary.MappedPackage -> x.a:");
@@ -44,8 +46,8 @@ public class ProguardTranslatorFactoryTest {
     ProjectFilesystem projectFilesystem = EasyMock.createMock(ProjectFilesystem.class);
     EasyMock.expect(projectFilesystem.readLines(proguardConfigFile))
         .andReturn(ImmutableList.of());
-    EasyMock.expect(projectFilesystem.readLines(proguardMappingFile))
-        .andReturn(linesInMappingFile);
+    EasyMock.expect(projectFilesystem.newFileInputStream(proguardMappingFile))
+        .andReturn(new ByteArrayInputStream(mappingFile.getBytes(Charsets.UTF_8)));
     EasyMock.replay(projectFilesystem);
 
     ProguardTranslatorFactory translatorFactory = ProguardTranslatorFactory.create(
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.android.aapt.RDotTxtEntry;
+import com.facebook.buck.util.HumanReadableException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Ordering;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+
+public class RDotClassGeneratorTest {
+
+  private static final ImmutableList<RDotTxtEntry> RESOURCES = parse(
+      "int attr background 0x7f010006",
+      "int attr layout_gravity 0x7f010005",
+      "int drawable icon 0x7f020000 #",
+      "int drawable tinted 0x7f020001 G",
+      "int string hello 0x7f040000",
+      "int string system 0xffffffff",
+      "int[] styleable ActionBar { 0x7f010006,0x010100f2,0x7f010005 }",
+      "int styleable ActionBar_background 0",
+      "int styleable ActionBar_layout_gravity 2",
+      "int[] styleable Empty {  }");
+
+  @Test
+  public void classesHaveTheFieldsOfTheRDotJavaFile() throws Exception {
+    ClassLoader classLoader =
+        load(
+            new RDotClassGenerator("com.example", "R", /* finalIds */ false, Opcodes.V1_7)
+                .generate(RESOURCES));
+
+    Class<?> rClass = classLoader.loadClass("com.example.R");
+    assertEquals(
+        ImmutableSet.of("attr", "drawable", "string", "styleable"),
+        ImmutableSet.copyOf(
+            ImmutableList.copyOf(rClass.getDeclaredClasses()).stream()
+                .map(Class::getSimpleName)
+                .iterator()));
+    assertArrayEquals(new int[] {0x7f020000}, (int[]) getField(rClass, "custom_drawables"));
+    assertArrayEquals(new int[] {0x7f020001}, (int[]) getField(rClass, "grayscale_images"));
+
+    Class<?> attr = classLoader.loadClass("com.example.R$attr");
+    assertEquals(0x7f010006, getField(attr, "background"));
+    assertEquals(0x7f010005, getField(attr, "layout_gravity"));
+    assertFalse(Modifier.isFinal(attr.getField("background").getModifiers()));
+    assertTrue(Modifier.isPublic(attr.getModifiers()));
+    assertTrue(Modifier.isStatic(attr.getModifiers()));
+
+    Class<?> string = classLoader.loadClass("com.example.R$string");
+    assertEquals(0xffffffff, getField(string, "system"));
+
+    Class<?> styleable = classLoader.loadClass("com.example.R$styleable");
+    assertArrayEquals(
+        new int[] {0x7f010006, 0x010100f2, 0x7f010005},
+        (int[]) getField(styleable, "ActionBar"));
+    assertEquals(2, getField(styleable, "ActionBar_layout_gravity"));
+    assertArrayEquals(new int[0], (int[]) getField(styleable, "Empty"));
+  }
+
+  @Test
+  public void finalIdsAreConstants() throws Exception {
+    ClassLoader classLoader =
+        load(
+            new RDotClassGenerator("com.example", "R", /* finalIds */ true, Opcodes.V1_7)
+                .generate(RESOURCES));
+
+    Field background = classLoader.loadClass("com.example.R$attr").getField("background");
+    assertTrue(Modifier.isFinal(background.getModifiers()));
+    assertEquals(0x7f010006, background.get(null));
+  }
+
+  @Test
+  public void outputIsDeterministic() {
+    ImmutableMap<String, byte[]> first =
+        new RDotClassGenerator("com.example", "R2", /* finalIds */ false, Opcodes.V1_7)
+            .generate(RESOURCES);
+    ImmutableMap<String, byte[]> second =
+        new RDotClassGenerator("com.example", "R2", /* finalIds */ false, Opcodes.V1_7)
+            .generate(RESOURCES);
+
+    assertEquals(first.keySet(), second.keySet());
+    for (String className : first.keySet()) {
+      assertArrayEquals(className, first.get(className), second.get(className));
+    }
+  }
+
+  @Test
+  public void emptyPackageHasOnlyTheRClass() throws Exception {
+    ImmutableMap<String, byte[]> classes =
+        new RDotClassGenerator("com.example", "R", /* finalIds */ false, Opcodes.V1_7)
+            .generate(ImmutableList.of());
+
+    assertEquals(ImmutableSet.of("com/example/R"), classes.keySet());
+    assertEquals(0, load(classes).loadClass("com.example.R").getDeclaredFields().length);
+  }
+
+  @Test
+  public void classVersionIsTheOneOfTheTargetLevel() throws Exception {
+    assertEquals(Opcodes.V1_6, RDotClassGenerator.getClassVersion("6"));
+    assertEquals(Opcodes.V1_7, RDotClassGenerator.getClassVersion("1.7"));
+    assertEquals(Opcodes.V1_8, RDotClassGenerator.getClassVersion("8"));
+
+    byte[] rDotClass =
+        new RDotClassGenerator("com.example", "R", /* finalIds */ false, Opcodes.V1_8)
+            .generate(ImmutableList.of())
+            .get("com/example/R");
+    assertEquals(Opcodes.V1_8, new ClassReader(rDotClass).readUnsignedShort(6));
+  }
+
+  @Test(expected = HumanReadableException.class)
+  public void unsupportedTargetLevelsAreReported() {
+    RDotClassGenerator.getClassVersion("1.1");
+  }
+
+  @Test(expected = HumanReadableException.class)
+  public void invalidIdsAreReported() {
+    RDotClassGenerator.parseId("0xnope");
+  }
+
+  private static ImmutableList<RDotTxtEntry> parse(String... lines) {
+    ImmutableList.Builder<RDotTxtEntry> resources = ImmutableList.builder();
+    for (String line : lines) {
+      resources.add(RDotTxtEntry.parse(line).get());
+    }
+    // The order in which MergeAndroidResourcesStep passes them.
+    return Ordering.natural().immutableSortedCopy(resources.build());
+  }
+
+  private static Object getField(Class<?> clazz, String name) throws Exception {
+    return clazz.getField(name).get(null);
+  }
+
+  private static ClassLoader load(final Map<String, byte[]> classes) {
+    return new ClassLoader(RDotClassGeneratorTest.class.getClassLoader()) {
+      @Override
+      protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] bytes = classes.get(name.replace('.', '/'));
+        if (bytes == null) {
+          throw new ClassNotFoundException(name);
+        }
+        return defineClass(name, bytes, 0, bytes.length);
+      }
+    };
+  }
+}
@@ -23,6 +23,8 @@ import static org.junit.Assert.assertTrue;
 import com.facebook.buck.dalvik.ZipSplitter;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.rules.FakeSourcePath;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
 import com.google.common.base.Predicate;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
@@ -38,6 +40,7 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.StringReader;
@@ -181,14 +184,16 @@ public class SplitZipStepTest {
             /* primaryDexScenarioFile */ Optional.empty(),
             /* isPrimaryDexScenarioOverflowAllowed */ false,
             /* secondaryDexHeadClassesFile */ Optional.empty(),
-            /* secondaryDexTailClassesFile */ Optional.empty()),
+            /* secondaryDexTailClassesFile */ Optional.empty(),
+            /* isSecondaryDexGroupingStable */ false),
         Optional.empty(),
         Optional.of(Paths.get("the/manifest.txt")),
         Optional.empty(),
         Optional.empty(),
         /* additionalDexStoreToJarPathMap */ ImmutableMultimap.of(),
         new APKModuleGraph(null, null, null),
-        /* pathToReportDir */ Paths.get(""));
+        /* pathToReportDir */ Paths.get(""),
+        /* pathToDalvikStatsDir */ Paths.get(""));
 
     Predicate<String> requiredInPrimaryZipPredicate = splitZipStep
         .createRequiredInPrimaryZipPredicate(
@@ -246,8 +251,10 @@ public class SplitZipStepTest {
         .andReturn(linesInManifestFile);
     EasyMock.expect(projectFilesystem.readLines(proguardConfigFile))
         .andReturn(ImmutableList.of());
-    EasyMock.expect(projectFilesystem.readLines(proguardMappingFile))
-        .andReturn(linesInMappingFile);
+    EasyMock.expect(projectFilesystem.newFileInputStream(proguardMappingFile))
+        .andReturn(
+            new ByteArrayInputStream(
+                Joiner.on('\n').join(linesInMappingFile).getBytes(Charsets.UTF_8)));
     EasyMock.replay(projectFilesystem);
 
     SplitZipStep splitZipStep = new SplitZipStep(
@@ -272,14 +279,16 @@ public class SplitZipStepTest {
             /* primaryDexScenarioFile */ Optional.empty(),
             /* isPrimaryDexScenarioOverflowAllowed */ false,
             /* secondaryDexHeadClassesFile */ Optional.empty(),
-            /* secondaryDexTailClassesFile */ Optional.empty()),
+            /* secondaryDexTailClassesFile */ Optional.empty(),
+            /* isSecondaryDexGroupingStable */ false),
         Optional.empty(),
         Optional.of(Paths.get("the/manifest.txt")),
         Optional.empty(),
         Optional.empty(),
         /* additionalDexStoreToJarPathMap */ ImmutableMultimap.of(),
         new APKModuleGraph(null, null, null),
-        /* pathToReportDir */ Paths.get(""));
+        /* pathToReportDir */ Paths.get(""),
+        /* pathToDalvikStatsDir */ Paths.get(""));
 
     ProguardTranslatorFactory translatorFactory = ProguardTranslatorFactory.create(
         projectFilesystem,
@@ -346,14 +355,16 @@ public class SplitZipStepTest {
             /* primaryDexScenarioFile */ Optional.empty(),
             /* isPrimaryDexScenarioOverflowAllowed */ false,
             /* secondaryDexHeadClassesFile */ Optional.empty(),
-            /* secondaryDexTailClassesFile */ Optional.empty()),
+            /* secondaryDexTailClassesFile */ Optional.empty(),
+            /* isSecondaryDexGroupingStable */ false),
         Optional.empty(),
         Optional.empty(),
         Optional.empty(),
         Optional.empty(),
         /* additionalDexStoreToJarPathMap */ ImmutableMultimap.of(),
         new APKModuleGraph(null, null, null),
-        /* pathToReportDir */ Paths.get(""));
+        /* pathToReportDir */ Paths.get(""),
+        /* pathToDalvikStatsDir */ Paths.get(""));
 
     ProguardTranslatorFactory translatorFactory = ProguardTranslatorFactory.create(
         projectFilesystem,
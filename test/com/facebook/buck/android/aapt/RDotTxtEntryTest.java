@@ -64,4 +64,32 @@ public class RDotTxtEntryTest {
 
     assertEquals(entry1.compareTo(entry2), -1);
   }
+
+  @Test
+  public void testCompareNamesMatchesComparingSplitNames() {
+    ImmutableList<String> names = ImmutableList.of(
+        "", "_", "__", "a", "a_", "_a", "a__b", "a_b", "a_b_", "ab", "a_bc", "ab_c", "A_b", "b",
+        "ActionBar", "ActionBar_background", "ActionBarLayout",
+        "ActionBar_contentInsetEnd__android");
+    for (String first : names) {
+      for (String second : names) {
+        assertEquals(
+            first + " vs " + second,
+            compareSplitNames(first, second),
+            RDotTxtEntry.compareNames(first, second));
+      }
+    }
+  }
+
+  private static int compareSplitNames(String first, String second) {
+    String[] firstParts = first.split("_");
+    String[] secondParts = second.split("_");
+    for (int i = 0; i < firstParts.length && i < secondParts.length; i++) {
+      int comparison = firstParts[i].compareTo(secondParts[i]);
+      if (comparison != 0) {
+        return Integer.signum(comparison);
+      }
+    }
+    return Integer.compare(firstParts.length, secondParts.length);
+  }
 }
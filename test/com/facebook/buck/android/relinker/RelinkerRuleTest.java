@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android.relinker;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+public class RelinkerRuleTest {
+  @Test
+  public void versionScriptKeepsNeededProvidedSymbolsInSortedOrder() {
+    assertEquals(
+        "{\n" +
+            "global:\n" +
+            "  JNI_OnLoad;\n" +
+            "  bar;\n" +
+            "  foo;\n" +
+            "local: *;\n" +
+            "};\n",
+        RelinkerRule.getVersionScript(
+            ImmutableSet.of("foo", "unknown", "bar"),
+            ImmutableSet.of("foo", "bar", "baz", "JNI_OnLoad")));
+  }
+
+  @Test
+  public void versionScriptWithNothingToKeepHasNoGlobalSection() {
+    assertEquals(
+        "{\n" +
+            "local: *;\n" +
+            "};\n",
+        RelinkerRule.getVersionScript(ImmutableSet.of("unknown"), ImmutableSet.of("foo")));
+  }
+}
@@ -34,6 +34,7 @@ import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.facebook.buck.testutil.integration.TestDataHelper;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.concurrent.ResourceAmounts;
+import com.facebook.buck.util.concurrent.ResourceAmountsEstimator;
 import com.facebook.buck.util.environment.Architecture;
 import com.facebook.buck.util.environment.Platform;
 import com.google.common.base.Joiner;
@@ -640,6 +641,64 @@ public class BuckConfigTest {
         result);
   }
 
+  @Test
+  public void testGettingResourceAmountsPerRuleTypeWithRemoteCpu() throws IOException {
+    Reader reader = new StringReader(Joiner.on('\n').join(
+        "[resources_per_rule]",
+        "cxx_preprocess_compile = 0, 1, 0, 1, 1"));
+    BuckConfig config = BuckConfigTestUtils.createWithDefaultFilesystem(
+        temporaryFolder,
+        reader);
+    assertEquals(
+        ImmutableMap.of(
+            "cxx_preprocess_compile", ResourceAmounts.of(0, 1, 0, 1).withRemoteCpu(1)),
+        config.getResourceAmountsPerRuleType());
+  }
+
+  @Test
+  public void testCxxCompileWorkersUseRemoteCpuByDefault() throws IOException {
+    Reader reader = new StringReader(Joiner.on('\n').join(
+        "[resources]",
+        "resource_aware_scheduling_enabled = true",
+        "[cxx]",
+        "compile_workers = 16",
+        "compile_worker_command = remote-compile --pool=cxx"));
+    BuckConfig config = BuckConfigTestUtils.createWithDefaultFilesystem(
+        temporaryFolder,
+        reader);
+    assertEquals(
+        ImmutableMap.of(
+            "cxx_preprocess_compile",
+            ResourceAmountsEstimator.DEFAULT_AMOUNTS.withRemoteCpu(1)),
+        config.getResourceAmountsPerRuleType());
+
+    reader = new StringReader(Joiner.on('\n').join(
+        "[cxx]",
+        "compile_workers = 16",
+        "compile_worker_command = remote-compile --pool=cxx",
+        "[resources_per_rule]",
+        "cxx_preprocess_compile = 1, 1, 0, 0"));
+    config = BuckConfigTestUtils.createWithDefaultFilesystem(
+        temporaryFolder,
+        reader);
+    assertEquals(
+        ImmutableMap.of("cxx_preprocess_compile", ResourceAmounts.of(1, 1, 0, 0)),
+        config.getResourceAmountsPerRuleType());
+  }
+
+  @Test
+  public void testBuiltInCxxCompileWorkersUseLocalCpu() throws IOException {
+    Reader reader = new StringReader(Joiner.on('\n').join(
+        "[resources]",
+        "resource_aware_scheduling_enabled = true",
+        "[cxx]",
+        "compile_workers = 16"));
+    BuckConfig config = BuckConfigTestUtils.createWithDefaultFilesystem(
+        temporaryFolder,
+        reader);
+    assertEquals(ImmutableMap.of(), config.getResourceAmountsPerRuleType());
+  }
+
   @Test
   public void testInvalidResourceAmountsConfiguration() throws IOException {
     Reader reader = new StringReader(Joiner.on('\n').join(
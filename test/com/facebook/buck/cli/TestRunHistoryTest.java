@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestRunHistoryTest {
+
+  private static final BuildTarget FAST = BuildTargetFactory.newInstance("//:fast");
+  private static final BuildTarget SLOW = BuildTargetFactory.newInstance("//:slow");
+  private static final BuildTarget FLAKY = BuildTargetFactory.newInstance("//:flaky");
+  private static final BuildTarget NEW = BuildTargetFactory.newInstance("//:new");
+
+  @Test
+  public void recordingUpdatesMovingAverageAndFailureCounts() {
+    TestRunHistory history = TestRunHistory.empty();
+    history.record(SLOW, 1000, true);
+    history.record(SLOW, 3000, false);
+
+    TestHistoryEntry entry = history.get(SLOW).get();
+    assertEquals(2000, entry.getAverageDurationMillis());
+    assertEquals(2, entry.getRuns());
+    assertEquals(1, entry.getFailures());
+    assertTrue(entry.isLastRunFailed());
+    assertEquals(0.5, entry.failureRate(), 0);
+  }
+
+  @Test
+  public void historySurvivesSaveAndLoad() throws Exception {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    TestRunHistory history = TestRunHistory.empty();
+    history.record(SLOW, 60000, true);
+    history.record(FLAKY, 10, false);
+    history.save(filesystem);
+
+    TestRunHistory loaded = TestRunHistory.load(filesystem);
+    assertEquals(history.get(SLOW), loaded.get(SLOW));
+    assertEquals(history.get(FLAKY), loaded.get(FLAKY));
+    assertFalse(loaded.get(FAST).isPresent());
+  }
+
+  @Test
+  public void missingOrCorruptHistoryIsEmpty() throws Exception {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    assertFalse(TestRunHistory.load(filesystem).get(SLOW).isPresent());
+
+    filesystem.writeContentsToPath(
+        "not json",
+        filesystem.getBuckPaths().getLogDir().resolve(TestRunHistory.HISTORY_FILE_NAME));
+    assertFalse(TestRunHistory.load(filesystem).get(SLOW).isPresent());
+  }
+
+  @Test
+  public void unknownThenLongestTestsAreScheduledFirst() {
+    TestRunHistory history = TestRunHistory.empty();
+    history.record(FAST, 10, true);
+    history.record(SLOW, 60000, true);
+    history.record(FLAKY, 100, false);
+
+    List<BuildTarget> targets = new ArrayList<>(ImmutableList.of(FAST, FLAKY, SLOW, NEW));
+    targets.sort(history.getSchedulingOrder(/* failingFirst */ false));
+    assertEquals(ImmutableList.of(NEW, SLOW, FLAKY, FAST), targets);
+  }
+
+  @Test
+  public void failingTestsAreScheduledFirstWhenRequested() {
+    TestRunHistory history = TestRunHistory.empty();
+    history.record(FAST, 10, true);
+    history.record(SLOW, 60000, true);
+    history.record(FLAKY, 100, false);
+
+    List<BuildTarget> targets = new ArrayList<>(ImmutableList.of(FAST, SLOW, NEW, FLAKY));
+    targets.sort(history.getSchedulingOrder(/* failingFirst */ true));
+    assertEquals(ImmutableList.of(FLAKY, NEW, SLOW, FAST), targets);
+  }
+}
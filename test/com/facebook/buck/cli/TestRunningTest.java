@@ -35,6 +35,8 @@ import com.facebook.buck.jvm.java.DefaultJavaPackageFinder;
 import com.facebook.buck.jvm.java.JavaLibrary;
 import com.facebook.buck.jvm.java.JavaLibraryBuilder;
 import com.facebook.buck.jvm.java.JavaLibraryDescription;
+import com.facebook.buck.jvm.java.JavaTest;
+import com.facebook.buck.jvm.java.JavaTestBuilder;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
@@ -1182,4 +1184,41 @@ public class TestRunningTest {
 
     assertThat(ret, equalTo(TestRunning.TEST_FAILURES_EXIT_CODE));
   }
+
+  @Test
+  public void onlyJavaTestsWhichWereSlowAreSharded() throws Exception {
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    JavaTest slowTest =
+        JavaTestBuilder.createBuilder(BuildTargetFactory.newInstance("//:slow"))
+            .addSrc(Paths.get("SlowTest.java"))
+            .build(resolver);
+    JavaTest fastTest =
+        JavaTestBuilder.createBuilder(BuildTargetFactory.newInstance("//:fast"))
+            .addSrc(Paths.get("FastTest.java"))
+            .build(resolver);
+    JavaTest newTest =
+        JavaTestBuilder.createBuilder(BuildTargetFactory.newInstance("//:new"))
+            .addSrc(Paths.get("NewTest.java"))
+            .build(resolver);
+    TestRunHistory history = TestRunHistory.empty();
+    history.record(slowTest.getBuildTarget(), 60_000, true);
+    history.record(fastTest.getBuildTarget(), 1_000, true);
+
+    ExecutionContext context = TestExecutionContext.newInstance();
+    TestRunningOptions options = TestRunningOptions.builder().setMaxJavaTestShards(4).build();
+    assertEquals(4, TestRunning.getJavaTestShardCount(slowTest, context, options, history));
+    assertEquals(1, TestRunning.getJavaTestShardCount(fastTest, context, options, history));
+    assertEquals(1, TestRunning.getJavaTestShardCount(newTest, context, options, history));
+    assertEquals(
+        1,
+        TestRunning.getJavaTestShardCount(slowTest, context, DEFAULT_OPTIONS, history));
+    assertEquals(
+        1,
+        TestRunning.getJavaTestShardCount(
+            slowTest,
+            TestExecutionContext.newBuilder().setDebugEnabled(true).build(),
+            options,
+            history));
+  }
 }
@@ -45,6 +45,7 @@ import com.facebook.buck.shell.Genrule;
 import com.facebook.buck.shell.GenruleBuilder;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.step.fs.RmStep;
 import com.facebook.buck.testutil.FakeFileHashCache;
 import com.google.common.base.Strings;
 import com.google.common.collect.FluentIterable;
@@ -207,6 +208,50 @@ public class ArchiveTest {
         containsString("-bar"));
   }
 
+  @Test
+  public void archivesWithoutFlagsAreWrittenWithoutTheTools() throws Exception {
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+    BuildRuleParams params = new FakeBuildRuleParamsBuilder(target).build();
+    SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(resolver);
+    SourcePathResolver pathResolver = new SourcePathResolver(ruleFinder);
+    Archive archive = Archive.from(
+        target,
+        params,
+        ruleFinder,
+        DEFAULT_ARCHIVER,
+        ImmutableList.of(),
+        DEFAULT_RANLIB,
+        ImmutableList.of(),
+        Archive.Contents.THIN,
+        DEFAULT_OUTPUT,
+        ImmutableList.of(new FakeSourcePath("simple.o")));
+
+    BuildContext buildContext = BuildContext.builder()
+        .from(FakeBuildContext.NOOP_CONTEXT)
+        .setSourcePathResolver(pathResolver)
+        .build();
+
+    ImmutableList<Step> steps =
+        archive.getBuildSteps(buildContext, new FakeBuildableContext());
+    assertEquals(0, FluentIterable.from(steps).filter(ArchiveStep.class).size());
+    assertEquals(0, FluentIterable.from(steps).filter(RanlibStep.class).size());
+
+    // The output isn't removed, so that the thin archive can be updated in place, but the tools
+    // still run if any input isn't ELF.
+    ArchiveWriterStep writerStep =
+        FluentIterable.from(steps).filter(ArchiveWriterStep.class).first().get();
+    assertEquals(0, FluentIterable.from(steps).filter(RmStep.class).size());
+    assertEquals(Archive.Contents.THIN, writerStep.getContents());
+    assertEquals(
+        1,
+        FluentIterable.from(writerStep.getFallbackSteps()).filter(ArchiveStep.class).size());
+    assertEquals(
+        1,
+        FluentIterable.from(writerStep.getFallbackSteps()).filter(RanlibStep.class).size());
+  }
+
   @Test
   public void testThatBuildTargetSourcePathDepsAndPathsArePropagated() throws Exception {
     BuildRuleResolver resolver =
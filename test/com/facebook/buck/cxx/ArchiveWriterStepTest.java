@@ -0,0 +1,237 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeThat;
+import static org.junit.Assume.assumeTrue;
+
+import com.facebook.buck.cli.FakeBuckConfig;
+import com.facebook.buck.io.ExecutableFinder;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.step.fs.FileScrubberStep;
+import com.facebook.buck.step.fs.RmStep;
+import com.facebook.buck.step.fs.TouchStep;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.environment.Platform;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Optional;
+
+public class ArchiveWriterStepTest {
+
+  private static final String FIRST_SOURCE =
+      "int first_function(void) { return 1; }\n" +
+      "int first_variable = 3;\n" +
+      "static int local_function(void) { return 2; }\n" +
+      "int common_variable;\n" +
+      "__attribute__((weak)) int weak_function(void) { return local_function(); }\n" +
+      "extern int undefined_function(void);\n" +
+      "int calls_undefined(void) { return undefined_function(); }\n";
+
+  private static final String SECOND_SOURCE =
+      "int second_function_with_a_long_name(void) { return 2; }\n";
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private Path cc;
+  private ImmutableList<Path> inputs;
+
+  @Before
+  public void setUp() throws IOException, InterruptedException {
+    assumeThat(Platform.detect(), Matchers.is(Platform.LINUX));
+    Optional<Path> ccPath =
+        new ExecutableFinder().getOptionalExecutable(
+            tmp.getRoot().getFileSystem().getPath("cc"),
+            ImmutableMap.copyOf(System.getenv()));
+    assumeTrue(ccPath.isPresent());
+    cc = ccPath.get();
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    inputs =
+        ImmutableList.of(
+            compile("first.c", FIRST_SOURCE),
+            compile("objects/second_object_with_a_long_name.c", SECOND_SOURCE));
+  }
+
+  private Path compile(String name, String source) throws IOException, InterruptedException {
+    Path path = filesystem.getPath(name);
+    if (path.getParent() != null) {
+      filesystem.mkdirs(path.getParent());
+    }
+    filesystem.writeContentsToPath(source, path);
+    Path object = filesystem.getPath(name.replaceAll("\\.c$", ".o"));
+    Process process =
+        new ProcessBuilder(
+            cc.toString(),
+            "-fcommon",
+            "-c",
+            path.toString(),
+            "-o",
+            object.toString())
+            .directory(tmp.getRoot().toFile())
+            .redirectErrorStream(true)
+            .start();
+    assertEquals(0, process.waitFor());
+    return object;
+  }
+
+  private ImmutableList<Step> getToolSteps(Path output, Archive.Contents contents) {
+    CxxPlatform platform =
+        CxxPlatformUtils.build(new CxxBuckConfig(FakeBuckConfig.builder().build()));
+    SourcePathResolver resolver =
+        new SourcePathResolver(
+            new SourcePathRuleFinder(
+                new BuildRuleResolver(
+                    TargetGraph.EMPTY,
+                    new DefaultTargetNodeToBuildRuleTransformer())));
+    Archiver archiver = platform.getAr();
+    return ImmutableList.of(
+        new RmStep(filesystem, output),
+        new ArchiveStep(
+            filesystem,
+            archiver.getEnvironment(resolver),
+            archiver.getCommandPrefix(resolver),
+            ImmutableList.of(),
+            archiver.getArchiveOptions(contents == Archive.Contents.THIN),
+            output,
+            inputs,
+            archiver),
+        new RanlibStep(
+            filesystem,
+            platform.getRanlib().getEnvironment(resolver),
+            platform.getRanlib().getCommandPrefix(resolver),
+            ImmutableList.of(),
+            output),
+        new FileScrubberStep(filesystem, output, archiver.getScrubbers()));
+  }
+
+  private static void execute(Step step) throws IOException, InterruptedException {
+    ExecutionContext context = TestExecutionContext.newInstance();
+    assertEquals(0, step.execute(context).getExitCode());
+  }
+
+  private void assertSameAsTools(Archive.Contents contents)
+      throws IOException, InterruptedException {
+    assumeTrue(
+        CxxPlatformUtils.build(new CxxBuckConfig(FakeBuckConfig.builder().build()))
+            .getAr()
+            .supportsArchiveWriter());
+    Path expected = filesystem.getPath("out/expected.a");
+    Path actual = filesystem.getPath("out/actual.a");
+    filesystem.mkdirs(actual.getParent());
+    for (Step step : getToolSteps(expected, contents)) {
+      execute(step);
+    }
+    execute(ArchiveWriterStep.of(filesystem, actual, inputs, contents, ImmutableList.of()));
+    assertArrayEquals(
+        Files.readAllBytes(filesystem.resolve(expected)),
+        Files.readAllBytes(filesystem.resolve(actual)));
+  }
+
+  @Test
+  public void normalArchiveIsTheSameAsTheToolsMake() throws IOException, InterruptedException {
+    assertSameAsTools(Archive.Contents.NORMAL);
+  }
+
+  @Test
+  public void thinArchiveIsTheSameAsTheToolsMake() throws IOException, InterruptedException {
+    assertSameAsTools(Archive.Contents.THIN);
+  }
+
+  @Test
+  public void thinArchiveIsUpdatedInPlace() throws IOException, InterruptedException {
+    Path output = filesystem.getPath("out/libthin.a");
+    filesystem.mkdirs(output.getParent());
+    ArchiveWriterStep step =
+        ArchiveWriterStep.of(
+            filesystem,
+            output,
+            inputs,
+            Archive.Contents.THIN,
+            ImmutableList.of());
+    execute(step);
+    Object fileKey = getFileKey(output);
+    byte[] before = Files.readAllBytes(filesystem.resolve(output));
+
+    // The same symbols, but a bigger object.
+    compile(
+        "first.c",
+        FIRST_SOURCE + "static int another_local_function(void) { return 4; }\n");
+    execute(step);
+    byte[] after = Files.readAllBytes(filesystem.resolve(output));
+    assertEquals(fileKey, getFileKey(output));
+    assertEquals(before.length, after.length);
+    assertFalse(Arrays.equals(before, after));
+
+    Path fresh = filesystem.getPath("out/libfresh.a");
+    execute(
+        ArchiveWriterStep.of(
+            filesystem,
+            fresh,
+            inputs,
+            Archive.Contents.THIN,
+            ImmutableList.of()));
+    assertArrayEquals(Files.readAllBytes(filesystem.resolve(fresh)), after);
+  }
+
+  @Test
+  public void nonElfInputsRunTheFallbackSteps() throws IOException, InterruptedException {
+    Path data = filesystem.getPath("data.txt");
+    filesystem.writeContentsToPath("not an object", data);
+    Path output = filesystem.getPath("libdata.a");
+    Path marker = filesystem.getPath("fallback");
+    execute(
+        ArchiveWriterStep.of(
+            filesystem,
+            output,
+            ImmutableList.<Path>builder().addAll(inputs).add(data).build(),
+            Archive.Contents.NORMAL,
+            ImmutableList.of(new TouchStep(filesystem, marker))));
+    assertTrue(filesystem.exists(marker));
+    assertFalse(filesystem.exists(output));
+  }
+
+  private Object getFileKey(Path path) throws IOException {
+    return Files.readAttributes(filesystem.resolve(path), BasicFileAttributes.class).fileKey();
+  }
+
+}
@@ -205,12 +205,19 @@ public class CxxBinaryDescriptionTest {
         .build();
 
     // Check that link rule has the expected deps: the object files for our sources and the
-    // archive from the dependency.
+    // archive from the dependency, along with the objects it refers to when it's thin.
+    Archive archive = (Archive) resolver.getRule(archiveTarget);
     assertEquals(
-        ImmutableSet.of(
-            cxxSourceRuleFactory.createCompileBuildTarget("test/bar.cpp"),
-            cxxSourceRuleFactory.createCompileBuildTarget(genSourceName),
-            archiveTarget),
+        ImmutableSet.builder()
+            .add(
+                cxxSourceRuleFactory.createCompileBuildTarget("test/bar.cpp"),
+                cxxSourceRuleFactory.createCompileBuildTarget(genSourceName),
+                archiveTarget)
+            .addAll(
+                archive.toArg().getDeps(ruleFinder).stream()
+                    .map(BuildRule::getBuildTarget)
+                    .iterator())
+            .build(),
         rule.getDeps().stream()
             .map(BuildRule::getBuildTarget)
             .collect(MoreCollectors.toImmutableSet()));
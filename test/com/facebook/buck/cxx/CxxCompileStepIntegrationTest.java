@@ -19,9 +19,11 @@ package com.facebook.buck.cxx;
 import static com.facebook.buck.file.ProjectFilesystemMatchers.pathExists;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasItem;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.cli.FakeBuckConfig;
 import com.facebook.buck.io.ProjectFilesystem;
@@ -37,6 +39,8 @@ import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
 
 import org.hamcrest.Matchers;
 import org.junit.Rule;
@@ -110,7 +114,9 @@ public class CxxCompileStepIntegrationTest {
             CxxPlatformUtils.DEFAULT_ASSEMBLER_DEBUG_PATH_SANITIZER,
             scratchDir,
             true,
-            compiler);
+            compiler,
+            Optional.empty(),
+            Optional.empty());
 
     // Execute the archive step and verify it ran successfully.
     ExecutionContext executionContext = TestExecutionContext.newInstance();
@@ -193,7 +199,9 @@ public class CxxCompileStepIntegrationTest {
             CxxPlatformUtils.DEFAULT_ASSEMBLER_DEBUG_PATH_SANITIZER,
             scratchDir,
             true,
-            compiler);
+            compiler,
+            Optional.empty(),
+            Optional.empty());
 
     // Execute the archive step and verify it ran successfully.
     ExecutionContext executionContext = TestExecutionContext.newInstance();
@@ -213,4 +221,285 @@ public class CxxCompileStepIntegrationTest {
     Files.deleteIfExists(output);
   }
 
+  @Test
+  public void reusesObjectsCompiledFromTheSamePreprocessedSource() throws Exception {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    Path output = Paths.get("output.o");
+    Path relativeInput = Paths.get("input.c");
+    Path cacheDir = Paths.get("cache");
+    CxxPreprocessAndCompileStep step = createCachingStep(
+        filesystem,
+        getCompilerCommandPrefix(),
+        CxxPreprocessedOutputCache.of(cacheDir, Long.MAX_VALUE));
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+
+    filesystem.writeContentsToPath("int main() { return 0; }", relativeInput);
+    assertEquals(0, step.execute(executionContext).getExitCode());
+    ImmutableList<Path> cachedObjects =
+        ImmutableList.copyOf(filesystem.getFilesUnderPath(cacheDir));
+    assertEquals(1, cachedObjects.size());
+    assertEquals(
+        filesystem.readFileIfItExists(output),
+        filesystem.readFileIfItExists(cachedObjects.get(0)));
+
+    // Only a comment changes, so the object in the cache is used rather than compiling again.
+    filesystem.writeContentsToPath("cached", cachedObjects.get(0));
+    filesystem.writeContentsToPath("int main() { return 0; } /* comment */", relativeInput);
+    filesystem.deleteFileAtPath(output);
+    assertEquals(0, step.execute(executionContext).getExitCode());
+    assertEquals(Optional.of("cached"), filesystem.readFileIfItExists(output));
+    assertThat(filesystem, pathExists(Paths.get("output.dep")));
+
+    filesystem.writeContentsToPath("int main() { return 1; }", relativeInput);
+    assertEquals(0, step.execute(executionContext).getExitCode());
+    assertNotEquals(Optional.of("cached"), filesystem.readFileIfItExists(output));
+    assertEquals(2, filesystem.getFilesUnderPath(cacheDir).size());
+  }
+
+  @Test
+  public void objectsAreDeletedFromTheCacheWhenItIsFull() throws Exception {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    Path cacheDir = Paths.get("cache");
+    CxxPreprocessAndCompileStep step = createCachingStep(
+        filesystem,
+        getCompilerCommandPrefix(),
+        CxxPreprocessedOutputCache.of(cacheDir, 1));
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+
+    filesystem.writeContentsToPath("int main() { return 0; }", Paths.get("input.c"));
+    assertEquals(0, step.execute(executionContext).getExitCode());
+    assertThat(filesystem, pathExists(Paths.get("output.o")));
+    assertEquals(ImmutableSet.of(), filesystem.getFilesUnderPath(cacheDir));
+  }
+
+  @Test
+  public void compilersOnThePathAreToldApartByTheirBinaries() throws Exception {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    for (String dir : ImmutableList.of("old", "new")) {
+      filesystem.mkdirs(Paths.get(dir));
+      filesystem.writeContentsToPath(dir + " compiler", Paths.get(dir, "fakecc"));
+      assertTrue(filesystem.resolve(Paths.get(dir, "fakecc")).toFile().setExecutable(true));
+    }
+    CxxPreprocessAndCompileStep step = createCachingStep(
+        filesystem,
+        ImmutableList.of("fakecc"),
+        CxxPreprocessedOutputCache.of(Paths.get("cache"), Long.MAX_VALUE));
+
+    Optional<HashCode> oldKey = step.getPreprocessedOutputKey(
+        ImmutableMap.of("PATH", filesystem.resolve("old").toString()),
+        "int main() { return 0; }");
+    Optional<HashCode> newKey = step.getPreprocessedOutputKey(
+        ImmutableMap.of("PATH", filesystem.resolve("new").toString()),
+        "int main() { return 0; }");
+    assertTrue(oldKey.isPresent());
+    assertTrue(newKey.isPresent());
+    assertNotEquals(oldKey, newKey);
+
+    // Without its binary, the compiler cannot be told apart from others, so nothing is cached.
+    assertEquals(
+        Optional.empty(),
+        step.getPreprocessedOutputKey(
+            ImmutableMap.of("PATH", filesystem.resolve("missing").toString()),
+            "int main() { return 0; }"));
+  }
+
+  private ImmutableList<String> getCompilerCommandPrefix() {
+    CxxPlatform platform = CxxPlatformUtils.build(
+        new CxxBuckConfig(FakeBuckConfig.builder().build()));
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    SourcePathResolver pathResolver = new SourcePathResolver(new SourcePathRuleFinder(resolver));
+    return platform.getCc().resolve(resolver).getCommandPrefix(pathResolver);
+  }
+
+  private CxxPreprocessAndCompileStep createCachingStep(
+      ProjectFilesystem filesystem,
+      ImmutableList<String> compilerCommandPrefix,
+      CxxPreprocessedOutputCache cache) throws Exception {
+    CxxPlatform platform = CxxPlatformUtils.build(
+        new CxxBuckConfig(FakeBuckConfig.builder().build()));
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    SourcePathResolver pathResolver = new SourcePathResolver(new SourcePathRuleFinder(resolver));
+    Path scratchDir = filesystem.getPath("scratchDir");
+    filesystem.mkdirs(scratchDir);
+    return new CxxPreprocessAndCompileStep(
+        filesystem,
+        CxxPreprocessAndCompileStep.Operation.PREPROCESS_AND_COMPILE,
+        Paths.get("output.o"),
+        Paths.get("output.dep"),
+        Paths.get("input.c"),
+        CxxSource.Type.C,
+        Optional.of(
+            new CxxPreprocessAndCompileStep.ToolCommand(
+                compilerCommandPrefix,
+                ImmutableList.of(),
+                ImmutableMap.of(),
+                Optional.empty())),
+        Optional.of(
+            new CxxPreprocessAndCompileStep.ToolCommand(
+                compilerCommandPrefix,
+                ImmutableList.of("-g"),
+                ImmutableMap.of(),
+                Optional.empty())),
+        HeaderPathNormalizer.empty(pathResolver),
+        CxxPlatformUtils.DEFAULT_COMPILER_DEBUG_PATH_SANITIZER,
+        CxxPlatformUtils.DEFAULT_ASSEMBLER_DEBUG_PATH_SANITIZER,
+        scratchDir,
+        true,
+        platform.getCc().resolve(resolver),
+        Optional.of(cache),
+        Optional.empty());
+  }
+
+  @Test
+  public void compilesThePreprocessedSourceInAWorker() throws Exception {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    CxxPlatform platform = CxxPlatformUtils.build(
+        new CxxBuckConfig(FakeBuckConfig.builder().build()));
+
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    SourcePathResolver pathResolver = new SourcePathResolver(new SourcePathRuleFinder(resolver));
+    Compiler compiler = platform.getCc().resolve(resolver);
+    ImmutableList<String> compilerCommandPrefix = compiler.getCommandPrefix(pathResolver);
+    Path output = Paths.get("output.o");
+    Path depFile = Paths.get("output.dep");
+    Path relativeInput = Paths.get("input.c");
+    filesystem.mkdirs(Paths.get("include"));
+    filesystem.writeContentsToPath("#define RESULT 0", Paths.get("include", "result.h"));
+    filesystem.writeContentsToPath(
+        "#include \"result.h\"\nint main() { return RESULT; }",
+        relativeInput);
+    Path scratchDir = filesystem.getPath("scratchDir");
+    filesystem.mkdirs(scratchDir);
+
+    CxxPreprocessAndCompileStep step =
+        new CxxPreprocessAndCompileStep(
+            filesystem,
+            CxxPreprocessAndCompileStep.Operation.PREPROCESS_AND_COMPILE,
+            output,
+            depFile,
+            relativeInput,
+            CxxSource.Type.C,
+            Optional.of(
+                new CxxPreprocessAndCompileStep.ToolCommand(
+                    compilerCommandPrefix,
+                    ImmutableList.of("-Iinclude"),
+                    ImmutableMap.of(),
+                    Optional.empty())),
+            Optional.of(
+                new CxxPreprocessAndCompileStep.ToolCommand(
+                    compilerCommandPrefix,
+                    ImmutableList.of("-Iinclude", "-g"),
+                    ImmutableMap.of(),
+                    Optional.empty())),
+            HeaderPathNormalizer.empty(pathResolver),
+            CxxPlatformUtils.DEFAULT_COMPILER_DEBUG_PATH_SANITIZER,
+            CxxPlatformUtils.DEFAULT_ASSEMBLER_DEBUG_PATH_SANITIZER,
+            scratchDir,
+            true,
+            compiler,
+            Optional.empty(),
+            Optional.of(CxxCompileWorkers.of(1, Optional.empty())));
+
+    try (ExecutionContext executionContext = TestExecutionContext.newInstance()) {
+      TestConsole console = (TestConsole) executionContext.getConsole();
+      int exitCode = step.execute(executionContext).getExitCode();
+      assertEquals("compile step failed: " + console.getTextWrittenToStdErr(), 0, exitCode);
+      assertThat(
+          executionContext.getWorkerProcessPools().get(CxxCompileWorkerPool.class.getName()),
+          Matchers.instanceOf(CxxCompileWorkerPool.class));
+    }
+
+    // The worker only had the preprocessed source, so the header was read by the preprocessor
+    // here, and is in the dep file.
+    assertThat(filesystem, pathExists(output));
+    assertThat(
+        filesystem.readFileIfItExists(depFile).get(),
+        Matchers.containsString("result.h"));
+  }
+
+  @Test
+  public void objectsCompiledInAWorkerAreTheSameAsThoseCompiledLocally() throws Exception {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    filesystem.mkdirs(Paths.get("src"));
+    Path relativeInput = Paths.get("src", "input.c");
+    filesystem.writeContentsToPath(
+        "static int helper(int x) { return x * 2; }\nint main() { return helper(0); }",
+        relativeInput);
+
+    Path localOutput = Paths.get("local", "input.o");
+    Path workerOutput = Paths.get("worker", "input.o");
+    filesystem.mkdirs(localOutput.getParent());
+    filesystem.mkdirs(workerOutput.getParent());
+    try (ExecutionContext executionContext = TestExecutionContext.newInstance()) {
+      TestConsole console = (TestConsole) executionContext.getConsole();
+      assertEquals(
+          console.getTextWrittenToStdErr(),
+          0,
+          createDebugCompileStep(filesystem, relativeInput, localOutput, Optional.empty())
+              .execute(executionContext)
+              .getExitCode());
+      assertEquals(
+          console.getTextWrittenToStdErr(),
+          0,
+          createDebugCompileStep(
+              filesystem,
+              relativeInput,
+              workerOutput,
+              Optional.of(CxxCompileWorkers.of(1, Optional.empty())))
+              .execute(executionContext)
+              .getExitCode());
+    }
+
+    // The debug info names the source and the directory it was compiled in, which are the same.
+    assertArrayEquals(
+        Files.readAllBytes(filesystem.resolve(localOutput)),
+        Files.readAllBytes(filesystem.resolve(workerOutput)));
+  }
+
+  private CxxPreprocessAndCompileStep createDebugCompileStep(
+      ProjectFilesystem filesystem,
+      Path input,
+      Path output,
+      Optional<CxxCompileWorkers> compileWorkers) throws Exception {
+    CxxPlatform platform = CxxPlatformUtils.build(
+        new CxxBuckConfig(FakeBuckConfig.builder().build()));
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    SourcePathResolver pathResolver = new SourcePathResolver(new SourcePathRuleFinder(resolver));
+    Compiler compiler = platform.getCc().resolve(resolver);
+    ImmutableList<String> compilerCommandPrefix = compiler.getCommandPrefix(pathResolver);
+    Path scratchDir = output.getParent().resolve("scratchDir");
+    filesystem.mkdirs(scratchDir);
+    return new CxxPreprocessAndCompileStep(
+        filesystem,
+        CxxPreprocessAndCompileStep.Operation.PREPROCESS_AND_COMPILE,
+        output,
+        output.getParent().resolve("input.dep"),
+        input,
+        CxxSource.Type.C,
+        Optional.of(
+            new CxxPreprocessAndCompileStep.ToolCommand(
+                compilerCommandPrefix,
+                ImmutableList.of(),
+                ImmutableMap.of(),
+                Optional.empty())),
+        Optional.of(
+            new CxxPreprocessAndCompileStep.ToolCommand(
+                compilerCommandPrefix,
+                ImmutableList.of("-g"),
+                ImmutableMap.of(),
+                Optional.empty())),
+        HeaderPathNormalizer.empty(pathResolver),
+        CxxPlatformUtils.DEFAULT_COMPILER_DEBUG_PATH_SANITIZER,
+        CxxPlatformUtils.DEFAULT_ASSEMBLER_DEBUG_PATH_SANITIZER,
+        scratchDir,
+        true,
+        compiler,
+        Optional.empty(),
+        compileWorkers);
+  }
+
 }
@@ -54,7 +54,6 @@ import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.rules.SourceWithFlags;
 import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.rules.args.Arg;
-import com.facebook.buck.rules.args.FileListableLinkerInputArg;
 import com.facebook.buck.rules.args.StringArg;
 import com.facebook.buck.rules.coercer.FrameworkPath;
 import com.facebook.buck.rules.coercer.PatternMatchedCollection;
@@ -750,10 +749,12 @@ public class CxxLibraryDescriptionTest {
             CxxLibraryBuilder.createDefaultPlatform(),
             Linker.LinkableDepType.STATIC_PIC);
     Arg firstArg = nativeLinkableInput.getArgs().get(0);
-    assertThat(firstArg, instanceOf(FileListableLinkerInputArg.class));
+    assertThat(firstArg, instanceOf(ThinArchiveArg.class));
     ImmutableCollection<BuildRule> deps = firstArg.getDeps(new SourcePathRuleFinder(resolver));
-    assertThat(deps.size(), is(1));
-    BuildRule buildRule = deps.asList().get(0);
+    // Thin archives also depend on the rules compiling their members.
+    ImmutableList<Archive> archives = FluentIterable.from(deps).filter(Archive.class).toList();
+    assertThat(archives.size(), is(1));
+    BuildRule buildRule = archives.get(0);
     assertThat(
         buildRule.getBuildTarget().getFlavors(),
         hasItem(CxxDescriptionEnhancer.STATIC_PIC_FLAVOR));
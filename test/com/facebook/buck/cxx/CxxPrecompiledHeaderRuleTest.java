@@ -20,6 +20,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -160,13 +161,15 @@ public class CxxPrecompiledHeaderRuleTest {
         .setCxxBuckConfig(CXX_CONFIG_PCH_ENABLED);
   }
 
-  public CxxSourceRuleFactory.Builder newFactoryBuilder(BuildRuleParams params, String flag) {
+  public CxxSourceRuleFactory.Builder newFactoryBuilder(BuildRuleParams params, String... flags) {
     return newFactoryBuilder(params)
         .setCxxPreprocessorInput(
             ImmutableList.of(
                 CxxPreprocessorInput.builder()
                     .setPreprocessorFlags(
-                        ImmutableMultimap.of(CxxSource.Type.C, flag))
+                        ImmutableMultimap.<CxxSource.Type, String>builder()
+                            .putAll(CxxSource.Type.C, flags)
+                            .build())
                     .build()));
   }
 
@@ -305,6 +308,58 @@ public class CxxPrecompiledHeaderRuleTest {
     assertNotEquals(pchFlag2, pchFlag3);
   }
 
+  @Test
+  public void samePchForFlagsDifferingInDiagnosticsAndMacroOrder() throws Exception {
+    assumeTrue(platformOkForPCHTests());
+
+    BuildTarget pchTarget = newTarget("//test:pch");
+    CxxPrecompiledHeaderTemplate pch = newPCH(pchTarget);
+    ruleResolver.addToIndex(pch);
+
+    BuildTarget lib1Target = newTarget("//test:lib1");
+    CxxSourceRuleFactory factory1 =
+        newFactoryBuilder(newParams(lib1Target), "-DA=1", "-DB", "-Wall")
+            .setPrecompiledHeader(new DefaultBuildTargetSourcePath(pchTarget))
+            .build();
+    CxxPreprocessAndCompile lib1 = factory1.createPreprocessAndCompileBuildRule(
+        "lib1.cpp",
+        newSource("lib1.cpp"));
+    ruleResolver.addToIndex(lib1);
+
+    BuildTarget lib2Target = newTarget("//test:lib2");
+    CxxSourceRuleFactory factory2 =
+        newFactoryBuilder(newParams(lib2Target), "-Wextra", "-DB", "-DA=1", "-Werror")
+            .setPrecompiledHeader(new DefaultBuildTargetSourcePath(pchTarget))
+            .build();
+    CxxPreprocessAndCompile lib2 = factory2.createPreprocessAndCompileBuildRule(
+        "lib2.cpp",
+        newSource("lib2.cpp"));
+    ruleResolver.addToIndex(lib2);
+
+    CxxPrecompiledHeader pch1 = getPchInstance(lib1);
+    CxxPrecompiledHeader pch2 = getPchInstance(lib2);
+    assertSame(pch1, pch2);
+
+    // Each rule still compiles with its own flags, and the PCH with neither's diagnostic flags.
+    ImmutableList<String> cmd2 =
+        lib2.makeMainStep(pathResolver, Paths.get("/tmp/x"), false).getCommand();
+    assertTrue(seek(cmd2, "-Werror").size() > 0);
+    ImmutableList<String> pchCmd =
+        pch1.makeMainStep(pathResolver, Paths.get("/tmp/x")).getCommand();
+    assertFalse(seek(pchCmd, "-Wall").size() > 0);
+    assertFalse(seek(pchCmd, "-Werror").size() > 0);
+    assertTrue(seek(pchCmd, "-DA=1").size() > 0);
+  }
+
+  private static CxxPrecompiledHeader getPchInstance(CxxPreprocessAndCompile rule) {
+    for (BuildRule dep : rule.getDeps()) {
+      if (dep instanceof CxxPrecompiledHeader) {
+        return (CxxPrecompiledHeader) dep;
+      }
+    }
+    throw new AssertionError("no precompiled header in the deps of " + rule);
+  }
+
   @Test
   public void userRuleChangesDependencyPCHRuleFlags() throws Exception {
     assumeTrue(platformOkForPCHTests());
@@ -473,6 +528,54 @@ public class CxxPrecompiledHeaderRuleTest {
     assertEquals(43, runBuiltBinary("//recompile_after_header_changed:main#default"));
   }
 
+  @Test
+  public void sourcesUsingPchAreNotPreprocessedFirst() throws Exception {
+    assumeTrue(platformOkForPCHTests());
+
+    BuildTarget pchTarget = newTarget("//test:pch");
+    CxxPrecompiledHeaderTemplate pch = newPCH(pchTarget);
+    ruleResolver.addToIndex(pch);
+
+    CxxBuckConfig config = new CxxBuckConfig(
+        FakeBuckConfig.builder()
+            .setSections("[cxx]", "pch_enabled=true", "cache_preprocessed_output=true")
+            .build());
+    CxxPreprocessAndCompile withPch = newFactoryBuilder(newParams(newTarget("//test:lib")))
+        .setCxxBuckConfig(config)
+        .setPrecompiledHeader(new DefaultBuildTargetSourcePath(pchTarget))
+        .build()
+        .createPreprocessAndCompileBuildRule("lib.cpp", newSource("lib.cpp"));
+    CxxPreprocessAndCompile withoutPch = newFactoryBuilder(newParams(newTarget("//test:other")))
+        .setCxxBuckConfig(config)
+        .build()
+        .createPreprocessAndCompileBuildRule("other.cpp", newSource("other.cpp"));
+
+    assertFalse(
+        withPch.makeMainStep(pathResolver, Paths.get("/tmp/x"), false).shouldPreprocessFirst());
+    assertTrue(
+        withoutPch.makeMainStep(pathResolver, Paths.get("/tmp/y"), false)
+            .shouldPreprocessFirst());
+  }
+
+  @Test
+  public void changingHeaderIncludedByPCHCausesRecompileWithPreprocessedOutputCached()
+      throws Exception {
+    assumeTrue(platformOkForPCHTests());
+
+    String target = "//recompile_after_include_changed:main#default";
+    workspace.writeContentsToPath(
+        "#define TESTVALUE 50\n",
+        "recompile_after_include_changed/included_by_pch.h");
+    workspace.runBuckBuild("-c", "cxx.cache_preprocessed_output=true", target).assertSuccess();
+    assertEquals(50, runBuiltBinary(target));
+
+    workspace.writeContentsToPath(
+        "#define TESTVALUE 51\n",
+        "recompile_after_include_changed/included_by_pch.h");
+    workspace.runBuckBuild("-c", "cxx.cache_preprocessed_output=true", target).assertSuccess();
+    assertEquals(51, runBuiltBinary(target));
+  }
+
   @Test
   public void changingHeaderIncludedByPCHPrefixHeaderCausesRecompile() throws Exception {
     assumeTrue(platformOkForPCHTests());
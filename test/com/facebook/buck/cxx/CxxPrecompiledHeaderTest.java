@@ -17,6 +17,7 @@
 package com.facebook.buck.cxx;
 
 import static org.hamcrest.Matchers.hasItem;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.model.BuildTarget;
@@ -99,4 +100,51 @@ public class CxxPrecompiledHeaderTest {
         hasItem(CxxSource.Type.C.getPrecompiledHeaderLanguage().get()));
   }
 
+
+  @Test
+  public void compatibilityFlagsDropDiagnosticsAndRepeatsAndSortMacros() {
+    CxxToolFlags flags =
+        CxxToolFlags.copyOf(
+            ImmutableList.of("-fPIC", "-Wall", "-DZED=1", "-O2"),
+            ImmutableList.of(
+                "-Werror",
+                "-Wl,--as-needed",
+                "-D",
+                "ALPHA",
+                "-O0",
+                "-Xclang",
+                "-fno-rtti",
+                "-UZED",
+                "-fdiagnostics-color=always",
+                "-O2",
+                "-w"));
+    assertEquals(
+        ImmutableList.of(
+            "-fPIC",
+            "-Wl,--as-needed",
+            "-O0",
+            "-Xclang",
+            "-fno-rtti",
+            "-O2",
+            "-DALPHA",
+            "-UZED"),
+        ImmutableList.copyOf(CxxPrecompiledHeader.getCompatibilityFlags(flags).getAllFlags()));
+  }
+
+  @Test
+  public void compatibilityFlagsAreTheSameForCompatibleFlags() {
+    assertEquals(
+        ImmutableList.copyOf(
+            CxxPrecompiledHeader.getCompatibilityFlags(
+                CxxToolFlags.copyOf(
+                    ImmutableList.of("-DA=1", "-DB"),
+                    ImmutableList.of("-Wall", "-std=c++14")))
+                .getAllFlags()),
+        ImmutableList.copyOf(
+            CxxPrecompiledHeader.getCompatibilityFlags(
+                CxxToolFlags.copyOf(
+                    ImmutableList.of("-DB", "-std=c++14"),
+                    ImmutableList.of("-Wextra", "-DA=1", "-std=c++14")))
+                .getAllFlags()));
+  }
 }
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusFactory;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.PathSourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Parses and normalizes dep files like those of sources including thousands of headers from the
+ * header symlink trees of their dependencies.
+ */
+public class DepfilesBenchmark {
+
+  private static final Path INPUT = Paths.get("app/src/main.cpp");
+  private static final Path OUTPUT = Paths.get("buck-out/gen/app/main#compile-pic/main.cpp.o");
+  private static final int HEADERS_PER_LIBRARY = 50;
+
+  @Param({"5000"})
+  private int headers = 5000;
+
+  private TemporaryPaths tempDir = new TemporaryPaths();
+
+  private BuckEventBus eventBus;
+  private ProjectFilesystem filesystem;
+  private HeaderPathNormalizer normalizer;
+  private Path depFile;
+  private String depFileContents;
+  private ImmutableList<String> expectedPrereqs;
+  private ImmutableList<Path> expectedHeaders;
+
+  @Before
+  public void setUpTest() throws Exception {
+    // Enough headers for the dep file not to fit in the parser's buffer.
+    headers = 1500;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    tempDir.before();
+    eventBus = BuckEventBusFactory.newInstance();
+    filesystem = new ProjectFilesystem(tempDir.getRoot());
+    SourcePathResolver pathResolver =
+        new SourcePathResolver(
+            new SourcePathRuleFinder(
+                new BuildRuleResolver(
+                    TargetGraph.EMPTY,
+                    new DefaultTargetNodeToBuildRuleTransformer())));
+    HeaderPathNormalizer.Builder normalizerBuilder = new HeaderPathNormalizer.Builder(pathResolver);
+
+    // gcc escapes the '#' of flavored paths, and writes a few prereqs per line.
+    StringBuilder contents = new StringBuilder();
+    contents.append(OUTPUT).append(": ").append(INPUT);
+    ImmutableList.Builder<String> prereqs = ImmutableList.builder();
+    ImmutableList.Builder<Path> headerPaths = ImmutableList.builder();
+    prereqs.add(INPUT.toString());
+    for (int i = 0; i < headers; i++) {
+      String library = "lib" + (i / HEADERS_PER_LIBRARY);
+      Path header = Paths.get(library, "include", "sub" + (i % 7), "header_" + i + ".h");
+      Path link =
+          Paths.get("buck-out/gen", library, library + "#default,headers").resolve(header);
+      contents.append(i % 3 == 0 ? " \\\n " : " ").append(link.toString().replace("#", "\\#"));
+      prereqs.add(link.toString());
+      headerPaths.add(filesystem.resolve(header));
+      normalizerBuilder.addHeader(
+          new PathSourcePath(filesystem, header),
+          filesystem.resolve(link));
+    }
+    contents.append('\n');
+
+    depFileContents = contents.toString();
+    depFile = Paths.get("main.cpp.o.dep");
+    Files.write(filesystem.resolve(depFile), depFileContents.getBytes(Charsets.UTF_8));
+    normalizer = normalizerBuilder.build();
+    expectedPrereqs = prereqs.build();
+    expectedHeaders = headerPaths.build();
+  }
+
+  @After
+  @AfterExperiment
+  public void cleanup() {
+    tempDir.after();
+  }
+
+  @Test
+  public void depfilesCorrectness() throws Exception {
+    assertEquals(
+        new Depfiles.Depfile(OUTPUT.toString(), expectedPrereqs),
+        parseDepfile());
+    assertEquals(expectedHeaders, parseAndNormalizeDepfile());
+    // Again, with the memoized paths.
+    assertEquals(expectedHeaders, parseAndNormalizeDepfile());
+  }
+
+  @Benchmark
+  public Depfiles.Depfile parseDepfile() throws IOException {
+    return Depfiles.parseDepfile(new StringReader(depFileContents));
+  }
+
+  @Benchmark
+  public ImmutableList<Path> parseAndNormalizeDepfile()
+      throws IOException, Depfiles.HeaderVerificationException {
+    return Depfiles.parseAndOutputBuckCompatibleDepfile(
+        eventBus,
+        filesystem,
+        normalizer,
+        HeaderVerification.of(HeaderVerification.Mode.ERROR),
+        depFile,
+        INPUT,
+        OUTPUT);
+  }
+}
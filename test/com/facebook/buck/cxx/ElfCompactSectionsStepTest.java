@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeThat;
+import static org.junit.Assume.assumeTrue;
+
+import com.facebook.buck.cxx.elf.Elf;
+import com.facebook.buck.cxx.elf.ElfSection;
+import com.facebook.buck.io.ExecutableFinder;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.ProjectWorkspace;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.testutil.integration.TestDataHelper;
+import com.facebook.buck.util.environment.Platform;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+public class ElfCompactSectionsStepTest {
+
+  private static final ImmutableSet<String> SECTIONS =
+      ImmutableSet.of(".dynamic", ".dynsym", ".dynstr", ".gnu.version", ".gnu.version_r");
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ElfCompactSectionsStep step;
+
+  @Before
+  public void setUp() throws IOException {
+    ProjectWorkspace workspace =
+        TestDataHelper.createProjectWorkspaceForScenario(this, "elf_shared_lib", tmp);
+    workspace.setUp();
+    step =
+        ElfCompactSectionsStep.of(
+            new ProjectFilesystem(tmp.getRoot()),
+            tmp.getRoot().getFileSystem().getPath("libfoo.so"),
+            tmp.getRoot().getFileSystem().getPath("libfoo.compacted.so"),
+            SECTIONS);
+  }
+
+  private static Elf map(FileChannel channel) throws IOException {
+    return new Elf(channel.map(READ_ONLY, 0, channel.size()));
+  }
+
+  private static ByteBuffer getBody(ElfSection section) {
+    ByteBuffer body = section.body.duplicate();
+    body.rewind();
+    return body;
+  }
+
+  @Test
+  public void copiesOnlyTheSectionsWithoutProgramHeaders() throws IOException {
+    step.execute(TestExecutionContext.newInstance());
+
+    try (FileChannel inputChannel =
+             FileChannel.open(
+                 step.getFilesystem().resolve(step.getInput()),
+                 StandardOpenOption.READ);
+         FileChannel outputChannel =
+             FileChannel.open(
+                 step.getFilesystem().resolve(step.getOutput()),
+                 StandardOpenOption.READ)) {
+      Elf input = map(inputChannel);
+      Elf output = map(outputChannel);
+      assertEquals(0, output.header.e_phnum);
+      assertEquals(input.header.e_machine, output.header.e_machine);
+
+      ImmutableList.Builder<String> names = ImmutableList.builder();
+      for (int index = 1; index < output.getNumberOfSections(); index++) {
+        ElfSection section = output.getSectionByIndex(index);
+        String name = output.getSectionName(section.header);
+        names.add(name);
+        if (SECTIONS.contains(name)) {
+          ElfSection inputSection = input.getSectionByName(name).get().getSecond();
+          assertEquals(name, getBody(inputSection), getBody(section));
+          assertEquals(name, inputSection.header.sh_type, section.header.sh_type);
+          assertEquals(name, section.header.sh_off, section.header.sh_addr);
+        }
+      }
+      assertEquals(
+          ImmutableList.of(
+              ".dynsym",
+              ".dynstr",
+              ".gnu.version",
+              ".gnu.version_r",
+              ".dynamic",
+              ".shstrtab"),
+          names.build());
+
+      // Links to other sections now point at the copies.
+      ElfSection dynsym = output.getSectionByName(".dynsym").get().getSecond();
+      assertEquals(
+          ".dynstr",
+          output.getSectionName(output.getSectionByIndex((int) dynsym.header.sh_link).header));
+    }
+  }
+
+  @Test
+  public void outputCanBeLinkedAgainst() throws IOException, InterruptedException {
+    assumeThat(Platform.detect(), Matchers.is(Platform.LINUX));
+    Optional<Path> cc =
+        new ExecutableFinder().getOptionalExecutable(
+            tmp.getRoot().getFileSystem().getPath("cc"),
+            ImmutableMap.copyOf(System.getenv()));
+    assumeTrue(cc.isPresent());
+    step.execute(TestExecutionContext.newInstance());
+    tmp.newFile("main.c");
+    step.getFilesystem().writeContentsToPath(
+        "extern int func(void);\nint main() { return func(); }\n",
+        tmp.getRoot().getFileSystem().getPath("main.c"));
+
+    Process process =
+        new ProcessBuilder(
+            cc.get().toString(),
+            "main.c",
+            "libfoo.compacted.so",
+            "-o",
+            "main")
+            .directory(tmp.getRoot().toFile())
+            .redirectErrorStream(true)
+            .start();
+    assertEquals(0, process.waitFor());
+  }
+
+}
@@ -50,6 +50,22 @@ public class HeaderPathNormalizerTest {
         Matchers.equalTo(Optional.empty()));
   }
 
+  @Test
+  public void depFileHeaderPathIsResolvedAndNormalized() {
+    SourcePathResolver pathResolver = new SourcePathResolver(new SourcePathRuleFinder(
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer())
+    ));
+    HeaderPathNormalizer normalizer =
+        new HeaderPathNormalizer.Builder(pathResolver).build();
+    Path header = normalizer.getDepFileHeaderPath(filesystem, "foo/../foo/bar.h");
+    assertThat(
+        header,
+        Matchers.equalTo(filesystem.resolve(filesystem.getPath("foo/bar.h"))));
+    assertThat(
+        normalizer.getDepFileHeaderPath(filesystem, "foo/../foo/bar.h"),
+        Matchers.sameInstance(header));
+  }
+
   @Test
   public void managedHeader() {
     SourcePathResolver pathResolver = new SourcePathResolver(new SourcePathRuleFinder(
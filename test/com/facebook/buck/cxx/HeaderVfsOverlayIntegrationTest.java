@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import com.facebook.buck.event.BuckEventBusFactory;
+import com.facebook.buck.io.ExecutableFinder;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.model.BuildTargets;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.ExplicitBuildTargetSourcePath;
+import com.facebook.buck.rules.FakeBuildContext;
+import com.facebook.buck.rules.FakeBuildableContext;
+import com.facebook.buck.rules.HashedFileTool;
+import com.facebook.buck.rules.PathSourcePath;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.TestConsole;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+public class HeaderVfsOverlayIntegrationTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private Path clang;
+
+  @Before
+  public void findClang() {
+    Optional<Path> clangPath = new ExecutableFinder()
+        .getOptionalExecutable(Paths.get("clang"), ImmutableMap.copyOf(System.getenv()));
+    assumeTrue("-ivfsoverlay needs clang", clangPath.isPresent());
+    clang = clangPath.get();
+  }
+
+  @Test
+  public void headersAreFoundThroughTheOverlayAndNamedAsInTheTree() throws Exception {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(resolver);
+    SourcePathResolver pathResolver = new SourcePathResolver(ruleFinder);
+
+    Path header = Paths.get("lib/include/foo.h");
+    filesystem.mkdirs(header.getParent());
+    filesystem.writeContentsToPath("#define FOO 1\n", header);
+    Path relativeInput = Paths.get("app/main.c");
+    filesystem.mkdirs(relativeInput.getParent());
+    filesystem.writeContentsToPath(
+        "#include <lib/foo.h>\nint main() { return FOO - 1; }\n",
+        relativeInput);
+
+    // The header tree of //lib:lib, written as an overlay rather than as symbolic links.
+    BuildTarget target = BuildTargetFactory.newInstance("//lib:lib#default,headers");
+    Path root = BuildTargets.getGenPath(filesystem, target, "%s");
+    ImmutableMap<Path, SourcePath> links =
+        ImmutableMap.of(Paths.get("lib/foo.h"), new PathSourcePath(filesystem, header));
+    HeaderVfsOverlay overlay = new HeaderVfsOverlay(target, filesystem, root, links, ruleFinder);
+    resolver.addToIndex(overlay);
+
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+    for (Step step : overlay.getBuildSteps(
+        FakeBuildContext.withSourcePathResolver(pathResolver),
+        new FakeBuildableContext())) {
+      assertEquals(
+          step.getDescription(executionContext),
+          0,
+          step.execute(executionContext).getExitCode());
+    }
+    assertFalse(Files.exists(filesystem.resolve(root)));
+
+    Compiler compiler = new ClangCompiler(new HashedFileTool(clang));
+    ImmutableList<String> commandPrefix = compiler.getCommandPrefix(pathResolver);
+    Path output = filesystem.resolve(Paths.get("main.c.o"));
+    Path depFile = filesystem.resolve(Paths.get("main.c.o.dep"));
+    Path scratchDir = filesystem.getPath("scratchDir");
+    filesystem.mkdirs(scratchDir);
+    HeaderPathNormalizer headerPathNormalizer =
+        new HeaderPathNormalizer.Builder(pathResolver)
+            .addSymlinkTree(new ExplicitBuildTargetSourcePath(target, root), links)
+            .build();
+
+    CxxPreprocessAndCompileStep step =
+        new CxxPreprocessAndCompileStep(
+            filesystem,
+            CxxPreprocessAndCompileStep.Operation.PREPROCESS_AND_COMPILE,
+            output,
+            depFile,
+            relativeInput,
+            CxxSource.Type.C,
+            Optional.of(
+                new CxxPreprocessAndCompileStep.ToolCommand(
+                    commandPrefix,
+                    ImmutableList.of(
+                        "-ivfsoverlay", overlay.getVfsOverlay().get().toString(),
+                        "-I", filesystem.resolve(root).toString()),
+                    ImmutableMap.of(),
+                    Optional.empty())),
+            Optional.of(
+                new CxxPreprocessAndCompileStep.ToolCommand(
+                    commandPrefix,
+                    ImmutableList.of(),
+                    ImmutableMap.of(),
+                    Optional.empty())),
+            headerPathNormalizer,
+            CxxPlatformUtils.DEFAULT_COMPILER_DEBUG_PATH_SANITIZER,
+            CxxPlatformUtils.DEFAULT_ASSEMBLER_DEBUG_PATH_SANITIZER,
+            scratchDir,
+            /* useArgfile */ false,
+            compiler,
+            Optional.empty(),
+            Optional.empty());
+    TestConsole console = (TestConsole) executionContext.getConsole();
+    assertEquals(
+        "compile step failed: " + console.getTextWrittenToStdErr(),
+        0,
+        step.execute(executionContext).getExitCode());
+    assertFalse(Files.exists(filesystem.resolve(root)));
+
+    // The dep file names the header at its path in the tree, as it would with symbolic links...
+    Path headerInTree = filesystem.resolve(root).resolve("lib/foo.h");
+    try (Reader reader = Files.newBufferedReader(depFile, StandardCharsets.UTF_8)) {
+      assertThat(
+          Depfiles.parseDepfile(reader).getPrereqs(),
+          Matchers.hasItem(headerInTree.toString()));
+    }
+
+    // ...which is mapped back to the header itself.
+    assertEquals(
+        ImmutableList.of(filesystem.resolve(header)),
+        Depfiles.parseAndOutputBuckCompatibleDepfile(
+            BuckEventBusFactory.newInstance(),
+            filesystem,
+            headerPathNormalizer,
+            HeaderVerification.of(HeaderVerification.Mode.ERROR),
+            filesystem.relativize(depFile),
+            relativeInput,
+            filesystem.relativize(output)));
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.io.MorePaths;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.model.BuildTargets;
+import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.FakeBuildContext;
+import com.facebook.buck.rules.FakeBuildableContext;
+import com.facebook.buck.rules.HashedFileTool;
+import com.facebook.buck.rules.PathSourcePath;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.fs.MkdirStep;
+import com.facebook.buck.step.fs.RmStep;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+public class HeaderVfsOverlayTest {
+
+  @Rule
+  public final TemporaryPaths tmpDir = new TemporaryPaths();
+
+  private ProjectFilesystem projectFilesystem;
+  private HeaderVfsOverlay buildRule;
+  private SourcePathResolver pathResolver;
+  private Path symlinkTreeRoot;
+  private Path vfsOverlayPath;
+  private Path file1;
+  private Path file2;
+
+  @Before
+  public void setUp() throws Exception {
+    projectFilesystem = new FakeProjectFilesystem(tmpDir.getRoot());
+    BuildTarget buildTarget = BuildTargetFactory.newInstance("//test:test");
+
+    file1 = tmpDir.newFile();
+    Files.write(file1, "hello world".getBytes(Charsets.UTF_8));
+    file2 = tmpDir.newFile();
+    Files.write(file2, "hello world".getBytes(Charsets.UTF_8));
+    ImmutableMap<Path, SourcePath> links = ImmutableMap.of(
+        Paths.get("file"),
+        new PathSourcePath(projectFilesystem, MorePaths.relativize(tmpDir.getRoot(), file1)),
+        Paths.get("directory", "then", "file"),
+        new PathSourcePath(projectFilesystem, MorePaths.relativize(tmpDir.getRoot(), file2)));
+
+    symlinkTreeRoot =
+        BuildTargets.getGenPath(projectFilesystem, buildTarget, "%s/symlink-tree-root");
+
+    BuildRuleResolver ruleResolver = new BuildRuleResolver(
+        TargetGraph.EMPTY,
+        new DefaultTargetNodeToBuildRuleTransformer());
+    SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(ruleResolver);
+    pathResolver = new SourcePathResolver(ruleFinder);
+
+    buildRule = new HeaderVfsOverlay(
+        buildTarget,
+        projectFilesystem,
+        symlinkTreeRoot,
+        links,
+        ruleFinder);
+    ruleResolver.addToIndex(buildRule);
+
+    vfsOverlayPath = pathResolver.getRelativePath(buildRule.getSourcePathToOutput());
+  }
+
+  @Test
+  public void testBuildStepsOnlyWriteTheOverlay() {
+    BuildContext buildContext = FakeBuildContext.withSourcePathResolver(pathResolver);
+
+    ImmutableList<Step> expectedBuildSteps =
+        ImmutableList.of(
+            new MkdirStep(projectFilesystem, vfsOverlayPath.getParent()),
+            new RmStep(projectFilesystem, vfsOverlayPath),
+            new VfsOverlayStep(
+                projectFilesystem,
+                vfsOverlayPath,
+                projectFilesystem.resolve(symlinkTreeRoot),
+                ImmutableMap.of(
+                    Paths.get("file"), file1,
+                    Paths.get("directory", "then", "file"), file2)));
+    ImmutableList<Step> actualBuildSteps =
+        buildRule.getBuildSteps(buildContext, new FakeBuildableContext());
+    assertEquals(expectedBuildSteps, actualBuildSteps.subList(1, actualBuildSteps.size()));
+  }
+
+  @Test
+  public void testOverlayNestsDirectoriesUnderTheRoot() {
+    Path root = tmpDir.getRoot().resolve("root");
+    assertEquals(
+        ImmutableMap.of(
+            "version", 0,
+            "use-external-names", false,
+            "roots", ImmutableList.of(
+                ImmutableMap.of(
+                    "type", "directory",
+                    "name", root.toString(),
+                    "contents", ImmutableList.of(
+                        ImmutableMap.of(
+                            "type", "directory",
+                            "name", "directory",
+                            "contents", ImmutableList.of(
+                                ImmutableMap.of(
+                                    "type", "file",
+                                    "name", "a.h",
+                                    "external-contents", file1.toString()),
+                                ImmutableMap.of(
+                                    "type", "file",
+                                    "name", "b.h",
+                                    "external-contents", file2.toString()))),
+                        ImmutableMap.of(
+                            "type", "file",
+                            "name", "file.h",
+                            "external-contents", file1.toString()))))),
+        VfsOverlayStep.getOverlay(
+            root,
+            ImmutableMap.of(
+                Paths.get("file.h"), file1,
+                Paths.get("directory", "b.h"), file2,
+                Paths.get("directory", "a.h"), file1)));
+  }
+
+  @Test
+  public void testOverlayIsPassedBeforeTheIncludeRoots() {
+    CxxSymlinkTreeHeaders headers =
+        CxxSymlinkTreeHeaders.from(buildRule, CxxPreprocessables.IncludeType.SYSTEM);
+    assertEquals(Optional.empty(), headers.getHeaderMap());
+    Path overlay = projectFilesystem.resolve(vfsOverlayPath);
+    Path root = projectFilesystem.resolve(symlinkTreeRoot);
+    assertEquals(
+        ImmutableList.of("-ivfsoverlay", overlay.toString(), "-isystem", root.toString()),
+        ImmutableList.copyOf(
+            CxxHeaders.getArgs(
+                ImmutableList.of(headers),
+                pathResolver,
+                Optional.empty(),
+                new ClangPreprocessor(new HashedFileTool(Paths.get("clang"))))));
+    assertFalse(Files.exists(root));
+  }
+}
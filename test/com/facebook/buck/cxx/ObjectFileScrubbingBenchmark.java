@@ -0,0 +1,271 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.cxx.elf.ElfHeader;
+import com.facebook.buck.cxx.elf.ElfSectionHeader;
+import com.facebook.buck.io.FileContentsScrubber;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.ByteBufferReplacer;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Scrubs large synthetic linked binaries the way links with debug info are: restoring the
+ * compilation directory in the debug strings of an ELF file, both a chunk at a time and in
+ * parallel, and setting the LC_UUID of a Mach-O file from a hash of its contents.
+ */
+public class ObjectFileScrubbingBenchmark {
+
+  private static final int PATH_SIZE = 250;
+  private static final Path WORKING_DIR = Paths.get("/home/user/src/project");
+  private static final Path COMPILATION_DIR = Paths.get(".");
+
+  @Param({"64", "512"})
+  private int megabytes = 64;
+
+  private TemporaryPaths tempDir = new TemporaryPaths();
+
+  private MungingDebugPathSanitizer sanitizer;
+  private Path elf;
+  private Path macho;
+  private int pathsInElf;
+
+  @Before
+  public void setUpTest() throws Exception {
+    megabytes = 20;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    tempDir.before();
+    sanitizer =
+        new MungingDebugPathSanitizer(PATH_SIZE, '/', COMPILATION_DIR, ImmutableBiMap.of());
+    elf = tempDir.getRoot().resolve("large.so");
+    macho = tempDir.getRoot().resolve("large.dylib");
+    writeElf();
+    writeMacho();
+  }
+
+  @After
+  @AfterExperiment
+  public void cleanup() {
+    tempDir.after();
+  }
+
+  @Test
+  public void scrubbingCorrectness() throws Exception {
+    // The first pass restores every path, the second finds none left to restore.
+    ByteBufferReplacer replacer = sanitizer.getCompilationDirectoryReplacer(WORKING_DIR);
+    assertEquals(pathsInElf, restoreInParallel(replacer));
+    assertEquals(0, restoreInParallel(replacer));
+
+    scrubMachoUuid();
+    byte[] uuid = readMachoUuid();
+    assertFalse(ByteBuffer.wrap(uuid).equals(ByteBuffer.wrap(new byte[16])));
+    scrubMachoUuid();
+    assertArrayEquals(uuid, readMachoUuid());
+  }
+
+  @Benchmark
+  public int restoreCompilationDirectorySequentially() throws IOException {
+    return restore(sanitizer.getCompilationDirectoryReplacer(WORKING_DIR), Integer.MAX_VALUE);
+  }
+
+  @Benchmark
+  public void restoreCompilationDirectory() throws IOException {
+    sanitizer.restoreCompilationDirectory(elf, WORKING_DIR);
+  }
+
+  @Benchmark
+  public void scrubMachoUuid() throws IOException, FileContentsScrubber.ScrubException {
+    try (FileChannel channel =
+             FileChannel.open(macho, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      new LcUuidContentsScrubber().scrubFile(channel);
+    }
+  }
+
+  private int restoreInParallel(ByteBufferReplacer replacer) throws IOException {
+    // Use small chunks so that the correctness test splits the sections.
+    return restore(replacer, 1024 * 1024);
+  }
+
+  private int restore(ByteBufferReplacer replacer, int chunkSize) throws IOException {
+    int numReplacements = 0;
+    try (FileChannel channel =
+             FileChannel.open(elf, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer = channel.map(READ_WRITE, 0, channel.size());
+      Optional<ImmutableMap<String, DebugSection>> sections =
+          new DebugSectionFinder().find(buffer);
+      for (DebugSection section : sections.get().values()) {
+        numReplacements += replacer.replaceInParallel(section.body, chunkSize);
+      }
+    }
+    return numReplacements;
+  }
+
+  /**
+   * Writes an ELF file with a single, large, ".debug_str" section, which has the expanded working
+   * directory in it every few kilobytes.
+   */
+  private void writeElf() throws IOException {
+    byte[] names = "\0.debug_str\0.shstrtab\0".getBytes(Charsets.US_ASCII);
+    byte[] path = (sanitizer.getExpandedPath(WORKING_DIR) + "/file.c\0")
+        .getBytes(Charsets.US_ASCII);
+    long stringsOffset = 64;
+    long stringsSize = megabytes * 1024L * 1024L;
+    long namesOffset = stringsOffset + stringsSize;
+    long sectionHeadersOffset = (namesOffset + names.length + 7) / 8 * 8;
+
+    try (FileChannel channel =
+             FileChannel.open(
+                 elf,
+                 StandardOpenOption.CREATE,
+                 StandardOpenOption.READ,
+                 StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer = channel.map(READ_WRITE, 0, sectionHeadersOffset + 3 * 64);
+      new ElfHeader(
+          ElfHeader.EIClass.ELFCLASS64,
+          ElfHeader.EIData.ELFDATA2LSB,
+          /* ET_DYN */ 3,
+          /* EM_X86_64 */ 62,
+          ElfHeader.EV_CURRENT,
+          0,
+          0,
+          sectionHeadersOffset,
+          0,
+          64,
+          56,
+          0,
+          64,
+          3,
+          2)
+          .write(buffer);
+
+      // Fill the strings with random printable characters, with a path every 4kB.
+      Random random = new Random(0);
+      byte[] filler = new byte[4096 - path.length];
+      pathsInElf = 0;
+      while (buffer.position() + path.length + filler.length <= namesOffset) {
+        buffer.put(path);
+        pathsInElf++;
+        for (int i = 0; i < filler.length; i++) {
+          filler[i] = (byte) ('a' + random.nextInt(26));
+        }
+        buffer.put(filler);
+      }
+
+      buffer.position((int) namesOffset);
+      buffer.put(names);
+      buffer.position((int) sectionHeadersOffset);
+      ElfHeader.EIClass eiClass = ElfHeader.EIClass.ELFCLASS64;
+      new ElfSectionHeader(0, ElfSectionHeader.SHType.SHT_NULL, 0, 0, 0, 0, 0, 0, 0, 0)
+          .write(eiClass, buffer);
+      new ElfSectionHeader(
+          1,
+          ElfSectionHeader.SHType.SHT_PROGBITS,
+          0,
+          0,
+          stringsOffset,
+          stringsSize,
+          0,
+          0,
+          1,
+          1)
+          .write(eiClass, buffer);
+      new ElfSectionHeader(
+          12,
+          ElfSectionHeader.SHType.SHT_STRTAB,
+          0,
+          0,
+          namesOffset,
+          names.length,
+          0,
+          0,
+          1,
+          0)
+          .write(eiClass, buffer);
+    }
+  }
+
+  /**
+   * Writes a 64-bit Mach-O file with just an LC_UUID load command, followed by random contents.
+   */
+  private void writeMacho() throws IOException {
+    try (FileChannel channel =
+             FileChannel.open(
+                 macho,
+                 StandardOpenOption.CREATE,
+                 StandardOpenOption.READ,
+                 StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer = channel.map(READ_WRITE, 0, megabytes * 1024L * 1024L);
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      buffer.put(Machos.MH_CIGAM_64);
+      buffer.putInt(/* CPU_TYPE_X86_64 */ 0x01000007);
+      buffer.putInt(/* CPU_SUBTYPE_X86_64_ALL */ 3);
+      buffer.putInt(/* MH_DYLIB */ 6);
+      buffer.putInt(/* number of commands */ 1);
+      buffer.putInt(/* size of commands */ 24);
+      buffer.putInt(/* flags */ 0);
+      buffer.putInt(/* reserved */ 0);
+      buffer.putInt(Machos.LC_UUID);
+      buffer.putInt(/* command size */ 24);
+      buffer.put(new byte[16]);
+
+      Random random = new Random(0);
+      byte[] contents = new byte[4096];
+      while (buffer.remaining() >= contents.length) {
+        random.nextBytes(contents);
+        buffer.put(contents);
+      }
+    }
+  }
+
+  private byte[] readMachoUuid() throws IOException {
+    try (FileChannel channel = FileChannel.open(macho, StandardOpenOption.READ)) {
+      ByteBuffer uuid = ByteBuffer.allocate(16);
+      channel.read(uuid, 32 + 8);
+      return uuid.array();
+    }
+  }
+}
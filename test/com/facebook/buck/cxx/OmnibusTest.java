@@ -16,6 +16,9 @@
 
 package com.facebook.buck.cxx;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
@@ -450,6 +453,73 @@ public class OmnibusTest {
             Linker.LinkableDepType.STATIC_PIC));
   }
 
+  @Test
+  public void specsAreSharedByTheBinariesOfAnActionGraph() throws NoSuchBuildTargetException {
+    NativeLinkable a = new OmnibusNode("//:a");
+    NativeLinkable b = new OmnibusSharedOnlyNode("//:b");
+    NativeLinkTarget root = new OmnibusRootNode("//:root", ImmutableList.of(a, b));
+    NativeLinkable excludedRoot = new OmnibusNode("//:excluded_root");
+
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(
+            TargetGraph.EMPTY,
+            new DefaultTargetNodeToBuildRuleTransformer());
+    Omnibus.OmnibusSpec spec =
+        Omnibus.getSpec(
+            resolver,
+            CxxPlatformUtils.DEFAULT_PLATFORM,
+            ImmutableList.of(root),
+            ImmutableList.of(excludedRoot));
+    assertSame(
+        spec,
+        Omnibus.getSpec(
+            resolver,
+            CxxPlatformUtils.DEFAULT_PLATFORM,
+            ImmutableList.of(root),
+            ImmutableList.of(excludedRoot)));
+    assertNotSame(
+        spec,
+        Omnibus.getSpec(
+            resolver,
+            CxxPlatformUtils.DEFAULT_PLATFORM,
+            ImmutableList.of(root),
+            ImmutableList.of()));
+    assertNotSame(
+        spec,
+        Omnibus.getSpec(
+            new BuildRuleResolver(
+                TargetGraph.EMPTY,
+                new DefaultTargetNodeToBuildRuleTransformer()),
+            CxxPlatformUtils.DEFAULT_PLATFORM,
+            ImmutableList.of(root),
+            ImmutableList.of(excludedRoot)));
+    assertEquals(
+        Omnibus.buildSpec(
+            CxxPlatformUtils.DEFAULT_PLATFORM,
+            ImmutableList.of(root),
+            ImmutableList.of(excludedRoot)),
+        spec);
+
+    // Each binary still gets its own links.
+    SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(resolver);
+    for (String binary : ImmutableList.of("//:bin1", "//:bin2")) {
+      ImmutableMap<String, SourcePath> libs =
+          toSonameMap(
+              Omnibus.getSharedLibraries(
+                  new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance(binary)).build(),
+                  resolver,
+                  ruleFinder,
+                  CxxPlatformUtils.DEFAULT_CONFIG,
+                  CxxPlatformUtils.DEFAULT_PLATFORM,
+                  ImmutableList.of(),
+                  ImmutableList.of(root),
+                  ImmutableList.of(excludedRoot)));
+      assertThat(
+          getCxxLinkRule(ruleFinder, libs.get("libomnibus.so")).getBuildTarget().toString(),
+          Matchers.startsWith(binary + "#"));
+    }
+  }
+
   private CxxLink getCxxLinkRule(SourcePathRuleFinder ruleFinder, SourcePath path) {
     return ((CxxLink) ruleFinder.getRuleOrThrow((ExplicitBuildTargetSourcePath) path));
   }
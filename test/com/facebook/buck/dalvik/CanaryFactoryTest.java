@@ -0,0 +1,63 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.dalvik;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.jvm.java.classes.FileLike;
+import com.google.common.io.ByteStreams;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public class CanaryFactoryTest {
+
+  @Test
+  public void canaryIsNamedAfterItsIndex() throws IOException {
+    FileLike canary = CanaryFactory.create("secondary", 7);
+
+    assertEquals("secondary/dex07/Canary.class", canary.getRelativePath());
+    assertCanaryClass("secondary/dex07/Canary", canary);
+  }
+
+  @Test
+  public void canaryIsNamedAfterItsKey() throws IOException {
+    FileLike canary = CanaryFactory.create("secondary", "0123456789abcdef");
+
+    assertEquals("secondary/dex0123456789abcdef/Canary.class", canary.getRelativePath());
+    assertCanaryClass("secondary/dex0123456789abcdef/Canary", canary);
+  }
+
+  private void assertCanaryClass(String expectedName, FileLike canary) throws IOException {
+    byte[] bytes;
+    try (InputStream input = canary.getInput()) {
+      bytes = ByteStreams.toByteArray(input);
+    }
+    assertEquals(bytes.length, canary.getSize());
+
+    ClassReader reader = new ClassReader(bytes);
+    assertEquals(expectedName, reader.getClassName());
+    assertEquals("java/lang/Object", reader.getSuperName());
+    assertEquals(
+        Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT,
+        reader.getAccess());
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.dalvik;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.classes.ClasspathTraversal;
+import com.facebook.buck.jvm.java.classes.DefaultClasspathTraverser;
+import com.facebook.buck.jvm.java.classes.FileLike;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class DalvikStatsCacheTest {
+
+  @Rule
+  public TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private Path statsDir;
+
+  @Before
+  public void setUp() {
+    statsDir = tmpDir.getRoot().toPath().resolve("stats");
+  }
+
+  @Test
+  public void statsAreTheSameAsDalvikStatsToolsAndWrittenDown() throws Exception {
+    Path jar = writeJar("a.jar", DalvikStatsTool.class);
+
+    Map<String, DalvikStatsTool.Stats> stats = getStats(new DalvikStatsCache(statsDir), jar);
+
+    DalvikStatsTool.Stats expected;
+    try (InputStream in = openClass(DalvikStatsTool.class)) {
+      expected = DalvikStatsTool.getEstimate(in);
+    }
+    assertStatsEqual(expected, stats.get("Foo.class"));
+    assertEquals(DalvikStatsTool.Stats.ZERO, stats.get("foo.properties"));
+    assertEquals(1, listStatsDir().size());
+  }
+
+  @Test
+  public void statsAreReadBackFromTheStatsFileOfTheJar() throws Exception {
+    Path firstJar = writeJar("a.jar", DalvikStatsTool.class);
+    Path secondJar = writeJar("b.jar", DalvikStatsCache.class);
+    Map<String, DalvikStatsTool.Stats> firstStats =
+        getStats(new DalvikStatsCache(statsDir), firstJar);
+    Path firstStatsFile = listStatsDir().get(0);
+    getStats(new DalvikStatsCache(statsDir), secondJar);
+    Path secondStatsFile = listStatsDir().stream()
+        .filter(path -> !path.equals(firstStatsFile))
+        .findFirst()
+        .get();
+
+    // If the stats file of the second jar is used, it now has the stats of the first.
+    Files.copy(firstStatsFile, secondStatsFile, StandardCopyOption.REPLACE_EXISTING);
+
+    Map<String, DalvikStatsTool.Stats> secondStats =
+        getStats(new DalvikStatsCache(statsDir), secondJar);
+    assertStatsEqual(firstStats.get("Foo.class"), secondStats.get("Foo.class"));
+  }
+
+  @Test
+  public void statsFilesOfJarsThatAreNoLongerUsedAreDeleted() throws Exception {
+    getStats(new DalvikStatsCache(statsDir), writeJar("a.jar", DalvikStatsTool.class));
+    Path firstStatsFile = listStatsDir().get(0);
+
+    DalvikStatsCache cache = new DalvikStatsCache(statsDir);
+    getStats(cache, writeJar("b.jar", DalvikStatsCache.class));
+    cache.deleteUnusedStatsFiles();
+
+    ImmutableList<Path> statsFiles = listStatsDir();
+    assertEquals(1, statsFiles.size());
+    assertFalse(statsFiles.contains(firstStatsFile));
+  }
+
+  private static void assertStatsEqual(
+      DalvikStatsTool.Stats expected,
+      DalvikStatsTool.Stats actual) {
+    assertEquals(expected.estimatedLinearAllocSize, actual.estimatedLinearAllocSize);
+    assertEquals(expected.methodReferences, actual.methodReferences);
+    assertEquals(expected.fieldReferences, actual.fieldReferences);
+  }
+
+  private Map<String, DalvikStatsTool.Stats> getStats(DalvikStatsCache cache, Path jar)
+      throws IOException {
+    final Map<String, DalvikStatsTool.Stats> stats = new HashMap<>();
+    new DefaultClasspathTraverser().traverse(
+        new ClasspathTraversal(
+            Collections.singleton(jar),
+            new ProjectFilesystem(tmpDir.getRoot().toPath())) {
+          @Override
+          public void visit(FileLike fileLike) throws IOException {
+            stats.put(fileLike.getRelativePath(), cache.getStats(fileLike));
+          }
+        });
+    return stats;
+  }
+
+  private ImmutableList<Path> listStatsDir() throws IOException {
+    try (Stream<Path> files = Files.list(statsDir)) {
+      return ImmutableList.copyOf(files.sorted().iterator());
+    }
+  }
+
+  /**
+   * Writes a jar with the given class as Foo.class, and a resource.
+   */
+  private Path writeJar(String name, Class<?> clazz) throws IOException {
+    Path jar = tmpDir.getRoot().toPath().resolve(name);
+    ImmutableMap.Builder<String, byte[]> entries = ImmutableMap.builder();
+    try (InputStream in = openClass(clazz)) {
+      entries.put("Foo.class", ByteStreams.toByteArray(in));
+    }
+    entries.put("foo.properties", "key=value".getBytes(Charsets.UTF_8));
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+      for (Map.Entry<String, byte[]> entry : entries.build().entrySet()) {
+        out.putNextEntry(new ZipEntry(entry.getKey()));
+        out.write(entry.getValue());
+      }
+    }
+    return jar;
+  }
+
+  private static InputStream openClass(Class<?> clazz) {
+    return clazz.getResourceAsStream(clazz.getSimpleName() + ".class");
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles a small library against a synthetic classpath of many single-class jars, the way a
+ * {@code java_library} near the top of a large build would be, with and without the shared
+ * {@link ClasspathIndexCache}.
+ */
+public class ClasspathIndexBenchmark {
+  @Param({"100", "2000"})
+  private int jarCount = 100;
+
+  private TemporaryPaths tempDir = new TemporaryPaths();
+
+  private JavaCompiler compiler;
+  private ClasspathIndexCache indexCache;
+  private String classpath;
+  private File source;
+  private Path output;
+
+  @Before
+  public void setUpTest() throws Exception {
+    jarCount = 10;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    tempDir.before();
+    compiler = ToolProvider.getSystemJavaCompiler();
+    indexCache = new ClasspathIndexCache(/* maxIndexedEntries */ 1_000_000);
+
+    List<String> jars = new ArrayList<>();
+    StringBuilder sourceContents = new StringBuilder("class Main {\n");
+    for (int i = 0; i < jarCount; i++) {
+      jars.add(writeLibraryJar(i).toString());
+      // Reference a tenth of the libraries, as a typical library uses few of its deps directly.
+      if (i % 10 == 0) {
+        sourceContents.append(String.format("  lib%d.C%d field%d;\n", i, i, i));
+      }
+    }
+    sourceContents.append("}\n");
+    classpath = Joiner.on(File.pathSeparator).join(jars);
+
+    Path sourcePath = tempDir.newFile("Main.java");
+    Files.write(sourcePath, sourceContents.toString().getBytes(StandardCharsets.UTF_8));
+    source = sourcePath.toFile();
+    output = tempDir.newFolder("out");
+  }
+
+  @After
+  @AfterExperiment
+  public void cleanup() {
+    tempDir.after();
+  }
+
+  @Test
+  public void compileCorrectness() throws Exception {
+    assertTrue(compileWithStandardFileManager());
+    assertTrue(compileWithClasspathIndex());
+  }
+
+  @Benchmark
+  public boolean compileWithStandardFileManager() throws IOException {
+    return compile(compiler.getStandardFileManager(null, null, null));
+  }
+
+  @Benchmark
+  public boolean compileWithClasspathIndex() throws IOException {
+    return compile(
+        new ClasspathIndexingFileManager(
+            compiler.getStandardFileManager(null, null, null),
+            indexCache));
+  }
+
+  private boolean compile(StandardJavaFileManager fileManager) throws IOException {
+    try {
+      return compiler.getTask(
+          null,
+          fileManager,
+          null,
+          ImmutableList.of(
+              "-classpath", classpath,
+              "-sourcepath", "",
+              "-d", output.toString()),
+          null,
+          fileManager.getJavaFileObjects(source)).call();
+    } finally {
+      fileManager.close();
+    }
+  }
+
+  private Path writeLibraryJar(int index) throws IOException {
+    String className = String.format("lib%d/C%d", index, index);
+    ClassWriter classWriter = new ClassWriter(0);
+    classWriter.visit(
+        Opcodes.V1_7,
+        Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER,
+        className,
+        null,
+        "java/lang/Object",
+        null);
+    classWriter.visitEnd();
+
+    Path jar = tempDir.getRoot().resolve(String.format("lib%d.jar", index));
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      out.putNextEntry(new JarEntry(className + ".class"));
+      out.write(classWriter.toByteArray());
+      out.closeEntry();
+    }
+    return jar;
+  }
+}
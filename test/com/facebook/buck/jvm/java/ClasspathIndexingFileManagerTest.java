@@ -0,0 +1,229 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+public class ClasspathIndexingFileManagerTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private JavaCompiler compiler;
+  private ClasspathIndexCache indexCache;
+  private ClasspathIndexingFileManager fileManager;
+
+  @Before
+  public void setUp() {
+    compiler = ToolProvider.getSystemJavaCompiler();
+    indexCache = new ClasspathIndexCache(/* maxIndexedEntries */ 1000);
+    fileManager = new ClasspathIndexingFileManager(
+        compiler.getStandardFileManager(null, null, null),
+        indexCache);
+  }
+
+  @Test
+  public void listsClassesInPackageFromIndex() throws Exception {
+    Path jar = writeJar(
+        "lib.jar",
+        "com/example/A.class",
+        "com/example/B.class",
+        "com/example/inner/C.class",
+        "com/example/notes.txt");
+    fileManager.setLocation(StandardLocation.CLASS_PATH, ImmutableList.of(jar.toFile()));
+
+    assertThat(
+        names(fileManager.list(
+            StandardLocation.CLASS_PATH,
+            "com.example",
+            ImmutableSet.of(JavaFileObject.Kind.CLASS),
+            /* recurse */ false)),
+        containsInAnyOrder("com/example/A.class", "com/example/B.class"));
+    assertThat(
+        names(fileManager.list(
+            StandardLocation.CLASS_PATH,
+            "com",
+            ImmutableSet.of(JavaFileObject.Kind.CLASS),
+            /* recurse */ true)),
+        containsInAnyOrder(
+            "com/example/A.class",
+            "com/example/B.class",
+            "com/example/inner/C.class"));
+    assertThat(
+        names(fileManager.list(
+            StandardLocation.CLASS_PATH,
+            "com.other",
+            ImmutableSet.of(JavaFileObject.Kind.CLASS),
+            /* recurse */ false)),
+        empty());
+  }
+
+  @Test
+  public void listedEntriesReportJarUrisAndBinaryNames() throws Exception {
+    Path jar = writeJar("lib.jar", "com/example/A$Inner.class");
+    fileManager.setLocation(StandardLocation.CLASS_PATH, ImmutableList.of(jar.toFile()));
+
+    JavaFileObject entry = Iterables.getOnlyElement(
+        fileManager.list(
+            StandardLocation.CLASS_PATH,
+            "com.example",
+            ImmutableSet.of(JavaFileObject.Kind.CLASS),
+            /* recurse */ false));
+
+    assertEquals("jar", entry.toUri().getScheme());
+    String[] parts = entry.toUri().getRawSchemeSpecificPart().split("!/");
+    assertEquals(jar.toAbsolutePath(), Paths.get(URI.create(parts[0])));
+    assertEquals("com/example/A$Inner.class", parts[1]);
+    assertEquals(
+        "com.example.A$Inner",
+        fileManager.inferBinaryName(StandardLocation.CLASS_PATH, entry));
+  }
+
+  @Test
+  public void compilesAgainstIndexedJar() throws Exception {
+    Path jar = compileToJar("dep.jar", "dep/Dep.java", "package dep; public class Dep {}");
+    Path source = tmp.newFile("Main.java");
+    Files.write(
+        source,
+        "class Main { dep.Dep dep = new dep.Dep(); }".getBytes(StandardCharsets.UTF_8));
+    Path output = tmp.newFolder("out");
+
+    boolean success = compiler.getTask(
+        null,
+        fileManager,
+        null,
+        ImmutableList.of(
+            "-classpath", jar.toString(),
+            "-sourcepath", "",
+            "-d", output.toString()),
+        null,
+        fileManager.getJavaFileObjects(source.toFile())).call();
+    fileManager.close();
+
+    assertTrue(success);
+    assertTrue(Files.exists(output.resolve("Main.class")));
+  }
+
+  @Test
+  public void identicalJarsShareOneIndex() throws Exception {
+    Path first = writeJar("first.jar", "com/example/A.class");
+    Path second = tmp.getRoot().resolve("second.jar");
+    Files.copy(first, second);
+
+    indexCache.getEntriesByPackage(first);
+    indexCache.getEntriesByPackage(second);
+
+    assertEquals(1, indexCache.size());
+  }
+
+  @Test
+  public void directoriesOnClasspathAreListedByTheUnderlyingFileManager() throws Exception {
+    Path classes = tmp.newFolder("classes");
+    Files.createDirectories(classes.resolve("com/example"));
+    Files.write(classes.resolve("com/example/A.class"), new byte[0]);
+    Path jar = writeJar("lib.jar", "com/example/B.class");
+    fileManager.setLocation(
+        StandardLocation.CLASS_PATH,
+        ImmutableList.of(classes.toFile(), jar.toFile()));
+
+    List<String> binaryNames = StreamSupport.stream(
+        fileManager.list(
+            StandardLocation.CLASS_PATH,
+            "com.example",
+            ImmutableSet.of(JavaFileObject.Kind.CLASS),
+            /* recurse */ false).spliterator(),
+        false)
+        .map(file -> fileManager.inferBinaryName(StandardLocation.CLASS_PATH, file))
+        .collect(Collectors.toList());
+    assertThat(binaryNames, containsInAnyOrder("com.example.A", "com.example.B"));
+    assertEquals(0, indexCache.size());
+  }
+
+  private Path writeJar(String name, String... entries) throws IOException {
+    Path jar = tmp.getRoot().resolve(name);
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      for (String entry : entries) {
+        out.putNextEntry(new JarEntry(entry));
+        out.write(entry.getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+      }
+    }
+    return jar;
+  }
+
+  private Path compileToJar(String name, String sourceName, String source) throws IOException {
+    Path sources = tmp.newFolder();
+    Path sourceFile = sources.resolve(sourceName);
+    Files.createDirectories(sourceFile.getParent());
+    Files.write(sourceFile, source.getBytes(StandardCharsets.UTF_8));
+    Path classes = tmp.newFolder();
+    assertEquals(
+        0,
+        compiler.run(null, null, null, "-d", classes.toString(), sourceFile.toString()));
+
+    Path jar = tmp.getRoot().resolve(name);
+    List<Path> classFiles;
+    try (Stream<Path> walk = Files.walk(classes)) {
+      classFiles = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      for (Path classFile : classFiles) {
+        out.putNextEntry(new JarEntry(classes.relativize(classFile).toString()));
+        out.write(Files.readAllBytes(classFile));
+        out.closeEntry();
+      }
+    }
+    return jar;
+  }
+
+  private static List<String> names(Iterable<JavaFileObject> files) {
+    return StreamSupport.stream(files.spliterator(), false)
+        .map(JavaFileObject::getName)
+        .collect(Collectors.toList());
+  }
+}
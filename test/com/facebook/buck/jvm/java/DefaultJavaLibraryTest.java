@@ -415,7 +415,7 @@ public class DefaultJavaLibraryTest {
     JavacStep javacStep = javacSteps.get(0);
     assertEquals(
         "The classpath for the javac step to compile //:libtwo should contain only bar.jar.",
-        ImmutableSet.of(libraryOne.getProjectFilesystem().resolve("java/src/com/libone/bar.jar")),
+        ImmutableList.of(libraryOne.getProjectFilesystem().resolve("java/src/com/libone/bar.jar")),
         javacStep.getClasspathEntries());
   }
 
@@ -1420,7 +1420,7 @@ public class DefaultJavaLibraryTest {
 
       ImmutableList<String> options = javacCommand.getOptions(
           executionContext,
-          /* buildClasspathEntries */ ImmutableSortedSet.of());
+          /* buildClasspathEntries */ ImmutableList.of());
 
       return options;
     }
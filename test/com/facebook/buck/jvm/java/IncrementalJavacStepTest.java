@@ -0,0 +1,259 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+public class IncrementalJavacStepTest {
+
+  private static final Path A = Paths.get("src/com/example/A.java");
+  private static final Path B = Paths.get("src/com/example/B.java");
+  private static final Path C = Paths.get("src/com/example/C.java");
+  private static final ImmutableSortedSet<Path> SOURCES = ImmutableSortedSet.of(A, B, C);
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private List<ImmutableSortedSet<Path>> compilations;
+  private List<ImmutableList<Path>> classpaths;
+  private ImmutableList<Path> classpath;
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    compilations = new ArrayList<>();
+    classpaths = new ArrayList<>();
+    classpath = ImmutableList.of();
+    filesystem.mkdirs(A.getParent());
+    writeA("public static final int VALUE = 1;", "return 1;");
+    filesystem.writeContentsToPath(
+        "package com.example;\n" +
+            "public class B {\n" +
+            "  int get() { return new A().size() + A.VALUE; }\n" +
+            "  Runnable runnable() { return new Runnable() { public void run() {} }; }\n" +
+            "}\n",
+        B);
+    filesystem.writeContentsToPath(
+        "package com.example;\n" +
+            "public class C {\n" +
+            "  static class Nested {}\n" +
+            "}\n",
+        C);
+  }
+
+  @Test
+  public void unchangedSourcesAreNotRecompiled() throws Exception {
+    build();
+    assertEquals(SOURCES, getLastCompilation());
+
+    build();
+    assertEquals(1, compilations.size());
+    assertOutputMatchesCleanBuild();
+  }
+
+  @Test
+  public void changesToMethodBodiesOnlyRecompileTheChangedSource() throws Exception {
+    build();
+    writeA("public static final int VALUE = 1;", "return 2;");
+    build();
+
+    assertEquals(ImmutableSortedSet.of(A), getLastCompilation());
+    assertOutputMatchesCleanBuild();
+  }
+
+  @Test
+  public void changesToTheAbiRecompileTheSourcesWhichUseIt() throws Exception {
+    build();
+    writeA("public static final int VALUE = 1;\n  public void added() {}", "return 1;");
+    build();
+
+    assertEquals(3, compilations.size());
+    assertEquals(ImmutableSortedSet.of(A), compilations.get(1));
+    assertEquals(ImmutableSortedSet.of(A, B), getLastCompilation());
+    assertOutputMatchesCleanBuild();
+  }
+
+  @Test
+  public void changesToConstantsRecompileEverything() throws Exception {
+    build();
+    writeA("public static final int VALUE = 2;", "return 1;");
+    build();
+
+    assertEquals(SOURCES, getLastCompilation());
+    assertOutputMatchesCleanBuild();
+  }
+
+  @Test
+  public void unchangedClassesComeBeforeTheClasspath() throws Exception {
+    filesystem.mkdirs(Paths.get("lib"));
+    classpath = ImmutableList.of(filesystem.resolve("lib"));
+    build();
+    writeA("public static final int VALUE = 1;", "return 2;");
+    build();
+
+    assertEquals(ImmutableSortedSet.of(A), getLastCompilation());
+    assertEquals(
+        ImmutableList.of(filesystem.resolve("out"), filesystem.resolve("lib")),
+        classpaths.get(classpaths.size() - 1));
+  }
+
+  @Test
+  public void addingASourceRecompilesEverything() throws Exception {
+    build();
+    Path d = Paths.get("src/com/example/D.java");
+    filesystem.writeContentsToPath("package com.example;\npublic class D {}\n", d);
+    StepExecutionResult result = createStep(
+        ImmutableSortedSet.<Path>naturalOrder().addAll(SOURCES).add(d).build(),
+        Paths.get("out"),
+        Paths.get("state")).execute(createContext());
+
+    assertTrue(result.isSuccess());
+    assertEquals(4, getLastCompilation().size());
+  }
+
+  private void writeA(String members, String sizeBody) throws IOException {
+    filesystem.writeContentsToPath(
+        "package com.example;\n" +
+            "public class A {\n" +
+            "  " + members + "\n" +
+            "  public int size() { " + sizeBody + " }\n" +
+            "}\n",
+        A);
+  }
+
+  /**
+   * Builds the way a java_library does, starting from an empty output directory.
+   */
+  private void build() throws Exception {
+    filesystem.deleteRecursivelyIfExists(Paths.get("out"));
+    filesystem.mkdirs(Paths.get("out"));
+    StepExecutionResult result =
+        createStep(SOURCES, Paths.get("out"), Paths.get("state")).execute(createContext());
+    assertTrue(result.isSuccess());
+  }
+
+  private void assertOutputMatchesCleanBuild() throws Exception {
+    filesystem.deleteRecursivelyIfExists(Paths.get("clean"));
+    filesystem.mkdirs(Paths.get("clean"));
+    StepExecutionResult result =
+        createStep(SOURCES, Paths.get("clean"), Paths.get("clean-state"))
+            .execute(createContext());
+    assertTrue(result.isSuccess());
+
+    ImmutableSortedSet<Path> expected = listClassFiles(Paths.get("clean"));
+    assertEquals(expected, listClassFiles(Paths.get("out")));
+    for (Path classFile : expected) {
+      assertArrayEquals(
+          classFile.toString(),
+          Files.readAllBytes(filesystem.resolve(Paths.get("clean").resolve(classFile))),
+          Files.readAllBytes(filesystem.resolve(Paths.get("out").resolve(classFile))));
+    }
+  }
+
+  private ImmutableSortedSet<Path> listClassFiles(Path directory) throws IOException {
+    ImmutableSortedSet.Builder<Path> classFiles = ImmutableSortedSet.naturalOrder();
+    for (Path path : filesystem.getFilesUnderPath(directory)) {
+      classFiles.add(directory.relativize(path));
+    }
+    return classFiles.build();
+  }
+
+  private ImmutableSortedSet<Path> getLastCompilation() {
+    return compilations.get(compilations.size() - 1);
+  }
+
+  private ExecutionContext createContext() {
+    return TestExecutionContext.newInstance();
+  }
+
+  private IncrementalJavacStep createStep(
+      ImmutableSortedSet<Path> sources,
+      Path outputDirectory,
+      Path stateDirectory) {
+    SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer()));
+    SourcePathResolver resolver = new SourcePathResolver(ruleFinder);
+    JavacOptions javacOptions = JavacOptions.builder()
+        .setSourceLevel("8")
+        .setTargetLevel("8")
+        .setIncrementalCompilation(true)
+        .build();
+    BuildTarget target = BuildTargetFactory.newInstance("//src/com/example:example");
+    return new IncrementalJavacStep(
+        filesystem,
+        stateDirectory,
+        outputDirectory,
+        sources,
+        classpath,
+        javacOptions,
+        resolver,
+        ruleFinder,
+        NoOpClassUsageFileWriter.instance(),
+        (compiledSources, compiledClasspath, writer) -> {
+          if (outputDirectory.equals(Paths.get("out"))) {
+            compilations.add(compiledSources);
+            classpaths.add(compiledClasspath);
+          }
+          return new JavacStep(
+              outputDirectory,
+              writer,
+              Optional.empty(),
+              compiledSources,
+              Paths.get("srcs_list"),
+              compiledClasspath,
+              javacOptions.getJavac(),
+              javacOptions,
+              target,
+              Optional.empty(),
+              resolver,
+              ruleFinder,
+              filesystem,
+              new ClasspathChecker(),
+              Optional.empty());
+        });
+  }
+}
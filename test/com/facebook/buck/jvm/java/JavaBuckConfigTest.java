@@ -318,6 +318,20 @@ public class JavaBuckConfigTest {
         Matchers.equalTo(JavacOptions.JavacLocation.OUT_OF_PROCESS));
   }
 
+  @Test
+  public void testOutOfProcessHeapSize() throws IOException {
+    assertEquals(
+        Optional.empty(),
+        createWithDefaultFilesystem(new StringReader(""))
+            .getDefaultJavacOptions()
+            .getOutOfProcessHeapSize());
+    assertEquals(
+        Optional.of("2g"),
+        createWithDefaultFilesystem(new StringReader("[java]\nout_of_process_heap_size = 2g"))
+            .getDefaultJavacOptions()
+            .getOutOfProcessHeapSize());
+  }
+
   @Test
   public void testJavaLocationInProcessByDefault()
       throws IOException, NoSuchBuildTargetException, InterruptedException {
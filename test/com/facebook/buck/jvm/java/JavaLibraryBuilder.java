@@ -42,8 +42,16 @@ public class JavaLibraryBuilder extends
       BuildTarget target,
       ProjectFilesystem projectFilesystem,
       HashCode hashCode) {
+    this(target, projectFilesystem, hashCode, DEFAULT_JAVAC_OPTIONS);
+  }
+
+  protected JavaLibraryBuilder(
+      BuildTarget target,
+      ProjectFilesystem projectFilesystem,
+      HashCode hashCode,
+      JavacOptions defaultOptions) {
     super(
-        new JavaLibraryDescription(DEFAULT_JAVAC_OPTIONS, false),
+        new JavaLibraryDescription(defaultOptions, false),
         target,
         projectFilesystem,
         hashCode);
@@ -68,6 +76,13 @@ public class JavaLibraryBuilder extends
     return new JavaLibraryBuilder(target, new FakeProjectFilesystem(), hashCode);
   }
 
+  public static JavaLibraryBuilder createBuilder(
+      BuildTarget target,
+      ProjectFilesystem projectFilesystem,
+      JavacOptions defaultOptions) {
+    return new JavaLibraryBuilder(target, projectFilesystem, null, defaultOptions);
+  }
+
   public JavaLibraryBuilder addDep(BuildTarget rule) {
     arg.deps = amend(arg.deps, rule);
     return this;
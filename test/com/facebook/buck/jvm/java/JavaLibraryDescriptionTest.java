@@ -16,6 +16,7 @@
 
 package com.facebook.buck.jvm.java;
 
+import static com.facebook.buck.jvm.java.JavaCompilationConstants.DEFAULT_JAVAC_OPTIONS;
 import static org.hamcrest.junit.MatcherAssert.assertThat;
 
 import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
@@ -23,16 +24,25 @@ import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.FakeBuildContext;
+import com.facebook.buck.rules.FakeBuildableContext;
 import com.facebook.buck.rules.FakeBuildRule;
 import com.facebook.buck.rules.FakeExportDependenciesRule;
+import com.facebook.buck.rules.FakeSourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.testutil.TargetGraphFactory;
+import com.google.common.collect.Iterables;
 
 import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.file.Paths;
+
 public class JavaLibraryDescriptionTest {
 
   private FakeExportDependenciesRule exportingRule;
@@ -69,4 +79,143 @@ public class JavaLibraryDescriptionTest {
 
     assertThat(javaLibrary.getDeps(), Matchers.<BuildRule>hasItem(exportedRule));
   }
+
+  @Test
+  public void dependentsUseAbiGeneratedFromSourceInSourceMode() throws Exception {
+    JavacOptions options = DEFAULT_JAVAC_OPTIONS
+        .withAbiGenerationMode(JavacOptions.AbiGenerationMode.SOURCE);
+    TargetNode<?, ?> depNode =
+        JavaLibraryBuilder.createBuilder(
+            BuildTargetFactory.newInstance("//:dep"),
+            new FakeProjectFilesystem(),
+            options)
+            .addSrc(Paths.get("Dep.java"))
+            .build();
+    TargetNode<?, ?> libraryNode =
+        JavaLibraryBuilder.createBuilder(
+            BuildTargetFactory.newInstance("//:lib"),
+            new FakeProjectFilesystem(),
+            options)
+            .addSrc(Paths.get("Lib.java"))
+            .addDep(depNode.getBuildTarget())
+            .build();
+    resolver = new BuildRuleResolver(
+        TargetGraphFactory.newInstance(depNode, libraryNode),
+        new DefaultTargetNodeToBuildRuleTransformer());
+
+    BuildRule library = resolver.requireRule(libraryNode.getBuildTarget());
+    BuildRule libraryAbi = resolver.requireRule(((HasJavaAbi) library).getAbiJar().get());
+    BuildRule depAbi = resolver.requireRule(
+        depNode.getBuildTarget().withFlavors(HasJavaAbi.ABI_FLAVOR));
+
+    assertThat(libraryAbi, Matchers.instanceOf(CalculateSourceAbi.class));
+    assertThat(depAbi, Matchers.instanceOf(CalculateSourceAbi.class));
+    assertThat(libraryAbi.getDeps(), Matchers.contains(depAbi));
+  }
+
+  @Test
+  public void librariesCompileAgainstTheAbisOfTheirDepsInSourceMode() throws Exception {
+    JavacOptions options = DEFAULT_JAVAC_OPTIONS
+        .withAbiGenerationMode(JavacOptions.AbiGenerationMode.SOURCE);
+    TargetNode<?, ?> exportedNode =
+        JavaLibraryBuilder.createBuilder(
+            BuildTargetFactory.newInstance("//:exported"),
+            new FakeProjectFilesystem(),
+            options)
+            .addSrc(Paths.get("Exported.java"))
+            .build();
+    TargetNode<?, ?> depNode =
+        JavaLibraryBuilder.createBuilder(
+            BuildTargetFactory.newInstance("//:dep"),
+            new FakeProjectFilesystem(),
+            options)
+            .addSrc(Paths.get("Dep.java"))
+            .addExportedDep(exportedNode.getBuildTarget())
+            .build();
+    TargetNode<?, ?> libraryNode =
+        JavaLibraryBuilder.createBuilder(
+            BuildTargetFactory.newInstance("//:lib"),
+            new FakeProjectFilesystem(),
+            options)
+            .addSrc(Paths.get("Lib.java"))
+            .addDep(depNode.getBuildTarget())
+            .build();
+    resolver = new BuildRuleResolver(
+        TargetGraphFactory.newInstance(exportedNode, depNode, libraryNode),
+        new DefaultTargetNodeToBuildRuleTransformer());
+    SourcePathResolver pathResolver = new SourcePathResolver(new SourcePathRuleFinder(resolver));
+
+    JavaLibrary library = (JavaLibrary) resolver.requireRule(libraryNode.getBuildTarget());
+    JavaLibrary dep = (JavaLibrary) resolver.requireRule(depNode.getBuildTarget());
+    JavaLibrary exported = (JavaLibrary) resolver.requireRule(exportedNode.getBuildTarget());
+    BuildRule depAbi = resolver.requireRule(dep.getAbiJar().get());
+    BuildRule exportedAbi = resolver.requireRule(exported.getAbiJar().get());
+
+    // The library waits only for the ABI jars of the libraries it compiles against...
+    assertThat(library.getDeps(), Matchers.hasItems(depAbi, exportedAbi));
+    assertThat(library.getDeps(), Matchers.not(Matchers.hasItem(dep)));
+    assertThat(library.getDeps(), Matchers.not(Matchers.hasItem(exported)));
+    JavacStep javacStep = (JavacStep) Iterables.find(
+        library.getBuildSteps(
+            FakeBuildContext.withSourcePathResolver(pathResolver),
+            new FakeBuildableContext()),
+        JavacStep.class::isInstance);
+    assertThat(
+        javacStep.getClasspathEntries(),
+        Matchers.containsInAnyOrder(
+            pathResolver.getAbsolutePath(depAbi.getSourcePathToOutput()),
+            pathResolver.getAbsolutePath(exportedAbi.getSourcePathToOutput())));
+
+    // ...but its dependents still get the full jars at run time.
+    assertThat(library.getTransitiveClasspathDeps(), Matchers.hasItems(dep, exported));
+  }
+
+  @Test
+  public void abiIsComparedWithAbiGeneratedFromSourceWhenMigrating() throws Exception {
+    JavacOptions options = DEFAULT_JAVAC_OPTIONS
+        .withAbiGenerationMode(JavacOptions.AbiGenerationMode.MIGRATING_TO_SOURCE);
+    TargetNode<?, ?> libraryNode =
+        JavaLibraryBuilder.createBuilder(
+            BuildTargetFactory.newInstance("//:lib"),
+            new FakeProjectFilesystem(),
+            options)
+            .addSrc(Paths.get("Lib.java"))
+            .build();
+    resolver = new BuildRuleResolver(
+        TargetGraphFactory.newInstance(libraryNode),
+        new DefaultTargetNodeToBuildRuleTransformer());
+
+    BuildRule library = resolver.requireRule(libraryNode.getBuildTarget());
+    BuildRule libraryAbi = resolver.requireRule(((HasJavaAbi) library).getAbiJar().get());
+    BuildRule sourceAbi = resolver.requireRule(
+        libraryNode.getBuildTarget().withFlavors(HasJavaAbi.SOURCE_ABI_FLAVOR));
+
+    assertThat(libraryAbi, Matchers.instanceOf(CalculateAbi.class));
+    assertThat(sourceAbi, Matchers.instanceOf(CalculateSourceAbi.class));
+    assertThat(libraryAbi.getDeps(), Matchers.containsInAnyOrder(library, sourceAbi));
+  }
+
+  @Test
+  public void librariesWithResourcesKeepTheirCompiledAbiInSourceMode() throws Exception {
+    JavacOptions options = DEFAULT_JAVAC_OPTIONS
+        .withAbiGenerationMode(JavacOptions.AbiGenerationMode.SOURCE);
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    filesystem.touch(Paths.get("resource.txt"));
+    TargetNode<?, ?> libraryNode =
+        JavaLibraryBuilder.createBuilder(
+            BuildTargetFactory.newInstance("//:lib"),
+            filesystem,
+            options)
+            .addSrc(Paths.get("Lib.java"))
+            .addResource(new FakeSourcePath("resource.txt"))
+            .build();
+    resolver = new BuildRuleResolver(
+        TargetGraphFactory.newInstance(libraryNode),
+        new DefaultTargetNodeToBuildRuleTransformer());
+
+    BuildRule library = resolver.requireRule(libraryNode.getBuildTarget());
+    BuildRule libraryAbi = resolver.requireRule(((HasJavaAbi) library).getAbiJar().get());
+
+    assertThat(libraryAbi, Matchers.instanceOf(CalculateAbi.class));
+  }
 }
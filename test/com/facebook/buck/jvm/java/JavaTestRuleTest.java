@@ -18,7 +18,10 @@ package com.facebook.buck.jvm.java;
 
 import static org.easymock.EasyMock.createMock;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.parser.NoSuchBuildTargetException;
@@ -31,14 +34,17 @@ import com.facebook.buck.step.TargetDevice;
 import com.facebook.buck.testutil.MoreAsserts;
 import com.facebook.buck.util.MoreCollectors;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
 import java.nio.file.Paths;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 public class JavaTestRuleTest {
 
@@ -134,6 +140,38 @@ public class JavaTestRuleTest {
             transitiveDep.getBuildTarget()));
   }
 
+  @Test
+  public void testClassesAreDealtOutToStableDisjointShards() {
+    ImmutableSet<String> classes = ImmutableSet.of("d.DTest", "a.ATest", "c.CTest", "b.BTest");
+    ImmutableList<ImmutableSet<String>> shards = JavaTest.getClassesPerShard(classes, 3);
+    assertEquals(3, shards.size());
+    Set<String> dealt = new HashSet<>();
+    for (ImmutableSet<String> shard : shards) {
+      assertFalse(shard.isEmpty());
+      for (String testClass : shard) {
+        assertTrue(dealt.add(testClass));
+      }
+    }
+    assertEquals(classes, dealt);
+    assertEquals(
+        shards,
+        JavaTest.getClassesPerShard(
+            ImmutableSet.of("b.BTest", "c.CTest", "a.ATest", "d.DTest"),
+            3));
+    assertEquals(
+        ImmutableList.of(ImmutableSet.of("a.ATest")),
+        JavaTest.getClassesPerShard(ImmutableSet.of("a.ATest"), 3));
+  }
+
+  @Test
+  public void shardsLogToTheirOwnFiles() throws Exception {
+    JavaTest rule = newRule(ImmutableList.of());
+    assertNotEquals(rule.getPathToShardTestLogs(0), rule.getPathToShardTestLogs(1));
+    assertEquals(
+        rule.getPathToTestOutputDirectory(),
+        rule.getPathToShardTestLogs(0).getParent());
+  }
+
   private JavaTest newRule(ImmutableList<String> vmArgs) throws NoSuchBuildTargetException {
     return JavaTestBuilder
         .createBuilder(BuildTargetFactory.newInstance("//example:test"))
@@ -94,7 +94,8 @@ public class JavacExecutionContextSerializerTest {
         environment,
         processExecutor,
         pathToInputs,
-        Optional.of(directToJarOutputSettings));
+        Optional.of(directToJarOutputSettings),
+        Optional.empty());
     Map<String, Object> data = JavacExecutionContextSerializer.serialize(input);
     JavacExecutionContext output = JavacExecutionContextSerializer.deserialize(
         data,
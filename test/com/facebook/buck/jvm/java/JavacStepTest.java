@@ -47,6 +47,8 @@ import org.junit.Test;
 import java.nio.file.Paths;
 import java.util.Optional;
 
+import javax.lang.model.SourceVersion;
+
 public class JavacStepTest {
 
   @Test
@@ -67,6 +69,13 @@ public class JavacStepTest {
         missingImports);
   }
 
+  @Test
+  public void sourceAbisAreWrittenForTheTargetLevel() {
+    assertEquals(SourceVersion.RELEASE_7, JavacStep.getClassFileVersion("7"));
+    assertEquals(SourceVersion.RELEASE_7, JavacStep.getClassFileVersion("1.7"));
+    assertEquals(SourceVersion.RELEASE_8, JavacStep.getClassFileVersion("8.0"));
+  }
+
   @Test
   public void successfulCompileDoesNotSendStdoutAndStderrToConsole() throws Exception {
     FakeJavac fakeJavac = new FakeJavac();
@@ -93,7 +102,7 @@ public class JavacStepTest {
         Optional.empty(),
         ImmutableSortedSet.of(),
         Paths.get("pathToSrcsList"),
-        ImmutableSortedSet.of(),
+        ImmutableList.of(),
         fakeJavac,
         javacOptions,
         BuildTargetFactory.newInstance("//foo:bar"),
@@ -148,7 +157,7 @@ public class JavacStepTest {
         Optional.empty(),
         ImmutableSortedSet.of(),
         Paths.get("pathToSrcsList"),
-        ImmutableSortedSet.of(),
+        ImmutableList.of(),
         fakeJavac,
         javacOptions,
         BuildTargetFactory.newInstance("//foo:bar"),
@@ -207,7 +216,7 @@ public class JavacStepTest {
         Optional.empty(),
         ImmutableSortedSet.of(),
         Paths.get("pathToSrcsList"),
-        ImmutableSortedSet.of(),
+        ImmutableList.of(),
         fakeJavac,
         javacOptions,
         BuildTargetFactory.newInstance("//foo:bar"),
@@ -264,7 +273,7 @@ public class JavacStepTest {
         Optional.empty(),
         ImmutableSortedSet.of(),
         Paths.get("pathToSrcsList"),
-        ImmutableSortedSet.of(),
+        ImmutableList.of(),
         fakeJavac,
         javacOptions,
         BuildTargetFactory.newInstance("//foo:bar"),
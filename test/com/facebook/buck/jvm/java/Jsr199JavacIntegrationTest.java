@@ -17,6 +17,8 @@
 package com.facebook.buck.jvm.java;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -59,6 +61,7 @@ import java.nio.file.Paths;
 import java.util.Locale;
 import java.util.Optional;
 import java.util.Set;
+import java.util.jar.JarFile;
 
 import javax.lang.model.SourceVersion;
 import javax.tools.DiagnosticListener;
@@ -128,6 +131,7 @@ public class Jsr199JavacIntegrationTest {
         executionContext.getEnvironment(),
         executionContext.getProcessExecutor(),
         ImmutableList.of(),
+        Optional.empty(),
         Optional.empty());
 
     int exitCode = javac.buildWithClasspath(
@@ -148,6 +152,45 @@ public class Jsr199JavacIntegrationTest {
         new String(Files.readAllBytes(pathToSrcsList), StandardCharsets.UTF_8).trim());
   }
 
+  @Test
+  public void sourceAbiJarIsWrittenWithoutCompilingClasses()
+      throws IOException, InterruptedException {
+    Jsr199Javac javac = createJavac(/* withSyntaxError */ false);
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+    JavacExecutionContext javacExecutionContext = JavacExecutionContext.of(
+        new JavacEventSinkToBuckEventBusBridge(executionContext.getBuckEventBus()),
+        executionContext.getStdErr(),
+        executionContext.getClassLoaderCache(),
+        executionContext.getObjectMapper(),
+        executionContext.getVerbosity(),
+        executionContext.getCellPathResolver(),
+        executionContext.getJavaPackageFinder(),
+        createProjectFilesystem(),
+        NoOpClassUsageFileWriter.instance(),
+        executionContext.getEnvironment(),
+        executionContext.getProcessExecutor(),
+        ImmutableList.of(),
+        Optional.empty(),
+        Optional.empty());
+    Path outputDir = tmp.getRoot().resolve("out");
+    Path abiJar = tmp.getRoot().resolve("example-abi.jar");
+
+    int exitCode = javac.buildSourceAbiJar(
+        javacExecutionContext,
+        BuildTargetFactory.newInstance("//some:example"),
+        ImmutableList.of("-d", outputDir.toString()),
+        SOURCE_PATHS,
+        pathToSrcsList,
+        abiJar,
+        SourceVersion.RELEASE_8);
+    assertEquals("javac should exit with code 0.", exitCode, 0);
+
+    assertFalse(Files.exists(outputDir.resolve("com/example/Example.class")));
+    try (JarFile jar = new JarFile(abiJar.toFile())) {
+      assertNotNull(jar.getEntry("com/example/Example.class"));
+    }
+  }
+
   /**
    * There was a bug where `BuildTargetSourcePath` sources were written to the classes file using
    * their string representation, rather than their resolved path.
@@ -177,6 +220,7 @@ public class Jsr199JavacIntegrationTest {
         executionContext.getEnvironment(),
         executionContext.getProcessExecutor(),
         ImmutableList.of(),
+        Optional.empty(),
         Optional.empty());
 
     int exitCode = javac.buildWithClasspath(
@@ -279,6 +323,7 @@ public class Jsr199JavacIntegrationTest {
         executionContext.getEnvironment(),
         executionContext.getProcessExecutor(),
         ImmutableList.of(fakeJavacJar),
+        Optional.empty(),
         Optional.empty());
 
     boolean caught = false;
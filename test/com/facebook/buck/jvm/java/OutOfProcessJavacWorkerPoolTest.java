@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.event.BuckEventBusFactory;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.DefaultCellPathResolver;
+import com.facebook.buck.shell.BuiltInWorkerProcessPool;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.TestConsole;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.CapturingPrintStream;
+import com.facebook.buck.util.ClassLoaderCache;
+import com.facebook.buck.util.ContextualProcessExecutor;
+import com.facebook.buck.util.DefaultProcessExecutor;
+import com.facebook.buck.util.ObjectMappers;
+import com.facebook.buck.util.Verbosity;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+public class OutOfProcessJavacWorkerPoolTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void workersHaveAGigabyteOfHeapByDefault() {
+    assertEquals(
+        1024L * 1024L * 1024L,
+        BuiltInWorkerProcessPool.parseHeapSize(OutOfProcessJavacWorkerPool.DEFAULT_HEAP_SIZE));
+  }
+
+  @Test
+  public void workersWhichDieAreReplaced() throws Exception {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    tmp.newFolder("out");
+    Files.write(
+        tmp.getRoot().resolve("Example.java"),
+        "class Example {}".getBytes(StandardCharsets.UTF_8));
+
+    try (ExecutionContext context = TestExecutionContext.newInstance()) {
+      OutOfProcessJavacWorkerPool pool =
+          OutOfProcessJavacWorkerPool.get(context, filesystem, Optional.of("256m"));
+      assertEquals(0, compile(pool, filesystem));
+
+      OutOfProcessJavacWorker deadWorker = pool.borrowWorker();
+      deadWorker.getWorkerProcess().close();
+      pool.returnWorker(deadWorker);
+      try {
+        compile(pool, filesystem);
+        fail("Compiling in a dead worker should have failed.");
+      } catch (RuntimeException e) {
+        // Expected: the connection to the worker is gone.
+      }
+
+      Files.delete(tmp.getRoot().resolve("out/Example.class"));
+      assertEquals(0, compile(pool, filesystem));
+      assertTrue(Files.exists(tmp.getRoot().resolve("out/Example.class")));
+      OutOfProcessJavacWorker newWorker = pool.borrowWorker();
+      assertNotSame(deadWorker, newWorker);
+      pool.returnWorker(newWorker);
+      assertEquals(
+          pool,
+          OutOfProcessJavacWorkerPool.get(context, filesystem, Optional.of("256m")));
+      assertNotEquals(
+          pool,
+          OutOfProcessJavacWorkerPool.get(context, filesystem, Optional.of("512m")));
+    }
+  }
+
+  private int compile(OutOfProcessJavacWorkerPool pool, ProjectFilesystem filesystem)
+      throws InterruptedException {
+    JavacExecutionContext context = JavacExecutionContext.of(
+        new JavacEventSinkToBuckEventBusBridge(BuckEventBusFactory.newInstance()),
+        new CapturingPrintStream(),
+        new ClassLoaderCache(),
+        ObjectMappers.newDefaultInstance(),
+        Verbosity.STANDARD_INFORMATION,
+        new DefaultCellPathResolver(tmp.getRoot(), ImmutableMap.of()),
+        new DefaultJavaPackageFinder(ImmutableSortedSet.of(), ImmutableSet.of()),
+        filesystem,
+        NoOpClassUsageFileWriter.instance(),
+        ImmutableMap.of(),
+        new ContextualProcessExecutor(
+            new DefaultProcessExecutor(new TestConsole()),
+            ImmutableMap.of()),
+        ImmutableList.of(),
+        Optional.empty(),
+        Optional.of(pool));
+    return new OutOfProcessJdkProvidedInMemoryJavac().buildWithClasspath(
+        context,
+        BuildTargetFactory.newInstance("//some:example"),
+        ImmutableList.of("-d", tmp.getRoot().resolve("out").toString()),
+        ImmutableList.of(),
+        ImmutableSortedSet.of(Paths.get("Example.java")),
+        tmp.getRoot().resolve("srcs_list"),
+        Optional.empty(),
+        JavacOptions.AbiGenerationMode.CLASS);
+  }
+}
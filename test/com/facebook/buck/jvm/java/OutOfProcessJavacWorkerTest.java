@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.event.BuckEventBusFactory;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.message_ipc.InvocationMessage;
+import com.facebook.buck.message_ipc.MessageDispatcher;
+import com.facebook.buck.message_ipc.MessageSerializer;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.DefaultCellPathResolver;
+import com.facebook.buck.shell.FakeWorkerProcess;
+import com.facebook.buck.testutil.TestConsole;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.CapturingPrintStream;
+import com.facebook.buck.util.ClassLoaderCache;
+import com.facebook.buck.util.ContextualProcessExecutor;
+import com.facebook.buck.util.DefaultProcessExecutor;
+import com.facebook.buck.util.ObjectMappers;
+import com.facebook.buck.util.Verbosity;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class OutOfProcessJavacWorkerTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private final List<InvocationMessage> invocations = new ArrayList<>();
+  private boolean failNextInvocation;
+  private OutOfProcessJavacWorker worker;
+  private CapturingPrintStream stdErr;
+
+  @Before
+  public void setUp() throws IOException {
+    ObjectMapper objectMapper = ObjectMappers.newDefaultInstance();
+    MessageSerializer serializer = new MessageSerializer(objectMapper);
+    MessageDispatcher<OutOfProcessJavacConnectionInterface> dispatcher = new MessageDispatcher<>(
+        OutOfProcessJavacConnectionInterface.class,
+        new OutOfProcessJavacReceiver(new TestConsole()),
+        objectMapper);
+
+    // Send every invocation through the same serialization as a real worker process would.
+    OutOfProcessJavacConnectionInterface connection =
+        (OutOfProcessJavacConnectionInterface) Proxy.newProxyInstance(
+            OutOfProcessJavacConnectionInterface.class.getClassLoader(),
+            new Class<?>[] {OutOfProcessJavacConnectionInterface.class},
+            (proxy, method, args) -> {
+              if (failNextInvocation) {
+                failNextInvocation = false;
+                throw new IOException("Worker went away");
+              }
+              InvocationMessage invocation = serializer.deserializeInvocation(
+                  serializer.serializeInvocation(
+                      new InvocationMessage(method.getName(), Arrays.asList(args))));
+              invocations.add(invocation);
+              return serializer.deserializeResult(
+                  serializer.serializeResult(dispatcher.dispatch(invocation))).getValue();
+            });
+    worker = new OutOfProcessJavacWorker(new FakeWorkerProcess(ImmutableMap.of()), connection);
+    stdErr = new CapturingPrintStream();
+
+    tmp.newFolder("out");
+    Files.write(
+        tmp.getRoot().resolve("Example.java"),
+        "class Example {}".getBytes(StandardCharsets.UTF_8));
+    Files.write(
+        tmp.getRoot().resolve("Broken.java"),
+        "class Broken {".getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void compilesInReceiver() throws Exception {
+    int exitCode = build("Example.java", ImmutableList.of());
+
+    assertEquals(0, exitCode);
+    assertTrue(Files.exists(tmp.getRoot().resolve("out/Example.class")));
+  }
+
+  @Test
+  public void compilerErrorsAreReturnedToCaller() throws Exception {
+    int exitCode = build("Broken.java", ImmutableList.of());
+
+    assertNotEquals(0, exitCode);
+    assertThat(
+        stdErr.getContentsAsString(StandardCharsets.UTF_8),
+        Matchers.containsString("Broken.java"));
+  }
+
+  @Test
+  public void onlyChangedContextEntriesAreSentAfterFirstInvocation() throws Exception {
+    build("Example.java", ImmutableList.of());
+    build("Example.java", ImmutableList.of(Paths.get("/some/input.jar")));
+
+    assertEquals(2, invocations.size());
+    List<Object> first = invocations.get(0).getArguments();
+    assertEquals(true, first.get(1));
+    assertTrue(
+        ((Map<?, ?>) first.get(2)).keySet().containsAll(
+            ImmutableSet.of("verbosity", "env", "project_file_system_root")));
+
+    List<Object> second = invocations.get(1).getArguments();
+    assertEquals(false, second.get(1));
+    assertEquals(
+        ImmutableSet.of("absolute_paths_for_inputs"),
+        ((Map<?, ?>) second.get(2)).keySet());
+    assertThat((List<?>) second.get(3), Matchers.empty());
+  }
+
+  @Test
+  public void contextIsSentInFullAfterFailedInvocation() throws Exception {
+    build("Example.java", ImmutableList.of());
+    failNextInvocation = true;
+    try {
+      build("Example.java", ImmutableList.of());
+      fail("Expected the invocation to fail.");
+    } catch (RuntimeException e) {
+      // Expected: the proxy wraps the checked exception.
+    }
+    assertEquals(0, build("Example.java", ImmutableList.of()));
+
+    assertEquals(2, invocations.size());
+    assertEquals(true, invocations.get(1).getArguments().get(1));
+  }
+
+  private int build(String source, ImmutableList<Path> absolutePathsForInputs)
+      throws InterruptedException {
+    Path out = tmp.getRoot().resolve("out");
+    JavacExecutionContext context = JavacExecutionContext.of(
+        new JavacEventSinkToBuckEventBusBridge(BuckEventBusFactory.newInstance()),
+        stdErr,
+        new ClassLoaderCache(),
+        ObjectMappers.newDefaultInstance(),
+        Verbosity.STANDARD_INFORMATION,
+        new DefaultCellPathResolver(tmp.getRoot(), ImmutableMap.of()),
+        new DefaultJavaPackageFinder(ImmutableSortedSet.of(), ImmutableSet.of()),
+        new ProjectFilesystem(tmp.getRoot()),
+        NoOpClassUsageFileWriter.instance(),
+        ImmutableMap.of(),
+        new ContextualProcessExecutor(
+            new DefaultProcessExecutor(new TestConsole()),
+            ImmutableMap.of()),
+        absolutePathsForInputs,
+        Optional.empty(),
+        Optional.empty());
+    return worker.buildWithClasspath(
+        null,
+        context,
+        BuildTargetFactory.newInstance("//some:example"),
+        ImmutableList.of("-d", out.toString()),
+        ImmutableSortedSet.of(Paths.get(source)),
+        tmp.getRoot().resolve("srcs_list"),
+        Optional.empty(),
+        JavacOptions.AbiGenerationMode.CLASS);
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.abi;
+
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.testutil.TestCompiler;
+import com.google.common.base.Joiner;
+
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import javax.lang.model.SourceVersion;
+
+public class StubJarComparatorTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private ProjectFilesystem filesystem;
+
+  @Before
+  public void createTempFilesystem() throws IOException {
+    filesystem = new ProjectFilesystem(temp.newFolder().toPath());
+  }
+
+  @Test
+  public void stubsFromClassesAndSourcesOfSimpleClassesAreTheSame() throws IOException {
+    Path[] stubJars = createClassAndSourceStubJars(
+        "package com.example.buck;",
+        "public class A {",
+        "  public static final int CONSTANT = 3;",
+        "  protected String name;",
+        "  public A(String name) { this.name = name; }",
+        "  public String getName() { return name; }",
+        "  public void setName(String name) { this.name = name; }",
+        "  private void ignored() {}",
+        "}");
+
+    assertThat(
+        StubJarComparator.findDifferingClasses(stubJars[0], stubJars[1]),
+        Matchers.empty());
+  }
+
+  @Test
+  public void bridgeMethodsOnlyInClassStubsAreReported() throws IOException {
+    Path[] stubJars = createClassAndSourceStubJars(
+        "package com.example.buck;",
+        "public class A implements Comparable<A> {",
+        "  public int compareTo(A other) { return 0; }",
+        "}");
+
+    assertThat(
+        StubJarComparator.findDifferingClasses(stubJars[0], stubJars[1]),
+        Matchers.contains(Paths.get("com/example/buck/A.class")));
+  }
+
+  private Path[] createClassAndSourceStubJars(String... source) throws IOException {
+    Path outputDir = temp.newFolder().toPath();
+    StubJarGeneratingProcessor stubJarGenerator = new StubJarGeneratingProcessor(
+        filesystem,
+        outputDir.resolve("source-stub.jar"),
+        SourceVersion.RELEASE_8);
+    Path fullJar = outputDir.resolve("full.jar");
+    try (TestCompiler compiler = new TestCompiler()) {
+      compiler.init();
+      compiler.addSourceFileContents("A.java", Joiner.on('\n').join(source));
+      compiler.setProcessors(Collections.singletonList(stubJarGenerator));
+      compiler.compile();
+      compiler.getClasses().createJar(fullJar);
+    }
+
+    Path classStubJar = outputDir.resolve("class-stub.jar");
+    new StubJar(fullJar).writeTo(filesystem, classStubJar);
+    return new Path[] {
+        classStubJar,
+        filesystem.resolve(stubJarGenerator.getStubJarPath())};
+  }
+}
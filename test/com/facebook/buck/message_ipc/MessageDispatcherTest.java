@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.message_ipc;
+
+import static org.junit.Assert.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class MessageDispatcherTest {
+
+  private interface LocalInterface {
+    String describe(TimeUnit unit, List<String> names, Map<String, Object> extras, String nothing);
+    int fail(int code) throws IOException;
+  }
+
+  private static class LocalObject implements LocalInterface {
+    @Override
+    public String describe(
+        TimeUnit unit,
+        List<String> names,
+        Map<String, Object> extras,
+        String nothing) {
+      return unit + " " + Joiner.on(',').join(names) + " " + extras + " " + nothing;
+    }
+
+    @Override
+    public int fail(int code) throws IOException {
+      throw new IOException("failed with " + code);
+    }
+  }
+
+  @Test
+  public void testArgumentsAreConvertedToParameterTypes() throws Exception {
+    ObjectMapper objectMapper = new ObjectMapper();
+    MessageSerializer messageSerializer = new MessageSerializer(objectMapper);
+    MessageDispatcher<LocalInterface> dispatcher =
+        new MessageDispatcher<>(LocalInterface.class, new LocalObject(), objectMapper);
+
+    InvocationMessage invocation = messageSerializer.deserializeInvocation(
+        "{\"type\":\"InvocationMessage\",\"name\":\"describe\"," +
+            "\"args\":[\"SECONDS\",[\"a\",\"b\"],{\"k\":1},null]}");
+    String result = messageSerializer.serializeResult(dispatcher.dispatch(invocation));
+
+    assertThat(
+        result,
+        Matchers.equalTo(
+            "{\"type\":\"ReturnResultMessage\",\"value\":\"SECONDS a,b {k=1} null\"}"));
+  }
+
+  @Test(expected = IOException.class)
+  public void testExceptionsAreRethrown() throws Exception {
+    ObjectMapper objectMapper = new ObjectMapper();
+    MessageDispatcher<LocalInterface> dispatcher =
+        new MessageDispatcher<>(LocalInterface.class, new LocalObject(), objectMapper);
+
+    dispatcher.dispatch(new InvocationMessage("fail", ImmutableList.of(3)));
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testUnknownMethodsAreRejected() throws Exception {
+    ObjectMapper objectMapper = new ObjectMapper();
+    MessageDispatcher<LocalInterface> dispatcher =
+        new MessageDispatcher<>(LocalInterface.class, new LocalObject(), objectMapper);
+
+    dispatcher.dispatch(new InvocationMessage("fail", ImmutableList.of(3, 4)));
+  }
+}
@@ -36,6 +36,9 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
 public class BuildRuleResolverTest {
 
   @Rule
@@ -147,4 +150,26 @@ public class BuildRuleResolverTest {
     resolver.getRuleWithType(BuildTargetFactory.newInstance("//foo:bar"), JavaBinary.class);
   }
 
+  @Test
+  public void memosAreComputedOncePerResolver() throws Exception {
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    AtomicInteger computations = new AtomicInteger();
+    Supplier<String> compute = () -> "value" + computations.incrementAndGet();
+    assertThat(resolver.computeMemoIfAbsent("key", String.class, compute), equalTo("value1"));
+    assertThat(resolver.computeMemoIfAbsent("key", String.class, compute), equalTo("value1"));
+    assertThat(computations.get(), equalTo(1));
+    assertThat(
+        resolver.computeMemoIfAbsent(
+            "nested",
+            String.class,
+            () -> resolver.computeMemoIfAbsent("inner", String.class, () -> "inner") + "!"),
+        equalTo("inner!"));
+
+    BuildRuleResolver otherResolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    assertThat(otherResolver.computeMemoIfAbsent("key", String.class, compute), equalTo("value2"));
+    assertThat(computations.get(), equalTo(2));
+  }
+
 }
@@ -33,6 +33,7 @@ import org.junit.Test;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -297,6 +298,109 @@ public class ManifestTest {
         Matchers.equalTo(Optional.of(key2)));
   }
 
+  @Test
+  public void lookupMatchesFirstEntryAddedAmongBucketedAndOtherEntries() throws IOException {
+    SourcePath common = new FakeSourcePath("common.h");
+    SourcePath other = new FakeSourcePath("other.h");
+    String commonHeader = RESOLVER.getRelativePath(common).toString();
+    String otherHeader = RESOLVER.getRelativePath(other).toString();
+    ImmutableMap.Builder<RuleKey, ImmutableMap<String, HashCode>> entries =
+        ImmutableMap.builder();
+    for (int i = 0; i < 10; i++) {
+      entries.put(
+          new RuleKey(String.format("a%d", i)),
+          ImmutableMap.of(commonHeader, HashCode.fromInt(i)));
+    }
+    // Doesn't depend on the header that tells the other entries apart, so isn't in their buckets.
+    entries.put(new RuleKey("bb"), ImmutableMap.of(otherHeader, HashCode.fromInt(1)));
+    entries.put(
+        new RuleKey("cc"),
+        ImmutableMap.of(commonHeader, HashCode.fromInt(3), otherHeader, HashCode.fromInt(1)));
+    Manifest manifest = Manifest.fromMap(entries.build());
+
+    FileHashCache fileHashCache =
+        new FakeFileHashCache(
+            ImmutableMap.of(
+                RESOLVER.getAbsolutePath(common), HashCode.fromInt(3),
+                RESOLVER.getAbsolutePath(other), HashCode.fromInt(1)));
+    assertThat(
+        manifest.lookup(fileHashCache, RESOLVER, ImmutableSet.of(common, other)),
+        Matchers.equalTo(Optional.of(new RuleKey("a3"))));
+    assertThat(
+        manifest.lookup(fileHashCache, RESOLVER, ImmutableSet.of(other)),
+        Matchers.equalTo(Optional.of(new RuleKey("bb"))));
+
+    fileHashCache =
+        new FakeFileHashCache(
+            ImmutableMap.of(
+                RESOLVER.getAbsolutePath(common), HashCode.fromInt(20),
+                RESOLVER.getAbsolutePath(other), HashCode.fromInt(2)));
+    assertThat(
+        manifest.lookup(fileHashCache, RESOLVER, ImmutableSet.of(common, other)),
+        Matchers.equalTo(Optional.empty()));
+  }
+
+  @Test
+  public void deserializedManifestLooksUpWithTheSerializedIndex() throws IOException {
+    SourcePath common = new FakeSourcePath("common.h");
+    SourcePath other = new FakeSourcePath("other.h");
+    String commonHeader = RESOLVER.getRelativePath(common).toString();
+    String otherHeader = RESOLVER.getRelativePath(other).toString();
+    ImmutableMap.Builder<RuleKey, ImmutableMap<String, HashCode>> entries =
+        ImmutableMap.builder();
+    for (int i = 0; i < 10; i++) {
+      entries.put(
+          new RuleKey(String.format("a%d", i)),
+          ImmutableMap.of(commonHeader, HashCode.fromInt(i), otherHeader, HashCode.fromInt(1)));
+    }
+    entries.put(new RuleKey("bb"), ImmutableMap.of(otherHeader, HashCode.fromInt(2)));
+
+    ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+    Manifest.fromMap(entries.build()).serialize(serialized);
+    Manifest manifest = new Manifest(new ByteArrayInputStream(serialized.toByteArray()));
+
+    FileHashCache fileHashCache =
+        new FakeFileHashCache(
+            ImmutableMap.of(
+                RESOLVER.getAbsolutePath(common), HashCode.fromInt(7),
+                RESOLVER.getAbsolutePath(other), HashCode.fromInt(1)));
+    assertThat(
+        manifest.lookup(fileHashCache, RESOLVER, ImmutableSet.of(common, other)),
+        Matchers.equalTo(Optional.of(new RuleKey("a7"))));
+    fileHashCache =
+        new FakeFileHashCache(
+            ImmutableMap.of(RESOLVER.getAbsolutePath(other), HashCode.fromInt(2)));
+    assertThat(
+        manifest.lookup(fileHashCache, RESOLVER, ImmutableSet.of(other)),
+        Matchers.equalTo(Optional.of(new RuleKey("bb"))));
+
+    // The index round-trips with the rest of the manifest.
+    ByteArrayOutputStream reserialized = new ByteArrayOutputStream();
+    manifest.serialize(reserialized);
+    assertThat(reserialized.toByteArray(), Matchers.equalTo(serialized.toByteArray()));
+  }
+
+  @Test
+  public void headersWithTheSameHashKeepTheirOwnHeader() throws IOException {
+    ImmutableMap<RuleKey, ImmutableMap<String, HashCode>> entries =
+        ImmutableMap.of(
+            new RuleKey("aa"),
+            ImmutableMap.of("foo.h", HashCode.fromInt(1), "bar.h", HashCode.fromInt(1)));
+    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    Manifest.fromMap(entries).serialize(byteArrayOutputStream);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(byteArrayOutputStream.size());
+    buffer.put(byteArrayOutputStream.toByteArray());
+    buffer.flip();
+    assertThat(
+        new Manifest(buffer).toMap(),
+        Matchers.equalTo(entries));
+  }
+
+  @Test(expected = IOException.class)
+  public void manifestOfAnotherVersionIsRejected() throws IOException {
+    new Manifest(ByteBuffer.wrap(new byte[] {0, 0, 0, 0, 0, 0, 0, 0}));
+  }
+
   @Test
   public void size() {
     assertThat(new Manifest().size(), Matchers.equalTo(0));
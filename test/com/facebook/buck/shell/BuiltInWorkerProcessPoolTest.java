@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.shell;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.util.FakeProcessExecutor;
+import com.facebook.buck.util.HumanReadableException;
+import com.facebook.buck.util.concurrent.ConcurrencyLimit;
+import com.facebook.buck.util.concurrent.ResourceAllocationFairness;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+public class BuiltInWorkerProcessPoolTest {
+
+  private static final long ONE_GB = 1024L * 1024L * 1024L;
+
+  @Test
+  public void poolIsLimitedByAvailableMemory() {
+    // Each 2GB worker takes 22 of the 100MB memory units.
+    assertEquals(2, BuiltInWorkerProcessPool.getMaxWorkers(limit(8, 50), 2 * ONE_GB));
+  }
+
+  @Test
+  public void poolIsLimitedByThreads() {
+    assertEquals(8, BuiltInWorkerProcessPool.getMaxWorkers(limit(8, 200), ONE_GB));
+  }
+
+  @Test
+  public void poolAlwaysHasAtLeastOneWorker() {
+    assertEquals(1, BuiltInWorkerProcessPool.getMaxWorkers(limit(8, 5), ONE_GB));
+  }
+
+  @Test
+  public void heapSizesAreParsedLikeXmx() {
+    assertEquals(2 * ONE_GB, BuiltInWorkerProcessPool.parseHeapSize("2g"));
+    assertEquals(ONE_GB, BuiltInWorkerProcessPool.parseHeapSize("1024M"));
+    assertEquals(1024L, BuiltInWorkerProcessPool.parseHeapSize("1k"));
+    assertEquals(4096L, BuiltInWorkerProcessPool.parseHeapSize("4096"));
+  }
+
+  @Test(expected = HumanReadableException.class)
+  public void invalidHeapSizesAreRejected() {
+    BuiltInWorkerProcessPool.parseHeapSize("lots");
+  }
+
+  @Test
+  public void javaWorkersRunFromAnAbsoluteClasspath() {
+    ImmutableList<String> command = BuiltInWorkerProcessPool.getJavaWorkerCommand(
+        Optional.of("512m"),
+        BuiltInWorkerProcessPoolTest.class.getName());
+    assertThat(command, Matchers.hasItem("-Xmx512m"));
+    assertEquals(BuiltInWorkerProcessPoolTest.class.getName(), command.get(command.size() - 1));
+    String classpath = command.get(command.indexOf("-classpath") + 1);
+    for (String entry : classpath.split(File.pathSeparator)) {
+      assertThat(entry, Paths.get(entry).isAbsolute(), Matchers.is(true));
+    }
+
+    assertThat(
+        BuiltInWorkerProcessPool.getJavaWorkerCommand(
+            Optional.empty(),
+            BuiltInWorkerProcessPoolTest.class.getName()),
+        Matchers.not(Matchers.hasItem(Matchers.startsWith("-Xmx"))));
+  }
+
+  @Test
+  public void workersWhichFailToRunAJobAreReplaced() throws Exception {
+    WorkerJobResult compiled = WorkerJobResult.of(0, Optional.empty(), Optional.empty());
+    List<WorkerProcess> startedWorkers = new ArrayList<>();
+    BuiltInWorkerProcessPool pool = new BuiltInWorkerProcessPool(
+        1,
+        Hashing.sha1().hashLong(0),
+        new FakeProcessExecutor(),
+        ImmutableList.of("worker"),
+        new FakeProjectFilesystem(),
+        "workers") {
+      @Override
+      protected WorkerProcess startWorkerProcess() throws IOException {
+        WorkerProcess worker = new FakeWorkerProcess(ImmutableMap.of("compile", compiled));
+        startedWorkers.add(worker);
+        return worker;
+      }
+    };
+
+    assertEquals(compiled, pool.runJob("compile"));
+    assertEquals(compiled, pool.runJob("compile"));
+    assertThat(startedWorkers, Matchers.hasSize(1));
+
+    try {
+      pool.runJob("crash");
+      fail("The job should have failed.");
+    } catch (IllegalArgumentException e) {
+      // The fake worker fails to run jobs it does not know.
+    }
+    assertEquals(compiled, pool.runJob("compile"));
+    assertThat(startedWorkers, Matchers.hasSize(2));
+  }
+
+  private static ConcurrencyLimit limit(int threads, int memory) {
+    return new ConcurrencyLimit(
+        threads,
+        Double.POSITIVE_INFINITY,
+        ResourceAllocationFairness.FAIR,
+        threads,
+        ResourceAmounts.of(1, 1, 0, 0),
+        ResourceAmounts.of(threads, memory, 50, 30));
+  }
+}
@@ -132,6 +132,31 @@ public class WorkerProcessPoolTest {
 
   }
 
+  @Test
+  public void testDestroyedWorkerProcessesAreReplaced() throws Exception {
+    final WorkerProcessPool pool = createPool(1);
+    WorkerProcess deadWorker = pool.borrowWorkerProcess();
+    final Set<WorkerProcess> createdWorkers = concurrentSet();
+
+    Thread waiting = new Thread(new BorrowWorkerProcessWithoutReturning(pool, createdWorkers));
+    waiting.start();
+    waiting.join(100);
+    assertThat(createdWorkers, Matchers.empty());
+
+    pool.destroyWorkerProcess(deadWorker);
+    waiting.join();
+    assertThat(createdWorkers, Matchers.hasSize(1));
+    assertThat(createdWorkers, Matchers.not(Matchers.hasItem(deadWorker)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDestroyedWorkerProcessesCannotBeReturned() throws Exception {
+    WorkerProcessPool pool = createPool(1);
+    WorkerProcess deadWorker = pool.borrowWorkerProcess();
+    pool.destroyWorkerProcess(deadWorker);
+    pool.returnWorkerProcess(deadWorker);
+  }
+
   private static WorkerProcessPool createPool(int maxWorkers) {
     return new WorkerProcessPool(maxWorkers, Hashing.sha1().hashLong(0)) {
       @Override
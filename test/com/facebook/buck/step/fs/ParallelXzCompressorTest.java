@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.step.fs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.tukaani.xz.SingleXZInputStream;
+import org.tukaani.xz.XZ;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+public class ParallelXzCompressorTest {
+
+  private static final long BLOCK_SIZE = 64 * 1024;
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private ListeningExecutorService executor;
+
+  @Before
+  public void setUp() {
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void multipleBlocksDecompressAsASingleStream() throws Exception {
+    byte[] data = createData(10 * BLOCK_SIZE + 123);
+    Path compressed = compress(data, executor);
+
+    assertArrayEquals(data, decompress(compressed));
+  }
+
+  @Test
+  public void outputDoesNotDependOnTheNumberOfThreads() throws Exception {
+    byte[] data = createData(5 * BLOCK_SIZE);
+
+    assertArrayEquals(
+        Files.readAllBytes(filesystem.resolve(compress(data, executor))),
+        Files.readAllBytes(
+            filesystem.resolve(compress(data, MoreExecutors.newDirectExecutorService()))));
+  }
+
+  @Test
+  public void smallFilesAreCompressedLikeXzStep() throws Exception {
+    byte[] data = createData(BLOCK_SIZE / 2);
+    Path compressed = compress(data, executor);
+
+    filesystem.writeBytesToPath(data, Paths.get("xzstep.data"));
+    XzStep step = new XzStep(
+        filesystem,
+        Paths.get("xzstep.data"),
+        Paths.get("xzstep.data.xz"),
+        /* compressionLevel */ 1,
+        /* keep */ false,
+        XZ.CHECK_CRC32);
+    assertEquals(0, step.execute(TestExecutionContext.newInstance()).getExitCode());
+
+    assertArrayEquals(
+        Files.readAllBytes(filesystem.resolve(Paths.get("xzstep.data.xz"))),
+        Files.readAllBytes(filesystem.resolve(compressed)));
+  }
+
+  @Test
+  public void emptyFilesAreCompressed() throws Exception {
+    Path compressed = compress(new byte[0], executor);
+
+    assertArrayEquals(new byte[0], decompress(compressed));
+  }
+
+  /**
+   * @return data which compresses, but not to nothing
+   */
+  private byte[] createData(long size) {
+    Random random = new Random(0);
+    byte[] data = new byte[(int) size];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) ('a' + random.nextInt(8));
+    }
+    return data;
+  }
+
+  private Path compress(byte[] data, ListeningExecutorService executor) throws Exception {
+    Path source = Paths.get("source.data");
+    Path destination = Files.createTempFile(tmp.getRoot(), "compressed", ".xz");
+    filesystem.writeBytesToPath(data, source);
+    new ParallelXzCompressor(
+        filesystem,
+        source,
+        destination,
+        /* compressionLevel */ 1,
+        XZ.CHECK_CRC32,
+        BLOCK_SIZE).compress(executor).get();
+    return tmp.getRoot().relativize(destination);
+  }
+
+  private byte[] decompress(Path compressed) throws IOException {
+    // SingleXZInputStream rejects anything after the first stream, as XZ Embedded would.
+    try (InputStream in =
+             new SingleXZInputStream(Files.newInputStream(filesystem.resolve(compressed)))) {
+      return ByteStreams.toByteArray(in);
+    }
+  }
+}
@@ -73,4 +73,40 @@ public class ByteBufferReplacerTest {
     }
   }
 
+  @Test
+  public void replacingInParallelFindsMatchesAcrossChunks() {
+    ByteBufferReplacer replacer = new ByteBufferReplacer(
+        ImmutableMap.of(
+            "/some/path".getBytes(Charsets.US_ASCII),
+            "/other/dir".getBytes(Charsets.US_ASCII)));
+    String blob = "/some/path:/some/path:/some//some/path";
+
+    for (int chunkSize = 1; chunkSize <= blob.length(); chunkSize++) {
+      byte[] sequential = blob.getBytes(Charsets.US_ASCII);
+      byte[] parallel = blob.getBytes(Charsets.US_ASCII);
+      assertEquals(3, replacer.replace(ByteBuffer.wrap(sequential)));
+      assertEquals(3, replacer.replaceInParallel(ByteBuffer.wrap(parallel), chunkSize));
+      assertArrayEquals(String.format("chunk size %d", chunkSize), sequential, parallel);
+    }
+  }
+
+  @Test
+  public void replacingInParallelReplacesTheFirstOfOverlappingMatches() {
+    ByteBufferReplacer replacer = new ByteBufferReplacer(
+        ImmutableMap.of(
+            "/a/b/a".getBytes(Charsets.US_ASCII),
+            "/x/y/z".getBytes(Charsets.US_ASCII)));
+    String blob = "/a/b/a/b/a/b/a/b/a";
+
+    for (int chunkSize = 1; chunkSize <= blob.length(); chunkSize++) {
+      byte[] sequential = blob.getBytes(Charsets.US_ASCII);
+      byte[] parallel = blob.getBytes(Charsets.US_ASCII);
+      int numReplacements = replacer.replace(ByteBuffer.wrap(sequential));
+      assertEquals(
+          numReplacements,
+          replacer.replaceInParallel(ByteBuffer.wrap(parallel), chunkSize));
+      assertArrayEquals(String.format("chunk size %d", chunkSize), sequential, parallel);
+    }
+  }
+
 }
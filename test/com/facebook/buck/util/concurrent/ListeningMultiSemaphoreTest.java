@@ -219,6 +219,24 @@ public class ListeningMultiSemaphoreTest {
     assertThat(second.isDone(), Matchers.equalTo(true));
   }
 
+  @Test
+  public void testRemoteCpuIsAccountedApartFromCpu() {
+    ListeningMultiSemaphore array =
+        getFairListeningMultiSemaphore(amountsOfCpu(1).withRemoteCpu(2));
+    ResourceAmounts remoteJob = ResourceAmounts.ZERO.withRemoteCpu(1);
+
+    assertThat(array.acquire(remoteJob).isDone(), Matchers.equalTo(true));
+    assertThat(array.acquire(remoteJob).isDone(), Matchers.equalTo(true));
+    assertThat(array.acquire(amountsOfCpu(1)).isDone(), Matchers.equalTo(true));
+
+    ListenableFuture<Void> pendingRemoteJob = array.acquire(remoteJob);
+    assertThat(pendingRemoteJob.isDone(), Matchers.equalTo(false));
+    array.release(amountsOfCpu(1));
+    assertThat(pendingRemoteJob.isDone(), Matchers.equalTo(false));
+    array.release(remoteJob);
+    assertThat(pendingRemoteJob.isDone(), Matchers.equalTo(true));
+  }
+
   private ListeningMultiSemaphore getFairListeningMultiSemaphore(ResourceAmounts values) {
     return new ListeningMultiSemaphore(
         values,
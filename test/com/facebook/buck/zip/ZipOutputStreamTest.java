@@ -62,6 +62,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
@@ -342,6 +343,44 @@ public class ZipOutputStreamTest {
         }
       }
     }
+
+    @Test
+    public void rawEntriesAreCopiedWithoutCompressingThemAgain() throws IOException {
+      byte[] text = Resources.toByteArray(getClass().getResource("macbeth.properties"));
+      Path source = Files.createTempFile("source", ".zip");
+      try (ZipOutputStream ref = new ZipOutputStream(Files.newOutputStream(source))) {
+        // A level we never write, so the compressed data shows whether it was copied.
+        ref.setLevel(Deflater.BEST_SPEED);
+        ref.putNextEntry(new ZipEntry("deflated.txt"));
+        ref.write(text);
+        ZipEntry stored = new ZipEntry("stored.txt");
+        stored.setMethod(ZipEntry.STORED);
+        stored.setSize(text.length);
+        stored.setCrc(Hashing.crc32().hashBytes(text).padToLong());
+        ref.putNextEntry(stored);
+        ref.write(text);
+      }
+
+      try (RawZipFile in = new RawZipFile(source);
+           CustomZipOutputStream out = ZipOutputStreams.newOutputStream(output, mode)) {
+        for (RawZipFile.Entry entry : in.getEntries()) {
+          out.putNextRawEntry(entry);
+          out.write(in.getRawData(entry));
+        }
+      }
+
+      try (java.util.zip.ZipFile expected = new java.util.zip.ZipFile(source.toFile());
+           java.util.zip.ZipFile seen = new java.util.zip.ZipFile(output.toFile())) {
+        for (String name : ImmutableList.of("deflated.txt", "stored.txt")) {
+          ZipEntry expectedEntry = expected.getEntry(name);
+          ZipEntry seenEntry = seen.getEntry(name);
+          assertEquals(expectedEntry.getMethod(), seenEntry.getMethod());
+          assertEquals(expectedEntry.getCompressedSize(), seenEntry.getCompressedSize());
+          assertEquals(expectedEntry.getCrc(), seenEntry.getCrc());
+          assertArrayEquals(text, ByteStreams.toByteArray(seen.getInputStream(seenEntry)));
+        }
+      }
+    }
   }
 
   public static class ModeDependentTests {